@@ -4,10 +4,19 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.DatabaseProperties;
+import com.xynnity.watermanagement.config.EventQueryProperties;
+import com.xynnity.watermanagement.config.IngestionProperties;
 import com.xynnity.watermanagement.config.MqttProperties;
+import com.xynnity.watermanagement.config.RetentionProperties;
+import com.xynnity.watermanagement.config.UsageProperties;
+import com.xynnity.watermanagement.config.WebSocketProperties;
 
 @SpringBootApplication
-@EnableConfigurationProperties(MqttProperties.class)
+@EnableConfigurationProperties({ MqttProperties.class, IngestionProperties.class, WebSocketProperties.class,
+		EventQueryProperties.class, DatabaseProperties.class, UsageProperties.class,
+		RetentionProperties.class, ClusterProperties.class })
 public class WatermanagementApplication {
 
 	public static void main(String[] args) {
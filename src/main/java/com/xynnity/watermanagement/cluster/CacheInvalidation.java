@@ -0,0 +1,25 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.util.Set;
+
+/**
+ * Tells the other nodes that entries of a cache derived from shared data are out of date. An empty
+ * key set stands for every entry of the cache, and a {@code null} cache for every cache.
+ */
+public record CacheInvalidation(String cache, Set<String> keys) {
+
+    public CacheInvalidation {
+        keys = Set.copyOf(keys);
+    }
+
+    /**
+     * Invalidation of every cache, sent when earlier invalidations may have been lost.
+     */
+    public static CacheInvalidation everything() {
+        return new CacheInvalidation(null, Set.of());
+    }
+
+    public boolean isEverything() {
+        return cache == null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.util.function.Consumer;
+
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+/**
+ * Carries persisted events between the nodes of a cluster. Each node advertises the
+ * {@link SubscriptionInterest} of its WebSocket sessions, and an event is only sent to the nodes
+ * whose interest matches it.
+ * <p>
+ * Delivery is best effort: events for a node that is unreachable or cannot keep up are dropped, and
+ * its sessions recover them by resuming from their last event id. Cache invalidations go to every
+ * node; a node that may have missed some is sent {@link CacheInvalidation#everything()}.
+ */
+public interface ClusterEventBus extends AutoCloseable {
+
+    /**
+     * Starts exchanging events; events published and invalidations sent by other nodes are handed to
+     * the receivers.
+     */
+    void start(Consumer<DeviceEventDto> receiver, Consumer<CacheInvalidation> invalidationReceiver);
+
+    /**
+     * Replaces the interest this node advertises to the others.
+     */
+    void advertise(SubscriptionInterest interest);
+
+    /**
+     * Sends an event persisted on this node to every other node interested in it and returns how many
+     * nodes it was handed to.
+     */
+    int publish(DeviceEventDto event);
+
+    /**
+     * Sends a cache invalidation to every other node.
+     */
+    void invalidate(CacheInvalidation invalidation);
+
+    @Override
+    void close();
+
+    /**
+     * Bus of a node running on its own, which never forwards anything.
+     */
+    static ClusterEventBus standalone() {
+        return StandaloneEventBus.INSTANCE;
+    }
+}
@@ -0,0 +1,126 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+import com.xynnity.watermanagement.websocket.DeviceSubscriptionRegistry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Connects the local {@link DeviceSubscriptionRegistry} to the {@link ClusterEventBus}: the
+ * registry's interest is advertised whenever a session comes or goes, events persisted here are
+ * forwarded to interested nodes, and events forwarded by other nodes are routed to local sessions.
+ * It also carries invalidations of caches built from shared tables, such as usage reports, to the
+ * listeners registered for them on every other node.
+ */
+@Component
+public class ClusterEventRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterEventRelay.class);
+
+    private final ClusterEventBus bus;
+    private final DeviceSubscriptionRegistry subscriptionRegistry;
+    private final boolean enabled;
+    private final Counter forwarded;
+    private final Counter received;
+    private final Map<String, List<Consumer<Set<String>>>> invalidationListeners = new ConcurrentHashMap<>();
+
+    public ClusterEventRelay(ClusterEventBus bus,
+                             DeviceSubscriptionRegistry subscriptionRegistry,
+                             ClusterProperties properties,
+                             MeterRegistry meterRegistry) {
+        this.bus = bus;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.enabled = properties.isEnabled();
+        this.forwarded = Counter.builder("cluster.events.forwarded")
+                .description("Events sent to other nodes, counted once per receiving node")
+                .register(meterRegistry);
+        this.received = Counter.builder("cluster.events.received")
+                .description("Events forwarded by other nodes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        subscriptionRegistry.onInterestChange(this::advertise);
+        bus.start(this::receive, this::receive);
+        advertise();
+    }
+
+    /**
+     * Forwards an event persisted on this node to the other nodes following it.
+     */
+    public void publish(DeviceEventDto event) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            forwarded.increment(bus.publish(event));
+        } catch (RuntimeException e) {
+            log.warn("Failed to forward device event ID={} to the cluster", event.id(), e);
+        }
+    }
+
+    /**
+     * Tells the other nodes that the given entries of a cache are out of date; an empty key set
+     * stands for the whole cache.
+     */
+    public void invalidate(String cache, Set<String> keys) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            bus.invalidate(new CacheInvalidation(cache, keys));
+        } catch (RuntimeException e) {
+            log.warn("Failed to send invalidation of cache {} to the cluster", cache, e);
+        }
+    }
+
+    /**
+     * Registers a listener for invalidations of a cache sent by other nodes. It receives the keys to
+     * drop, or an empty set when the whole cache is out of date.
+     */
+    public void onInvalidation(String cache, Consumer<Set<String>> listener) {
+        invalidationListeners.computeIfAbsent(cache, name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    private void advertise() {
+        bus.advertise(subscriptionRegistry.interest());
+    }
+
+    private void receive(DeviceEventDto event) {
+        received.increment();
+        if (subscriptionRegistry.hasSubscribers(event.deviceId(), event.clientId())) {
+            subscriptionRegistry.route(event);
+            log.trace("Routed cluster event ID={} to subscribed sessions", event.id());
+        }
+    }
+
+    private void receive(CacheInvalidation invalidation) {
+        if (invalidation.isEverything()) {
+            invalidationListeners.values().forEach(listeners -> listeners.forEach(listener -> listener.accept(Set.of())));
+            return;
+        }
+        var listeners = invalidationListeners.get(invalidation.cache());
+        if (listeners != null) {
+            listeners.forEach(listener -> listener.accept(invalidation.keys()));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+/**
+ * Frames exchanged by {@link TcpClusterEventBus}. Each frame is a type byte followed by its fields.
+ * A connection opens with a {@code HELLO} in each direction; after that the connecting node sends
+ * {@code INTEREST}, {@code EVENT} and {@code INVALIDATE} frames and the accepting node only reads.
+ */
+final class ClusterFrames {
+
+    static final byte HELLO = 1;
+    static final byte INTEREST = 2;
+    static final byte EVENT = 3;
+    static final byte INVALIDATE = 4;
+
+    private static final int VERSION = 1;
+
+    private ClusterFrames() {
+    }
+
+    record Hello(String clusterName, String nodeId) {
+    }
+
+    static void writeHello(DataOutputStream out, String clusterName, String nodeId) throws IOException {
+        out.writeByte(HELLO);
+        out.writeInt(VERSION);
+        out.writeUTF(clusterName);
+        out.writeUTF(nodeId);
+    }
+
+    static Hello readHello(DataInputStream in) throws IOException {
+        int type = in.readByte();
+        if (type != HELLO) {
+            throw new IOException("Expected HELLO frame but got type " + type);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cluster protocol version " + version);
+        }
+        return new Hello(in.readUTF(), in.readUTF());
+    }
+
+    static void writeInterest(DataOutputStream out, SubscriptionInterest interest) throws IOException {
+        out.writeByte(INTEREST);
+        out.writeBoolean(interest.wildcard());
+        writeSet(out, interest.deviceIds());
+        writeSet(out, interest.clientIds());
+        out.writeInt(interest.clientIdsByDevice().size());
+        for (var entry : interest.clientIdsByDevice().entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeSet(out, entry.getValue());
+        }
+    }
+
+    static SubscriptionInterest readInterest(DataInputStream in) throws IOException {
+        boolean wildcard = in.readBoolean();
+        var deviceIds = readSet(in);
+        var clientIds = readSet(in);
+        int pairs = in.readInt();
+        Map<String, Set<String>> clientIdsByDevice = new HashMap<>(pairs * 2);
+        for (int i = 0; i < pairs; i++) {
+            clientIdsByDevice.put(in.readUTF(), readSet(in));
+        }
+        return new SubscriptionInterest(wildcard, deviceIds, clientIds, clientIdsByDevice);
+    }
+
+    static void writeEvent(DataOutputStream out, DeviceEventDto event) throws IOException {
+        out.writeByte(EVENT);
+        out.writeLong(event.id() != null ? event.id() : -1L);
+        writeNullable(out, event.deviceId());
+        writeNullable(out, event.clientId());
+        writeNullable(out, event.topic());
+        out.writeByte(event.qos());
+        out.writeBoolean(event.retained());
+        out.writeBoolean(event.receivedAt() != null);
+        if (event.receivedAt() != null) {
+            out.writeLong(event.receivedAt().getEpochSecond());
+            out.writeInt(event.receivedAt().getNano());
+        }
+        if (event.payload() == null) {
+            out.writeInt(-1);
+        } else {
+            var utf8 = event.payload().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    static DeviceEventDto readEvent(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        var deviceId = readNullable(in);
+        var clientId = readNullable(in);
+        var topic = readNullable(in);
+        int qos = in.readByte();
+        boolean retained = in.readBoolean();
+        Instant receivedAt = in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+        int length = in.readInt();
+        String payload = null;
+        if (length >= 0) {
+            payload = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+        }
+        return new DeviceEventDto(id >= 0 ? id : null, deviceId, clientId, topic, payload, qos, retained, receivedAt);
+    }
+
+    static void writeInvalidation(DataOutputStream out, CacheInvalidation invalidation) throws IOException {
+        out.writeByte(INVALIDATE);
+        writeNullable(out, invalidation.cache());
+        writeSet(out, invalidation.keys());
+    }
+
+    static CacheInvalidation readInvalidation(DataInputStream in) throws IOException {
+        return new CacheInvalidation(readNullable(in), readSet(in));
+    }
+
+    private static void writeSet(DataOutputStream out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (var value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static Set<String> readSet(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Set<String> values = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+
+/**
+ * Elects one node for work that must not run on several nodes at once, such as rebuilding the usage
+ * rollups. A lease is a row of {@code cluster_leases} owned by a node id until it is released or
+ * expires; expiry relies on the nodes' clocks agreeing to well within the lease duration.
+ */
+@Component
+public class ClusterLeases {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+
+    public ClusterLeases(DataSource dataSource, ClusterProperties properties) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.nodeId = properties.getNodeId();
+    }
+
+    /**
+     * Takes the lease, or extends it if this node already holds it, for {@code duration}. Returns
+     * {@code false} while another node holds it.
+     */
+    public boolean tryAcquire(String name, Duration duration) {
+        var now = Instant.now();
+        int updated = jdbcTemplate.update(
+                "UPDATE cluster_leases SET owner = ?, expires_at = ? WHERE name = ? AND (owner = ? OR expires_at < ?)",
+                nodeId, utc(now.plus(duration)), name, nodeId, utc(now));
+        if (updated > 0) {
+            return true;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO cluster_leases (name, owner, expires_at) VALUES (?, ?, ?)",
+                    name, nodeId, utc(now.plus(duration)));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether a node other than this one holds the lease.
+     */
+    public boolean isHeldElsewhere(String name) {
+        Long held = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM cluster_leases WHERE name = ? AND owner <> ? AND expires_at >= ?",
+                Long.class, name, nodeId, utc(Instant.now()));
+        return held != null && held > 0;
+    }
+
+    /**
+     * Gives the lease up if this node holds it.
+     */
+    public void release(String name) {
+        jdbcTemplate.update("DELETE FROM cluster_leases WHERE name = ? AND owner = ?", name, nodeId);
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,84 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+/**
+ * Cluster bus for several nodes running in one JVM, such as application contexts started side by
+ * side in a test. Nodes with the same cluster name see each other's interest directly, and events and
+ * invalidations are delivered on the sending thread.
+ */
+public class LoopbackClusterEventBus implements ClusterEventBus {
+
+    private static final Map<String, Set<LoopbackClusterEventBus>> CLUSTERS = new ConcurrentHashMap<>();
+
+    private final String clusterName;
+    private volatile SubscriptionInterest interest = SubscriptionInterest.NONE;
+    private volatile Consumer<DeviceEventDto> receiver;
+    private volatile Consumer<CacheInvalidation> invalidationReceiver;
+
+    public LoopbackClusterEventBus(String clusterName) {
+        this.clusterName = clusterName;
+    }
+
+    @Override
+    public void start(Consumer<DeviceEventDto> receiver, Consumer<CacheInvalidation> invalidationReceiver) {
+        this.receiver = receiver;
+        this.invalidationReceiver = invalidationReceiver;
+        CLUSTERS.compute(clusterName, (name, members) -> {
+            var joined = members != null ? members : ConcurrentHashMap.<LoopbackClusterEventBus>newKeySet();
+            joined.add(this);
+            return joined;
+        });
+    }
+
+    @Override
+    public void advertise(SubscriptionInterest interest) {
+        this.interest = interest;
+    }
+
+    @Override
+    public int publish(DeviceEventDto event) {
+        var members = CLUSTERS.get(clusterName);
+        if (members == null) {
+            return 0;
+        }
+        int forwarded = 0;
+        for (var member : members) {
+            var target = member.receiver;
+            if (member != this && target != null && member.interest.matches(event.deviceId(), event.clientId())) {
+                target.accept(event);
+                forwarded++;
+            }
+        }
+        return forwarded;
+    }
+
+    @Override
+    public void invalidate(CacheInvalidation invalidation) {
+        var members = CLUSTERS.get(clusterName);
+        if (members == null) {
+            return;
+        }
+        for (var member : members) {
+            var target = member.invalidationReceiver;
+            if (member != this && target != null) {
+                target.accept(invalidation);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        CLUSTERS.computeIfPresent(clusterName, (name, members) -> {
+            members.remove(this);
+            return members.isEmpty() ? null : members;
+        });
+        receiver = null;
+        invalidationReceiver = null;
+    }
+}
@@ -0,0 +1,34 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.util.function.Consumer;
+
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+final class StandaloneEventBus implements ClusterEventBus {
+
+    static final StandaloneEventBus INSTANCE = new StandaloneEventBus();
+
+    private StandaloneEventBus() {
+    }
+
+    @Override
+    public void start(Consumer<DeviceEventDto> receiver, Consumer<CacheInvalidation> invalidationReceiver) {
+    }
+
+    @Override
+    public void advertise(SubscriptionInterest interest) {
+    }
+
+    @Override
+    public int publish(DeviceEventDto event) {
+        return 0;
+    }
+
+    @Override
+    public void invalidate(CacheInvalidation invalidation) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
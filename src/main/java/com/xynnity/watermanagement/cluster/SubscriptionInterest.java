@@ -0,0 +1,52 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The events a node's WebSocket sessions follow: everything, or the listed devices, clients and
+ * device/client pairs. Identifiers are trimmed and never blank.
+ */
+public record SubscriptionInterest(boolean wildcard,
+                                   Set<String> deviceIds,
+                                   Set<String> clientIds,
+                                   Map<String, Set<String>> clientIdsByDevice) {
+
+    public static final SubscriptionInterest NONE = new SubscriptionInterest(false, Set.of(), Set.of(), Map.of());
+
+    public SubscriptionInterest {
+        deviceIds = Set.copyOf(deviceIds);
+        clientIds = Set.copyOf(clientIds);
+        clientIdsByDevice = Map.copyOf(clientIdsByDevice);
+    }
+
+    public boolean isEmpty() {
+        return !wildcard && deviceIds.isEmpty() && clientIds.isEmpty() && clientIdsByDevice.isEmpty();
+    }
+
+    public boolean matches(String deviceId, String clientId) {
+        if (wildcard) {
+            return true;
+        }
+        var device = normalize(deviceId);
+        var client = normalize(clientId);
+        if (device != null && deviceIds.contains(device)) {
+            return true;
+        }
+        if (client != null && clientIds.contains(client)) {
+            return true;
+        }
+        if (device != null && client != null) {
+            var clients = clientIdsByDevice.get(device);
+            return clients != null && clients.contains(client);
+        }
+        return false;
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim();
+    }
+}
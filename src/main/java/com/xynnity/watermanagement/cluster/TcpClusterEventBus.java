@@ -0,0 +1,371 @@
+package com.xynnity.watermanagement.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cluster bus over plain TCP. Every node listens on {@code cluster.port} and connects to each of
+ * {@code cluster.peers}, so each pair of nodes is linked by one connection per direction. A node sends
+ * its interest and the events matching the peer's interest over the connection it opened, and reads
+ * the peer's interest and events from the connection the peer opened.
+ * <p>
+ * Each outgoing connection has a bounded queue drained by its own thread, so a slow or unreachable
+ * peer only loses its own events. Interest changes are coalesced: the latest interest is sent before
+ * the next queued event. A peer's interest is forgotten when its connection closes, so nothing is
+ * queued for it until it reconnects. Cache invalidations share the queue; a peer that reconnects or
+ * whose queue was full when one was sent is told to invalidate everything instead.
+ */
+public final class TcpClusterEventBus implements ClusterEventBus {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpClusterEventBus.class);
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final Object WAKE_UP = new Object();
+
+    private final String clusterName;
+    private final String nodeId;
+    private final InetSocketAddress bindAddress;
+    private final long reconnectIntervalMillis;
+    private final List<Peer> peers;
+    private final Map<String, Inbound> inbound = new ConcurrentHashMap<>();
+    private final Set<Socket> acceptedSockets = ConcurrentHashMap.newKeySet();
+    private final Counter dropped;
+
+    private volatile SubscriptionInterest localInterest = SubscriptionInterest.NONE;
+    private volatile Consumer<DeviceEventDto> receiver;
+    private volatile Consumer<CacheInvalidation> invalidationReceiver;
+    private volatile boolean running;
+    private ServerSocket server;
+
+    public TcpClusterEventBus(ClusterProperties properties, MeterRegistry meterRegistry) {
+        this.clusterName = properties.getName();
+        this.nodeId = properties.getNodeId();
+        this.bindAddress = new InetSocketAddress(properties.getBindAddress(), properties.getPort());
+        this.reconnectIntervalMillis = properties.getReconnectInterval().toMillis();
+        this.peers = properties.getPeers().stream()
+                .map(address -> new Peer(address, properties.getSendQueueCapacity()))
+                .toList();
+        this.dropped = Counter.builder("cluster.events.dropped")
+                .description("Events not forwarded because a peer's send queue was full")
+                .register(meterRegistry);
+        Gauge.builder("cluster.peers.connected", this, bus -> bus.peers.stream().filter(Peer::connected).count())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void start(Consumer<DeviceEventDto> receiver, Consumer<CacheInvalidation> invalidationReceiver) {
+        this.receiver = receiver;
+        this.invalidationReceiver = invalidationReceiver;
+        this.running = true;
+        try {
+            server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(bindAddress);
+        } catch (IOException e) {
+            running = false;
+            throw new IllegalStateException("Cannot listen for cluster peers on " + bindAddress, e);
+        }
+        Thread.ofPlatform().name("cluster-bus-accept").daemon(true).start(this::accept);
+        for (var peer : peers) {
+            peer.writer.start();
+        }
+        log.info("Cluster node {} of {} listening on {} with peers {}", nodeId, clusterName, bindAddress,
+                peers.stream().map(peer -> peer.address).toList());
+    }
+
+    @Override
+    public void advertise(SubscriptionInterest interest) {
+        localInterest = interest;
+        for (var peer : peers) {
+            peer.interestChanged();
+        }
+    }
+
+    @Override
+    public int publish(DeviceEventDto event) {
+        int forwarded = 0;
+        for (var peer : peers) {
+            var remote = peer.remoteNodeId;
+            var connection = remote != null ? inbound.get(remote) : null;
+            if (connection == null || !connection.interest.matches(event.deviceId(), event.clientId())) {
+                continue;
+            }
+            if (peer.queue.offer(event)) {
+                forwarded++;
+            } else {
+                dropped.increment();
+            }
+        }
+        return forwarded;
+    }
+
+    @Override
+    public void invalidate(CacheInvalidation invalidation) {
+        for (var peer : peers) {
+            if (peer.connected() && !peer.queue.offer(invalidation)) {
+                peer.invalidationsLost.set(true);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        closeQuietly(server);
+        for (var socket : acceptedSockets) {
+            closeQuietly(socket);
+        }
+        for (var peer : peers) {
+            peer.writer.interrupt();
+            closeQuietly(peer.socket);
+        }
+        inbound.clear();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                var socket = server.accept();
+                acceptedSockets.add(socket);
+                Thread.ofPlatform()
+                        .name("cluster-bus-reader-" + socket.getRemoteSocketAddress())
+                        .daemon(true)
+                        .start(() -> read(socket));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Failed to accept a cluster peer connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the interest and events a peer sends over the connection it opened to this node.
+     */
+    private void read(Socket socket) {
+        Inbound connection = null;
+        try (socket) {
+            socket.setKeepAlive(true);
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            var hello = ClusterFrames.readHello(in);
+            ClusterFrames.writeHello(out, clusterName, nodeId);
+            out.flush();
+            if (!clusterName.equals(hello.clusterName())) {
+                log.warn("Rejecting node {} of cluster {} connecting from {}", hello.nodeId(), hello.clusterName(),
+                        socket.getRemoteSocketAddress());
+                return;
+            }
+            connection = new Inbound();
+            var previous = inbound.put(hello.nodeId(), connection);
+            if (previous != null) {
+                log.debug("Cluster node {} reconnected from {}", hello.nodeId(), socket.getRemoteSocketAddress());
+            }
+            while (running) {
+                int type = in.readByte();
+                switch (type) {
+                    case ClusterFrames.INTEREST -> connection.interest = ClusterFrames.readInterest(in);
+                    case ClusterFrames.EVENT -> deliver(ClusterFrames.readEvent(in));
+                    case ClusterFrames.INVALIDATE -> deliver(ClusterFrames.readInvalidation(in));
+                    default -> throw new IOException("Unknown cluster frame type " + type);
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            log.debug("Cluster peer connection from {} closed", socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            if (running) {
+                log.warn("Cluster peer connection from {} failed", socket.getRemoteSocketAddress(), e);
+            }
+        } finally {
+            acceptedSockets.remove(socket);
+            if (connection != null) {
+                var closed = connection;
+                inbound.values().removeIf(current -> current == closed);
+            }
+        }
+    }
+
+    private void deliver(DeviceEventDto event) {
+        var target = receiver;
+        if (target == null) {
+            return;
+        }
+        try {
+            target.accept(event);
+        } catch (RuntimeException e) {
+            log.warn("Failed to deliver cluster event ID={}", event.id(), e);
+        }
+    }
+
+    private void deliver(CacheInvalidation invalidation) {
+        var target = invalidationReceiver;
+        if (target == null) {
+            return;
+        }
+        try {
+            target.accept(invalidation);
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply cluster cache invalidation {}", invalidation, e);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            // closing on shutdown or after a failure
+        }
+    }
+
+    /**
+     * Connection a peer opened to this node, with the interest it last advertised.
+     */
+    private static final class Inbound {
+
+        private volatile SubscriptionInterest interest = SubscriptionInterest.NONE;
+    }
+
+    /**
+     * Connection this node opens to a configured peer, with its send queue and writer thread.
+     */
+    private final class Peer {
+
+        private final String address;
+        private final String host;
+        private final int port;
+        private final BlockingQueue<Object> queue;
+        private final AtomicBoolean interestDirty = new AtomicBoolean(true);
+        private final AtomicBoolean invalidationsLost = new AtomicBoolean(true);
+        private final Thread writer;
+        private volatile String remoteNodeId;
+        private volatile Socket socket;
+
+        private Peer(String address, int queueCapacity) {
+            int separator = address.lastIndexOf(':');
+            if (separator <= 0 || separator == address.length() - 1) {
+                throw new IllegalArgumentException("Cluster peer must be host:port but was " + address);
+            }
+            this.address = address;
+            this.host = address.substring(0, separator);
+            this.port = Integer.parseInt(address.substring(separator + 1));
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.writer = Thread.ofPlatform().name("cluster-bus-peer-" + address).daemon(true).unstarted(this::run);
+        }
+
+        private boolean connected() {
+            return remoteNodeId != null;
+        }
+
+        private void interestChanged() {
+            interestDirty.set(true);
+            // wake the writer; if the queue is full it wakes up for the next event anyway
+            queue.offer(WAKE_UP);
+        }
+
+        private void run() {
+            while (running) {
+                try {
+                    if (!connectAndSend()) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        log.debug("Cluster peer {} unavailable: {}", address, e.getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    remoteNodeId = null;
+                    closeQuietly(socket);
+                    socket = null;
+                }
+                if (!running) {
+                    return;
+                }
+                try {
+                    Thread.sleep(reconnectIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Sends to the peer until the connection fails; returns {@code false} if the peer turns out to
+         * be this node and must not be retried.
+         */
+        private boolean connectAndSend() throws IOException, InterruptedException {
+            var connection = new Socket();
+            socket = connection;
+            connection.setTcpNoDelay(true);
+            connection.setKeepAlive(true);
+            connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            var in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            var out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            ClusterFrames.writeHello(out, clusterName, nodeId);
+            out.flush();
+            var hello = ClusterFrames.readHello(in);
+            if (!clusterName.equals(hello.clusterName())) {
+                throw new IOException("peer belongs to cluster " + hello.clusterName());
+            }
+            if (nodeId.equals(hello.nodeId())) {
+                log.warn("Cluster peer {} is this node; not connecting to it", address);
+                return false;
+            }
+            remoteNodeId = hello.nodeId();
+            interestDirty.set(true);
+            // the peer may have cached data that changed while it was not connected
+            invalidationsLost.set(true);
+            log.info("Connected to cluster node {} at {}", hello.nodeId(), address);
+            while (running) {
+                if (interestDirty.getAndSet(false)) {
+                    ClusterFrames.writeInterest(out, localInterest);
+                }
+                if (invalidationsLost.getAndSet(false)) {
+                    ClusterFrames.writeInvalidation(out, CacheInvalidation.everything());
+                }
+                var next = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (next instanceof DeviceEventDto event) {
+                    ClusterFrames.writeEvent(out, event);
+                } else if (next instanceof CacheInvalidation invalidation) {
+                    ClusterFrames.writeInvalidation(out, invalidation);
+                }
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            }
+            return false;
+        }
+    }
+}
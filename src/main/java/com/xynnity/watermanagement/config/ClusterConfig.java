@@ -0,0 +1,35 @@
+package com.xynnity.watermanagement.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.xynnity.watermanagement.cluster.ClusterEventBus;
+import com.xynnity.watermanagement.cluster.LoopbackClusterEventBus;
+import com.xynnity.watermanagement.cluster.TcpClusterEventBus;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+public class ClusterConfig {
+
+    /**
+     * Bus that carries persisted events to the other nodes, or one that never forwards anything when
+     * cluster mode is off.
+     */
+    @Bean
+    public ClusterEventBus clusterEventBus(ClusterProperties properties,
+                                           IngestionProperties ingestionProperties,
+                                           MeterRegistry meterRegistry) {
+        if (!properties.isEnabled()) {
+            return ClusterEventBus.standalone();
+        }
+        if (ingestionProperties.getJournal().isEnabled()) {
+            // journal positions are per node but stored in the shared device_events table
+            throw new IllegalStateException("ingestion.journal.enabled cannot be combined with cluster.enabled");
+        }
+        return switch (properties.getTransport()) {
+            case TCP -> new TcpClusterEventBus(properties, meterRegistry);
+            case LOOPBACK -> new LoopbackClusterEventBus(properties.getName());
+        };
+    }
+}
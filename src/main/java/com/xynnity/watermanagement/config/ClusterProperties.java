@@ -0,0 +1,159 @@
+package com.xynnity.watermanagement.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+
+@Validated
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+    /**
+     * Run as one node of a cluster sharing the broker and the database: inbound subscriptions become
+     * shared subscriptions and persisted events are forwarded to the nodes whose WebSocket sessions
+     * follow them.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Cluster name. Nodes only connect to peers with the same name, and it is the shared subscription
+     * group unless {@code mqtt.inbound.shared-group} is set.
+     */
+    @NotBlank
+    private String name = "watermanagement";
+
+    /**
+     * Identifier of this node, unique within the cluster. It is appended to the MQTT client ids.
+     */
+    @NotBlank
+    private String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * How events travel between nodes.
+     */
+    @NotNull
+    private Transport transport = Transport.TCP;
+
+    /**
+     * Address the TCP transport listens on for peers.
+     */
+    @NotBlank
+    private String bindAddress = "0.0.0.0";
+
+    /**
+     * Port the TCP transport listens on for peers.
+     */
+    @PositiveOrZero
+    @Max(65_535)
+    private int port = 7_800;
+
+    /**
+     * Peers the TCP transport connects to, as {@code host:port}. Every node lists every other node.
+     */
+    @NotNull
+    private List<String> peers = List.of();
+
+    /**
+     * Delay before reconnecting to a peer whose connection failed.
+     */
+    @NotNull
+    private Duration reconnectInterval = Duration.ofSeconds(2);
+
+    /**
+     * Maximum number of events queued per peer; events for a peer that cannot keep up are dropped.
+     */
+    @Positive
+    private int sendQueueCapacity = 10_000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    public void setBindAddress(String bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public List<String> getPeers() {
+        return peers;
+    }
+
+    public void setPeers(List<String> peers) {
+        this.peers = peers;
+    }
+
+    public Duration getReconnectInterval() {
+        return reconnectInterval;
+    }
+
+    public void setReconnectInterval(Duration reconnectInterval) {
+        this.reconnectInterval = reconnectInterval;
+    }
+
+    public int getSendQueueCapacity() {
+        return sendQueueCapacity;
+    }
+
+    public void setSendQueueCapacity(int sendQueueCapacity) {
+        this.sendQueueCapacity = sendQueueCapacity;
+    }
+
+    public enum Transport {
+        /**
+         * Length-framed TCP connections to the configured peers.
+         */
+        TCP,
+        /**
+         * In-process exchange between nodes of the same cluster name running in one JVM, for tests.
+         */
+        LOOPBACK
+    }
+}
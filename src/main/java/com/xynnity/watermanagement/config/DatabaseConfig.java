@@ -0,0 +1,21 @@
+package com.xynnity.watermanagement.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+public class DatabaseConfig {
+
+    /**
+     * Scheduler for blocking JPA/JDBC calls made on behalf of reactive endpoints. It keeps them off
+     * the Netty event loop and is sized separately from the shared bounded elastic pool, so heavy
+     * history queries queue here instead of starving WebSocket delivery or other blocking work.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler databaseScheduler(DatabaseProperties properties) {
+        return Schedulers.newBoundedElastic(properties.getMaxThreads(), properties.getQueueCapacity(), "database");
+    }
+}
@@ -0,0 +1,40 @@
+package com.xynnity.watermanagement.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Positive;
+
+@Validated
+@ConfigurationProperties(prefix = "database.scheduler")
+public class DatabaseProperties {
+
+    /**
+     * Maximum number of blocking database calls run at once for reactive callers; keep it at or below
+     * the connection pool size.
+     */
+    @Positive
+    private int maxThreads = 10;
+
+    /**
+     * Maximum number of database calls waiting for a thread before new ones are rejected.
+     */
+    @Positive
+    private int queueCapacity = 1_000;
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+}
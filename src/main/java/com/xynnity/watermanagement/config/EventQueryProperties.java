@@ -0,0 +1,53 @@
+package com.xynnity.watermanagement.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Positive;
+
+@Validated
+@ConfigurationProperties(prefix = "events.query")
+public class EventQueryProperties {
+
+    /**
+     * Page size used when an event query does not specify a {@code limit}.
+     */
+    @Positive
+    private int defaultLimit = 50;
+
+    /**
+     * Largest page size a single event query may request.
+     */
+    @Positive
+    private int maxLimit = 1_000;
+
+    /**
+     * Rows fetched per database round-trip while streaming an export.
+     */
+    @Positive
+    private int exportFetchSize = 1_000;
+
+    public int getDefaultLimit() {
+        return defaultLimit;
+    }
+
+    public void setDefaultLimit(int defaultLimit) {
+        this.defaultLimit = defaultLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public int getExportFetchSize() {
+        return exportFetchSize;
+    }
+
+    public void setExportFetchSize(int exportFetchSize) {
+        this.exportFetchSize = exportFetchSize;
+    }
+}
@@ -0,0 +1,791 @@
+package com.xynnity.watermanagement.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+
+@Validated
+@ConfigurationProperties(prefix = "ingestion")
+public class IngestionProperties {
+
+    /**
+     * Write-behind persistence of inbound device events.
+     */
+    @Valid
+    private WriteBehind writeBehind = new WriteBehind();
+
+    /**
+     * In-memory device-to-client resolution cache used on the ingestion hot path.
+     */
+    @Valid
+    private ResolutionCache resolutionCache = new ResolutionCache();
+
+    /**
+     * Partitioned dispatch of inbound MQTT messages onto parallel worker lanes.
+     */
+    @Valid
+    private Partitioning partitioning = new Partitioning();
+
+    /**
+     * Extraction of numeric payload fields into typed measurement rows at ingestion.
+     */
+    @Valid
+    private Measurements measurements = new Measurements();
+
+    /**
+     * Local write-ahead journal that inbound events are made durable in before they reach the database.
+     */
+    @Valid
+    private Journal journal = new Journal();
+
+    /**
+     * Manual acknowledgement of inbound MQTT messages and load shedding when ingestion falls behind.
+     */
+    @Valid
+    private Backpressure backpressure = new Backpressure();
+
+    /**
+     * Dropping of redelivered MQTT messages before they are persisted.
+     */
+    @Valid
+    private Deduplication deduplication = new Deduplication();
+
+    /**
+     * Dictionary-compressed storage of event payloads.
+     */
+    @Valid
+    private Compression compression = new Compression();
+
+    /**
+     * Payload fields copied into the indexed {@code device_event_attributes} table so events can be
+     * filtered on them. Nested fields use dot-separated paths such as {@code valve.state}.
+     */
+    @NotNull
+    private List<String> indexedFields = List.of();
+
+    public WriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    public void setWriteBehind(WriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public ResolutionCache getResolutionCache() {
+        return resolutionCache;
+    }
+
+    public void setResolutionCache(ResolutionCache resolutionCache) {
+        this.resolutionCache = resolutionCache;
+    }
+
+    public Partitioning getPartitioning() {
+        return partitioning;
+    }
+
+    public void setPartitioning(Partitioning partitioning) {
+        this.partitioning = partitioning;
+    }
+
+    public Measurements getMeasurements() {
+        return measurements;
+    }
+
+    public void setMeasurements(Measurements measurements) {
+        this.measurements = measurements;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    public void setBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+    }
+
+    public Deduplication getDeduplication() {
+        return deduplication;
+    }
+
+    public void setDeduplication(Deduplication deduplication) {
+        this.deduplication = deduplication;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public List<String> getIndexedFields() {
+        return indexedFields;
+    }
+
+    public void setIndexedFields(List<String> indexedFields) {
+        this.indexedFields = indexedFields;
+    }
+
+    public static class WriteBehind {
+
+        /**
+         * Buffer inbound events and persist them in micro-batches instead of one transaction per message.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of events written in a single batch.
+         */
+        @Positive
+        private int batchSize = 200;
+
+        /**
+         * Maximum time an event waits in the buffer before its batch is flushed.
+         */
+        @NotNull
+        private Duration flushInterval = Duration.ofMillis(250);
+
+        /**
+         * Number of events the buffer holds before producers block.
+         */
+        @Positive
+        private int queueCapacity = 10_000;
+
+        /**
+         * How long shutdown waits for the buffer to drain.
+         */
+        @NotNull
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getShutdownTimeout() {
+            return shutdownTimeout;
+        }
+
+        public void setShutdownTimeout(Duration shutdownTimeout) {
+            this.shutdownTimeout = shutdownTimeout;
+        }
+    }
+
+    public static class ResolutionCache {
+
+        /**
+         * Maximum number of devices kept in the cache; least recently used entries are evicted first.
+         */
+        @Positive
+        private int maxEntries = 50_000;
+
+        /**
+         * How long a client id learned from ingested events stays valid. Registrations do not expire.
+         */
+        @NotNull
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /**
+         * How long a device without any known client is remembered before the database is asked again.
+         */
+        @NotNull
+        private Duration negativeTtl = Duration.ofSeconds(30);
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getNegativeTtl() {
+            return negativeTtl;
+        }
+
+        public void setNegativeTtl(Duration negativeTtl) {
+            this.negativeTtl = negativeTtl;
+        }
+    }
+
+    public static class Partitioning {
+
+        /**
+         * Dispatch inbound messages onto worker lanes instead of processing them on the MQTT callback thread.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of worker lanes. Messages for the same partition key always land on the same lane.
+         */
+        @Positive
+        private int lanes = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Messages each lane buffers before the MQTT callback thread blocks.
+         */
+        @Positive
+        private int queueCapacity = 1_000;
+
+        /**
+         * Run lanes on virtual threads rather than platform threads.
+         */
+        private boolean virtualThreads = true;
+
+        /**
+         * What inbound messages are hashed on to pick a lane.
+         */
+        @NotNull
+        private PartitionKey key = PartitionKey.DEVICE;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getLanes() {
+            return lanes;
+        }
+
+        public void setLanes(int lanes) {
+            this.lanes = lanes;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public PartitionKey getKey() {
+            return key;
+        }
+
+        public void setKey(PartitionKey key) {
+            this.key = key;
+        }
+    }
+
+    public static class Measurements {
+
+        /**
+         * Extract mapped payload fields into {@code device_measurements} when events are written.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Measurement name to the top-level payload fields it is read from, in order of preference.
+         * Values may be numbers or numeric strings with a unit suffix such as {@code "18.5cc"}.
+         */
+        @NotNull
+        private Map<String, List<String>> mappings = defaultMappings();
+
+        /**
+         * Top-level payload fields naming the unit of readings that carry no unit suffix of their own.
+         */
+        @NotNull
+        private List<String> unitFields = List.of("unit", "units");
+
+        private static Map<String, List<String>> defaultMappings() {
+            var mappings = new LinkedHashMap<String, List<String>>();
+            mappings.put("usage", List.of("usageLiters", "usage"));
+            mappings.put("flowRate", List.of("flowRate", "flow_rate"));
+            mappings.put("pressure", List.of("pressure"));
+            return mappings;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Map<String, List<String>> getMappings() {
+            return mappings;
+        }
+
+        public void setMappings(Map<String, List<String>> mappings) {
+            this.mappings = mappings;
+        }
+
+        public List<String> getUnitFields() {
+            return unitFields;
+        }
+
+        public void setUnitFields(List<String> unitFields) {
+            this.unitFields = unitFields;
+        }
+    }
+
+    public static class Journal {
+
+        /**
+         * Append inbound events to memory-mapped journal segments, acknowledge them once the segment is
+         * synced to disk, and apply them to the database in the background. Takes precedence over
+         * write-behind for inbound events.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory holding the journal segment files.
+         */
+        @NotBlank
+        private String directory = "journal";
+
+        /**
+         * Size of each preallocated segment file; one event must fit in a segment.
+         */
+        @NotNull
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * How often appended events are synced to disk as a group. Acknowledgements wait for the sync.
+         */
+        @NotNull
+        private Duration syncInterval = Duration.ofMillis(5);
+
+        /**
+         * Maximum number of journaled events applied to the database in one transaction.
+         */
+        @Positive
+        private int drainBatchSize = 500;
+
+        /**
+         * Pause before applying a batch again after the database rejected it.
+         */
+        @NotNull
+        private Duration retryBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Attempts at applying a batch before it is split to find the events the database keeps
+         * rejecting; those are moved to the dead-letter file. Failures to reach the database are
+         * retried without limit.
+         */
+        @Positive
+        private int maxAttempts = 5;
+
+        /**
+         * How long shutdown keeps applying journaled events; the rest are applied on the next start.
+         */
+        @NotNull
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Journaled bytes not yet applied to the database that count as a full queue for backpressure.
+         */
+        @NotNull
+        private DataSize maxBacklog = DataSize.ofMegabytes(256);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public Duration getSyncInterval() {
+            return syncInterval;
+        }
+
+        public void setSyncInterval(Duration syncInterval) {
+            this.syncInterval = syncInterval;
+        }
+
+        public int getDrainBatchSize() {
+            return drainBatchSize;
+        }
+
+        public void setDrainBatchSize(int drainBatchSize) {
+            this.drainBatchSize = drainBatchSize;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getShutdownTimeout() {
+            return shutdownTimeout;
+        }
+
+        public void setShutdownTimeout(Duration shutdownTimeout) {
+            this.shutdownTimeout = shutdownTimeout;
+        }
+
+        public DataSize getMaxBacklog() {
+            return maxBacklog;
+        }
+
+        public void setMaxBacklog(DataSize maxBacklog) {
+            this.maxBacklog = maxBacklog;
+        }
+
+        @AssertTrue(message = "segment size must be between 1KB and 1GB")
+        public boolean isSegmentSizeSupported() {
+            return segmentSize.toBytes() >= 1024 && segmentSize.toBytes() <= (1L << 30);
+        }
+    }
+
+    public static class Backpressure {
+
+        /**
+         * Acknowledge inbound messages only once their event is persisted, and shed or pause
+         * low-priority topics while the ingestion queues fill up.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Queue fill ratio at which messages on low-priority topics are acknowledged and dropped.
+         */
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double shedWatermark = 0.7;
+
+        /**
+         * Queue fill ratio at which low-priority subscriptions are removed from the broker connection.
+         */
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double pauseWatermark = 0.9;
+
+        /**
+         * Queue fill ratio below which shedding stops. Paused subscriptions are restored once the fill
+         * ratio drops below the shed watermark.
+         */
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double resumeWatermark = 0.5;
+
+        /**
+         * MQTT topic filters of low-priority traffic. Filters that are also subscription topics are
+         * unsubscribed while paused.
+         */
+        @NotNull
+        private List<String> lowPriorityTopics = List.of();
+
+        /**
+         * How often the queue fill ratio is sampled.
+         */
+        @NotNull
+        private Duration sampleInterval = Duration.ofMillis(100);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getShedWatermark() {
+            return shedWatermark;
+        }
+
+        public void setShedWatermark(double shedWatermark) {
+            this.shedWatermark = shedWatermark;
+        }
+
+        public double getPauseWatermark() {
+            return pauseWatermark;
+        }
+
+        public void setPauseWatermark(double pauseWatermark) {
+            this.pauseWatermark = pauseWatermark;
+        }
+
+        public double getResumeWatermark() {
+            return resumeWatermark;
+        }
+
+        public void setResumeWatermark(double resumeWatermark) {
+            this.resumeWatermark = resumeWatermark;
+        }
+
+        public List<String> getLowPriorityTopics() {
+            return lowPriorityTopics;
+        }
+
+        public void setLowPriorityTopics(List<String> lowPriorityTopics) {
+            this.lowPriorityTopics = lowPriorityTopics;
+        }
+
+        public Duration getSampleInterval() {
+            return sampleInterval;
+        }
+
+        public void setSampleInterval(Duration sampleInterval) {
+            this.sampleInterval = sampleInterval;
+        }
+
+        @AssertTrue(message = "watermarks must satisfy resume < shed <= pause")
+        public boolean isWatermarkOrder() {
+            // with resume equal to shed the state would flap on every sample around that ratio
+            return resumeWatermark < shedWatermark && shedWatermark <= pauseWatermark;
+        }
+    }
+
+    public static class Deduplication {
+
+        /**
+         * Drop inbound messages whose device id, device timestamp and payload were already seen within
+         * the window. Messages without a device timestamp are never treated as duplicates.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How long a message is remembered; a message is remembered for at least this long and at most
+         * twice as long.
+         */
+        @NotNull
+        private Duration window = Duration.ofMinutes(10);
+
+        /**
+         * Messages expected per window; sizes the Bloom filters.
+         */
+        @Positive
+        private int expectedMessages = 100_000;
+
+        /**
+         * Target false-positive probability of each Bloom filter at the expected message count.
+         */
+        @DecimalMin(value = "0.0", inclusive = false)
+        @DecimalMax(value = "1.0", inclusive = false)
+        private double falsePositiveProbability = 0.01;
+
+        /**
+         * Maximum number of exact keys kept to confirm Bloom filter hits; the oldest are evicted first.
+         */
+        @Positive
+        private int maxExactKeys = 200_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getExpectedMessages() {
+            return expectedMessages;
+        }
+
+        public void setExpectedMessages(int expectedMessages) {
+            this.expectedMessages = expectedMessages;
+        }
+
+        public double getFalsePositiveProbability() {
+            return falsePositiveProbability;
+        }
+
+        public void setFalsePositiveProbability(double falsePositiveProbability) {
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        public int getMaxExactKeys() {
+            return maxExactKeys;
+        }
+
+        public void setMaxExactKeys(int maxExactKeys) {
+            this.maxExactKeys = maxExactKeys;
+        }
+    }
+
+    public static class Compression {
+
+        /**
+         * Store payloads of matching topics deflated against a preset dictionary instead of as text.
+         * Stored compressed payloads are decoded whether or not this is enabled.
+         */
+        private boolean enabled = false;
+
+        /**
+         * MQTT topic filters ({@code +} and {@code #} wildcards) whose payloads are compressed. Each
+         * pattern gets its own dictionary, trained from its stored or first received payloads; the
+         * first matching pattern wins.
+         */
+        @NotNull
+        private List<String> topicPatterns = List.of();
+
+        /**
+         * Payloads shorter than this many UTF-8 bytes are stored as text.
+         */
+        @PositiveOrZero
+        private int minPayloadBytes = 64;
+
+        /**
+         * Number of payloads a dictionary is trained from.
+         */
+        @Positive
+        private int trainingSamples = 500;
+
+        /**
+         * Maximum dictionary size in bytes. Deflate only looks back 32 KiB, and a dictionary is
+         * loaded for every payload encoded or decoded, so small dictionaries are cheaper.
+         */
+        @Positive
+        @Max(32_768)
+        private int dictionarySize = 2_048;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getTopicPatterns() {
+            return topicPatterns;
+        }
+
+        public void setTopicPatterns(List<String> topicPatterns) {
+            this.topicPatterns = topicPatterns;
+        }
+
+        public int getMinPayloadBytes() {
+            return minPayloadBytes;
+        }
+
+        public void setMinPayloadBytes(int minPayloadBytes) {
+            this.minPayloadBytes = minPayloadBytes;
+        }
+
+        public int getTrainingSamples() {
+            return trainingSamples;
+        }
+
+        public void setTrainingSamples(int trainingSamples) {
+            this.trainingSamples = trainingSamples;
+        }
+
+        public int getDictionarySize() {
+            return dictionarySize;
+        }
+
+        public void setDictionarySize(int dictionarySize) {
+            this.dictionarySize = dictionarySize;
+        }
+    }
+
+    public enum PartitionKey {
+        /**
+         * Hash the full topic.
+         */
+        TOPIC,
+        /**
+         * Hash the device id topic segment ({@code mqtt.topic-device-id-index}), falling back to the topic.
+         */
+        DEVICE
+    }
+}
@@ -5,16 +5,18 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.channel.DirectChannel;
-import org.springframework.integration.core.MessageProducer;
 import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
-import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
 import org.springframework.integration.mqtt.outbound.MqttPahoMessageHandler;
 import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
 
+import com.xynnity.watermanagement.mqtt.IngestionPressureMonitor;
 import com.xynnity.watermanagement.mqtt.MqttMessageCollector;
+import com.xynnity.watermanagement.mqtt.PartitionedInboundDispatcher;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Configuration
 public class MqttConfig {
@@ -24,18 +26,35 @@ public class MqttConfig {
 
     @Bean
     public MqttConnectOptions mqttConnectOptions(MqttProperties properties) {
+        return connectOptions(properties, properties.getMaxInflight());
+    }
+
+    /**
+     * Connection options shared by the outbound and inbound connections, with the given in-flight
+     * window.
+     */
+    public static MqttConnectOptions connectOptions(MqttProperties properties, int maxInflight) {
         var options = new MqttConnectOptions();
         options.setServerURIs(new String[] { properties.getBrokerUri() });
         options.setUserName(properties.getUsername());
         options.setPassword(properties.getPassword().toCharArray());
         options.setAutomaticReconnect(true);
         options.setCleanSession(true);
-        options.setMaxInflight(10);
+        options.setMaxInflight(maxInflight);
         options.setConnectionTimeout(30);
         options.setKeepAliveInterval(60);
         return options;
     }
 
+    /**
+     * Client id of one of this node's connections. In cluster mode it carries the node id, since the
+     * broker drops an existing session when another client connects with the same id.
+     */
+    public static String clientId(MqttProperties properties, ClusterProperties clusterProperties, String connection) {
+        var clientId = properties.getClientId() + "-" + connection;
+        return clusterProperties.isEnabled() ? clientId + "-" + clusterProperties.getNodeId() : clientId;
+    }
+
     @Bean
     public MqttPahoClientFactory mqttClientFactory(MqttConnectOptions options) {
         var factory = new DefaultMqttPahoClientFactory();
@@ -53,33 +72,12 @@ public class MqttConfig {
         return new DirectChannel();
     }
 
-    @Bean
-    public MessageProducer mqttInbound(MqttProperties properties,
-                                       MqttPahoClientFactory clientFactory,
-                                       MessageChannel mqttInboundChannel) {
-        var subscriptionTopics = properties.getSubscriptionTopics();
-        String[] topics;
-        if (subscriptionTopics == null || subscriptionTopics.isEmpty()) {
-            topics = new String[] { properties.getDefaultPublishTopic() };
-        } else {
-            topics = subscriptionTopics.toArray(String[]::new);
-        }
-        var adapter = new MqttPahoMessageDrivenChannelAdapter(
-                properties.getClientId() + "-inbound",
-                clientFactory,
-                topics);
-        adapter.setCompletionTimeout(5_000L);
-        adapter.setConverter(defaultConverter());
-        adapter.setQos(properties.getDefaultQos());
-        adapter.setOutputChannel(mqttInboundChannel);
-        return adapter;
-    }
-
     @Bean
     @ServiceActivator(inputChannel = MQTT_OUTBOUND_CHANNEL)
     public MessageHandler mqttOutboundHandler(MqttProperties properties,
+                                              ClusterProperties clusterProperties,
                                               MqttPahoClientFactory clientFactory) {
-        var handler = new MqttPahoMessageHandler(properties.getClientId() + "-outbound", clientFactory);
+        var handler = new MqttPahoMessageHandler(clientId(properties, clusterProperties, "outbound"), clientFactory);
         handler.setAsync(true);
         handler.setDefaultTopic(properties.getDefaultPublishTopic());
         handler.setDefaultQos(properties.getDefaultQos());
@@ -90,11 +88,22 @@ public class MqttConfig {
 
     @Bean
     @ServiceActivator(inputChannel = MQTT_INBOUND_CHANNEL)
-    public MessageHandler mqttInboundMessageHandler(MqttMessageCollector collector) {
-        return collector::store;
+    public MessageHandler mqttInboundMessageHandler(MqttMessageCollector collector,
+                                                    MqttProperties properties,
+                                                    IngestionProperties ingestionProperties,
+                                                    IngestionPressureMonitor pressureMonitor,
+                                                    MeterRegistry meterRegistry) {
+        var partitioning = ingestionProperties.getPartitioning();
+        if (!partitioning.isEnabled()) {
+            return collector::store;
+        }
+        var dispatcher = new PartitionedInboundDispatcher(collector::store, partitioning,
+                properties.getTopicDeviceIdIndex(), meterRegistry);
+        pressureMonitor.watch(dispatcher::fill);
+        return dispatcher;
     }
 
-    private DefaultPahoMessageConverter defaultConverter() {
+    public static DefaultPahoMessageConverter defaultConverter() {
         var converter = new DefaultPahoMessageConverter();
         converter.setPayloadAsBytes(false);
         return converter;
@@ -5,7 +5,9 @@ import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.PositiveOrZero;
 
 @Validated
@@ -74,11 +76,31 @@ public class MqttProperties {
     private int defaultQos = 0;
 
     /**
-     * Number of inbound messages to keep in memory.
+     * Number of recent events kept in memory to answer recent-event queries and stream replays
+     * without going to the database.
      */
     @PositiveOrZero
     private int messageCacheSize = 100;
 
+    /**
+     * Maximum number of devices, of clients and of device/client pairs that keep their own ring of
+     * recent events; the least recently used rings are dropped beyond it.
+     */
+    @PositiveOrZero
+    private int messageCacheKeys = 10_000;
+
+    /**
+     * Maximum number of unacknowledged QoS 1 and 2 messages on the outbound connection.
+     */
+    @Positive
+    private int maxInflight = 10;
+
+    /**
+     * Inbound broker connections of this node.
+     */
+    @Valid
+    private Inbound inbound = new Inbound();
+
     public String getBrokerUri() {
         return brokerUri;
     }
@@ -143,6 +165,30 @@ public class MqttProperties {
         this.messageCacheSize = messageCacheSize;
     }
 
+    public int getMessageCacheKeys() {
+        return messageCacheKeys;
+    }
+
+    public void setMessageCacheKeys(int messageCacheKeys) {
+        this.messageCacheKeys = messageCacheKeys;
+    }
+
+    public int getMaxInflight() {
+        return maxInflight;
+    }
+
+    public void setMaxInflight(int maxInflight) {
+        this.maxInflight = maxInflight;
+    }
+
+    public Inbound getInbound() {
+        return inbound;
+    }
+
+    public void setInbound(Inbound inbound) {
+        this.inbound = inbound;
+    }
+
     public Integer getTopicDeviceIdIndex() {
         return topicDeviceIdIndex;
     }
@@ -166,6 +212,51 @@ public class MqttProperties {
     public void setPublishTopicPattern(String publishTopicPattern) {
         this.publishTopicPattern = publishTopicPattern;
     }
-}
-
 
+    public static class Inbound {
+
+        /**
+         * Number of inbound client connections, each with its own callback thread. Without a shared
+         * subscription group the subscription topics are spread across them, so there are never more
+         * connections than topics.
+         */
+        @Positive
+        private int connections = 1;
+
+        /**
+         * Maximum number of unacknowledged QoS 1 and 2 messages per inbound connection.
+         */
+        @Positive
+        private int maxInflight = 10;
+
+        /**
+         * Shared subscription group. When set, every connection subscribes to every topic as
+         * {@code $share/<group>/<topic>} and the broker balances messages across connections and nodes.
+         */
+        private String sharedGroup;
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public void setConnections(int connections) {
+            this.connections = connections;
+        }
+
+        public int getMaxInflight() {
+            return maxInflight;
+        }
+
+        public void setMaxInflight(int maxInflight) {
+            this.maxInflight = maxInflight;
+        }
+
+        public String getSharedGroup() {
+            return sharedGroup;
+        }
+
+        public void setSharedGroup(String sharedGroup) {
+            this.sharedGroup = sharedGroup;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.xynnity.watermanagement.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotNull;
+
+@Validated
+@ConfigurationProperties(prefix = "retention")
+public class RetentionProperties {
+
+    /**
+     * Periodically purge device events older than their retention period.
+     */
+    private boolean enabled = false;
+
+    /**
+     * How long events are kept for clients without an entry in {@code clients}, and for events
+     * without a client.
+     */
+    @NotNull
+    private Duration defaultPeriod = Duration.ofDays(365);
+
+    /**
+     * Retention period per client id, overriding {@code default-period}.
+     */
+    @NotNull
+    private Map<String, Duration> clients = new LinkedHashMap<>();
+
+    /**
+     * How often the purge runs.
+     */
+    @NotNull
+    private Duration interval = Duration.ofHours(1);
+
+    /**
+     * Span of receive times deleted per transaction, oldest first; keeps each purge step short so
+     * ingestion is never blocked for long.
+     */
+    @NotNull
+    private Duration step = Duration.ofHours(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getDefaultPeriod() {
+        return defaultPeriod;
+    }
+
+    public void setDefaultPeriod(Duration defaultPeriod) {
+        this.defaultPeriod = defaultPeriod;
+    }
+
+    public Map<String, Duration> getClients() {
+        return clients;
+    }
+
+    public void setClients(Map<String, Duration> clients) {
+        this.clients = clients;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public void setInterval(Duration interval) {
+        this.interval = interval;
+    }
+
+    public Duration getStep() {
+        return step;
+    }
+
+    public void setStep(Duration step) {
+        this.step = step;
+    }
+
+    @AssertTrue(message = "step must be positive")
+    public boolean isStepPositive() {
+        return step.isPositive();
+    }
+}
@@ -0,0 +1,99 @@
+package com.xynnity.watermanagement.config;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+@Validated
+@ConfigurationProperties(prefix = "usage")
+public class UsageProperties {
+
+    /**
+     * Top-level payload fields read as the usage reading, in order of preference.
+     */
+    @NotEmpty
+    private List<String> fields = List.of("usageLiters", "usage");
+
+    /**
+     * How often in-memory rollup deltas are merged into the rollup table.
+     */
+    @NotNull
+    private Duration flushInterval = Duration.ofSeconds(5);
+
+    /**
+     * Rebuild the rollups from stored events at startup when the rollup table is empty.
+     */
+    private boolean backfillOnStartup = true;
+
+    /**
+     * Number of fork-join workers reading events during a backfill; keep it below the connection pool size.
+     */
+    @Positive
+    private int backfillParallelism = 4;
+
+    /**
+     * Width of the event id range a single backfill task reads before it is no longer split.
+     */
+    @Positive
+    private int backfillChunkSize = 10_000;
+
+    /**
+     * Number of usage reports kept in the response cache; least recently used reports are evicted first.
+     */
+    @Positive
+    private int responseCacheSize = 10_000;
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public boolean isBackfillOnStartup() {
+        return backfillOnStartup;
+    }
+
+    public void setBackfillOnStartup(boolean backfillOnStartup) {
+        this.backfillOnStartup = backfillOnStartup;
+    }
+
+    public int getBackfillParallelism() {
+        return backfillParallelism;
+    }
+
+    public void setBackfillParallelism(int backfillParallelism) {
+        this.backfillParallelism = backfillParallelism;
+    }
+
+    public int getBackfillChunkSize() {
+        return backfillChunkSize;
+    }
+
+    public void setBackfillChunkSize(int backfillChunkSize) {
+        this.backfillChunkSize = backfillChunkSize;
+    }
+
+    public int getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    public void setResponseCacheSize(int responseCacheSize) {
+        this.responseCacheSize = responseCacheSize;
+    }
+}
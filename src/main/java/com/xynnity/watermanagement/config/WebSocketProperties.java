@@ -0,0 +1,83 @@
+package com.xynnity.watermanagement.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import com.xynnity.watermanagement.websocket.BackpressurePolicy;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+@Validated
+@ConfigurationProperties(prefix = "websocket")
+public class WebSocketProperties {
+
+    /**
+     * Backpressure policy for sessions that do not request one with the {@code backpressure} query parameter.
+     */
+    @NotNull
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.DROP_OLDEST;
+
+    /**
+     * Maximum number of events queued per session under the drop-oldest and latest policies.
+     */
+    @Positive
+    private int sessionQueueCapacity = 1_000;
+
+    /**
+     * Number of queued events after which a session under the disconnect policy is closed.
+     */
+    @Positive
+    private int lagThreshold = 5_000;
+
+    /**
+     * Number of recently encoded events kept so each event is serialized once for all sessions.
+     */
+    @Positive
+    private int encodingCacheSize = 4_096;
+
+    /**
+     * Offer the permessage-deflate extension to clients that request it.
+     */
+    private boolean compression = true;
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    public int getSessionQueueCapacity() {
+        return sessionQueueCapacity;
+    }
+
+    public void setSessionQueueCapacity(int sessionQueueCapacity) {
+        this.sessionQueueCapacity = sessionQueueCapacity;
+    }
+
+    public int getLagThreshold() {
+        return lagThreshold;
+    }
+
+    public void setLagThreshold(int lagThreshold) {
+        this.lagThreshold = lagThreshold;
+    }
+
+    public int getEncodingCacheSize() {
+        return encodingCacheSize;
+    }
+
+    public void setEncodingCacheSize(int encodingCacheSize) {
+        this.encodingCacheSize = encodingCacheSize;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+}
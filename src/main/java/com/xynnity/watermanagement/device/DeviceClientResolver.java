@@ -0,0 +1,195 @@
+package com.xynnity.watermanagement.device;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Resolves the client owning a device without touching the database on the steady-state hot path.
+ * Registrations are preloaded at startup and kept current by {@link DeviceRegistrationService};
+ * devices without a registration fall back to the last client seen on ingested events. Lookups that
+ * find nothing are cached negatively for a short time.
+ */
+@Component
+public final class DeviceClientResolver implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceClientResolver.class);
+
+    private final DeviceRegistrationRepository registrationRepository;
+    private final DeviceEventRepository eventRepository;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<String, Entry> entries;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public DeviceClientResolver(DeviceRegistrationRepository registrationRepository,
+                                DeviceEventRepository eventRepository,
+                                IngestionProperties ingestionProperties,
+                                MeterRegistry meterRegistry) {
+        this.registrationRepository = registrationRepository;
+        this.eventRepository = eventRepository;
+        var settings = ingestionProperties.getResolutionCache();
+        this.maxEntries = settings.getMaxEntries();
+        this.ttlNanos = settings.getTtl().toNanos();
+        this.negativeTtlNanos = settings.getNegativeTtl().toNanos();
+        this.hits = Counter.builder("device.client.resolution")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("device.client.resolution")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("device.client.resolution.evictions")
+                .register(meterRegistry);
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        Gauge.builder("device.client.resolution.size", this, DeviceClientResolver::size)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int loaded = 0;
+        for (DeviceRegistration registration : registrationRepository.findAll()) {
+            if (loaded >= maxEntries) {
+                break;
+            }
+            registered(registration.getDeviceId(), registration.getClientId());
+            loaded++;
+        }
+        log.info("Preloaded {} device registrations into the client resolution cache", loaded);
+    }
+
+    /**
+     * Returns the client owning the device, consulting the database only on a cache miss or expiry.
+     */
+    public Optional<String> resolveClientId(String deviceId) {
+        if (!StringUtils.hasText(deviceId)) {
+            return Optional.empty();
+        }
+        long now = System.nanoTime();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(deviceId);
+        }
+        if (entry != null && entry.isFresh(now)) {
+            hits.increment();
+            return Optional.ofNullable(entry.clientId());
+        }
+        misses.increment();
+        var loaded = load(deviceId, now);
+        synchronized (entries) {
+            var current = entries.get(deviceId);
+            if (current == null || !current.isFresh(now) || loaded.source() == Source.REGISTRATION) {
+                entries.put(deviceId, loaded);
+            }
+        }
+        log.trace("Resolved client for deviceId={} from database: {}", deviceId, loaded);
+        return Optional.ofNullable(loaded.clientId());
+    }
+
+    /**
+     * Records a registration; registrations take precedence over clients seen on events and never expire.
+     */
+    public void registered(String deviceId, String clientId) {
+        if (!StringUtils.hasText(deviceId)) {
+            return;
+        }
+        var entry = StringUtils.hasText(clientId)
+                ? new Entry(clientId, Source.REGISTRATION, 0L)
+                : new Entry(null, Source.NONE, System.nanoTime() + negativeTtlNanos);
+        synchronized (entries) {
+            entries.put(deviceId, entry);
+        }
+    }
+
+    /**
+     * Drops the cached client of a device, such as one registered on another node.
+     */
+    public void forget(String deviceId) {
+        synchronized (entries) {
+            entries.remove(deviceId);
+        }
+    }
+
+    /**
+     * Drops every cached client.
+     */
+    public void forgetAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Tracks the last client seen for a device on an ingested event.
+     */
+    public void observed(String deviceId, String clientId) {
+        if (!StringUtils.hasText(deviceId) || !StringUtils.hasText(clientId)) {
+            return;
+        }
+        long expiresAt = System.nanoTime() + ttlNanos;
+        synchronized (entries) {
+            var current = entries.get(deviceId);
+            if (current == null || current.source() != Source.REGISTRATION) {
+                entries.put(deviceId, new Entry(clientId, Source.EVENT, expiresAt));
+            }
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private Entry load(String deviceId, long now) {
+        var registered = registrationRepository.findByDeviceId(deviceId)
+                .map(DeviceRegistration::getClientId)
+                .filter(StringUtils::hasText);
+        if (registered.isPresent()) {
+            return new Entry(registered.get(), Source.REGISTRATION, 0L);
+        }
+        return eventRepository.findFirstByDeviceIdOrderByReceivedAtDesc(deviceId)
+                .map(DeviceEvent::getClientId)
+                .filter(StringUtils::hasText)
+                .map(clientId -> new Entry(clientId, Source.EVENT, now + ttlNanos))
+                .orElseGet(() -> new Entry(null, Source.NONE, now + negativeTtlNanos));
+    }
+
+    private enum Source {
+        REGISTRATION,
+        EVENT,
+        NONE
+    }
+
+    private record Entry(String clientId, Source source, long expiresAtNanos) {
+
+        private boolean isFresh(long now) {
+            return source == Source.REGISTRATION || now - expiresAtNanos < 0;
+        }
+    }
+}
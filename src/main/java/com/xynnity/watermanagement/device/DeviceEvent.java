@@ -1,24 +1,36 @@
 package com.xynnity.watermanagement.device;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
+import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 
 @Entity
 @Table(name = "device_events", indexes = {
-        @Index(name = "idx_device_events_device", columnList = "device_id"),
-        @Index(name = "idx_device_events_client", columnList = "client_id")
+        @Index(name = "idx_device_events_device_received", columnList = "device_id, received_at, id"),
+        @Index(name = "idx_device_events_client_received", columnList = "client_id, received_at, id"),
+        @Index(name = "idx_device_events_received", columnList = "received_at, id"),
+        @Index(name = "uk_device_events_journal_position", columnList = "journal_position", unique = true)
 })
 public class DeviceEvent {
 
+    /**
+     * Pooled sequence ids let Hibernate batch inserts; IDENTITY keys force one round-trip per row.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_events_seq")
+    @SequenceGenerator(name = "device_events_seq", sequenceName = "device_events_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "device_id")
@@ -30,9 +42,32 @@ public class DeviceEvent {
     @Column(nullable = false)
     private String topic;
 
+    /**
+     * Payload text; {@code null} when the payload is stored compressed in {@link #payloadDeflated}.
+     */
     @Column(columnDefinition = "TEXT")
     private String payload;
 
+    /**
+     * Raw deflate stream of the UTF-8 payload, compressed against the preset dictionary named by
+     * {@link #payloadDictionary}.
+     */
+    @Column(name = "payload_deflated", columnDefinition = "VARBINARY")
+    private byte[] payloadDeflated;
+
+    /**
+     * Id of the {@link PayloadDictionary} the payload was compressed with, or
+     * {@value PayloadCodec#NO_DICTIONARY} for plain deflate.
+     */
+    @Column(name = "payload_dictionary")
+    private Integer payloadDictionary;
+
+    /**
+     * Text of a compressed payload, kept once known so it is not inflated again.
+     */
+    @Transient
+    private String decodedPayload;
+
     @Column(nullable = false)
     private int qos;
 
@@ -42,10 +77,38 @@ public class DeviceEvent {
     @Column(name = "received_at", nullable = false)
     private Instant receivedAt;
 
+    /**
+     * Position of the write-ahead journal record the event was applied from, if it came through the
+     * journal. Unique, so a record replayed after a crash cannot be stored twice.
+     */
+    @Column(name = "journal_position")
+    private Long journalPosition;
+
+    /**
+     * Typed readings extracted from the payload; persisted together with the event.
+     */
+    @OneToMany(mappedBy = "event", cascade = CascadeType.PERSIST)
+    private List<DeviceMeasurement> measurements = new ArrayList<>();
+
+    /**
+     * Indexed payload field values; persisted together with the event.
+     */
+    @OneToMany(mappedBy = "event", cascade = CascadeType.PERSIST)
+    private List<DeviceEventAttribute> attributes = new ArrayList<>();
+
     public Long getId() {
         return id;
     }
 
+    /**
+     * Forgets the ids assigned by a persist that was rolled back, so the event can be persisted again.
+     */
+    void clearGeneratedIds() {
+        id = null;
+        measurements.forEach(measurement -> measurement.setId(null));
+        attributes.forEach(attribute -> attribute.setId(null));
+    }
+
     public void setId(Long id) {
         this.id = id;
     }
@@ -82,6 +145,30 @@ public class DeviceEvent {
         this.payload = payload;
     }
 
+    public byte[] getPayloadDeflated() {
+        return payloadDeflated;
+    }
+
+    public void setPayloadDeflated(byte[] payloadDeflated) {
+        this.payloadDeflated = payloadDeflated;
+    }
+
+    public Integer getPayloadDictionary() {
+        return payloadDictionary;
+    }
+
+    public void setPayloadDictionary(Integer payloadDictionary) {
+        this.payloadDictionary = payloadDictionary;
+    }
+
+    String getDecodedPayload() {
+        return decodedPayload;
+    }
+
+    void setDecodedPayload(String decodedPayload) {
+        this.decodedPayload = decodedPayload;
+    }
+
     public int getQos() {
         return qos;
     }
@@ -105,6 +192,28 @@ public class DeviceEvent {
     public void setReceivedAt(Instant receivedAt) {
         this.receivedAt = receivedAt;
     }
-}
 
+    public Long getJournalPosition() {
+        return journalPosition;
+    }
+
+    public void setJournalPosition(Long journalPosition) {
+        this.journalPosition = journalPosition;
+    }
+
+    public List<DeviceMeasurement> getMeasurements() {
+        return measurements;
+    }
+
+    public void setMeasurements(List<DeviceMeasurement> measurements) {
+        this.measurements = measurements;
+    }
 
+    public List<DeviceEventAttribute> getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(List<DeviceEventAttribute> attributes) {
+        this.attributes = attributes;
+    }
+}
@@ -0,0 +1,111 @@
+package com.xynnity.watermanagement.device;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+/**
+ * Value of one indexed payload field of an event, kept so field filters are index lookups rather
+ * than payload scans. Device, client and receive time are copied from the event for the same reason.
+ */
+@Entity
+@Table(name = "device_event_attributes", indexes = {
+        @Index(name = "idx_device_event_attributes_value", columnList = "name, attr_value, received_at"),
+        @Index(name = "idx_device_event_attributes_device", columnList = "name, attr_value, device_id, received_at"),
+        @Index(name = "idx_device_event_attributes_client", columnList = "name, attr_value, client_id, received_at"),
+        @Index(name = "idx_device_event_attributes_event", columnList = "event_id")
+})
+public class DeviceEventAttribute {
+
+    static final int MAX_VALUE_LENGTH = 255;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_event_attributes_seq")
+    @SequenceGenerator(name = "device_event_attributes_seq", sequenceName = "device_event_attributes_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "event_id", nullable = false)
+    private DeviceEvent event;
+
+    @Column(nullable = false, length = 128)
+    private String name;
+
+    @Column(name = "attr_value", nullable = false, length = MAX_VALUE_LENGTH)
+    private String value;
+
+    @Column(name = "device_id")
+    private String deviceId;
+
+    @Column(name = "client_id")
+    private String clientId;
+
+    @Column(name = "received_at", nullable = false)
+    private Instant receivedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public DeviceEvent getEvent() {
+        return event;
+    }
+
+    public void setEvent(DeviceEvent event) {
+        this.event = event;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public Instant getReceivedAt() {
+        return receivedAt;
+    }
+
+    public void setReceivedAt(Instant receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+}
@@ -0,0 +1,195 @@
+package com.xynnity.watermanagement.device;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+/**
+ * Buffers device events and persists them in bounded micro-batches on a dedicated thread.
+ * A batch is flushed once it reaches the configured size or its oldest event has waited for the
+ * flush interval, whichever comes first. Listeners are notified, and each event's persistence
+ * callback run, only after the batch commits.
+ * <p>
+ * A batch the database rejects is split in halves and each half is written on its own, down to
+ * single events, so one bad row only costs its own event. Every submitted event's callback reports
+ * either its commit or its failure.
+ */
+class DeviceEventBatchWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceEventBatchWriter.class);
+
+    private final DeviceEventRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final Consumer<List<DeviceEvent>> afterCommit;
+    private final BlockingQueue<Submission> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Duration shutdownTimeout;
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    DeviceEventBatchWriter(DeviceEventRepository repository,
+                           TransactionTemplate transactionTemplate,
+                           IngestionProperties.WriteBehind settings,
+                           Consumer<List<DeviceEvent>> afterCommit) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.afterCommit = afterCommit;
+        this.queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.batchSize = settings.getBatchSize();
+        this.flushIntervalNanos = settings.getFlushInterval().toNanos();
+        this.shutdownTimeout = settings.getShutdownTimeout();
+        this.worker = Thread.ofPlatform().name("device-event-writer").unstarted(this::run);
+    }
+
+    void start() {
+        worker.start();
+        log.info("Started write-behind device event writer batchSize={}, flushInterval={}ms, capacity={}",
+                batchSize, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), queue.remainingCapacity());
+    }
+
+    /**
+     * Buffers an event for the next batch, blocking while the buffer is full. The callback runs on the
+     * writer thread once the event has been committed or has finally failed.
+     */
+    void submit(DeviceEvent event, IngestionCallback callback) {
+        if (!running) {
+            throw new IllegalStateException("Device event writer has been shut down");
+        }
+        try {
+            queue.put(new Submission(event, callback));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while buffering device event", e);
+        }
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Share of the buffer in use, from 0 to 1.
+     */
+    double fill() {
+        int size = queue.size();
+        return (double) size / (size + queue.remainingCapacity());
+    }
+
+    /**
+     * Stops accepting events and waits for everything already buffered to be flushed.
+     */
+    void close() {
+        running = false;
+        try {
+            worker.join(shutdownTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            log.warn("Write-behind writer did not drain within {}; {} events still buffered",
+                    shutdownTimeout, queue.size());
+        } else {
+            log.info("Write-behind writer drained and stopped");
+        }
+    }
+
+    private void run() {
+        List<Submission> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                queue.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<Submission> batch) throws InterruptedException {
+        var first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            var next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Submission> batch) {
+        List<DeviceEvent> events = new ArrayList<>(batch.size());
+        for (Submission submission : batch) {
+            events.add(submission.event());
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> repository.saveAll(events));
+        } catch (RuntimeException e) {
+            events.forEach(DeviceEvent::clearGeneratedIds);
+            if (batch.size() == 1) {
+                var event = batch.get(0).event();
+                log.error("Failed to persist device event topic={}, deviceId={}; discarding it",
+                        event.getTopic(), event.getDeviceId(), e);
+                failed(batch.get(0), e);
+                return;
+            }
+            log.warn("Failed to persist batch of {} device events; writing it in halves", batch.size(), e);
+            int half = batch.size() / 2;
+            flush(batch.subList(0, half));
+            flush(batch.subList(half, batch.size()));
+            return;
+        }
+        log.trace("Flushed batch of {} device events", batch.size());
+        for (Submission submission : batch) {
+            try {
+                submission.callback().persisted();
+            } catch (RuntimeException e) {
+                log.warn("Persistence callback failed for device event ID={}", submission.event().getId(), e);
+            }
+        }
+        try {
+            afterCommit.accept(events);
+        } catch (RuntimeException e) {
+            log.warn("Post-commit handling failed for batch of {} device events", batch.size(), e);
+        }
+    }
+
+    private static void failed(Submission submission, RuntimeException cause) {
+        try {
+            submission.callback().failed(cause);
+        } catch (RuntimeException e) {
+            log.warn("Failure callback failed for device event topic={}", submission.event().getTopic(), e);
+        }
+    }
+
+    private record Submission(DeviceEvent event, IngestionCallback callback) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.xynnity.watermanagement.device;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.xynnity.watermanagement.config.EventQueryProperties;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Streams stored events for bulk export. Rows are read through a forward-only JDBC cursor and emitted
+ * as they are requested, so memory stays flat however many rows match and the connection is released
+ * when the stream completes or is cancelled. Reads run on the database scheduler.
+ */
+@Component
+public class DeviceEventExporter {
+
+    private static final String SELECT = """
+            SELECT id, device_id, client_id, topic, payload, payload_deflated, payload_dictionary, qos, retained, received_at
+            FROM device_events""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Scheduler databaseScheduler;
+    private final PayloadCodec payloadCodec;
+
+    public DeviceEventExporter(DataSource dataSource,
+                               EventQueryProperties properties,
+                               Scheduler databaseScheduler,
+                               PayloadCodec payloadCodec) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.databaseScheduler = databaseScheduler;
+        this.payloadCodec = payloadCodec;
+        this.jdbcTemplate.setFetchSize(properties.getExportFetchSize());
+    }
+
+    /**
+     * Events matching the filters in id order; {@code from} is inclusive, {@code to} exclusive and any
+     * filter may be {@code null}.
+     */
+    public Flux<DeviceEventDto> export(String deviceId, String clientId, Instant from, Instant to) {
+        var sql = new StringBuilder(SELECT);
+        List<Object> args = new ArrayList<>();
+        where(sql, args, "device_id = ?", hasText(deviceId) ? deviceId : null);
+        where(sql, args, "client_id = ?", hasText(clientId) ? clientId : null);
+        where(sql, args, "received_at >= ?", from != null ? Timestamp.from(from) : null);
+        where(sql, args, "received_at < ?", to != null ? Timestamp.from(to) : null);
+        sql.append(" ORDER BY id");
+        return Flux.using(
+                        () -> jdbcTemplate.queryForStream(sql.toString(), this::mapRow, args.toArray()),
+                        Flux::fromStream,
+                        Stream::close)
+                .subscribeOn(databaseScheduler);
+    }
+
+    private static void where(StringBuilder sql, List<Object> args, String condition, Object value) {
+        if (value == null) {
+            return;
+        }
+        sql.append(args.isEmpty() ? " WHERE " : " AND ").append(condition);
+        args.add(value);
+    }
+
+    private DeviceEventDto mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new DeviceEventDto(
+                rs.getLong("id"),
+                rs.getString("device_id"),
+                rs.getString("client_id"),
+                rs.getString("topic"),
+                payloadCodec.decode(rs.getString("payload"), rs.getBytes("payload_deflated"),
+                        rs.getObject("payload_dictionary", Integer.class)),
+                rs.getInt("qos"),
+                rs.getBoolean("retained"),
+                rs.getTimestamp("received_at").toInstant());
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+}
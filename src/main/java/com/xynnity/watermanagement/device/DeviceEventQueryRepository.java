@@ -0,0 +1,19 @@
+package com.xynnity.watermanagement.device;
+
+import java.util.List;
+
+public interface DeviceEventQueryRepository {
+
+    /**
+     * Events matching the query ordered by {@code (receivedAt, id)} descending, at most
+     * {@code maxResults} of them. Pages are found with a keyset predicate, never an offset, and each
+     * field filter is a join on the indexed attribute table.
+     */
+    List<DeviceEvent> findPage(EventQuery query, int maxResults);
+
+    /**
+     * Events of the device and client, either of which may be {@code null}, that come after the
+     * cursor in {@code (receivedAt, id)} order, ascending, at most {@code maxResults} of them.
+     */
+    List<DeviceEvent> findAfter(String deviceId, String clientId, EventCursor after, int maxResults);
+}
@@ -0,0 +1,96 @@
+package com.xynnity.watermanagement.device;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+
+class DeviceEventQueryRepositoryImpl implements DeviceEventQueryRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * With field filters the first one drives the query: device, client and time bounds, the cursor
+     * and the order all use its copies of those columns, so the lookup is a range scan of one
+     * {@code device_event_attributes} index rather than a join columns on {@code device_events}.
+     */
+    @Override
+    public List<DeviceEvent> findPage(EventQuery query, int maxResults) {
+        var cb = entityManager.getCriteriaBuilder();
+        var criteria = cb.createQuery(DeviceEvent.class);
+        var event = criteria.from(DeviceEvent.class);
+        Path<?> columns = event;
+        List<Predicate> predicates = new ArrayList<>();
+        for (var filter : query.fieldFilters()) {
+            Join<DeviceEvent, DeviceEventAttribute> attribute = event.join("attributes");
+            predicates.add(cb.equal(attribute.get("name"), filter.name()));
+            predicates.add(cb.equal(attribute.get("value"), filter.value()));
+            if (columns == event) {
+                columns = attribute;
+            }
+        }
+        var receivedAt = columns.<Instant>get("receivedAt");
+        var id = event.<Long>get("id");
+
+        if (hasText(query.deviceId())) {
+            predicates.add(cb.equal(columns.get("deviceId"), query.deviceId()));
+        }
+        if (hasText(query.clientId())) {
+            predicates.add(cb.equal(columns.get("clientId"), query.clientId()));
+        }
+        if (query.from() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(receivedAt, query.from()));
+        }
+        if (query.to() != null) {
+            predicates.add(cb.lessThan(receivedAt, query.to()));
+        }
+        var after = query.after();
+        if (after != null) {
+            predicates.add(cb.or(
+                    cb.lessThan(receivedAt, after.receivedAt()),
+                    cb.and(cb.equal(receivedAt, after.receivedAt()), cb.lessThan(id, after.id()))));
+        }
+        criteria.select(event)
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(cb.desc(receivedAt), cb.desc(id));
+        return entityManager.createQuery(criteria)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    @Override
+    public List<DeviceEvent> findAfter(String deviceId, String clientId, EventCursor after, int maxResults) {
+        var cb = entityManager.getCriteriaBuilder();
+        var criteria = cb.createQuery(DeviceEvent.class);
+        var event = criteria.from(DeviceEvent.class);
+        var receivedAt = event.<Instant>get("receivedAt");
+        var id = event.<Long>get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (hasText(deviceId)) {
+            predicates.add(cb.equal(event.get("deviceId"), deviceId));
+        }
+        if (hasText(clientId)) {
+            predicates.add(cb.equal(event.get("clientId"), clientId));
+        }
+        predicates.add(cb.or(
+                cb.greaterThan(receivedAt, after.receivedAt()),
+                cb.and(cb.equal(receivedAt, after.receivedAt()), cb.greaterThan(id, after.id()))));
+        criteria.select(event)
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(cb.asc(receivedAt), cb.asc(id));
+        return entityManager.createQuery(criteria)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+}
@@ -4,9 +4,11 @@ import java.util.List;
 
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
-public interface DeviceEventRepository extends JpaRepository<DeviceEvent, Long> {
+public interface DeviceEventRepository extends JpaRepository<DeviceEvent, Long>, DeviceEventQueryRepository {
 
     List<DeviceEvent> findTop50ByOrderByReceivedAtDesc();
 
@@ -19,6 +21,11 @@ public interface DeviceEventRepository extends JpaRepository<DeviceEvent, Long>
     boolean existsByDeviceIdAndClientId(String deviceId, String clientId);
 
     Optional<DeviceEvent> findFirstByDeviceIdOrderByReceivedAtDesc(String deviceId);
+
+    @Query("SELECT MAX(e.journalPosition) FROM DeviceEvent e")
+    Long findMaxJournalPosition();
+
+    List<DeviceEvent> findByOrderByReceivedAtDesc(Limit limit);
 }
 
 
@@ -1,35 +1,168 @@
 package com.xynnity.watermanagement.device;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.xynnity.watermanagement.cluster.ClusterEventRelay;
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.IngestionProperties;
+import com.xynnity.watermanagement.usage.UsageRollupService;
+import com.xynnity.watermanagement.websocket.BackpressurePolicy;
 import com.xynnity.watermanagement.websocket.DeviceSubscriptionRegistry;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 @Service
 public class DeviceEventService {
 
     private static final Logger log = LoggerFactory.getLogger(DeviceEventService.class);
+    private static final int REPLAY_PAGE_SIZE = 500;
 
     private final DeviceEventRepository repository;
-    private final Sinks.Many<DeviceEventDto> sink;
     private final DeviceSubscriptionRegistry subscriptionRegistry;
+    private final DeviceEventBatchWriter batchWriter;
+    private final EventJournal journal;
+    private final TransactionTemplate transactionTemplate;
+    private final DeviceClientResolver clientResolver;
+    private final RecentEventBuffer recentEventBuffer;
+    private final Scheduler databaseScheduler;
+    private final UsageRollupService usageRollups;
+    private final MeasurementExtractor measurementExtractor;
+    private final DeviceMeasurementRepository measurementRepository;
+    private final PayloadFieldIndexer fieldIndexer;
+    private final PayloadCodec payloadCodec;
+    private final ClusterEventRelay clusterRelay;
+    private final boolean clustered;
 
     public DeviceEventService(DeviceEventRepository repository,
-                              DeviceSubscriptionRegistry subscriptionRegistry) {
+                              DeviceSubscriptionRegistry subscriptionRegistry,
+                              DeviceClientResolver clientResolver,
+                              RecentEventBuffer recentEventBuffer,
+                              IngestionProperties ingestionProperties,
+                              PlatformTransactionManager transactionManager,
+                              Scheduler databaseScheduler,
+                              UsageRollupService usageRollups,
+                              MeasurementExtractor measurementExtractor,
+                              DeviceMeasurementRepository measurementRepository,
+                              PayloadFieldIndexer fieldIndexer,
+                              PayloadCodec payloadCodec,
+                              ClusterEventRelay clusterRelay,
+                              ClusterProperties clusterProperties) {
         this.repository = repository;
         this.subscriptionRegistry = subscriptionRegistry;
-        this.sink = Sinks.many().multicast().onBackpressureBuffer();
+        this.clientResolver = clientResolver;
+        this.recentEventBuffer = recentEventBuffer;
+        this.databaseScheduler = databaseScheduler;
+        this.usageRollups = usageRollups;
+        this.measurementExtractor = measurementExtractor;
+        this.measurementRepository = measurementRepository;
+        this.fieldIndexer = fieldIndexer;
+        this.payloadCodec = payloadCodec;
+        this.clusterRelay = clusterRelay;
+        this.clustered = clusterProperties.isEnabled();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        var writeBehind = ingestionProperties.getWriteBehind();
+        this.batchWriter = writeBehind.isEnabled()
+                ? new DeviceEventBatchWriter(repository, transactionTemplate, writeBehind, this::publishAll)
+                : null;
+        var journalSettings = ingestionProperties.getJournal();
+        this.journal = journalSettings.isEnabled()
+                ? new EventJournal(journalSettings, this::applyJournaled, this::appliedJournalPosition)
+                : null;
+    }
+
+    @PostConstruct
+    void startWriter() {
+        if (batchWriter != null) {
+            batchWriter.start();
+        }
+        if (journal != null) {
+            journal.start();
+        }
+    }
+
+    @PreDestroy
+    void stopWriter() {
+        if (journal != null) {
+            journal.close();
+        }
+        if (batchWriter != null) {
+            batchWriter.close();
+        }
+    }
+
+    /**
+     * Accepts an inbound event for persistence. With the journal enabled the event is appended to it
+     * and the callback reports it persisted once the journal is synced to disk; the event is written to
+     * the database afterwards. With write-behind enabled the event is buffered and written with the
+     * next batch, and subscribers see it once that batch commits; otherwise it is persisted
+     * immediately. Without the journal the callback reports it persisted once it has been committed.
+     * Exactly one of the callback's methods runs, also when the event is rejected straight away.
+     */
+    public void ingest(String topic,
+                       String payload,
+                       Integer qos,
+                       Boolean retained,
+                       String deviceId,
+                       String clientId,
+                       IngestionCallback callback) {
+        DeviceEvent event;
+        try {
+            if (journal != null) {
+                var record = new JournalRecord(0, topic, payload, qos != null ? qos : 0, Boolean.TRUE.equals(retained),
+                        normalize(deviceId), normalize(clientId), Instant.now());
+                log.debug("Journaling device event topic={}, deviceId={}, clientId={}, qos={}, retained={}",
+                        topic, record.deviceId(), record.clientId(), record.qos(), record.retained());
+                journal.append(record, callback);
+                return;
+            }
+            event = newEvent(topic, payload, qos, retained, deviceId, clientId, Instant.now());
+            if (batchWriter != null) {
+                log.debug("Buffering device event topic={}, deviceId={}, clientId={}, qos={}, retained={}",
+                        topic, event.getDeviceId(), event.getClientId(), event.getQos(), event.isRetained());
+                batchWriter.submit(event, callback);
+                return;
+            }
+            log.debug("Persisting device event topic={}, deviceId={}, clientId={}, qos={}, retained={}",
+                    topic, event.getDeviceId(), event.getClientId(), event.getQos(), event.isRetained());
+            transactionTemplate.executeWithoutResult(status -> repository.save(event));
+        } catch (RuntimeException e) {
+            log.error("Failed to persist device event topic={}, deviceId={}", topic, deviceId, e);
+            callback.failed(e);
+            return;
+        }
+        callback.persisted();
+        publish(toDto(event));
+    }
+
+    /**
+     * How far persistence is behind ingestion, from 0 to 1: the fuller of the write-behind buffer and
+     * the journal's unapplied backlog; always 0 when both are disabled.
+     */
+    public double writeBacklog() {
+        double writer = batchWriter != null ? batchWriter.fill() : 0;
+        double journaled = journal != null ? journal.backlog() : 0;
+        return Math.max(writer, journaled);
     }
 
     @Transactional
@@ -50,32 +183,28 @@ public class DeviceEventService {
                                       String deviceId,
                                       String clientId,
                                       Instant receivedAt) {
-        var event = new DeviceEvent();
-        event.setTopic(topic);
-        event.setPayload(payload);
-        event.setQos(qos != null ? qos : 0);
-        event.setRetained(Boolean.TRUE.equals(retained));
-        event.setDeviceId(normalize(deviceId));
-        event.setClientId(normalize(clientId));
-        event.setReceivedAt(receivedAt != null ? receivedAt : Instant.now());
+        var event = newEvent(topic, payload, qos, retained, deviceId, clientId, receivedAt);
 
         log.debug("Persisting device event topic={}, deviceId={}, clientId={}, qos={}, retained={}",
                 topic, event.getDeviceId(), event.getClientId(), event.getQos(), event.isRetained());
 
         var saved = repository.save(event);
         var dto = toDto(saved);
-        if (subscriptionRegistry.hasSubscribers(saved.getDeviceId(), saved.getClientId())) {
-            sink.tryEmitNext(dto);
-            log.trace("Emitted device event ID={} to sink", dto.id());
-        } else {
-            log.trace("No active subscriptions for deviceId={}, clientId={}, skipping sink emission",
-                    saved.getDeviceId(), saved.getClientId());
-        }
+        publish(dto);
         return dto;
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * The 50 most recently received events matching the filters, newest first. Served from
+     * {@link RecentEventBuffer}; the repository is only queried while the buffer cannot answer yet,
+     * and its answer seeds the buffer for the next call.
+     */
     public List<DeviceEventDto> recentEvents(String deviceId, String clientId) {
+        var buffered = recentEventBuffer.recentEvents(deviceId, clientId);
+        if (buffered.isPresent()) {
+            log.trace("Served {} events for deviceId={}, clientId={} from memory", buffered.get().size(), deviceId, clientId);
+            return buffered.get();
+        }
         List<DeviceEvent> events;
         if (deviceId != null && !deviceId.isBlank() && clientId != null && !clientId.isBlank()) {
             events = repository.findTop50ByDeviceIdAndClientIdOrderByReceivedAtDesc(deviceId, clientId);
@@ -87,7 +216,53 @@ public class DeviceEventService {
             events = repository.findTop50ByOrderByReceivedAtDesc();
         }
         log.debug("Loaded {} events for deviceId={}, clientId={}", events.size(), deviceId, clientId);
-        return events.stream().map(this::toDto).toList();
+        var dtos = events.stream().map(this::toDto).toList();
+        recentEventBuffer.seed(deviceId, clientId, dtos);
+        return dtos;
+    }
+
+    /**
+     * Non-blocking variant of {@link #recentEvents}: answered in place from memory, otherwise loaded
+     * on the database scheduler.
+     */
+    public Mono<List<DeviceEventDto>> findRecentEvents(String deviceId, String clientId) {
+        return Mono.defer(() -> recentEventBuffer.recentEvents(deviceId, clientId)
+                .map(Mono::just)
+                .orElseGet(() -> Mono.fromCallable(() -> recentEvents(deviceId, clientId))
+                        .subscribeOn(databaseScheduler)));
+    }
+
+    /**
+     * Non-blocking variant of {@link #query}, run on the database scheduler.
+     */
+    public Mono<EventPage> findPage(EventQuery query) {
+        return Mono.fromCallable(() -> query(query)).subscribeOn(databaseScheduler);
+    }
+
+    /**
+     * One page of the events matching the query, newest first. One extra row is fetched to tell
+     * whether another page follows.
+     */
+    @Transactional(readOnly = true)
+    public EventPage query(EventQuery query) {
+        var events = repository.findPage(query, query.limit() + 1);
+        boolean more = events.size() > query.limit();
+        var page = (more ? events.subList(0, query.limit()) : events).stream()
+                .map(this::toDto)
+                .toList();
+        var next = more ? EventCursor.of(page.get(page.size() - 1)) : null;
+        log.debug("Loaded page of {} events for {} (more={})", page.size(), query, more);
+        return new EventPage(page, next);
+    }
+
+    /**
+     * Count, sum, min, max and average of one measurement, computed by the database over the typed
+     * measurement rows. {@code deviceId} and {@code clientId} may be {@code null}.
+     */
+    @Transactional(readOnly = true)
+    public MeasurementSummary summarizeMeasurement(String name, String deviceId, String clientId, Instant from, Instant to) {
+        var summary = measurementRepository.summarize(name, normalize(deviceId), normalize(clientId), from, to);
+        return summary != null ? summary : new MeasurementSummary(name, 0, null, null, null, null);
     }
 
     @Transactional(readOnly = true)
@@ -101,43 +276,235 @@ public class DeviceEventService {
     }
 
     public Flux<DeviceEventDto> stream(String deviceId, String clientId) {
-        return sink.asFlux()
-                .filter(event -> matches(event, deviceId, clientId));
+        return stream(UUID.randomUUID().toString(), deviceId, clientId, null);
+    }
+
+    /**
+     * Live events for a subscriber; only events matching its device/client filter are routed to it.
+     * A {@code null} policy falls back to the configured default.
+     */
+    public Flux<DeviceEventDto> stream(String subscriberId,
+                                       String deviceId,
+                                       String clientId,
+                                       BackpressurePolicy policy) {
+        return subscriptionRegistry.subscribe(subscriberId, deviceId, clientId, policy);
+    }
+
+    /**
+     * Replays the events a reconnecting session missed after {@code lastEventId}, the last event it
+     * received, and then continues with live events. The live subscription is registered before the
+     * replay is read, so every event published from then on reaches the live side, and replayed events
+     * are skipped there, so there is no gap or duplicate at the handoff.
+     * <p>
+     * Ids and receipt times do not follow commit order: parallel lanes commit independently, and in
+     * cluster mode ids are allocated in blocks per node. While the last event is still in
+     * {@link RecentEventBuffer} the replay is everything published after it, in publication order,
+     * which is exact. Otherwise it is read from the database in pages, after the last event's
+     * {@code (receivedAt, id)} position; an event whose transaction was still open when the last event
+     * was published, and that sorts before it, is then not replayed. That window is one write
+     * transaction, and it only affects sessions gone for longer than the buffer reaches back. An id
+     * that is no longer stored resumes with live events only.
+     * <p>
+     * In cluster mode events of other nodes may reach this node after the session's previous node
+     * delivered them, so live events at or before the last event's position are dropped as well.
+     */
+    public Flux<DeviceEventDto> resume(String subscriberId,
+                                       String deviceId,
+                                       String clientId,
+                                       long lastEventId,
+                                       BackpressurePolicy policy) {
+        return Flux.defer(() -> {
+            var connection = new AtomicReference<Disposable>();
+            var live = stream(subscriberId, deviceId, clientId, policy)
+                    .publish()
+                    .autoConnect(0, connection::set);
+            var overlap = new ReplayOverlap();
+            Flux<DeviceEventDto> events;
+            var buffered = recentEventBuffer.eventsPublishedAfter(lastEventId, deviceId, clientId);
+            if (buffered.isPresent()) {
+                log.debug("Replaying {} buffered events published after ID={}", buffered.get().size(), lastEventId);
+                events = Flux.fromIterable(buffered.get())
+                        .doOnNext(overlap::replayed)
+                        .concatWith(live.filter(overlap::isNew));
+            } else {
+                events = cursorOf(lastEventId).flatMapMany(cursor -> cursor
+                        .map(after -> replay(deviceId, clientId, after)
+                                .doOnNext(overlap::replayed)
+                                .concatWith(live.filter(event -> (!clustered || isAfter(event, after)) && overlap.isNew(event))))
+                        .orElse(live));
+            }
+            return events
+                    .doFinally(signal -> {
+                        var disposable = connection.get();
+                        if (disposable != null) {
+                            disposable.dispose();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Receipt position of a stored event, looked up on the database scheduler.
+     */
+    private Mono<Optional<EventCursor>> cursorOf(long eventId) {
+        return Mono.fromCallable(() -> {
+                    var cursor = repository.findById(eventId)
+                            .map(event -> new EventCursor(event.getReceivedAt(), event.getId()));
+                    if (cursor.isEmpty()) {
+                        log.warn("Cannot resume after unknown event ID={}; continuing with live events only", eventId);
+                    }
+                    return cursor;
+                })
+                .subscribeOn(databaseScheduler);
+    }
+
+    private Flux<DeviceEventDto> replay(String deviceId, String clientId, EventCursor after) {
+        log.debug("Replaying events after {} from the database", after);
+        return Mono.fromCallable(() -> eventsAfter(deviceId, clientId, after))
+                .expand(page -> page.size() < REPLAY_PAGE_SIZE
+                        ? Mono.empty()
+                        : Mono.fromCallable(() -> eventsAfter(deviceId, clientId, EventCursor.of(page.get(page.size() - 1)))))
+                .concatMapIterable(page -> page)
+                .subscribeOn(databaseScheduler);
+    }
+
+    private static boolean isAfter(DeviceEventDto event, EventCursor cursor) {
+        return isAfter(event.receivedAt(), event.id(), cursor);
+    }
+
+    private static boolean isAfter(Instant receivedAt, long id, EventCursor cursor) {
+        int order = receivedAt.compareTo(cursor.receivedAt());
+        return order > 0 || (order == 0 && id > cursor.id());
+    }
+
+    /**
+     * Up to one replay page of the events after the cursor in {@code (receivedAt, id)} order.
+     */
+    @Transactional(readOnly = true)
+    public List<DeviceEventDto> eventsAfter(String deviceId, String clientId, EventCursor after) {
+        return repository.findAfter(normalize(deviceId), normalize(clientId), after, REPLAY_PAGE_SIZE).stream()
+                .map(this::toDto)
+                .toList();
     }
 
     public Flux<DeviceEventDto> streamWithHistory(String deviceId, String clientId) {
-        return Flux.defer(() -> Flux.fromIterable(recentEvents(deviceId, clientId)))
+        return findRecentEvents(deviceId, clientId)
+                .flatMapIterable(events -> events)
                 .concatWith(stream(deviceId, clientId));
     }
 
+    private DeviceEvent newEvent(String topic,
+                                 String payload,
+                                 Integer qos,
+                                 Boolean retained,
+                                 String deviceId,
+                                 String clientId,
+                                 Instant receivedAt) {
+        var event = new DeviceEvent();
+        event.setTopic(topic);
+        event.setPayload(payload);
+        event.setQos(qos != null ? qos : 0);
+        event.setRetained(Boolean.TRUE.equals(retained));
+        event.setDeviceId(normalize(deviceId));
+        event.setClientId(normalize(clientId));
+        event.setReceivedAt(receivedAt != null ? receivedAt : Instant.now());
+        measurementExtractor.attach(event);
+        fieldIndexer.attach(event);
+        payloadCodec.encode(event);
+        return event;
+    }
+
+    /**
+     * Stores a batch of journaled events in one transaction, each with its journal position, and
+     * publishes them once committed.
+     */
+    private void applyJournaled(List<JournalRecord> records) {
+        List<DeviceEvent> events = new ArrayList<>(records.size());
+        for (var record : records) {
+            var event = newEvent(record.topic(), record.payload(), record.qos(), record.retained(),
+                    record.deviceId(), record.clientId(), record.receivedAt());
+            event.setJournalPosition(record.position());
+            events.add(event);
+        }
+        transactionTemplate.executeWithoutResult(status -> repository.saveAll(events));
+        log.trace("Applied {} journaled device events", events.size());
+        try {
+            publishAll(events);
+        } catch (RuntimeException e) {
+            log.warn("Post-commit handling failed for {} journaled device events", events.size(), e);
+        }
+    }
+
+    private long appliedJournalPosition() {
+        var position = repository.findMaxJournalPosition();
+        return position != null ? position : -1L;
+    }
+
+    private void publishAll(List<DeviceEvent> events) {
+        for (DeviceEvent event : events) {
+            publish(toDto(event));
+        }
+    }
+
+    private void publish(DeviceEventDto dto) {
+        clientResolver.observed(dto.deviceId(), dto.clientId());
+        // buffer before routing so a resuming session sees the event in its replay, its live stream or both
+        recentEventBuffer.append(dto);
+        usageRollups.record(dto);
+        if (subscriptionRegistry.hasSubscribers(dto.deviceId(), dto.clientId())) {
+            subscriptionRegistry.route(dto);
+            log.trace("Routed device event ID={} to subscribed sessions", dto.id());
+        } else {
+            log.trace("No active subscriptions for deviceId={}, clientId={}, skipping routing",
+                    dto.deviceId(), dto.clientId());
+        }
+        clusterRelay.publish(dto);
+    }
+
     private DeviceEventDto toDto(DeviceEvent event) {
         return new DeviceEventDto(
                 event.getId(),
                 event.getDeviceId(),
                 event.getClientId(),
                 event.getTopic(),
-                event.getPayload(),
+                payloadCodec.payloadOf(event),
                 event.getQos(),
                 event.isRetained(),
                 event.getReceivedAt());
     }
 
-    private boolean matches(DeviceEventDto event, String deviceId, String clientId) {
-        if (deviceId != null && !deviceId.isBlank() && !Objects.equals(deviceId, event.deviceId())) {
-            return false;
-        }
-        if (clientId != null && !clientId.isBlank() && !Objects.equals(clientId, event.clientId())) {
-            return false;
-        }
-        return true;
-    }
-
     private String normalize(String value) {
         if (value == null || value.isBlank()) {
             return null;
         }
         return value;
     }
-}
 
+    /**
+     * Replayed events of one resuming session that its live stream may deliver again. Only events
+     * published while the replay was being read can be on both sides, and they reach the live stream
+     * right after it opened. So once the first live event that was not replayed arrives, the replayed
+     * events positioned at or before it are forgotten, and the set does not outlive the handoff.
+     */
+    private static final class ReplayOverlap {
+
+        private final Map<Long, Instant> replayed = new ConcurrentHashMap<>();
+        private volatile boolean handedOver;
 
+        void replayed(DeviceEventDto event) {
+            replayed.put(event.id(), event.receivedAt());
+        }
+
+        boolean isNew(DeviceEventDto event) {
+            if (replayed.remove(event.id()) != null) {
+                return false;
+            }
+            if (!handedOver) {
+                handedOver = true;
+                var position = EventCursor.of(event);
+                replayed.entrySet().removeIf(entry -> !isAfter(entry.getValue(), entry.getKey(), position));
+            }
+            return true;
+        }
+    }
+}
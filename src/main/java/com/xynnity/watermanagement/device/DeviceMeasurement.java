@@ -0,0 +1,119 @@
+package com.xynnity.watermanagement.device;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+/**
+ * One numeric reading extracted from an event payload. Device, client and receive time are copied
+ * from the event so range queries and aggregates run on this table's indexes alone.
+ */
+@Entity
+@Table(name = "device_measurements", indexes = {
+        @Index(name = "idx_device_measurements_device", columnList = "name, device_id, received_at"),
+        @Index(name = "idx_device_measurements_client", columnList = "name, client_id, received_at"),
+        @Index(name = "idx_device_measurements_event", columnList = "event_id")
+})
+public class DeviceMeasurement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_measurements_seq")
+    @SequenceGenerator(name = "device_measurements_seq", sequenceName = "device_measurements_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "event_id", nullable = false)
+    private DeviceEvent event;
+
+    @Column(nullable = false, length = 64)
+    private String name;
+
+    @Column(name = "measured_value", nullable = false)
+    private double value;
+
+    @Column(length = 32)
+    private String unit;
+
+    @Column(name = "device_id")
+    private String deviceId;
+
+    @Column(name = "client_id")
+    private String clientId;
+
+    @Column(name = "received_at", nullable = false)
+    private Instant receivedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public DeviceEvent getEvent() {
+        return event;
+    }
+
+    public void setEvent(DeviceEvent event) {
+        this.event = event;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public Instant getReceivedAt() {
+        return receivedAt;
+    }
+
+    public void setReceivedAt(Instant receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+}
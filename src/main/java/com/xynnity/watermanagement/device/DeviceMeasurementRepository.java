@@ -0,0 +1,27 @@
+package com.xynnity.watermanagement.device;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface DeviceMeasurementRepository extends JpaRepository<DeviceMeasurement, Long> {
+
+    @Query("""
+            SELECT new com.xynnity.watermanagement.device.MeasurementSummary(
+                m.name, COUNT(m), SUM(m.value), MIN(m.value), MAX(m.value), AVG(m.value))
+            FROM DeviceMeasurement m
+            WHERE m.name = :name
+              AND (:deviceId IS NULL OR m.deviceId = :deviceId)
+              AND (:clientId IS NULL OR m.clientId = :clientId)
+              AND m.receivedAt >= :from
+              AND m.receivedAt < :to
+            GROUP BY m.name
+            """)
+    MeasurementSummary summarize(@Param("name") String name,
+                                 @Param("deviceId") String deviceId,
+                                 @Param("clientId") String clientId,
+                                 @Param("from") Instant from,
+                                 @Param("to") Instant to);
+}
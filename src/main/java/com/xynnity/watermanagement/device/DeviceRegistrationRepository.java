@@ -1,5 +1,6 @@
 package com.xynnity.watermanagement.device;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -7,5 +8,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 public interface DeviceRegistrationRepository extends JpaRepository<DeviceRegistration, Long> {
 
     Optional<DeviceRegistration> findByDeviceId(String deviceId);
+
+    List<DeviceRegistration> findByClientId(String clientId);
 }
 
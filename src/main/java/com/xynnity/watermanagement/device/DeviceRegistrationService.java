@@ -1,21 +1,43 @@
 package com.xynnity.watermanagement.device;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.xynnity.watermanagement.cluster.ClusterEventRelay;
+
+import jakarta.annotation.PostConstruct;
 
 @Service
 public class DeviceRegistrationService {
 
     private static final Logger log = LoggerFactory.getLogger(DeviceRegistrationService.class);
+    private static final String CACHE = "device-registrations";
 
     private final DeviceRegistrationRepository repository;
+    private final DeviceClientResolver clientResolver;
+    private final ClusterEventRelay clusterRelay;
+    private final AtomicLong version = new AtomicLong();
 
-    public DeviceRegistrationService(DeviceRegistrationRepository repository) {
+    public DeviceRegistrationService(DeviceRegistrationRepository repository,
+                                     DeviceClientResolver clientResolver,
+                                     ClusterEventRelay clusterRelay) {
         this.repository = repository;
+        this.clientResolver = clientResolver;
+        this.clusterRelay = clusterRelay;
+    }
+
+    @PostConstruct
+    void listenForRemoteRegistrations() {
+        clusterRelay.onInvalidation(CACHE, this::registeredElsewhere);
     }
 
     @Transactional(readOnly = true)
@@ -33,6 +55,24 @@ public class DeviceRegistrationService {
                 .filter(clientId -> !clientId.isBlank());
     }
 
+    @Transactional(readOnly = true)
+    public List<String> findDeviceIdsByClient(String clientId) {
+        if (clientId == null || clientId.isBlank()) {
+            return List.of();
+        }
+        return repository.findByClientId(clientId).stream()
+                .map(DeviceRegistration::getDeviceId)
+                .toList();
+    }
+
+    /**
+     * Changes every time a registration commits on any node, so callers can cache data derived from
+     * registrations.
+     */
+    public long version() {
+        return version.get();
+    }
+
     @Transactional
     public DeviceRegistration register(String deviceId, String clientId, String displayName) {
         var registration = repository.findByDeviceId(deviceId)
@@ -42,7 +82,36 @@ public class DeviceRegistrationService {
         registration.setDisplayName(displayName);
         var saved = repository.save(registration);
         log.debug("Registered device mapping deviceId={}, clientId={}", saved.getDeviceId(), saved.getClientId());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    committed(saved);
+                }
+            });
+        } else {
+            committed(saved);
+        }
         return saved;
     }
+
+    private void committed(DeviceRegistration registration) {
+        clientResolver.registered(registration.getDeviceId(), registration.getClientId());
+        version.incrementAndGet();
+        clusterRelay.invalidate(CACHE, Set.of(registration.getDeviceId()));
+    }
+
+    /**
+     * Drops what this node cached about devices registered on another node, or about every device
+     * when the set is empty.
+     */
+    private void registeredElsewhere(Set<String> deviceIds) {
+        if (deviceIds.isEmpty()) {
+            clientResolver.forgetAll();
+        } else {
+            deviceIds.forEach(clientResolver::forget);
+        }
+        version.incrementAndGet();
+    }
 }
 
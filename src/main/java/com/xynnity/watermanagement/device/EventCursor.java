@@ -0,0 +1,38 @@
+package com.xynnity.watermanagement.device;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position of the last event on a page, ordered by {@code (receivedAt, id)} descending. Clients see
+ * it only as an opaque token.
+ */
+public record EventCursor(Instant receivedAt, long id) {
+
+    public static EventCursor of(DeviceEventDto event) {
+        return new EventCursor(event.receivedAt(), event.id());
+    }
+
+    public String encode() {
+        var raw = receivedAt.getEpochSecond() + ":" + receivedAt.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+     */
+    public static EventCursor decode(String token) {
+        try {
+            var raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            var parts = raw.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Malformed event cursor");
+            }
+            var receivedAt = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new EventCursor(receivedAt, Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed event cursor", e);
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package com.xynnity.watermanagement.device;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+/**
+ * Write-ahead journal of inbound events kept in preallocated, memory-mapped segment files.
+ * <p>
+ * Appends are copied into the active segment under a lock. A sync thread forces the segment to disk
+ * every sync interval and then runs the durability callbacks of every record it covered, so one
+ * fsync acknowledges a whole group of events. A drain thread follows the sync thread and applies
+ * synced records to the database in batches. While the database cannot be reached a batch is retried
+ * without limit, so events pile up on disk rather than being lost. A batch the database keeps
+ * rejecting is split in halves until the records it rejects on their own are found; those are moved
+ * to the dead-letter file and the drain moves on. Segments are deleted once every record in them has
+ * been applied.
+ * <p>
+ * Records are framed as length, CRC-32 and body. A record's position is its segment's base plus its
+ * offset. Applied events store that position in {@code journal_position}, committed with the event
+ * itself. On startup every record above the highest stored position is applied again and nothing at
+ * or below it is. A torn record at the end of a segment is discarded.
+ * <p>
+ * The dead-letter file frames records as length, CRC-32, position and body. Dead-lettered positions
+ * also count as applied on startup.
+ */
+final class EventJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(EventJournal.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String DEAD_LETTER = "dead-letter.wal";
+    private static final int HEADER = 8;
+    private static final int DEAD_LETTER_HEADER = 16;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long syncIntervalNanos;
+    private final int drainBatchSize;
+    private final Duration retryBackoff;
+    private final int maxAttempts;
+    private final Duration shutdownTimeout;
+    private final double maxBacklog;
+    private final Consumer<List<JournalRecord>> applier;
+    private final LongSupplier appliedPosition;
+    private final Queue<PendingAck> pendingAcks = new ConcurrentLinkedQueue<>();
+    private final Thread syncer;
+    private final Thread drainer;
+
+    // guarded by this
+    private Segment active;
+    private int writeOffset;
+
+    // drain thread only
+    private Segment oldest;
+    private Segment readSegment;
+    private int readOffset;
+
+    private volatile long written;
+    private volatile long synced;
+    private volatile long drained;
+    // end of the last applied record
+    private volatile long drainedTo;
+    private volatile long stopDeadline = Long.MAX_VALUE;
+    private volatile boolean running = true;
+
+    EventJournal(IngestionProperties.Journal settings,
+                 Consumer<List<JournalRecord>> applier,
+                 LongSupplier appliedPosition) {
+        this.directory = Path.of(settings.getDirectory());
+        this.segmentSize = (int) settings.getSegmentSize().toBytes();
+        this.syncIntervalNanos = settings.getSyncInterval().toNanos();
+        this.drainBatchSize = settings.getDrainBatchSize();
+        this.retryBackoff = settings.getRetryBackoff();
+        this.maxAttempts = settings.getMaxAttempts();
+        this.shutdownTimeout = settings.getShutdownTimeout();
+        this.maxBacklog = settings.getMaxBacklog().toBytes();
+        this.applier = applier;
+        this.appliedPosition = appliedPosition;
+        this.syncer = Thread.ofPlatform().name("event-journal-sync").unstarted(this::sync);
+        this.drainer = Thread.ofPlatform().name("event-journal-drain").unstarted(this::drain);
+    }
+
+    void start() {
+        try {
+            recover(Math.max(appliedPosition.getAsLong(), lastDeadLettered()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open event journal in " + directory.toAbsolutePath(), e);
+        }
+        syncer.start();
+        drainer.start();
+    }
+
+    /**
+     * Appends an event to the journal. The callback's {@code persisted} runs on the sync thread once the
+     * record is on disk; the event reaches the database later.
+     */
+    void append(JournalRecord record, IngestionCallback callback) {
+        if (!running) {
+            throw new IllegalStateException("Event journal has been shut down");
+        }
+        var body = record.encode();
+        if (HEADER + body.length > segmentSize) {
+            throw new IllegalArgumentException("Event of " + body.length + " bytes does not fit in a journal segment");
+        }
+        var crc = new CRC32();
+        crc.update(body);
+        synchronized (this) {
+            if (writeOffset + HEADER + body.length > active.capacity) {
+                roll();
+            }
+            var buffer = active.buffer;
+            buffer.putInt(writeOffset + 4, (int) crc.getValue());
+            buffer.put(writeOffset + HEADER, body);
+            // the length goes last so a record is never seen half written
+            buffer.putInt(writeOffset, body.length);
+            writeOffset += HEADER + body.length;
+            long end = active.base + writeOffset;
+            pendingAcks.add(new PendingAck(end, callback));
+            written = end;
+        }
+    }
+
+    /**
+     * Journaled bytes not yet applied to the database as a share of the configured maximum backlog,
+     * capped at 1.
+     */
+    double backlog() {
+        return Math.min(1, Math.max(0, written - drainedTo) / maxBacklog);
+    }
+
+    /**
+     * Stops accepting events, syncs what was appended and keeps applying journaled events for up to
+     * the shutdown timeout. Whatever is left is applied on the next start.
+     */
+    void close() {
+        stopDeadline = System.nanoTime() + shutdownTimeout.toNanos();
+        running = false;
+        LockSupport.unpark(syncer);
+        try {
+            syncer.join();
+            // the drain thread stops once it has applied everything the last sync covered
+            LockSupport.unpark(drainer);
+            drainer.join(shutdownTimeout.plusSeconds(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (drainer.isAlive()) {
+            drainer.interrupt();
+            log.warn("Event journal still holds {} unapplied bytes; they are applied on the next start", written - drained);
+        } else {
+            log.info("Event journal drained and stopped");
+        }
+    }
+
+    private void recover(long applied) throws IOException {
+        Files.createDirectories(directory);
+        List<Segment> recovered = new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            for (var path : files.filter(EventJournal::isSegment).sorted(Comparator.comparingLong(EventJournal::base)).toList()) {
+                var segment = Segment.open(path, base(path), segmentSize);
+                segment.end = segment.scan();
+                if (!recovered.isEmpty()) {
+                    recovered.get(recovered.size() - 1).next = segment;
+                }
+                recovered.add(segment);
+            }
+        }
+        long pending = 0;
+        for (var segment : recovered) {
+            pending += segment.end;
+        }
+        if (recovered.isEmpty()) {
+            active = Segment.open(segmentPath(applied + 1), applied + 1, segmentSize);
+            oldest = active;
+        } else {
+            oldest = recovered.get(0);
+            var last = recovered.get(recovered.size() - 1);
+            if (last.base + last.end <= applied) {
+                // everything journaled is already stored; continue above the stored positions
+                active = Segment.open(segmentPath(applied + 1), applied + 1, segmentSize);
+                last.next = active;
+            } else {
+                active = last;
+                writeOffset = last.end;
+                active.clearFrom(writeOffset);
+                active.end = -1;
+            }
+        }
+        written = active.base + writeOffset;
+        synced = written;
+        drained = applied;
+        drainedTo = Math.max(applied, 0);
+        readSegment = oldest;
+        log.info("Opened event journal in {} with {} segments, {} bytes journaled, applied up to position {}",
+                directory.toAbsolutePath(), recovered.size(), pending, applied);
+    }
+
+    private void roll() {
+        var sealed = active;
+        sealed.buffer.force();
+        var next = openSegment(sealed.base + sealed.capacity);
+        sealed.end = writeOffset;
+        sealed.next = next;
+        active = next;
+        writeOffset = 0;
+    }
+
+    private Segment openSegment(long base) {
+        try {
+            return Segment.open(segmentPath(base), base, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create journal segment at position " + base, e);
+        }
+    }
+
+    private void sync() {
+        while (running || synced < written) {
+            LockSupport.parkNanos(syncIntervalNanos);
+            Segment segment;
+            long target;
+            synchronized (this) {
+                segment = active;
+                target = written;
+            }
+            if (target > synced) {
+                try {
+                    // rolled segments were forced before the active one changed
+                    segment.buffer.force();
+                    synced = target;
+                } catch (UncheckedIOException e) {
+                    log.error("Failed to sync event journal; acknowledgements are held back", e);
+                    continue;
+                }
+            }
+            PendingAck ack;
+            while ((ack = pendingAcks.peek()) != null && ack.end() <= synced) {
+                pendingAcks.poll();
+                try {
+                    ack.callback().persisted();
+                } catch (RuntimeException e) {
+                    log.warn("Journal durability callback failed", e);
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        List<JournalRecord> batch = List.of();
+        int failures = 0;
+        while (running || System.nanoTime() < stopDeadline) {
+            if (batch.isEmpty()) {
+                batch = read(drainBatchSize);
+            }
+            if (batch.isEmpty()) {
+                if (!running && !syncer.isAlive()) {
+                    return;
+                }
+                LockSupport.parkNanos(syncIntervalNanos);
+                continue;
+            }
+            try {
+                applier.accept(batch);
+            } catch (RuntimeException e) {
+                if (isUnavailable(e) || ++failures < maxAttempts) {
+                    log.warn("Failed to apply {} journaled events; retrying in {}", batch.size(), retryBackoff, e);
+                    if (!pause()) {
+                        return;
+                    }
+                    // the failed commit may still have gone through
+                    long stored = appliedPosition.getAsLong();
+                    batch = batch.stream().filter(record -> record.position() > stored).toList();
+                    continue;
+                }
+                log.warn("Database rejected {} journaled events {} times; isolating the events it rejects",
+                        batch.size(), failures, e);
+                if (!isolate(batch)) {
+                    return;
+                }
+            }
+            failures = 0;
+            drained = batch.get(batch.size() - 1).position();
+            drainedTo = readSegment.base + readOffset;
+            batch = List.of();
+            releaseApplied();
+        }
+    }
+
+    /**
+     * Applies the records in ever smaller groups and dead-letters each record the database rejects on
+     * its own. Returns false if interrupted while waiting for the database.
+     */
+    private boolean isolate(List<JournalRecord> records) {
+        int middle = records.size() / 2;
+        for (var half : List.of(records.subList(0, middle), records.subList(middle, records.size()))) {
+            if (!half.isEmpty() && !applyOrIsolate(half)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean applyOrIsolate(List<JournalRecord> records) {
+        while (true) {
+            try {
+                applier.accept(records);
+                return true;
+            } catch (RuntimeException e) {
+                if (!isUnavailable(e)) {
+                    if (records.size() == 1) {
+                        deadLetter(records.get(0), e);
+                        return true;
+                    }
+                    return isolate(records);
+                }
+                log.warn("Failed to apply {} journaled events; retrying in {}", records.size(), retryBackoff, e);
+                if (!pause()) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the failure means the database could not be reached rather than that it refused the
+     * records.
+     */
+    private static boolean isUnavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void deadLetter(JournalRecord record, RuntimeException cause) {
+        var path = directory.resolve(DEAD_LETTER);
+        log.error("Database rejected journaled device event at position {} topic={}, deviceId={}; moving it to {}",
+                record.position(), record.topic(), record.deviceId(), path.toAbsolutePath(), cause);
+        var body = record.encode();
+        var crc = new CRC32();
+        crc.update(body);
+        var frame = ByteBuffer.allocate(DEAD_LETTER_HEADER + body.length)
+                .putInt(body.length)
+                .putInt((int) crc.getValue())
+                .putLong(record.position())
+                .put(body)
+                .flip();
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Failed to write journaled device event at position {} to {}; its payload was: {}",
+                    record.position(), path.toAbsolutePath(), record.payload(), e);
+        }
+    }
+
+    /**
+     * Highest position in the dead-letter file, or -1 if nothing was dead-lettered.
+     */
+    private long lastDeadLettered() {
+        var path = directory.resolve(DEAD_LETTER);
+        if (!Files.exists(path)) {
+            return -1;
+        }
+        try {
+            var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            long last = -1;
+            var crc = new CRC32();
+            while (buffer.remaining() >= DEAD_LETTER_HEADER) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                long position = buffer.getLong();
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.slice(buffer.position(), length));
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                last = Math.max(last, position);
+            }
+            return last;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + path.toAbsolutePath(), e);
+        }
+    }
+
+    private List<JournalRecord> read(int max) {
+        List<JournalRecord> records = new ArrayList<>(Math.min(max, 64));
+        while (records.size() < max) {
+            // records past the last sync may still be lost, so they are not applied yet
+            long limit = synced;
+            var segment = readSegment;
+            int end = segment.end;
+            long available = end >= 0 ? end : Math.min(segment.capacity, limit - segment.base);
+            if (readOffset >= available) {
+                if (end < 0 || segment.next == null) {
+                    break;
+                }
+                readSegment = segment.next;
+                readOffset = 0;
+                continue;
+            }
+            int length = segment.buffer.getInt(readOffset);
+            var body = new byte[length];
+            segment.buffer.get(readOffset + HEADER, body);
+            long position = segment.base + readOffset;
+            readOffset += HEADER + length;
+            if (position > drained) {
+                records.add(JournalRecord.decode(position, body));
+            }
+        }
+        return records;
+    }
+
+    private void releaseApplied() {
+        while (oldest != readSegment) {
+            var released = oldest;
+            oldest = released.next;
+            try {
+                released.delete();
+            } catch (IOException e) {
+                log.warn("Failed to delete applied journal segment {}", released.path, e);
+            }
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(retryBackoff);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    private static boolean isSegment(Path path) {
+        var name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long base(Path path) {
+        var name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private record PendingAck(long end, IngestionCallback callback) {
+    }
+
+    private static final class Segment {
+
+        private final long base;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        // end of the last record once the segment is no longer written to, otherwise -1
+        private volatile int end = -1;
+        private volatile Segment next;
+
+        private Segment(long base, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        static Segment open(Path path, long base, int size) throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // an existing segment keeps the size it was created with
+            long length = channel.size() > 0 ? channel.size() : size;
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            return new Segment(base, path, channel, buffer);
+        }
+
+        /**
+         * Offset just past the last intact record.
+         */
+        int scan() {
+            int offset = 0;
+            var crc = new CRC32();
+            while (offset + HEADER <= capacity) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || length > capacity - offset - HEADER) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.slice(offset + HEADER, length));
+                if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                    break;
+                }
+                offset += HEADER + length;
+            }
+            return offset;
+        }
+
+        void clearFrom(int offset) {
+            for (int i = offset; i < capacity; i++) {
+                if (buffer.get(i) != 0) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+
+        void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.xynnity.watermanagement.device;
+
+import java.util.List;
+
+/**
+ * A page of events, newest first, with the cursor for the next page or {@code null} on the last one.
+ */
+public record EventPage(List<DeviceEventDto> events, EventCursor next) {
+}
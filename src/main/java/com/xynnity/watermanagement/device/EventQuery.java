@@ -0,0 +1,29 @@
+package com.xynnity.watermanagement.device;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Filters for a page of events. {@code from} is inclusive, {@code to} exclusive, and {@code after}
+ * continues from the last event of the previous page; any of them may be {@code null}. Every
+ * {@code fieldFilters} entry must match an indexed payload field.
+ */
+public record EventQuery(
+        String deviceId,
+        String clientId,
+        Instant from,
+        Instant to,
+        List<FieldFilter> fieldFilters,
+        EventCursor after,
+        int limit) {
+
+    public EventQuery {
+        fieldFilters = fieldFilters == null ? List.of() : List.copyOf(fieldFilters);
+    }
+
+    /**
+     * Requires the indexed payload field {@code name} to equal {@code value}.
+     */
+    public record FieldFilter(String name, String value) {
+    }
+}
@@ -0,0 +1,154 @@
+package com.xynnity.watermanagement.device;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.xynnity.watermanagement.config.RetentionProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Purges device events past their client's retention period. Cutoffs are aligned to whole UTC days,
+ * so each run removes complete daily buckets. Events are deleted by receive-time range, oldest first,
+ * one short transaction per {@code retention.step}, together with their measurements and indexed
+ * attributes. Each range is found through the {@code (client_id, received_at, id)} and
+ * {@code (received_at, id)} indexes, and no ids travel between the database and the application.
+ */
+@Component
+public class EventRetentionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(EventRetentionJob.class);
+
+    private static final String CLIENT = " AND client_id = :clientId";
+    private static final String DEFAULT = " AND (client_id IS NULL OR client_id NOT IN (:overridden))";
+    private static final String ALL = "";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RetentionProperties properties;
+    private final Counter purged;
+    private final ScheduledExecutorService scheduler;
+
+    public EventRetentionJob(DataSource dataSource,
+                             PlatformTransactionManager transactionManager,
+                             RetentionProperties properties,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.purged = Counter.builder("device.events.purged")
+                .register(meterRegistry);
+        this.scheduler = properties.isEnabled()
+                ? Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("event-retention").factory())
+                : null;
+    }
+
+    @PostConstruct
+    void schedule() {
+        if (scheduler == null) {
+            return;
+        }
+        long interval = properties.getInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::purgeQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Scheduled event retention every {} (default period {}, {} client overrides)",
+                properties.getInterval(), properties.getDefaultPeriod(), properties.getClients().size());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs one purge pass over every client override and the default period; returns the number of
+     * events deleted.
+     */
+    public long purge() {
+        var now = Instant.now();
+        long deleted = 0;
+        var overrides = properties.getClients();
+        for (Map.Entry<String, Duration> client : overrides.entrySet()) {
+            var params = new MapSqlParameterSource("clientId", client.getKey())
+                    .addValue("cutoff", cutoff(now, client.getValue()));
+            deleted += purge(CLIENT, params);
+        }
+        var params = new MapSqlParameterSource("cutoff", cutoff(now, properties.getDefaultPeriod()));
+        if (overrides.isEmpty()) {
+            deleted += purge(ALL, params);
+        } else {
+            deleted += purge(DEFAULT, params.addValue("overridden", List.copyOf(overrides.keySet())));
+        }
+        if (deleted > 0) {
+            log.info("Purged {} expired device events", deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the matching events received before the cutoff, one step of receive time per
+     * transaction, each starting at the oldest remaining event so gaps in the data are skipped.
+     */
+    private long purge(String filter, MapSqlParameterSource params) {
+        var cutoff = (OffsetDateTime) params.getValue("cutoff");
+        var selectOldest = "SELECT MIN(received_at) FROM device_events WHERE received_at < :cutoff" + filter;
+        var events = "SELECT id FROM device_events WHERE received_at < :upper" + filter;
+        var deleteMeasurements = "DELETE FROM device_measurements WHERE event_id IN (" + events + ")";
+        var deleteAttributes = "DELETE FROM device_event_attributes WHERE event_id IN (" + events + ")";
+        var deleteEvents = "DELETE FROM device_events WHERE received_at < :upper" + filter;
+        long deleted = 0;
+        OffsetDateTime oldest;
+        while ((oldest = jdbcTemplate.queryForObject(selectOldest, params, OffsetDateTime.class)) != null) {
+            params.addValue("upper", min(oldest.plus(properties.getStep()), cutoff));
+            var removed = transactionTemplate.execute(status -> {
+                jdbcTemplate.update(deleteMeasurements, params);
+                jdbcTemplate.update(deleteAttributes, params);
+                return jdbcTemplate.update(deleteEvents, params);
+            });
+            int count = removed != null ? removed : 0;
+            deleted += count;
+            purged.increment(count);
+        }
+        return deleted;
+    }
+
+    private static OffsetDateTime min(OffsetDateTime a, OffsetDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static OffsetDateTime cutoff(Instant now, Duration period) {
+        // received_at is TIMESTAMP WITH TIME ZONE; an OffsetDateTime binds to it without conversion
+        return now.minus(period).truncatedTo(ChronoUnit.DAYS).atOffset(ZoneOffset.UTC);
+    }
+
+    private void purgeQuietly() {
+        try {
+            purge();
+        } catch (RuntimeException e) {
+            log.warn("Event retention pass failed; retrying on the next run", e);
+        }
+    }
+}
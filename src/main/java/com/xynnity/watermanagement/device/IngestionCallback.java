@@ -0,0 +1,28 @@
+package com.xynnity.watermanagement.device;
+
+/**
+ * Outcome of an event handed to {@link DeviceEventService#ingest}. Exactly one of the two methods
+ * runs, once, for every ingested event.
+ */
+public interface IngestionCallback {
+
+    IngestionCallback NONE = new IngestionCallback() {
+        @Override
+        public void persisted() {
+        }
+
+        @Override
+        public void failed(RuntimeException cause) {
+        }
+    };
+
+    /**
+     * The event is durable: committed to the database, or synced to the journal when it is enabled.
+     */
+    void persisted();
+
+    /**
+     * The event could not be persisted and has been discarded.
+     */
+    void failed(RuntimeException cause);
+}
@@ -0,0 +1,77 @@
+package com.xynnity.watermanagement.device;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Inbound event as stored in the write-ahead journal. The position is the record's offset in the
+ * journal and becomes the event's {@code journal_position}.
+ */
+record JournalRecord(long position,
+                     String topic,
+                     String payload,
+                     int qos,
+                     boolean retained,
+                     String deviceId,
+                     String clientId,
+                     Instant receivedAt) {
+
+    byte[] encode() {
+        var bytes = new ByteArrayOutputStream(128 + (payload != null ? payload.length() : 0));
+        try (var out = new DataOutputStream(bytes)) {
+            writeNullable(out, topic);
+            writeNullable(out, deviceId);
+            writeNullable(out, clientId);
+            out.writeByte(qos);
+            out.writeBoolean(retained);
+            out.writeLong(receivedAt.getEpochSecond());
+            out.writeInt(receivedAt.getNano());
+            if (payload == null) {
+                out.writeInt(-1);
+            } else {
+                var utf8 = payload.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static JournalRecord decode(long position, byte[] body) {
+        try (var in = new DataInputStream(new ByteArrayInputStream(body))) {
+            var topic = readNullable(in);
+            var deviceId = readNullable(in);
+            var clientId = readNullable(in);
+            int qos = in.readByte();
+            boolean retained = in.readBoolean();
+            var receivedAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            int length = in.readInt();
+            String payload = null;
+            if (length >= 0) {
+                payload = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+            }
+            return new JournalRecord(position, topic, payload, qos, retained, deviceId, clientId, receivedAt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
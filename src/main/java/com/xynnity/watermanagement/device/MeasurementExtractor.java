@@ -0,0 +1,123 @@
+package com.xynnity.watermanagement.device;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+/**
+ * Reads the mapped numeric fields out of an event payload in one streaming pass over its top-level
+ * fields. Numbers are taken as-is; strings such as {@code "18.5cc"} are split into value and unit.
+ * Values that are not finite are skipped, and so are units longer than the column holds: a reading
+ * whose text runs on past a unit is skipped, an oversized unit field is ignored.
+ */
+@Component
+class MeasurementExtractor {
+
+    private final JsonFactory jsonFactory;
+    private final boolean enabled;
+    private final Map<String, Alias> aliases = new HashMap<>();
+    private final List<String> unitFields;
+
+    MeasurementExtractor(ObjectMapper objectMapper, IngestionProperties properties) {
+        this.jsonFactory = objectMapper.getFactory();
+        var settings = properties.getMeasurements();
+        this.enabled = settings.isEnabled() && !settings.getMappings().isEmpty();
+        settings.getMappings().forEach((name, fields) -> {
+            for (int rank = 0; rank < fields.size(); rank++) {
+                aliases.putIfAbsent(fields.get(rank), new Alias(name, rank));
+            }
+        });
+        this.unitFields = List.copyOf(settings.getUnitFields());
+    }
+
+    /**
+     * Extracts the configured measurements and attaches them to the event, which must already carry
+     * its payload, identifiers and receive time.
+     */
+    void attach(DeviceEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (var reading : extract(event.getPayload())) {
+            var measurement = new DeviceMeasurement();
+            measurement.setEvent(event);
+            measurement.setName(reading.name());
+            measurement.setValue(reading.value());
+            measurement.setUnit(reading.unit());
+            measurement.setDeviceId(event.getDeviceId());
+            measurement.setClientId(event.getClientId());
+            measurement.setReceivedAt(event.getReceivedAt());
+            event.getMeasurements().add(measurement);
+        }
+    }
+
+    List<Reading> extract(String payload) {
+        if (payload == null || payload.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Reading> readings = new HashMap<>();
+        Map<String, Integer> ranks = new HashMap<>();
+        String payloadUnit = null;
+        try (var parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return List.of();
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                var token = parser.nextToken();
+                if (token == JsonToken.VALUE_STRING && payloadUnit == null && unitFields.contains(field)) {
+                    payloadUnit = NumericText.unit(parser.getText());
+                    continue;
+                }
+                var alias = aliases.get(field);
+                if (alias == null || alias.rank() >= ranks.getOrDefault(alias.name(), Integer.MAX_VALUE)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                var reading = reading(alias.name(), token, parser);
+                if (reading != null) {
+                    readings.put(alias.name(), reading);
+                    ranks.put(alias.name(), alias.rank());
+                }
+            }
+        } catch (IOException e) {
+            return List.of();
+        }
+        List<Reading> result = new ArrayList<>(readings.size());
+        for (var reading : readings.values()) {
+            result.add(reading.unit() != null || payloadUnit == null
+                    ? reading
+                    : new Reading(reading.name(), reading.value(), payloadUnit));
+        }
+        return result;
+    }
+
+    private static Reading reading(String name, JsonToken token, JsonParser parser) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            double value = parser.getDoubleValue();
+            return Double.isFinite(value) ? new Reading(name, value, null) : null;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            var text = NumericText.parse(parser.getText());
+            return text != null ? new Reading(name, text.value(), text.unit()) : null;
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    record Reading(String name, double value, String unit) {
+    }
+
+    private record Alias(String name, int rank) {
+    }
+}
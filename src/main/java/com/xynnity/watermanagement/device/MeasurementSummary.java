@@ -0,0 +1,13 @@
+package com.xynnity.watermanagement.device;
+
+/**
+ * Aggregate of one measurement over a filtered range; the statistics are {@code null} when no reading matched.
+ */
+public record MeasurementSummary(
+        String name,
+        long count,
+        Double sum,
+        Double min,
+        Double max,
+        Double average) {
+}
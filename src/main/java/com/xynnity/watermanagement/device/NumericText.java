@@ -0,0 +1,49 @@
+package com.xynnity.watermanagement.device;
+
+import java.util.regex.Pattern;
+
+/**
+ * A finite number written as text, optionally followed by a unit, such as {@code "18.5cc"} or
+ * {@code " 3 bar"}.
+ */
+public record NumericText(double value, String unit) {
+
+    /**
+     * Longest unit that fits {@code device_measurement.unit}.
+     */
+    public static final int MAX_UNIT_LENGTH = 32;
+
+    private static final Pattern PATTERN = Pattern.compile("\\s*([-+]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][-+]?\\d+)?)\\s*(\\S.*?)?\\s*");
+
+    /**
+     * Returns the number and unit, or {@code null} when the text is not a number, overflows a double,
+     * or is followed by more than a unit's worth of text.
+     */
+    public static NumericText parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        var matcher = PATTERN.matcher(text);
+        if (!matcher.matches()) {
+            return null;
+        }
+        double value = Double.parseDouble(matcher.group(1));
+        var suffix = matcher.group(2);
+        var unit = unit(suffix);
+        if (!Double.isFinite(value) || (suffix != null && unit == null)) {
+            return null;
+        }
+        return new NumericText(value, unit);
+    }
+
+    /**
+     * The trimmed unit, or {@code null} when it is blank or too long to store.
+     */
+    public static String unit(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        var unit = text.trim();
+        return unit.length() <= MAX_UNIT_LENGTH ? unit : null;
+    }
+}
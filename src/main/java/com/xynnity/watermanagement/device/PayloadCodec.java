@@ -0,0 +1,356 @@
+package com.xynnity.watermanagement.device;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+import com.xynnity.watermanagement.mqtt.TopicFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Stores payloads of configured topic patterns as raw deflate streams compressed against a preset
+ * dictionary per pattern, and turns stored payloads back into text.
+ * <p>
+ * A pattern's dictionary is trained at startup from its most recent stored payloads or, on an empty
+ * database, from the first payloads it receives; until then its payloads are deflated without one.
+ * Dictionaries are persisted before any payload uses them and are never replaced in place, so every
+ * stored payload stays decodable. Payloads that do not shrink are kept as text.
+ * <p>
+ * The {@code device.payload.bytes} counters compare original and stored sizes, and the
+ * {@code device.payload.codec} timer measures encode and decode cost per payload.
+ */
+@Component
+public class PayloadCodec implements ApplicationRunner {
+
+    /**
+     * Dictionary id of payloads deflated without a preset dictionary.
+     */
+    public static final int NO_DICTIONARY = 0;
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadCodec.class);
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final PayloadDictionaryRepository dictionaryRepository;
+    private final DeviceEventRepository eventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final IngestionProperties.Compression properties;
+    private final List<TopicPattern> patterns;
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final Counter originalBytes;
+    private final Counter storedBytes;
+    private final Timer encodeTimer;
+    private final Timer decodeTimer;
+
+    public PayloadCodec(PayloadDictionaryRepository dictionaryRepository,
+                        DeviceEventRepository eventRepository,
+                        PlatformTransactionManager transactionManager,
+                        IngestionProperties ingestionProperties,
+                        MeterRegistry meterRegistry) {
+        this.dictionaryRepository = dictionaryRepository;
+        this.eventRepository = eventRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // a dictionary must be committed even when the transaction of the event that completed training rolls back
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = ingestionProperties.getCompression();
+        this.patterns = properties.getTopicPatterns().stream().map(TopicPattern::new).toList();
+        this.originalBytes = Counter.builder("device.payload.bytes")
+                .tag("form", "original")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.storedBytes = Counter.builder("device.payload.bytes")
+                .tag("form", "stored")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.encodeTimer = Timer.builder("device.payload.codec")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        this.decodeTimer = Timer.builder("device.payload.codec")
+                .tag("operation", "decode")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isEnabled() || patterns.isEmpty()) {
+            return;
+        }
+        List<DeviceEvent> recent = null;
+        for (var pattern : patterns) {
+            var stored = dictionaryRepository.findTopByTopicPatternOrderByIdDesc(pattern.filter);
+            if (stored.isPresent()) {
+                var dictionary = stored.get();
+                dictionaries.put(dictionary.getId(), dictionary.getContent());
+                pattern.activate(new Trained(dictionary.getId(), dictionary.getContent()));
+                log.debug("Using payload dictionary {} ({} bytes) for topics {}",
+                        dictionary.getId(), dictionary.getContent().length, pattern.filter);
+                continue;
+            }
+            if (recent == null) {
+                recent = eventRepository.findByOrderByReceivedAtDesc(Limit.of(properties.getTrainingSamples() * patterns.size()));
+            }
+            List<String> samples = new ArrayList<>();
+            for (int i = recent.size() - 1; i >= 0 && samples.size() < properties.getTrainingSamples(); i--) {
+                var event = recent.get(i);
+                if (pattern == match(event.getTopic())) {
+                    var payload = payloadOf(event);
+                    if (payload != null) {
+                        samples.add(payload);
+                    }
+                }
+            }
+            if (!samples.isEmpty()) {
+                train(pattern, samples);
+            }
+        }
+    }
+
+    @PreDestroy
+    void release() {
+        deflaters.forEach(Deflater::end);
+        inflaters.forEach(Inflater::end);
+    }
+
+    /**
+     * Replaces the payload text of a new event with its compressed form when compression is enabled,
+     * the topic matches a pattern and the result is smaller.
+     */
+    void encode(DeviceEvent event) {
+        var text = event.getPayload();
+        if (!properties.isEnabled() || text == null) {
+            return;
+        }
+        var pattern = match(event.getTopic());
+        if (pattern == null) {
+            return;
+        }
+        var raw = text.getBytes(StandardCharsets.UTF_8);
+        if (raw.length == 0 || raw.length < properties.getMinPayloadBytes()) {
+            return;
+        }
+        var trained = pattern.trained;
+        if (trained == null) {
+            var samples = pattern.sample(text, properties.getTrainingSamples());
+            if (samples != null) {
+                try {
+                    trained = train(pattern, samples);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to train payload dictionary for topics {}; deflating without one", pattern.filter, e);
+                }
+            }
+        }
+        long started = System.nanoTime();
+        var deflater = deflater();
+        try {
+            if (trained != null) {
+                deflater.setDictionary(trained.content());
+            }
+            deflater.setInput(raw);
+            deflater.finish();
+            // only a strictly smaller result is worth storing
+            var out = new byte[raw.length - 1];
+            int length = 0;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            originalBytes.increment(raw.length);
+            if (!deflater.finished()) {
+                storedBytes.increment(raw.length);
+                return;
+            }
+            storedBytes.increment(length);
+            event.setPayloadDeflated(Arrays.copyOf(out, length));
+            event.setPayloadDictionary(trained != null ? trained.id() : NO_DICTIONARY);
+            event.setDecodedPayload(text);
+            event.setPayload(null);
+        } finally {
+            release(deflater);
+            encodeTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Payload text of a stored or new event, inflating it if it is stored compressed.
+     */
+    public String payloadOf(DeviceEvent event) {
+        if (event.getPayload() != null || event.getPayloadDeflated() == null) {
+            return event.getPayload();
+        }
+        var text = event.getDecodedPayload();
+        if (text == null) {
+            text = inflate(event.getPayloadDeflated(), event.getPayloadDictionary());
+            event.setDecodedPayload(text);
+        }
+        return text;
+    }
+
+    /**
+     * Payload text from the {@code payload}, {@code payload_deflated} and {@code payload_dictionary}
+     * columns of a {@code device_events} row.
+     */
+    public String decode(String payload, byte[] deflated, Integer dictionaryId) {
+        if (payload != null || deflated == null) {
+            return payload;
+        }
+        return inflate(deflated, dictionaryId);
+    }
+
+    private String inflate(byte[] deflated, Integer dictionaryId) {
+        var dictionary = dictionaryId == null || dictionaryId == NO_DICTIONARY ? null : dictionary(dictionaryId);
+        long started = System.nanoTime();
+        var inflater = inflater();
+        try {
+            if (dictionary != null) {
+                inflater.setDictionary(dictionary);
+            }
+            inflater.setInput(deflated);
+            var out = new byte[Math.max(64, deflated.length * 4)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                int inflated = inflater.inflate(out, length, out.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed payload");
+                }
+                length += inflated;
+            }
+            return new String(out, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed payload", e);
+        } finally {
+            release(inflater);
+            decodeTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private byte[] dictionary(int id) {
+        return dictionaries.computeIfAbsent(id, key -> dictionaryRepository.findById(key)
+                .map(PayloadDictionary::getContent)
+                .orElseThrow(() -> new IllegalStateException("Unknown payload dictionary " + key)));
+    }
+
+    private Trained train(TopicPattern pattern, List<String> samples) {
+        var content = PayloadDictionaryTrainer.train(samples, properties.getDictionarySize());
+        var dictionary = new PayloadDictionary();
+        dictionary.setTopicPattern(pattern.filter);
+        dictionary.setContent(content);
+        dictionary.setCreatedAt(Instant.now());
+        var saved = transactionTemplate.execute(status -> dictionaryRepository.save(dictionary));
+        dictionaries.put(saved.getId(), content);
+        var trained = new Trained(saved.getId(), content);
+        pattern.activate(trained);
+        log.info("Trained payload dictionary {} ({} bytes) for topics {} from {} payloads",
+                saved.getId(), content.length, pattern.filter, samples.size());
+        return trained;
+    }
+
+    private TopicPattern match(String topic) {
+        if (topic == null) {
+            return null;
+        }
+        for (var pattern : patterns) {
+            if (pattern.matches(topic)) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    private Deflater deflater() {
+        var deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private Inflater inflater() {
+        var inflater = inflaters.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    private void release(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    private record Trained(int id, byte[] content) {
+    }
+
+    /**
+     * MQTT topic filter with the dictionary its payloads are compressed with.
+     */
+    private static final class TopicPattern {
+
+        private final String filter;
+        private final TopicFilter topicFilter;
+        private volatile Trained trained;
+        private List<String> samples = new ArrayList<>();
+
+        TopicPattern(String filter) {
+            this.filter = filter;
+            this.topicFilter = new TopicFilter(filter);
+        }
+
+        boolean matches(String topic) {
+            return topicFilter.matches(topic);
+        }
+
+        synchronized void activate(Trained trained) {
+            this.trained = trained;
+            this.samples = null;
+        }
+
+        /**
+         * Collects a payload to train from; returns the collected payloads once there are enough,
+         * exactly once.
+         */
+        synchronized List<String> sample(String payload, int needed) {
+            if (samples == null) {
+                return null;
+            }
+            samples.add(payload);
+            if (samples.size() < needed) {
+                return null;
+            }
+            var collected = samples;
+            samples = null;
+            return collected;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.xynnity.watermanagement.device;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PayloadDictionaryRepository extends JpaRepository<PayloadDictionary, Integer> {
+
+    Optional<PayloadDictionary> findTopByTopicPatternOrderByIdDesc(String topicPattern);
+}
@@ -0,0 +1,68 @@
+package com.xynnity.watermanagement.device;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a preset deflate dictionary from sample payloads. Meter payloads repeat the same keys,
+ * punctuation and identifiers and differ mostly in their digits, so the dictionary is made of the
+ * non-digit runs that recur across samples, least valuable first, followed by the latest samples
+ * verbatim. Deflate encodes matches against the end of the dictionary most cheaply, and trimming to
+ * size drops the front.
+ */
+final class PayloadDictionaryTrainer {
+
+    private static final int MIN_FRAGMENT_LENGTH = 3;
+
+    private PayloadDictionaryTrainer() {
+    }
+
+    /**
+     * Dictionary of at most {@code size} bytes trained from {@code samples}, oldest sample first.
+     */
+    static byte[] train(List<String> samples, int size) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (var sample : samples) {
+            fragments(sample, counts);
+        }
+        var out = new ByteArrayOutputStream(size);
+        counts.entrySet().stream()
+                .filter(entry -> entry.getValue() > 1)
+                .sorted(Comparator.comparingLong((Map.Entry<String, Integer> entry) -> (long) entry.getValue() * entry.getKey().length())
+                        .thenComparing(Map.Entry::getKey))
+                .forEach(entry -> out.writeBytes(entry.getKey().getBytes(StandardCharsets.UTF_8)));
+        var latest = new ArrayDeque<byte[]>();
+        int budget = size / 4;
+        for (int i = samples.size() - 1; i >= 0 && budget > 0; i--) {
+            var bytes = samples.get(i).getBytes(StandardCharsets.UTF_8);
+            latest.addFirst(bytes);
+            budget -= bytes.length;
+        }
+        latest.forEach(out::writeBytes);
+        var dictionary = out.toByteArray();
+        return dictionary.length <= size
+                ? dictionary
+                : Arrays.copyOfRange(dictionary, dictionary.length - size, dictionary.length);
+    }
+
+    private static void fragments(String sample, Map<String, Integer> counts) {
+        int start = -1;
+        for (int i = 0; i <= sample.length(); i++) {
+            boolean digit = i == sample.length() || Character.isDigit(sample.charAt(i));
+            if (!digit && start < 0) {
+                start = i;
+            } else if (digit && start >= 0) {
+                if (i - start >= MIN_FRAGMENT_LENGTH) {
+                    counts.merge(sample.substring(start, i), 1, Integer::sum);
+                }
+                start = -1;
+            }
+        }
+    }
+}
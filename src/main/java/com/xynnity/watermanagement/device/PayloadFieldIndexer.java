@@ -0,0 +1,98 @@
+package com.xynnity.watermanagement.device;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+/**
+ * Copies the configured payload fields into {@link DeviceEventAttribute} rows when an event is built.
+ * Paths are dot-separated object field names such as {@code valveState} or {@code valve.state}; only
+ * scalar values are indexed, as text.
+ */
+@Component
+public class PayloadFieldIndexer {
+
+    private final JsonFactory jsonFactory;
+    private final Set<String> paths;
+    private final int maxDepth;
+
+    public PayloadFieldIndexer(ObjectMapper objectMapper, IngestionProperties properties) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.paths = Set.copyOf(new HashSet<>(properties.getIndexedFields()));
+        this.maxDepth = paths.stream().mapToInt(path -> path.split("\\.").length).max().orElse(0);
+    }
+
+    public boolean isIndexed(String path) {
+        return paths.contains(path);
+    }
+
+    void attach(DeviceEvent event) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        extract(event.getPayload()).forEach((name, value) -> {
+            var attribute = new DeviceEventAttribute();
+            attribute.setEvent(event);
+            attribute.setName(name);
+            attribute.setValue(value);
+            attribute.setDeviceId(event.getDeviceId());
+            attribute.setClientId(event.getClientId());
+            attribute.setReceivedAt(event.getReceivedAt());
+            event.getAttributes().add(attribute);
+        });
+    }
+
+    Map<String, String> extract(String payload) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (payload == null || payload.isEmpty()) {
+            return values;
+        }
+        try (var parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return values;
+            }
+            Deque<String> prefixes = new ArrayDeque<>();
+            prefixes.push("");
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.END_OBJECT) {
+                    prefixes.pop();
+                    continue;
+                }
+                if (token != JsonToken.FIELD_NAME) {
+                    continue;
+                }
+                var path = prefixes.peek() + parser.currentName();
+                var value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT) {
+                    if (prefixes.size() < maxDepth) {
+                        prefixes.push(path + '.');
+                    } else {
+                        parser.skipChildren();
+                    }
+                } else if (value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if (value != JsonToken.VALUE_NULL && paths.contains(path)) {
+                    var text = parser.getText();
+                    values.putIfAbsent(path, text.length() > DeviceEventAttribute.MAX_VALUE_LENGTH
+                            ? text.substring(0, DeviceEventAttribute.MAX_VALUE_LENGTH)
+                            : text);
+                }
+            }
+        } catch (IOException e) {
+            return values;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,400 @@
+package com.xynnity.watermanagement.device;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.MqttProperties;
+
+/**
+ * In-memory hot tier of recently published events. It serves the recent-event queries and the
+ * replays of resuming sessions without going to the database.
+ * <p>
+ * A global ring holds the last {@code mqtt.message-cache-size} events. Each device, client and
+ * device/client pair also keeps its own ring of the last {@value #RECENT_LIMIT} events, up to
+ * {@code mqtt.message-cache-keys} rings of each kind with the least recently used dropped first.
+ * Rings are created by published events, and by queries only when the database returned events for
+ * them, so queries for unknown keys do not grow the buffer. Entries are
+ * stored compactly: identifiers and topics point to one shared instance, and the receipt time is
+ * kept as primitives rather than an {@link Instant}.
+ * <p>
+ * The global ring is warmed from the database at startup. A keyed ring can answer queries once it
+ * has been seeded from the database or has filled up with live events. Until then, callers fall back
+ * to the repository.
+ * <p>
+ * In cluster mode other nodes persist events this buffer never sees, so it answers no queries and
+ * every caller falls back to the repository.
+ */
+@Component
+public class RecentEventBuffer implements ApplicationRunner {
+
+    static final int RECENT_LIMIT = 50;
+
+    private static final Logger log = LoggerFactory.getLogger(RecentEventBuffer.class);
+    private static final int MAX_INTERNED_TOPICS = 10_000;
+    private static final Comparator<Entry> RECEIPT_ORDER = Comparator
+            .comparingLong((Entry entry) -> entry.epochSecond)
+            .thenComparingInt(entry -> entry.nanos)
+            .thenComparingLong(entry -> entry.id);
+
+    private final DeviceEventRepository repository;
+    private final PayloadCodec payloadCodec;
+    private final Entry[] ring;
+    private final boolean clustered;
+    private final Map<String, KeyRing> byDevice;
+    private final Map<String, KeyRing> byClient;
+    private final Map<String, KeyRing> byPair;
+    private final Map<String, String> topics = new HashMap<>();
+    private final Set<Long> warmedIds = new HashSet<>();
+    private int head;
+    private int size;
+    private boolean warmed;
+
+    public RecentEventBuffer(DeviceEventRepository repository,
+                             PayloadCodec payloadCodec,
+                             MqttProperties properties,
+                             ClusterProperties clusterProperties) {
+        this.repository = repository;
+        this.payloadCodec = payloadCodec;
+        this.clustered = clusterProperties.isEnabled();
+        this.ring = new Entry[clustered ? 0 : properties.getMessageCacheSize()];
+        int maxKeys = properties.getMessageCacheKeys();
+        this.byDevice = boundedRings(maxKeys);
+        this.byClient = boundedRings(maxKeys);
+        this.byPair = boundedRings(maxKeys);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        var latest = ring.length > 0
+                ? repository.findByOrderByReceivedAtDesc(Limit.of(ring.length))
+                : List.<DeviceEvent>of();
+        synchronized (this) {
+            warm(latest);
+        }
+        log.debug("Warmed hot event tier with {} events", latest.size());
+    }
+
+    public synchronized void append(DeviceEventDto event) {
+        if (clustered || event.id() == null || event.receivedAt() == null) {
+            return;
+        }
+        var deviceRing = keyRing(byDevice, event.deviceId());
+        var clientRing = keyRing(byClient, event.clientId());
+        var entry = new Entry(event.id(), event.receivedAt(), deviceRing.key, clientRing.key,
+                internTopic(event.topic()), event.payload(), event.qos(), event.retained());
+        // an event already loaded when the tier was warmed may still be published afterwards
+        boolean warmedEarlier = !warmedIds.isEmpty() && warmedIds.remove(entry.id);
+        if (ring.length > 0 && !warmedEarlier) {
+            push(entry);
+        }
+        deviceRing.add(entry);
+        clientRing.add(entry);
+        if (entry.deviceId != null && entry.clientId != null) {
+            keyRing(byPair, pairKey(entry.deviceId, entry.clientId)).add(entry);
+        }
+    }
+
+    /**
+     * The {@value #RECENT_LIMIT} most recently received events matching the filters, newest first, or
+     * empty when the buffer cannot yet guarantee it holds all of them.
+     */
+    public synchronized Optional<List<DeviceEventDto>> recentEvents(String deviceId, String clientId) {
+        if (clustered) {
+            return Optional.empty();
+        }
+        boolean byDeviceId = hasText(deviceId);
+        boolean byClientId = hasText(clientId);
+        if (!byDeviceId && !byClientId) {
+            if (ring.length < RECENT_LIMIT || (!warmed && size < RECENT_LIMIT)) {
+                return Optional.empty();
+            }
+            var entries = new ArrayList<Entry>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(ring[(head + i) % ring.length]);
+            }
+            return Optional.of(newestFirst(entries));
+        }
+        var keyRing = byDeviceId && byClientId
+                ? byPair.get(pairKey(deviceId, clientId))
+                : byDeviceId ? byDevice.get(deviceId) : byClient.get(clientId);
+        if (keyRing == null || keyRing == KeyRing.DETACHED || !keyRing.complete) {
+            return Optional.empty();
+        }
+        return Optional.of(newestFirst(keyRing.entries()));
+    }
+
+    /**
+     * Records the repository's answer for a recent-event query whose keyed ring was not yet complete,
+     * so the next query for the same filters is served from memory.
+     */
+    public synchronized void seed(String deviceId, String clientId, List<DeviceEventDto> events) {
+        boolean byDeviceId = hasText(deviceId);
+        boolean byClientId = hasText(clientId);
+        if (clustered || (!byDeviceId && !byClientId)) {
+            return;
+        }
+        var rings = byDeviceId && byClientId ? byPair : byDeviceId ? byDevice : byClient;
+        var key = byDeviceId && byClientId ? pairKey(deviceId, clientId) : byDeviceId ? deviceId : clientId;
+        // a key the database knows nothing about gets no ring; it would only take up space
+        var keyRing = events.isEmpty() ? rings.get(key) : keyRing(rings, key);
+        if (keyRing == null) {
+            return;
+        }
+        var entries = new ArrayList<Entry>(events.size());
+        for (var event : events) {
+            if (event.id() != null && event.receivedAt() != null) {
+                entries.add(toEntry(event));
+            }
+        }
+        keyRing.merge(entries);
+    }
+
+    /**
+     * Events matching the filters that were published after the event {@code lastEventId}, in
+     * publication order, or empty when that event is no longer in the global ring. The ring is filled
+     * in publication order and evicts the oldest entry first, so everything published after an event
+     * it still holds is in the ring behind it, whatever the order of ids and receipt times. Events
+     * loaded when the tier was warmed come first, in receipt order.
+     */
+    public synchronized Optional<List<DeviceEventDto>> eventsPublishedAfter(long lastEventId,
+                                                                            String deviceId,
+                                                                            String clientId) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (ring[(head + i) % ring.length].id != lastEventId) {
+                continue;
+            }
+            var events = new ArrayList<DeviceEventDto>(size - 1 - i);
+            for (int j = i + 1; j < size; j++) {
+                var entry = ring[(head + j) % ring.length];
+                if (entry.matches(deviceId, clientId)) {
+                    events.add(entry.toDto());
+                }
+            }
+            return Optional.of(events);
+        }
+        return Optional.empty();
+    }
+
+    private void warm(List<DeviceEvent> latest) {
+        var merged = new ArrayList<Entry>(size + latest.size());
+        var present = new HashSet<Long>();
+        for (int i = 0; i < size; i++) {
+            var entry = ring[(head + i) % ring.length];
+            merged.add(entry);
+            present.add(entry.id);
+        }
+        for (var event : latest) {
+            if (event.getId() != null && event.getReceivedAt() != null && present.add(event.getId())) {
+                merged.add(new Entry(event.getId(), event.getReceivedAt(), canonical(byDevice, event.getDeviceId()),
+                        canonical(byClient, event.getClientId()), internTopic(event.getTopic()), payloadCodec.payloadOf(event),
+                        event.getQos(), event.isRetained()));
+                warmedIds.add(event.getId());
+            }
+        }
+        merged.sort(RECEIPT_ORDER);
+        Arrays.fill(ring, null);
+        head = 0;
+        size = 0;
+        for (int i = Math.max(0, merged.size() - ring.length); i < merged.size(); i++) {
+            ring[size++] = merged.get(i);
+        }
+        warmed = true;
+    }
+
+    private void push(Entry entry) {
+        int tail = (head + size) % ring.length;
+        if (size == ring.length) {
+            var evicted = ring[head];
+            if (!warmedIds.isEmpty()) {
+                warmedIds.remove(evicted.id);
+            }
+            head = (head + 1) % ring.length;
+        } else {
+            size++;
+        }
+        ring[tail] = entry;
+    }
+
+    private Entry toEntry(DeviceEventDto event) {
+        return new Entry(event.id(), event.receivedAt(), canonical(byDevice, event.deviceId()),
+                canonical(byClient, event.clientId()), internTopic(event.topic()), event.payload(),
+                event.qos(), event.retained());
+    }
+
+    private static Map<String, KeyRing> boundedRings(int maxEntries) {
+        return new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, KeyRing> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static KeyRing keyRing(Map<String, KeyRing> rings, String key) {
+        if (!hasText(key)) {
+            return KeyRing.DETACHED;
+        }
+        return rings.computeIfAbsent(key, KeyRing::new);
+    }
+
+    /**
+     * Returns the instance held by the key's ring, if it has one, so every entry of a device or client
+     * shares it.
+     */
+    private static String canonical(Map<String, KeyRing> rings, String key) {
+        var keyRing = key != null ? rings.get(key) : null;
+        return keyRing != null ? keyRing.key : key;
+    }
+
+    private String internTopic(String topic) {
+        if (topic == null) {
+            return null;
+        }
+        var existing = topics.get(topic);
+        if (existing != null) {
+            return existing;
+        }
+        if (topics.size() < MAX_INTERNED_TOPICS) {
+            topics.put(topic, topic);
+        }
+        return topic;
+    }
+
+    private static List<DeviceEventDto> newestFirst(List<Entry> entries) {
+        entries.sort(RECEIPT_ORDER.reversed());
+        int count = Math.min(RECENT_LIMIT, entries.size());
+        var events = new ArrayList<DeviceEventDto>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(entries.get(i).toDto());
+        }
+        return events;
+    }
+
+    private static String pairKey(String deviceId, String clientId) {
+        return deviceId + '\u0000' + clientId;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    /**
+     * Last {@value #RECENT_LIMIT} events of one device, client or pair, in receipt order.
+     */
+    private static final class KeyRing {
+
+        static final KeyRing DETACHED = new KeyRing(null);
+
+        final String key;
+        private final Entry[] entries = new Entry[RECENT_LIMIT];
+        private int head;
+        private int size;
+        private boolean complete;
+
+        KeyRing(String key) {
+            this.key = key;
+        }
+
+        void add(Entry entry) {
+            if (this == DETACHED) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                if (entries[(head + i) % RECENT_LIMIT].id == entry.id) {
+                    return;
+                }
+            }
+            int tail = (head + size) % RECENT_LIMIT;
+            if (size == RECENT_LIMIT) {
+                head = (head + 1) % RECENT_LIMIT;
+            } else {
+                size++;
+            }
+            entries[tail] = entry;
+            complete |= size == RECENT_LIMIT;
+        }
+
+        void merge(List<Entry> seeded) {
+            var merged = entries();
+            var present = new HashSet<Long>();
+            merged.forEach(entry -> present.add(entry.id));
+            for (var entry : seeded) {
+                if (present.add(entry.id)) {
+                    merged.add(entry);
+                }
+            }
+            merged.sort(RECEIPT_ORDER);
+            Arrays.fill(entries, null);
+            head = 0;
+            size = 0;
+            for (int i = Math.max(0, merged.size() - RECENT_LIMIT); i < merged.size(); i++) {
+                entries[size++] = merged.get(i);
+            }
+            complete = true;
+        }
+
+        List<Entry> entries() {
+            var copy = new ArrayList<Entry>(size);
+            for (int i = 0; i < size; i++) {
+                copy.add(entries[(head + i) % RECENT_LIMIT]);
+            }
+            return copy;
+        }
+    }
+
+    private static final class Entry {
+
+        final long id;
+        final long epochSecond;
+        final int nanos;
+        final String deviceId;
+        final String clientId;
+        final String topic;
+        final String payload;
+        final byte qos;
+        final boolean retained;
+
+        Entry(long id, Instant receivedAt, String deviceId, String clientId, String topic, String payload,
+              int qos, boolean retained) {
+            this.id = id;
+            this.epochSecond = receivedAt.getEpochSecond();
+            this.nanos = receivedAt.getNano();
+            this.deviceId = deviceId;
+            this.clientId = clientId;
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = (byte) qos;
+            this.retained = retained;
+        }
+
+        boolean matches(String deviceId, String clientId) {
+            if (hasText(deviceId) && !Objects.equals(deviceId, this.deviceId)) {
+                return false;
+            }
+            return !hasText(clientId) || Objects.equals(clientId, this.clientId);
+        }
+
+        DeviceEventDto toDto() {
+            return new DeviceEventDto(id, deviceId, clientId, topic, payload, qos, retained,
+                    Instant.ofEpochSecond(epochSecond, nanos));
+        }
+    }
+}
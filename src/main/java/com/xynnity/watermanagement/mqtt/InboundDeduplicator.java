@@ -0,0 +1,195 @@
+package com.xynnity.watermanagement.mqtt;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Recognizes MQTT messages redelivered after a reconnect, keyed on device id, device timestamp and a
+ * hash of the raw payload.
+ * <p>
+ * Two Bloom filter generations answer most lookups: a miss in both means the key is new. Keys are
+ * inserted into the current generation, which is cleared and becomes current again every other
+ * window, so a key is remembered for one to two windows in bounded memory. A Bloom hit is confirmed
+ * against an exact set of the keys inserted in the same generations; a hit without an exact key is a
+ * false positive and the message is let through. The exact set is capped, so once it overflows a
+ * hit on an evicted key also counts as a false positive and the message is kept.
+ * <p>
+ * A key is recorded when its message is accepted, so a redelivery racing the first copy's
+ * persistence is still caught. If that persistence fails the key is {@linkplain #forget forgotten}
+ * again, and a later redelivery hits only the Bloom filter and is let through.
+ */
+final class InboundDeduplicator {
+
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final BloomFilter[] filters = new BloomFilter[2];
+    private final LinkedHashMap<Key, Long> exactKeys;
+    private final Counter duplicates;
+    private final Counter bloomMisses;
+    private final Counter falsePositives;
+    private int current;
+    private long generation;
+    private long rotatedAt;
+
+    InboundDeduplicator(IngestionProperties.Deduplication properties, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.windowNanos = properties.getWindow().toNanos();
+        this.clock = clock;
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = new BloomFilter(properties.getExpectedMessages(), properties.getFalsePositiveProbability());
+        }
+        int maxExactKeys = properties.getMaxExactKeys();
+        this.exactKeys = new LinkedHashMap<>(16, 0.75f) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                return size() > maxExactKeys;
+            }
+        };
+        this.rotatedAt = clock.getAsLong();
+        this.duplicates = Counter.builder("mqtt.messages.duplicates")
+                .description("Inbound messages dropped as redeliveries")
+                .register(meterRegistry);
+        this.bloomMisses = Counter.builder("mqtt.deduplication.bloom")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder("mqtt.deduplication.bloom")
+                .tag("result", "false-positive")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.deduplication.bloom.false.positive.rate", this, InboundDeduplicator::falsePositiveRate)
+                .description("Share of new keys the Bloom filters reported as already seen")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records the message and returns {@code true} if an identical one was seen within the window.
+     * Messages without a device timestamp are always new.
+     */
+    synchronized boolean isDuplicate(String deviceId, String deviceTimestamp, String payload) {
+        if (deviceTimestamp == null || deviceTimestamp.isBlank()) {
+            return false;
+        }
+        rotateIfDue();
+        var key = new Key(deviceId, deviceTimestamp, hash(payload));
+        long h1 = key.hash64();
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        if (filters[0].mightContain(h1, h2) || filters[1].mightContain(h1, h2)) {
+            if (exactKeys.containsKey(key)) {
+                duplicates.increment();
+                return true;
+            }
+            falsePositives.increment();
+        } else {
+            bloomMisses.increment();
+        }
+        filters[current].put(h1, h2);
+        exactKeys.put(key, generation);
+        return false;
+    }
+
+    /**
+     * Removes a key recorded by {@link #isDuplicate} whose message could not be persisted.
+     */
+    synchronized void forget(String deviceId, String deviceTimestamp, String payload) {
+        if (deviceTimestamp == null || deviceTimestamp.isBlank()) {
+            return;
+        }
+        exactKeys.remove(new Key(deviceId, deviceTimestamp, hash(payload)));
+    }
+
+    private void rotateIfDue() {
+        long now = clock.getAsLong();
+        if (now - rotatedAt < windowNanos) {
+            return;
+        }
+        long elapsed = (now - rotatedAt) / windowNanos;
+        rotatedAt = now;
+        // after two windows of silence both generations have expired
+        for (long i = 0; i < Math.min(elapsed, 2); i++) {
+            current ^= 1;
+            filters[current].clear();
+            generation++;
+        }
+        Iterator<Long> oldest = exactKeys.values().iterator();
+        while (oldest.hasNext() && oldest.next() < generation - 1) {
+            oldest.remove();
+        }
+    }
+
+    private double falsePositiveRate() {
+        double positives = falsePositives.count();
+        double total = positives + bloomMisses.count();
+        return total == 0 ? 0 : positives / total;
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over UTF-16 code units, finished with a 64-bit avalanche
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private record Key(String deviceId, String deviceTimestamp, long payloadHash) {
+
+        long hash64() {
+            return mix(payloadHash ^ (hash(deviceTimestamp) * 31) ^ (deviceId != null ? hash(deviceId) : 0L));
+        }
+    }
+
+    /**
+     * Fixed-size Bloom filter using double hashing over two 64-bit hashes.
+     */
+    private static final class BloomFilter {
+
+        private final long[] bits;
+        private final long size;
+        private final int hashes;
+
+        BloomFilter(int expectedInsertions, double falsePositiveProbability) {
+            long bitCount = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) Math.max(1, (bitCount + 63) / 64)];
+            this.size = bits.length * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) size / expectedInsertions * Math.log(2)));
+        }
+
+        boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, size);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, size);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(bits, 0L);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.xynnity.watermanagement.mqtt;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+import com.xynnity.watermanagement.device.DeviceEventService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Tracks how full the bounded ingestion queues are and derives a pressure state from the
+ * {@code ingestion.backpressure} watermarks. Messages on low-priority topics are shed while the
+ * state is above normal, and listeners remove low-priority subscriptions while it is paused.
+ * <p>
+ * High-priority traffic is never dropped. With manual acknowledgements the broker stops sending once
+ * its in-flight window of unacknowledged messages is used up, so the MQTT callback thread only waits
+ * for queue space briefly instead of stalling until the broker drops the connection.
+ */
+@Component
+public final class IngestionPressureMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionPressureMonitor.class);
+
+    public enum PressureState {
+        /**
+         * Everything is accepted.
+         */
+        NORMAL,
+        /**
+         * Low-priority messages are acknowledged and dropped.
+         */
+        SHEDDING,
+        /**
+         * Low-priority subscriptions are removed; anything still arriving on them is shed.
+         */
+        PAUSED
+    }
+
+    private final IngestionProperties.Backpressure properties;
+    private final List<TopicFilter> lowPriorityTopics;
+    private final List<DoubleSupplier> queues = new CopyOnWriteArrayList<>();
+    private final List<Consumer<PressureState>> listeners = new CopyOnWriteArrayList<>();
+    private final Map<PressureState, Counter> timeInState = new EnumMap<>(PressureState.class);
+    private final Counter shed;
+    private final ScheduledExecutorService sampler;
+
+    private volatile PressureState state = PressureState.NORMAL;
+    private volatile double fill;
+    private long sampledAt;
+
+    public IngestionPressureMonitor(IngestionProperties ingestionProperties,
+                                    DeviceEventService deviceEventService,
+                                    MeterRegistry meterRegistry) {
+        this.properties = ingestionProperties.getBackpressure();
+        this.lowPriorityTopics = properties.getLowPriorityTopics().stream().map(TopicFilter::new).toList();
+        this.queues.add(deviceEventService::writeBacklog);
+        for (var value : PressureState.values()) {
+            timeInState.put(value, Counter.builder("mqtt.ingestion.pressure.time")
+                    .description("Time spent in each ingestion pressure state")
+                    .tag("state", value.name().toLowerCase(Locale.ROOT))
+                    .baseUnit("seconds")
+                    .register(meterRegistry));
+        }
+        this.shed = Counter.builder("mqtt.messages.shed")
+                .description("Low-priority messages acknowledged and dropped under pressure")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.ingestion.pressure.state", this, monitor -> monitor.state.ordinal())
+                .register(meterRegistry);
+        Gauge.builder("mqtt.ingestion.queue.fill", this, monitor -> monitor.fill)
+                .register(meterRegistry);
+        this.sampler = properties.isEnabled()
+                ? Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("ingestion-pressure").factory())
+                : null;
+    }
+
+    @PostConstruct
+    void start() {
+        if (sampler == null) {
+            return;
+        }
+        sampledAt = System.nanoTime();
+        long interval = properties.getSampleInterval().toNanos();
+        sampler.scheduleAtFixedRate(this::sample, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    public PressureState state() {
+        return state;
+    }
+
+    /**
+     * Adds a bounded queue whose fill ratio, from 0 to 1, counts towards the pressure state.
+     */
+    public void watch(DoubleSupplier queueFill) {
+        queues.add(queueFill);
+    }
+
+    /**
+     * Registers a listener called on the sampling thread whenever the state changes.
+     */
+    public void onChange(Consumer<PressureState> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Whether a message on the topic should be dropped under the current pressure; counts it if so.
+     */
+    boolean shed(String topic) {
+        if (state == PressureState.NORMAL || !isLowPriority(topic)) {
+            return false;
+        }
+        shed.increment();
+        return true;
+    }
+
+    /**
+     * Whether the topic, or a subscription topic taken literally, matches one of the
+     * {@code ingestion.backpressure.low-priority-topics} filters.
+     */
+    boolean isLowPriority(String topic) {
+        for (var filter : lowPriorityTopics) {
+            if (filter.matches(topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            timeInState.get(state).increment((now - sampledAt) / 1e9);
+            sampledAt = now;
+            double current = 0;
+            for (var queue : queues) {
+                current = Math.max(current, queue.getAsDouble());
+            }
+            fill = current;
+            var next = next(state, current);
+            if (next == state) {
+                return;
+            }
+            log.info("Ingestion pressure {} -> {} at {}% queue fill", state, next, Math.round(current * 100));
+            state = next;
+            for (var listener : listeners) {
+                listener.accept(next);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to sample ingestion pressure", e);
+        }
+    }
+
+    private PressureState next(PressureState current, double fill) {
+        if (fill >= properties.getPauseWatermark()) {
+            return PressureState.PAUSED;
+        }
+        return switch (current) {
+            case PAUSED -> fill >= properties.getShedWatermark() ? PressureState.PAUSED
+                    : fill >= properties.getResumeWatermark() ? PressureState.SHEDDING : PressureState.NORMAL;
+            case SHEDDING -> fill >= properties.getResumeWatermark() ? PressureState.SHEDDING : PressureState.NORMAL;
+            case NORMAL -> fill >= properties.getShedWatermark() ? PressureState.SHEDDING : PressureState.NORMAL;
+        };
+    }
+}
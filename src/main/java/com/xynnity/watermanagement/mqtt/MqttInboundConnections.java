@@ -0,0 +1,178 @@
+package com.xynnity.watermanagement.mqtt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.context.IntegrationFlowContext;
+import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.IngestionProperties;
+import com.xynnity.watermanagement.config.MqttConfig;
+import com.xynnity.watermanagement.config.MqttProperties;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Opens the {@code mqtt.inbound.connections} inbound client connections of this node, each with its
+ * own in-flight window and Paho callback thread, all feeding {@link MqttConfig#MQTT_INBOUND_CHANNEL}.
+ * <p>
+ * Without a shared subscription group the subscription topics are dealt round-robin across the
+ * connections, so each topic is received exactly once and messages of one topic keep their order.
+ * With {@code mqtt.inbound.shared-group} every connection subscribes to every topic as
+ * {@code $share/<group>/<topic>} and the broker balances messages across connections and nodes; a
+ * device's messages may then be handled out of order. In cluster mode the cluster name is the
+ * shared group unless one is configured, so the nodes split the inbound traffic between them.
+ * <p>
+ * With backpressure enabled each connection acknowledges manually, in arrival order (see
+ * {@link OrderedAcknowledgments}). That only throttles the broker for QoS 1 and 2 subscriptions; at
+ * {@code mqtt.default-qos=0} nothing is acknowledged and only load shedding applies.
+ */
+@Component
+public class MqttInboundConnections {
+
+    private static final Logger log = LoggerFactory.getLogger(MqttInboundConnections.class);
+
+    private final MqttProperties properties;
+    private final ClusterProperties clusterProperties;
+    private final IngestionProperties ingestionProperties;
+    private final IntegrationFlowContext flowContext;
+    private final MessageChannel inboundChannel;
+    private final IngestionPressureMonitor pressureMonitor;
+
+    public MqttInboundConnections(MqttProperties properties,
+                                  ClusterProperties clusterProperties,
+                                  IngestionProperties ingestionProperties,
+                                  IntegrationFlowContext flowContext,
+                                  @Qualifier(MqttConfig.MQTT_INBOUND_CHANNEL) MessageChannel inboundChannel,
+                                  IngestionPressureMonitor pressureMonitor) {
+        this.properties = properties;
+        this.clusterProperties = clusterProperties;
+        this.ingestionProperties = ingestionProperties;
+        this.flowContext = flowContext;
+        this.inboundChannel = inboundChannel;
+        this.pressureMonitor = pressureMonitor;
+    }
+
+    @PostConstruct
+    void open() {
+        var inbound = properties.getInbound();
+        var topics = subscriptionTopics();
+        var sharedGroup = sharedGroup();
+        boolean shared = sharedGroup != null && !sharedGroup.isBlank();
+        int connections = inbound.getConnections();
+        if (!shared && connections > topics.size()) {
+            log.warn("{} inbound connections configured for {} subscription topics; opening {}",
+                    connections, topics.size(), topics.size());
+            connections = topics.size();
+        }
+        var backpressure = ingestionProperties.getBackpressure();
+        if (backpressure.isEnabled() && properties.getDefaultQos() == 0) {
+            log.warn("Ingestion backpressure is enabled but inbound subscriptions use QoS 0, so the broker is "
+                    + "never throttled; set mqtt.default-qos=1 to have it wait for acknowledgements");
+        }
+        var clientFactory = new DefaultMqttPahoClientFactory();
+        clientFactory.setConnectionOptions(MqttConfig.connectOptions(properties, inbound.getMaxInflight()));
+        for (int i = 0; i < connections; i++) {
+            List<String> shard = shared ? topics : shard(topics, i, connections);
+            var clientId = MqttConfig.clientId(properties, clusterProperties, connections > 1 ? "inbound-" + i : "inbound");
+            var adapter = new MqttPahoMessageDrivenChannelAdapter(clientId, clientFactory,
+                    shard.stream().map(topic -> subscription(topic, shared ? sharedGroup : null)).toArray(String[]::new));
+            adapter.setCompletionTimeout(5_000L);
+            adapter.setConverter(MqttConfig.defaultConverter());
+            adapter.setQos(properties.getDefaultQos());
+            var flow = IntegrationFlow.from(adapter);
+            if (backpressure.isEnabled()) {
+                adapter.setManualAcks(true);
+                pauseLowPriorityTopics(adapter, shard, shared ? sharedGroup : null);
+                var acknowledgments = new OrderedAcknowledgments();
+                flow = flow.intercept(new ChannelInterceptor() {
+                    @Override
+                    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                        return acknowledgments.sequence(message);
+                    }
+                });
+            }
+            flowContext.registration(flow.channel(inboundChannel).get())
+                    .id("mqttInbound-" + i)
+                    .register();
+            log.info("Inbound connection {} subscribed to {}", clientId, shard);
+        }
+    }
+
+    private String sharedGroup() {
+        var sharedGroup = properties.getInbound().getSharedGroup();
+        if ((sharedGroup == null || sharedGroup.isBlank()) && clusterProperties.isEnabled()) {
+            return clusterProperties.getName();
+        }
+        return sharedGroup;
+    }
+
+    private List<String> subscriptionTopics() {
+        var subscriptionTopics = properties.getSubscriptionTopics();
+        if (subscriptionTopics == null || subscriptionTopics.isEmpty()) {
+            return List.of(properties.getDefaultPublishTopic());
+        }
+        return List.copyOf(subscriptionTopics);
+    }
+
+    private static List<String> shard(List<String> topics, int index, int connections) {
+        List<String> shard = new ArrayList<>();
+        for (int i = index; i < topics.size(); i += connections) {
+            shard.add(topics.get(i));
+        }
+        return shard;
+    }
+
+    private static String subscription(String topic, String sharedGroup) {
+        return sharedGroup != null ? "$share/" + sharedGroup + "/" + topic : topic;
+    }
+
+    /**
+     * Unsubscribes the connection's low-priority subscription topics while ingestion is paused and
+     * subscribes them again once it recovers.
+     */
+    private void pauseLowPriorityTopics(MqttPahoMessageDrivenChannelAdapter adapter,
+                                        List<String> topics,
+                                        String sharedGroup) {
+        var pausable = topics.stream()
+                .filter(pressureMonitor::isLowPriority)
+                .map(topic -> subscription(topic, sharedGroup))
+                .toArray(String[]::new);
+        if (pausable.length == 0) {
+            return;
+        }
+        int qos = properties.getDefaultQos();
+        var paused = new AtomicBoolean();
+        pressureMonitor.onChange(state -> {
+            boolean pause = state == IngestionPressureMonitor.PressureState.PAUSED;
+            if (paused.get() == pause) {
+                return;
+            }
+            try {
+                if (pause) {
+                    adapter.removeTopic(pausable);
+                } else {
+                    int[] qosLevels = new int[pausable.length];
+                    Arrays.fill(qosLevels, qos);
+                    adapter.addTopics(pausable, qosLevels);
+                }
+                paused.set(pause);
+                log.info("{} low-priority subscriptions {}", pause ? "Paused" : "Resumed", Arrays.toString(pausable));
+            } catch (RuntimeException e) {
+                log.warn("Failed to {} low-priority subscriptions {}", pause ? "pause" : "resume", Arrays.toString(pausable), e);
+            }
+        });
+    }
+}
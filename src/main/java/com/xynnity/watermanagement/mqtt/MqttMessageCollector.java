@@ -7,152 +7,166 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.integration.StaticMessageHeaderAccessor;
 import org.springframework.integration.mqtt.support.MqttHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.xynnity.watermanagement.config.IngestionProperties;
 import com.xynnity.watermanagement.config.MqttProperties;
+import com.xynnity.watermanagement.device.DeviceClientResolver;
 import com.xynnity.watermanagement.device.DeviceEventService;
-import com.xynnity.watermanagement.device.DeviceRegistrationService;
+import com.xynnity.watermanagement.device.IngestionCallback;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Component
 public class MqttMessageCollector {
 
     private static final String RECEIVED_CLIENT_ID_HEADER = "mqtt_receivedClientId";
     private static final Logger log = LoggerFactory.getLogger(MqttMessageCollector.class);
+    private static final Runnable NO_ACKNOWLEDGMENT = () -> { };
 
     private final DeviceEventService deviceEventService;
-    private final ObjectMapper objectMapper;
+    private final PayloadEnricher payloadEnricher;
     private final MqttProperties properties;
-    private final DeviceRegistrationService deviceRegistrationService;
+    private final DeviceClientResolver clientResolver;
+    private final InboundDeduplicator deduplicator;
+    private final IngestionPressureMonitor pressureMonitor;
 
     public MqttMessageCollector(DeviceEventService deviceEventService,
                                 ObjectMapper objectMapper,
                                 MqttProperties properties,
-                                DeviceRegistrationService deviceRegistrationService) {
+                                DeviceClientResolver clientResolver,
+                                IngestionProperties ingestionProperties,
+                                IngestionPressureMonitor pressureMonitor,
+                                MeterRegistry meterRegistry) {
         this.deviceEventService = deviceEventService;
-        this.objectMapper = objectMapper;
+        this.payloadEnricher = new PayloadEnricher(objectMapper.getFactory());
         this.properties = properties;
-        this.deviceRegistrationService = deviceRegistrationService;
+        this.clientResolver = clientResolver;
+        this.pressureMonitor = pressureMonitor;
+        var deduplication = ingestionProperties.getDeduplication();
+        this.deduplicator = deduplication.isEnabled()
+                ? new InboundDeduplicator(deduplication, meterRegistry, System::nanoTime)
+                : null;
     }
 
+    /**
+     * Persists an inbound message. With manual acknowledgements the message is acknowledged once its
+     * event is committed, or straight away when it is dropped as a duplicate or shed under pressure.
+     * A message that cannot be prepared, or whose event cannot be persisted, is acknowledged as well:
+     * MQTT 3.1.1 has no negative acknowledgement, and an unacknowledged message would hold one of the
+     * broker's in-flight slots, and with ordered acknowledgments every later PUBACK, for the lifetime
+     * of the connection.
+     */
     public void store(Message<?> message) {
         var headers = message.getHeaders();
-        var payload = message.getPayload() == null ? "" : message.getPayload().toString();
         var topic = header(headers, MqttHeaders.RECEIVED_TOPIC);
+        var acknowledgment = StaticMessageHeaderAccessor.getAcknowledgment(message);
+        Runnable acknowledge = acknowledgment != null ? acknowledgment::acknowledge : NO_ACKNOWLEDGMENT;
+        if (pressureMonitor.shed(topic)) {
+            log.trace("Shedding low-priority MQTT message topic={} under {} pressure", topic, pressureMonitor.state());
+            acknowledge.run();
+            return;
+        }
+        var payload = message.getPayload() == null ? "" : message.getPayload().toString();
         var qos = header(headers, MqttHeaders.RECEIVED_QOS, Integer.class).orElse(0);
         var retained = header(headers, MqttHeaders.RECEIVED_RETAINED, Boolean.class).orElse(false);
         var clientId = header(headers, RECEIVED_CLIENT_ID_HEADER);
 
-        var identifiers = resolveIdentifiers(topic, payload, clientId);
-        var enrichedPayload = enrichPayload(payload, identifiers);
+        Runnable forgetKey = null;
+        Identifiers identifiers;
+        String enrichedPayload;
+        try {
+            var draft = payloadEnricher.parse(payload);
+            var deviceId = deviceId(topic, draft);
+            if (deduplicator != null) {
+                var dedupKey = deviceId != null ? deviceId : topic;
+                if (deduplicator.isDuplicate(dedupKey, draft.deviceTimestamp(), payload)) {
+                    log.debug("Dropping redelivered MQTT message topic={}, deviceId={}, deviceTimestamp={}",
+                            topic, deviceId, draft.deviceTimestamp());
+                    acknowledge.run();
+                    return;
+                }
+                forgetKey = () -> deduplicator.forget(dedupKey, draft.deviceTimestamp(), payload);
+            }
+            identifiers = resolveIdentifiers(topic, deviceId, draft, clientId);
+            enrichedPayload = enrichPayload(draft, identifiers);
+        } catch (RuntimeException e) {
+            // the message never reaches ingest(), so no callback would release its acknowledgment slot
+            log.error("Failed to prepare MQTT message topic={}; acknowledging it without storing it", topic, e);
+            notPersisted(forgetKey, acknowledge);
+            return;
+        }
         log.debug("Received MQTT message topic={}, clientId={}, derivedDeviceId={}, payload={}",
                 topic, identifiers.clientId(), identifiers.deviceId(), enrichedPayload);
 
-        deviceEventService.recordEvent(
+        var forgetOnFailure = forgetKey;
+        deviceEventService.ingest(
                 topic,
                 enrichedPayload,
                 qos,
                 retained,
                 identifiers.deviceId(),
-                identifiers.clientId());
+                identifiers.clientId(),
+                new IngestionCallback() {
+                    @Override
+                    public void persisted() {
+                        acknowledge.run();
+                    }
+
+                    @Override
+                    public void failed(RuntimeException cause) {
+                        log.warn("Acknowledging MQTT message topic={} whose event could not be persisted", topic);
+                        notPersisted(forgetOnFailure, acknowledge);
+                    }
+                });
     }
 
-    private Identifiers resolveIdentifiers(String topic, String payload, String clientIdHeader) {
-        String extractedDeviceId = null;
-        String extractedClientId = normalize(clientIdHeader);
-
-        if (StringUtils.hasText(payload)) {
-            try {
-                JsonNode root = objectMapper.readTree(payload);
-                if (root.hasNonNull("deviceId")) {
-                    extractedDeviceId = root.get("deviceId").asText();
-                } else if (root.hasNonNull("device_id")) {
-                    extractedDeviceId = root.get("device_id").asText();
-                }
-                if (root.hasNonNull("clientId")) {
-                    extractedClientId = root.get("clientId").asText();
-                } else if (root.hasNonNull("client_id")) {
-                    extractedClientId = root.get("client_id").asText();
-                }
-            } catch (Exception ignored) {
-                // payload is not JSON; ignore
-                log.trace("Payload not parsed as JSON for topic {}: {}", topic, ignored.getMessage());
-            }
+    /**
+     * Acknowledges a message that was not stored, first forgetting its deduplication key so that a
+     * redelivery is stored rather than dropped as a duplicate.
+     */
+    private static void notPersisted(Runnable forgetKey, Runnable acknowledge) {
+        if (forgetKey != null) {
+            forgetKey.run();
         }
+        acknowledge.run();
+    }
 
+    private String deviceId(String topic, PayloadEnricher.Draft draft) {
+        String extractedDeviceId = draft.deviceId();
         if (!StringUtils.hasText(extractedDeviceId) && StringUtils.hasText(topic)) {
             extractedDeviceId = extractSegment(topic, properties.getTopicDeviceIdIndex());
         }
+        return normalize(extractedDeviceId);
+    }
+
+    private Identifiers resolveIdentifiers(String topic, String deviceId, PayloadEnricher.Draft draft, String clientIdHeader) {
+        String extractedClientId = draft.clientId() != null ? draft.clientId() : normalize(clientIdHeader);
+
         if (!StringUtils.hasText(extractedClientId) && StringUtils.hasText(topic)) {
             extractedClientId = extractSegment(topic, properties.getTopicClientIdIndex());
         }
 
-        final String deviceId = normalize(extractedDeviceId);
         String clientId = normalize(extractedClientId);
 
         if (!StringUtils.hasText(clientId) && StringUtils.hasText(deviceId)) {
-            clientId = deviceRegistrationService.findClientIdByDevice(deviceId)
-                    .or(() -> deviceEventService.latestClientIdForDevice(deviceId))
-                    .orElse(null);
+            clientId = clientResolver.resolveClientId(deviceId).orElse(null);
         }
 
         return new Identifiers(deviceId, normalize(clientId));
     }
 
-    private String enrichPayload(String originalPayload, Identifiers identifiers) {
+    private String enrichPayload(PayloadEnricher.Draft draft, Identifiers identifiers) {
         Instant now = Instant.now();
         String timestamp = now.toString();
         String date = now.atZone(ZoneOffset.UTC).toLocalDate().toString();
-
-        if (!StringUtils.hasText(originalPayload)) {
-            return buildPayload(null, identifiers.deviceId(), identifiers.clientId(), date, timestamp);
-        }
-
-        try {
-            JsonNode node = objectMapper.readTree(originalPayload);
-            if (node.isObject()) {
-                ObjectNode objectNode = (ObjectNode) node;
-                objectNode.put("timestamp", timestamp);
-                objectNode.put("date", date);
-                if (StringUtils.hasText(identifiers.deviceId())) {
-                    objectNode.put("deviceId", identifiers.deviceId());
-                }
-                if (StringUtils.hasText(identifiers.clientId())) {
-                    objectNode.put("clientId", identifiers.clientId());
-                }
-                return objectMapper.writeValueAsString(objectNode);
-            }
-        } catch (Exception e) {
-            log.trace("Unable to enrich payload as JSON, wrapping instead: {}", e.getMessage());
-        }
-
-        return buildPayload(originalPayload, identifiers.deviceId(), identifiers.clientId(), date, timestamp);
-    }
-
-    private String buildPayload(String value,
-                                String deviceId,
-                                String clientId,
-                                String date,
-                                String timestamp) {
-        ObjectNode wrapper = objectMapper.createObjectNode();
-        if (StringUtils.hasText(deviceId)) {
-            wrapper.put("deviceId", deviceId);
-        }
-        if (StringUtils.hasText(clientId)) {
-            wrapper.put("clientId", clientId);
-        }
-        wrapper.put("timestamp", timestamp);
-        wrapper.put("date", date);
-        if (value != null) {
-            wrapper.put("payload", value);
-        }
-        return wrapper.toString();
+        return draft.complete(identifiers.deviceId(), identifiers.clientId(), date, timestamp);
     }
 
     private <T> Optional<T> header(MessageHeaders headers, String key, Class<T> type) {
@@ -0,0 +1,79 @@
+package com.xynnity.watermanagement.mqtt;
+
+import java.util.ArrayDeque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.acks.SimpleAcknowledgment;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+/**
+ * Acknowledges the messages of one inbound connection in the order they arrived. MQTT 3.1.1 requires
+ * PUBACKs in the order of the PUBLISH packets, but messages are persisted on parallel lanes and in
+ * batches, so they complete out of order. Each message's acknowledgment is replaced by a slot in
+ * arrival order; a completed slot is only passed on to the connection once every earlier slot has
+ * completed.
+ * <p>
+ * {@link #sequence} must be called on the connection's callback thread, which sees messages in
+ * arrival order.
+ */
+final class OrderedAcknowledgments {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderedAcknowledgments.class);
+
+    private final ArrayDeque<Slot> pending = new ArrayDeque<>();
+
+    /**
+     * Returns the message with its acknowledgment replaced by the next slot, or unchanged if it has
+     * none.
+     */
+    Message<?> sequence(Message<?> message) {
+        var acknowledgment = StaticMessageHeaderAccessor.getAcknowledgment(message);
+        if (acknowledgment == null) {
+            return message;
+        }
+        var slot = new Slot(acknowledgment);
+        synchronized (this) {
+            pending.addLast(slot);
+        }
+        return MessageBuilder.fromMessage(message)
+                .setHeader(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, slot)
+                .build();
+    }
+
+    synchronized int pending() {
+        return pending.size();
+    }
+
+    private synchronized void release() {
+        // acknowledging under the lock keeps two completing threads from reordering their releases
+        Slot head;
+        while ((head = pending.peekFirst()) != null && head.completed) {
+            pending.pollFirst();
+            try {
+                head.delegate.acknowledge();
+            } catch (RuntimeException e) {
+                log.warn("Failed to acknowledge inbound MQTT message", e);
+            }
+        }
+    }
+
+    private final class Slot implements SimpleAcknowledgment {
+
+        private final SimpleAcknowledgment delegate;
+        private volatile boolean completed;
+
+        private Slot(SimpleAcknowledgment delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void acknowledge() {
+            completed = true;
+            release();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.xynnity.watermanagement.mqtt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHandlingException;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Hands inbound MQTT messages from the callback thread to a fixed set of worker lanes. Messages are
+ * hashed by topic or device id, so everything for one device is processed in order on one lane while
+ * different devices are processed in parallel. Each lane has a bounded queue; when it is full the
+ * callback thread blocks, which pushes back on the broker connection.
+ */
+public class PartitionedInboundDispatcher implements MessageHandler, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionedInboundDispatcher.class);
+
+    private final MessageHandler delegate;
+    private final IngestionProperties.PartitionKey partitionKey;
+    private final Integer deviceSegmentIndex;
+    private final Lane[] lanes;
+
+    private volatile boolean running = true;
+
+    public PartitionedInboundDispatcher(MessageHandler delegate,
+                                        IngestionProperties.Partitioning settings,
+                                        Integer deviceSegmentIndex,
+                                        MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.partitionKey = settings.getKey();
+        this.deviceSegmentIndex = deviceSegmentIndex;
+        this.lanes = new Lane[settings.getLanes()];
+        for (int i = 0; i < lanes.length; i++) {
+            var lane = new Lane(i, settings.getQueueCapacity(), meterRegistry);
+            Thread.Builder builder = settings.isVirtualThreads() ? Thread.ofVirtual() : Thread.ofPlatform();
+            lane.thread = builder.name("mqtt-inbound-lane-" + i).start(lane);
+            lanes[i] = lane;
+        }
+        log.info("Started {} inbound MQTT lanes keyed by {} (capacity {} each, virtualThreads={})",
+                lanes.length, partitionKey, settings.getQueueCapacity(), settings.isVirtualThreads());
+    }
+
+    @Override
+    public void handleMessage(Message<?> message) {
+        if (!running) {
+            throw new MessageHandlingException(message, "Inbound dispatcher has been shut down");
+        }
+        var lane = lanes[laneIndex(message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC, String.class))];
+        if (lane.queue.offer(message)) {
+            return;
+        }
+        lane.blocked.increment();
+        try {
+            lane.queue.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageHandlingException(message, "Interrupted while dispatching to lane " + lane.index, e);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.thread.join();
+        }
+        log.info("Drained and stopped {} inbound MQTT lanes", lanes.length);
+    }
+
+    /**
+     * Fill ratio of the fullest lane queue, from 0 to 1.
+     */
+    public double fill() {
+        double fill = 0;
+        for (Lane lane : lanes) {
+            int size = lane.queue.size();
+            fill = Math.max(fill, (double) size / (size + lane.queue.remainingCapacity()));
+        }
+        return fill;
+    }
+
+    private int laneIndex(String topic) {
+        if (topic == null || lanes.length == 1) {
+            return 0;
+        }
+        int hash = partitionKey == IngestionProperties.PartitionKey.DEVICE
+                ? deviceSegmentHash(topic)
+                : topic.hashCode();
+        return (hash & 0x7fffffff) % lanes.length;
+    }
+
+    /**
+     * Hashes the device id segment of the topic in place; falls back to the whole topic when the
+     * segment is not present.
+     */
+    private int deviceSegmentHash(String topic) {
+        if (deviceSegmentIndex == null) {
+            return topic.hashCode();
+        }
+        int start = 0;
+        for (int segment = 0; segment < deviceSegmentIndex; segment++) {
+            start = topic.indexOf('/', start) + 1;
+            if (start == 0) {
+                return topic.hashCode();
+            }
+        }
+        int end = topic.indexOf('/', start);
+        if (end < 0) {
+            end = topic.length();
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + topic.charAt(i);
+        }
+        return hash;
+    }
+
+    private final class Lane implements Runnable {
+
+        private final int index;
+        private final BlockingQueue<Message<?>> queue;
+        private final Counter processed;
+        private final Counter failed;
+        private final Counter blocked;
+        private Thread thread;
+
+        private Lane(int index, int capacity, MeterRegistry meterRegistry) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            var tag = String.valueOf(index);
+            Gauge.builder("mqtt.inbound.lane.depth", queue, BlockingQueue::size)
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+            this.processed = Counter.builder("mqtt.inbound.lane.processed")
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+            this.failed = Counter.builder("mqtt.inbound.lane.failed")
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+            this.blocked = Counter.builder("mqtt.inbound.lane.blocked")
+                    .description("Dispatches that had to wait for space in the lane queue")
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                Message<?> message;
+                try {
+                    message = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Lane {} interrupted with {} messages queued", index, queue.size());
+                    return;
+                }
+                if (message == null) {
+                    continue;
+                }
+                try {
+                    delegate.handleMessage(message);
+                    processed.increment();
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    log.error("Lane {} failed to process message from topic {}", index,
+                            message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.xynnity.watermanagement.mqtt;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads an inbound payload once with the Jackson streaming parser, picking up device/client
+ * identifiers while copying the document into a generator, and writes the enriched document
+ * without materializing a {@code JsonNode} tree.
+ * <p>
+ * Top-level {@code timestamp}, {@code date}, {@code deviceId} and {@code clientId} fields are not
+ * copied; they are appended when the draft is completed. A blank or non-scalar identifier field is
+ * therefore dropped rather than carried through. The device's own {@code timestamp} is kept on the
+ * draft so redelivered messages can be recognized.
+ */
+final class PayloadEnricher {
+
+    private final JsonFactory jsonFactory;
+
+    PayloadEnricher(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Parses the payload. The returned draft is never {@code null}; payloads that are empty, not JSON
+     * or not a JSON object produce a draft that wraps the raw text on completion.
+     */
+    Draft parse(String payload) {
+        if (!StringUtils.hasText(payload)) {
+            return new Draft(null, null, null, null, null);
+        }
+        var writer = new StringWriter(payload.length() + 160);
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new Draft(payload, null, null, null, null);
+            }
+            JsonGenerator generator = jsonFactory.createGenerator(writer);
+            generator.writeStartObject();
+            String deviceId = null;
+            String deviceIdAlias = null;
+            String clientId = null;
+            String clientIdAlias = null;
+            String deviceTimestamp = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "deviceId" -> deviceId = scalarText(parser, value);
+                    case "clientId" -> clientId = scalarText(parser, value);
+                    case "timestamp" -> deviceTimestamp = scalarText(parser, value);
+                    case "date" -> parser.skipChildren();
+                    default -> {
+                        if ("device_id".equals(name)) {
+                            deviceIdAlias = scalarText(parser, value);
+                        } else if ("client_id".equals(name)) {
+                            clientIdAlias = scalarText(parser, value);
+                        }
+                        generator.writeFieldName(name);
+                        generator.copyCurrentStructure(parser);
+                    }
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                generator.close();
+                return new Draft(payload, null, null, null, null);
+            }
+            return new Draft(payload,
+                    deviceId != null ? deviceId : deviceIdAlias,
+                    clientId != null ? clientId : clientIdAlias,
+                    deviceTimestamp,
+                    new Body(generator, writer));
+        } catch (IOException e) {
+            return new Draft(payload, null, null, null, null);
+        }
+    }
+
+    private static String scalarText(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getValueAsString(null);
+    }
+
+    private record Body(JsonGenerator generator, StringWriter writer) {
+    }
+
+    /**
+     * Result of the single parse pass, completed once identifiers have been resolved.
+     */
+    final class Draft {
+
+        private final String original;
+        private final String deviceId;
+        private final String clientId;
+        private final String deviceTimestamp;
+        private final Body body;
+
+        private Draft(String original, String deviceId, String clientId, String deviceTimestamp, Body body) {
+            this.original = original;
+            this.deviceId = deviceId;
+            this.clientId = clientId;
+            this.deviceTimestamp = deviceTimestamp;
+            this.body = body;
+        }
+
+        /**
+         * Device id found in the payload, if any.
+         */
+        String deviceId() {
+            return deviceId;
+        }
+
+        /**
+         * Client id found in the payload, if any.
+         */
+        String clientId() {
+            return clientId;
+        }
+
+        /**
+         * Timestamp the device put in the payload, if any.
+         */
+        String deviceTimestamp() {
+            return deviceTimestamp;
+        }
+
+        String complete(String resolvedDeviceId, String resolvedClientId, String date, String timestamp) {
+            try {
+                if (body != null) {
+                    var generator = body.generator();
+                    generator.writeStringField("timestamp", timestamp);
+                    generator.writeStringField("date", date);
+                    writeIdentifiers(generator, resolvedDeviceId, resolvedClientId);
+                    generator.writeEndObject();
+                    generator.close();
+                    return body.writer().toString();
+                }
+                var writer = new StringWriter(160 + (original != null ? original.length() : 0));
+                try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+                    generator.writeStartObject();
+                    writeIdentifiers(generator, resolvedDeviceId, resolvedClientId);
+                    generator.writeStringField("timestamp", timestamp);
+                    generator.writeStringField("date", date);
+                    if (original != null) {
+                        generator.writeStringField("payload", original);
+                    }
+                    generator.writeEndObject();
+                }
+                return writer.toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write enriched payload", e);
+            }
+        }
+
+        private void writeIdentifiers(JsonGenerator generator, String resolvedDeviceId, String resolvedClientId)
+                throws IOException {
+            if (StringUtils.hasText(resolvedDeviceId)) {
+                generator.writeStringField("deviceId", resolvedDeviceId);
+            }
+            if (StringUtils.hasText(resolvedClientId)) {
+                generator.writeStringField("clientId", resolvedClientId);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.xynnity.watermanagement.mqtt;
+
+/**
+ * MQTT topic filter supporting the single-level {@code +} and multi-level {@code #} wildcards.
+ */
+public final class TopicFilter {
+
+    private final String filter;
+    private final String[] levels;
+
+    public TopicFilter(String filter) {
+        this.filter = filter;
+        this.levels = filter.split("/", -1);
+    }
+
+    public String filter() {
+        return filter;
+    }
+
+    /**
+     * Whether the topic matches; {@code #} also matches its parent level, as in MQTT.
+     */
+    public boolean matches(String topic) {
+        if (topic == null) {
+            return false;
+        }
+        var parts = topic.split("/", -1);
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i].equals("#")) {
+                return true;
+            }
+            if (i >= parts.length || !(levels[i].equals("+") || levels[i].equals(parts[i]))) {
+                return false;
+            }
+        }
+        return parts.length == levels.length;
+    }
+
+    @Override
+    public String toString() {
+        return filter;
+    }
+}
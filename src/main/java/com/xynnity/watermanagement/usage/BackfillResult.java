@@ -0,0 +1,10 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a rollup rebuild: events with a usage reading up to {@code lastEventId} were aggregated
+ * into {@code buckets} rows.
+ */
+public record BackfillResult(long lastEventId, long samples, int buckets, Duration took) {
+}
@@ -0,0 +1,22 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Instant;
+import java.util.function.Consumer;
+
+record BucketKey(UsageScope scope, String scopeKey, UsageGranularity granularity, Instant bucketStart) {
+
+    private static final UsageGranularity[] GRANULARITIES = UsageGranularity.values();
+
+    /**
+     * Visits every bucket an event contributes to: each granularity for its device. Client reports are
+     * summed from the rollups of the client's registered devices, so nothing is stored per client.
+     */
+    static void forEvent(String deviceId, Instant receivedAt, Consumer<BucketKey> action) {
+        if (deviceId == null) {
+            return;
+        }
+        for (var granularity : GRANULARITIES) {
+            action.accept(new BucketKey(UsageScope.DEVICE, deviceId, granularity, granularity.bucketStart(receivedAt)));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Instant;
+
+/**
+ * Mutable running aggregate for one bucket. Not thread-safe; callers confine each instance to a
+ * single thread or a map's compute function.
+ */
+final class UsageAggregate {
+
+    private double total;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double last;
+    private Instant lastAt;
+
+    UsageAggregate add(double value, Instant at) {
+        total += value;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (lastAt == null || !at.isBefore(lastAt)) {
+            last = value;
+            lastAt = at;
+        }
+        return this;
+    }
+
+    UsageAggregate merge(UsageAggregate other) {
+        total += other.total;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        if (other.lastAt != null && (lastAt == null || !other.lastAt.isBefore(lastAt))) {
+            last = other.last;
+            lastAt = other.lastAt;
+        }
+        return this;
+    }
+
+    /**
+     * Adds this aggregate to the stored bucket; a new row (count of zero) simply takes its values.
+     */
+    void applyTo(UsageRollup rollup) {
+        if (rollup.getCount() == 0) {
+            rollup.setMin(min);
+            rollup.setMax(max);
+            rollup.setLast(last);
+            rollup.setLastAt(lastAt);
+        } else {
+            rollup.setMin(Math.min(rollup.getMin(), min));
+            rollup.setMax(Math.max(rollup.getMax(), max));
+            if (!lastAt.isBefore(rollup.getLastAt())) {
+                rollup.setLast(last);
+                rollup.setLastAt(lastAt);
+            }
+        }
+        rollup.setTotal(rollup.getTotal() + total);
+        rollup.setCount(rollup.getCount() + count);
+    }
+
+    static UsageAggregate of(UsageRollup rollup) {
+        var aggregate = new UsageAggregate();
+        aggregate.total = rollup.getTotal();
+        aggregate.count = rollup.getCount();
+        aggregate.min = rollup.getMin();
+        aggregate.max = rollup.getMax();
+        aggregate.last = rollup.getLast();
+        aggregate.lastAt = rollup.getLastAt();
+        return aggregate;
+    }
+
+    double total() {
+        return total;
+    }
+
+    long count() {
+        return count;
+    }
+
+    UsageBucket toBucket(Instant bucketStart) {
+        return new UsageBucket(bucketStart, total, count, min, max, last, lastAt);
+    }
+}
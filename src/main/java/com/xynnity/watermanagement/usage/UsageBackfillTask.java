@@ -0,0 +1,80 @@
+package com.xynnity.watermanagement.usage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.xynnity.watermanagement.device.PayloadCodec;
+
+/**
+ * Aggregates the events in an id range, splitting the range in half until it is no wider than the
+ * chunk size. Each leaf reads its slice with one query and the partial maps are merged on the way up.
+ */
+final class UsageBackfillTask extends RecursiveTask<Map<BucketKey, UsageAggregate>> {
+
+    private static final long serialVersionUID = 1L;
+    private static final String SELECT = """
+            SELECT device_id, payload, payload_deflated, payload_dictionary, received_at
+            FROM device_events WHERE id BETWEEN ? AND ?""";
+
+    // fork/join tasks are never serialized
+    private final transient JdbcTemplate jdbcTemplate;
+    private final transient UsageExtractor extractor;
+    private final transient PayloadCodec payloadCodec;
+    private final long fromId;
+    private final long toId;
+    private final long chunkSize;
+    private final LongAdder samples;
+
+    UsageBackfillTask(JdbcTemplate jdbcTemplate, UsageExtractor extractor, PayloadCodec payloadCodec, long fromId,
+                      long toId, long chunkSize, LongAdder samples) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.extractor = extractor;
+        this.payloadCodec = payloadCodec;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.chunkSize = chunkSize;
+        this.samples = samples;
+    }
+
+    @Override
+    protected Map<BucketKey, UsageAggregate> compute() {
+        if (toId - fromId < chunkSize) {
+            return aggregate();
+        }
+        long mid = fromId + (toId - fromId) / 2;
+        var left = new UsageBackfillTask(jdbcTemplate, extractor, payloadCodec, fromId, mid, chunkSize, samples);
+        var right = new UsageBackfillTask(jdbcTemplate, extractor, payloadCodec, mid + 1, toId, chunkSize, samples);
+        left.fork();
+        var merged = right.compute();
+        var other = left.join();
+        if (other.size() > merged.size()) {
+            var swap = merged;
+            merged = other;
+            other = swap;
+        }
+        for (var entry : other.entrySet()) {
+            merged.merge(entry.getKey(), entry.getValue(), UsageAggregate::merge);
+        }
+        return merged;
+    }
+
+    private Map<BucketKey, UsageAggregate> aggregate() {
+        Map<BucketKey, UsageAggregate> aggregates = new HashMap<>();
+        jdbcTemplate.query(SELECT, rs -> {
+            double value = extractor.extract(payloadCodec.decode(rs.getString("payload"),
+                    rs.getBytes("payload_deflated"), rs.getObject("payload_dictionary", Integer.class)));
+            if (Double.isNaN(value)) {
+                return;
+            }
+            var receivedAt = rs.getTimestamp("received_at").toInstant();
+            BucketKey.forEvent(rs.getString("device_id"), receivedAt,
+                    key -> aggregates.computeIfAbsent(key, k -> new UsageAggregate()).add(value, receivedAt));
+            samples.increment();
+        }, fromId, toId);
+        return aggregates;
+    }
+}
@@ -0,0 +1,17 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Instant;
+
+/**
+ * Usage within one bucket starting at {@code bucketStart}; {@code last} is the reading received at
+ * {@code lastAt}.
+ */
+public record UsageBucket(
+        Instant bucketStart,
+        double total,
+        long count,
+        double min,
+        double max,
+        double last,
+        Instant lastAt) {
+}
@@ -0,0 +1,74 @@
+package com.xynnity.watermanagement.usage;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.xynnity.watermanagement.device.NumericText;
+
+/**
+ * Pulls the usage reading out of an event payload with a single streaming pass over its top-level
+ * fields, without building a tree.
+ */
+final class UsageExtractor {
+
+    private final JsonFactory jsonFactory;
+    private final List<String> fields;
+
+    UsageExtractor(JsonFactory jsonFactory, List<String> fields) {
+        this.jsonFactory = jsonFactory;
+        this.fields = List.copyOf(fields);
+    }
+
+    /**
+     * Returns the reading from the most preferred field present, or {@code NaN} when the payload is
+     * not a JSON object or carries no finite numeric usage field. Text readings may carry a unit
+     * suffix, as in {@code "18.5cc"}.
+     */
+    double extract(String payload) {
+        if (payload == null || payload.isEmpty()) {
+            return Double.NaN;
+        }
+        double value = Double.NaN;
+        int rank = fields.size();
+        try (var parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Double.NaN;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                int fieldRank = fields.indexOf(parser.currentName());
+                var token = parser.nextToken();
+                if (fieldRank < 0 || fieldRank >= rank) {
+                    parser.skipChildren();
+                    continue;
+                }
+                double reading = reading(token, parser);
+                if (!Double.isNaN(reading)) {
+                    value = reading;
+                    rank = fieldRank;
+                    if (rank == 0) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+        return value;
+    }
+
+    private static double reading(JsonToken token, JsonParser parser) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            double value = parser.getDoubleValue();
+            return Double.isFinite(value) ? value : Double.NaN;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            var text = NumericText.parse(parser.getText());
+            return text != null ? text.value() : Double.NaN;
+        }
+        parser.skipChildren();
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,49 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Width of a rollup bucket. Buckets are aligned to UTC, like the {@code date} added to payloads.
+ */
+public enum UsageGranularity {
+
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    UsageGranularity(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    public Instant bucketStart(Instant instant) {
+        return instant.truncatedTo(unit);
+    }
+
+    public Instant next(Instant bucketStart) {
+        return bucketStart.plus(1, unit);
+    }
+
+    public Instant minus(Instant bucketStart, long buckets) {
+        return bucketStart.minus(buckets, unit);
+    }
+
+    /**
+     * Parses a query parameter value such as {@code hour} or {@code day}; returns {@code null} for
+     * blank or unknown values.
+     */
+    public static UsageGranularity parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        var normalized = value.trim().toUpperCase(Locale.ROOT);
+        for (UsageGranularity granularity : values()) {
+            if (granularity.name().equals(normalized)) {
+                return granularity;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,158 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.xynnity.watermanagement.config.UsageProperties;
+import com.xynnity.watermanagement.device.DeviceRegistrationService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Answers usage queries from the rollup table. Reports are cached together with the rollup versions
+ * (and, for clients, the registration version) they were built from. A cached report is served only
+ * while those versions are unchanged, so a flush on any node that touches one of its buckets
+ * invalidates it. Readings still pending in memory show up after the next flush.
+ */
+@Service
+public class UsageQueryService {
+
+    private static final Logger log = LoggerFactory.getLogger(UsageQueryService.class);
+
+    private final UsageRollupRepository repository;
+    private final UsageRollupService rollupService;
+    private final DeviceRegistrationService registrationService;
+    private final Scheduler databaseScheduler;
+    private final Map<ReportKey, CachedReport> cache;
+    private final Counter hits;
+    private final Counter misses;
+
+    public UsageQueryService(UsageRollupRepository repository,
+                             UsageRollupService rollupService,
+                             DeviceRegistrationService registrationService,
+                             Scheduler databaseScheduler,
+                             UsageProperties properties,
+                             MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.rollupService = rollupService;
+        this.registrationService = registrationService;
+        this.databaseScheduler = databaseScheduler;
+        int maxEntries = properties.getResponseCacheSize();
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ReportKey, CachedReport> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.hits = Counter.builder("usage.report.cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("usage.report.cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public Mono<UsageReport> deviceUsage(String deviceId, UsageGranularity granularity, Instant from, Instant to) {
+        var key = new ReportKey(UsageScope.DEVICE, deviceId, granularity, from, to);
+        var cached = cached(key);
+        if (cached != null && cached.version() == rollupService.version(UsageScope.DEVICE, deviceId)) {
+            hits.increment();
+            return Mono.just(cached.report());
+        }
+        misses.increment();
+        return Mono.fromCallable(() -> {
+                    long version = rollupService.version(UsageScope.DEVICE, deviceId);
+                    var rows = repository.findByScopeAndScopeKeyAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                            UsageScope.DEVICE, deviceId, granularity, from, to);
+                    var report = report(key, rows);
+                    store(key, new CachedReport(report, version, List.of(deviceId), 0L));
+                    return report;
+                })
+                .subscribeOn(databaseScheduler);
+    }
+
+    /**
+     * Usage summed over every device registered to the client.
+     */
+    public Mono<UsageReport> clientUsage(String clientId, UsageGranularity granularity, Instant from, Instant to) {
+        var key = new ReportKey(UsageScope.CLIENT, clientId, granularity, from, to);
+        var cached = cached(key);
+        if (cached != null
+                && cached.registrations() == registrationService.version()
+                && cached.version() == devicesVersion(cached.deviceIds())) {
+            hits.increment();
+            return Mono.just(cached.report());
+        }
+        misses.increment();
+        return Mono.fromCallable(() -> {
+                    long registrations = registrationService.version();
+                    var deviceIds = registrationService.findDeviceIdsByClient(clientId);
+                    long version = devicesVersion(deviceIds);
+                    var rows = deviceIds.isEmpty()
+                            ? List.<UsageRollup>of()
+                            : repository.findByScopeAndScopeKeyInAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                                    UsageScope.DEVICE, deviceIds, granularity, from, to);
+                    var report = report(key, rows);
+                    store(key, new CachedReport(report, version, deviceIds, registrations));
+                    log.trace("Built usage report for clientId={} over {} devices", clientId, deviceIds.size());
+                    return report;
+                })
+                .subscribeOn(databaseScheduler);
+    }
+
+    private long devicesVersion(List<String> deviceIds) {
+        long version = 0L;
+        for (var deviceId : deviceIds) {
+            version = Math.max(version, rollupService.version(UsageScope.DEVICE, deviceId));
+        }
+        return version;
+    }
+
+    private static UsageReport report(ReportKey key, List<UsageRollup> rows) {
+        var byBucket = new TreeMap<Instant, UsageAggregate>();
+        for (var row : rows) {
+            byBucket.merge(row.getBucketStart(), UsageAggregate.of(row), UsageAggregate::merge);
+        }
+        List<UsageBucket> buckets = new ArrayList<>(byBucket.size());
+        double total = 0;
+        long count = 0;
+        for (var entry : byBucket.entrySet()) {
+            var aggregate = entry.getValue();
+            buckets.add(aggregate.toBucket(entry.getKey()));
+            total += aggregate.total();
+            count += aggregate.count();
+        }
+        return new UsageReport(key.scope(), key.key(), key.granularity(), key.from(), key.to(), total, count,
+                List.copyOf(buckets));
+    }
+
+    private CachedReport cached(ReportKey key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private void store(ReportKey key, CachedReport report) {
+        synchronized (cache) {
+            cache.put(key, report);
+        }
+    }
+
+    private record ReportKey(UsageScope scope, String key, UsageGranularity granularity, Instant from, Instant to) {
+    }
+
+    private record CachedReport(UsageReport report, long version, List<String> deviceIds, long registrations) {
+    }
+}
@@ -0,0 +1,19 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Usage of a device or client between {@code from} (inclusive) and {@code to} (exclusive), one entry
+ * per bucket that received readings.
+ */
+public record UsageReport(
+        UsageScope scope,
+        String key,
+        UsageGranularity granularity,
+        Instant from,
+        Instant to,
+        double total,
+        long count,
+        List<UsageBucket> buckets) {
+}
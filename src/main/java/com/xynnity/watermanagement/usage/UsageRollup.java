@@ -0,0 +1,162 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
+
+/**
+ * Usage aggregated over one bucket for one device or client. Rows are versioned because every node of
+ * a cluster adds its readings to the same buckets.
+ */
+@Entity
+@Table(name = "usage_rollups", uniqueConstraints = @UniqueConstraint(
+        name = "uk_usage_rollups_bucket", columnNames = { "scope", "scope_key", "granularity", "bucket_start" }))
+public class UsageRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "usage_rollups_seq")
+    @SequenceGenerator(name = "usage_rollups_seq", sequenceName = "usage_rollups_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private UsageScope scope;
+
+    @Column(name = "scope_key", nullable = false)
+    private String scopeKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private UsageGranularity granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private Instant bucketStart;
+
+    @Column(name = "total", nullable = false)
+    private double total;
+
+    @Column(name = "sample_count", nullable = false)
+    private long count;
+
+    @Column(name = "min_value", nullable = false)
+    private double min;
+
+    @Column(name = "max_value", nullable = false)
+    private double max;
+
+    @Column(name = "last_value", nullable = false)
+    private double last;
+
+    @Column(name = "last_at", nullable = false)
+    private Instant lastAt;
+
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public UsageScope getScope() {
+        return scope;
+    }
+
+    public void setScope(UsageScope scope) {
+        this.scope = scope;
+    }
+
+    public String getScopeKey() {
+        return scopeKey;
+    }
+
+    public void setScopeKey(String scopeKey) {
+        this.scopeKey = scopeKey;
+    }
+
+    public UsageGranularity getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(UsageGranularity granularity) {
+        this.granularity = granularity;
+    }
+
+    public Instant getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Instant bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public void setTotal(double total) {
+        this.total = total;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public void setMin(double min) {
+        this.min = min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void setMax(double max) {
+        this.max = max;
+    }
+
+    public double getLast() {
+        return last;
+    }
+
+    public void setLast(double last) {
+        this.last = last;
+    }
+
+    public Instant getLastAt() {
+        return lastAt;
+    }
+
+    public void setLastAt(Instant lastAt) {
+        this.lastAt = lastAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
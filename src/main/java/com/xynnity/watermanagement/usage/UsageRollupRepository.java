@@ -0,0 +1,22 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface UsageRollupRepository extends JpaRepository<UsageRollup, Long> {
+
+    Optional<UsageRollup> findByScopeAndScopeKeyAndGranularityAndBucketStart(UsageScope scope,
+                                                                             String scopeKey,
+                                                                             UsageGranularity granularity,
+                                                                             Instant bucketStart);
+
+    List<UsageRollup> findByScopeAndScopeKeyAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+            UsageScope scope, String scopeKey, UsageGranularity granularity, Instant from, Instant to);
+
+    List<UsageRollup> findByScopeAndScopeKeyInAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+            UsageScope scope, Collection<String> scopeKeys, UsageGranularity granularity, Instant from, Instant to);
+}
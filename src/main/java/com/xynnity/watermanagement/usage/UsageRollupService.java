@@ -0,0 +1,367 @@
+package com.xynnity.watermanagement.usage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xynnity.watermanagement.cluster.ClusterEventRelay;
+import com.xynnity.watermanagement.cluster.ClusterLeases;
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.UsageProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+import com.xynnity.watermanagement.device.PayloadCodec;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Maintains hourly and daily usage rollups per device. Each persisted event is added
+ * to in-memory deltas, which a background thread merges into {@code usage_rollups} in one
+ * transaction per flush interval. A backfill rebuilds every rollup from {@code device_events} with
+ * a fork-join scan over id ranges.
+ * <p>
+ * In a cluster every node flushes its own deltas into the shared rows, which are versioned so that a
+ * concurrent flush from another node is retried rather than overwritten. Only the node holding the
+ * backfill lease rebuilds, and the others hold their deltas back until it is done; each flush or
+ * rebuild tells the other nodes which report versions changed. Event ids are not assigned in commit
+ * order across nodes, so readings persisted while a rebuild scans may still be counted twice or
+ * missed; rebuild while ingestion is quiet.
+ */
+@Service
+public class UsageRollupService implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(UsageRollupService.class);
+    private static final String CACHE = "usage-rollups";
+    private static final String BACKFILL_LEASE = "usage-rollup-backfill";
+    private static final Duration BACKFILL_LEASE_DURATION = Duration.ofMinutes(1);
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final UsageRollupRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UsageExtractor extractor;
+    private final PayloadCodec payloadCodec;
+    private final UsageProperties properties;
+    private final ClusterEventRelay clusterRelay;
+    private final ClusterLeases leases;
+    private final boolean clustered;
+    private final ConcurrentHashMap<BucketKey, UsageAggregate> pending = new ConcurrentHashMap<>();
+    // recording holds the read lock; a backfill takes the write lock to reset deltas at a known event id
+    private final ReentrantReadWriteLock recordGate = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+    private final AtomicLong changes = new AtomicLong();
+    private final Map<UsageScope, ConcurrentHashMap<String, Long>> versions = new EnumMap<>(UsageScope.class);
+
+    private long backfillWatermark = Long.MIN_VALUE;
+    private volatile long rebuiltVersion;
+
+    public UsageRollupService(UsageRollupRepository repository,
+                              DataSource dataSource,
+                              PlatformTransactionManager transactionManager,
+                              ObjectMapper objectMapper,
+                              PayloadCodec payloadCodec,
+                              UsageProperties properties,
+                              ClusterEventRelay clusterRelay,
+                              ClusterLeases leases,
+                              ClusterProperties clusterProperties) {
+        this.repository = repository;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.extractor = new UsageExtractor(objectMapper.getFactory(), properties.getFields());
+        this.payloadCodec = payloadCodec;
+        this.properties = properties;
+        this.clusterRelay = clusterRelay;
+        this.leases = leases;
+        this.clustered = clusterProperties.isEnabled();
+        for (var scope : UsageScope.values()) {
+            versions.put(scope, new ConcurrentHashMap<>());
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("usage-rollup-flusher").factory());
+    }
+
+    @PostConstruct
+    void startFlusher() {
+        clusterRelay.onInvalidation(CACHE, this::invalidated);
+        long interval = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopFlusher() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(properties.getFlushInterval().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isBackfillOnStartup()) {
+            return;
+        }
+        var result = rebuildExclusively(true);
+        if (result != null) {
+            log.info("Built usage rollups from {} stored events into {} buckets in {}ms",
+                    result.samples(), result.buckets(), result.took().toMillis());
+        }
+    }
+
+    /**
+     * Adds a persisted event's usage reading to the pending deltas. Events without a reading or a
+     * device id are ignored.
+     */
+    public void record(DeviceEventDto event) {
+        if (event.id() == null || event.receivedAt() == null) {
+            return;
+        }
+        double value = extractor.extract(event.payload());
+        if (Double.isNaN(value)) {
+            return;
+        }
+        var at = event.receivedAt();
+        recordGate.readLock().lock();
+        try {
+            if (event.id() <= backfillWatermark) {
+                // already counted by the backfill that covered it
+                return;
+            }
+            BucketKey.forEvent(event.deviceId(), at,
+                    key -> pending.compute(key, (k, aggregate) -> (aggregate == null ? new UsageAggregate() : aggregate).add(value, at)));
+        } finally {
+            recordGate.readLock().unlock();
+        }
+    }
+
+    /**
+     * Merges the pending deltas into the rollup table. Returns the number of buckets written, or 0 when
+     * nothing was pending or a backfill is in progress on any node.
+     */
+    public int flush() {
+        if (!flushLock.tryLock()) {
+            return 0;
+        }
+        try {
+            if (clustered && leases.isHeldElsewhere(BACKFILL_LEASE)) {
+                return 0;
+            }
+            Map<BucketKey, UsageAggregate> batch = new HashMap<>();
+            for (var key : pending.keySet()) {
+                var aggregate = pending.remove(key);
+                if (aggregate != null) {
+                    batch.put(key, aggregate);
+                }
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            try {
+                writeRetryingConflicts(batch);
+            } catch (RuntimeException e) {
+                batch.forEach((key, aggregate) -> pending.merge(key, aggregate, UsageAggregate::merge));
+                throw e;
+            }
+            long version = changes.incrementAndGet();
+            batch.keySet().forEach(key -> versions.get(key.scope()).merge(key.scopeKey(), version, Math::max));
+            clusterRelay.invalidate(CACHE, batch.keySet().stream().map(BucketKey::scopeKey).collect(Collectors.toSet()));
+            log.trace("Flushed {} usage rollup buckets", batch.size());
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Rebuilds every rollup from stored events. Live recording continues: events up to the id seen at
+     * the start are left to the rebuild and later ones accumulate as deltas, which are flushed once the
+     * rebuilt rows are in place.
+     *
+     * @throws IllegalStateException if another node of the cluster is rebuilding
+     */
+    public BackfillResult backfill() {
+        var result = rebuildExclusively(false);
+        if (result == null) {
+            throw new IllegalStateException("Usage rollups are being rebuilt by another node");
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds while holding the cluster's backfill lease. Returns {@code null} without rebuilding when
+     * another node holds the lease, or when {@code onlyIfEmpty} is set and rollups already exist.
+     */
+    private BackfillResult rebuildExclusively(boolean onlyIfEmpty) {
+        if (!clustered) {
+            return onlyIfEmpty && repository.count() > 0 ? null : rebuild();
+        }
+        if (!leases.tryAcquire(BACKFILL_LEASE, BACKFILL_LEASE_DURATION)) {
+            log.info("Usage rollups are being rebuilt by another node");
+            return null;
+        }
+        long renewEvery = BACKFILL_LEASE_DURATION.toMillis() / 3;
+        ScheduledFuture<?> renewal = flusher.scheduleWithFixedDelay(this::renewBackfillLease, renewEvery, renewEvery,
+                TimeUnit.MILLISECONDS);
+        try {
+            return onlyIfEmpty && repository.count() > 0 ? null : rebuild();
+        } finally {
+            renewal.cancel(false);
+            leases.release(BACKFILL_LEASE);
+        }
+    }
+
+    private BackfillResult rebuild() {
+        long started = System.nanoTime();
+        flushLock.lock();
+        try {
+            long watermark;
+            recordGate.writeLock().lock();
+            try {
+                Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM device_events", Long.class);
+                watermark = maxId != null ? maxId : 0L;
+                pending.clear();
+                backfillWatermark = watermark;
+            } finally {
+                recordGate.writeLock().unlock();
+            }
+            Long minId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM device_events", Long.class);
+            var samples = new LongAdder();
+            Map<BucketKey, UsageAggregate> aggregates = Map.of();
+            if (minId != null && minId <= watermark) {
+                var pool = new ForkJoinPool(properties.getBackfillParallelism());
+                try {
+                    aggregates = pool.invoke(new UsageBackfillTask(jdbcTemplate, extractor, payloadCodec, minId, watermark,
+                            properties.getBackfillChunkSize(), samples));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            var rebuilt = aggregates;
+            transactionTemplate.executeWithoutResult(status -> {
+                repository.deleteAllInBatch();
+                repository.flush();
+                List<UsageRollup> rows = new ArrayList<>(rebuilt.size());
+                rebuilt.forEach((key, aggregate) -> rows.add(newRollup(key, aggregate)));
+                repository.saveAll(rows);
+            });
+            rebuiltVersion = changes.incrementAndGet();
+            clusterRelay.invalidate(CACHE, Set.of());
+            var took = Duration.ofNanos(System.nanoTime() - started);
+            log.debug("Rebuilt {} usage rollup buckets up to event ID={}", rebuilt.size(), watermark);
+            return new BackfillResult(watermark, samples.sum(), rebuilt.size(), took);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Changes whenever a stored rollup of the device or client changes, so callers can cache reports
+     * built from it. Values only grow, and every change yields a value above all earlier ones.
+     */
+    public long version(UsageScope scope, String key) {
+        return Math.max(rebuiltVersion, versions.get(scope).getOrDefault(key, 0L));
+    }
+
+    /**
+     * Writes the batch, retrying when another node changed or created one of its buckets first.
+     */
+    private void writeRetryingConflicts(Map<BucketKey, UsageAggregate> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(batch));
+                return;
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                if (attempt >= MAX_WRITE_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Usage rollup buckets changed concurrently; retrying flush (attempt {})", attempt);
+            }
+        }
+    }
+
+    /**
+     * Applies an invalidation from another node: the listed devices' rollups changed, or all of them
+     * when the set is empty.
+     */
+    private void invalidated(Set<String> deviceIds) {
+        long version = changes.incrementAndGet();
+        if (deviceIds.isEmpty()) {
+            rebuiltVersion = version;
+        } else {
+            deviceIds.forEach(deviceId -> versions.get(UsageScope.DEVICE).merge(deviceId, version, Math::max));
+        }
+    }
+
+    private void renewBackfillLease() {
+        try {
+            leases.tryAcquire(BACKFILL_LEASE, BACKFILL_LEASE_DURATION);
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew the usage rollup backfill lease", e);
+        }
+    }
+
+    private void write(Map<BucketKey, UsageAggregate> batch) {
+        List<UsageRollup> rows = new ArrayList<>(batch.size());
+        batch.forEach((key, aggregate) -> {
+            var row = repository.findByScopeAndScopeKeyAndGranularityAndBucketStart(
+                            key.scope(), key.scopeKey(), key.granularity(), key.bucketStart())
+                    .orElse(null);
+            if (row == null) {
+                rows.add(newRollup(key, aggregate));
+            } else {
+                aggregate.applyTo(row);
+                rows.add(row);
+            }
+        });
+        repository.saveAll(rows);
+    }
+
+    private static UsageRollup newRollup(BucketKey key, UsageAggregate aggregate) {
+        var row = new UsageRollup();
+        row.setScope(key.scope());
+        row.setScopeKey(key.scopeKey());
+        row.setGranularity(key.granularity());
+        row.setBucketStart(key.bucketStart());
+        aggregate.applyTo(row);
+        return row;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush usage rollups; deltas kept for the next attempt", e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.xynnity.watermanagement.usage;
+
+/**
+ * What a usage report covers: a single device or every device registered to a client. Rollups are
+ * only stored per device; client reports are summed from them.
+ */
+public enum UsageScope {
+    DEVICE,
+    CLIENT
+}
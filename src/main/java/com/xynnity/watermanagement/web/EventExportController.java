@@ -0,0 +1,128 @@
+package com.xynnity.watermanagement.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+import com.xynnity.watermanagement.device.DeviceEventExporter;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/events")
+@CrossOrigin(origins = "*", allowedHeaders = "*")
+public class EventExportController {
+
+    private static final Logger log = LoggerFactory.getLogger(EventExportController.class);
+    private static final int CHUNK_ROWS = 256;
+
+    private final DeviceEventExporter exporter;
+    private final ObjectWriter writer;
+
+    public EventExportController(DeviceEventExporter exporter, ObjectMapper objectMapper) {
+        this.exporter = exporter;
+        this.writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Streams every matching event as newline-delimited JSON in id order. With {@code gzip=true} the
+     * body is gzip-compressed on the fly. Rows are pulled from the database only as fast as the client
+     * reads them.
+     */
+    @GetMapping("/export")
+    public Mono<Void> export(@RequestParam(name = "deviceId", required = false) String deviceId,
+                             @RequestParam(name = "clientId", required = false) String clientId,
+                             @RequestParam(name = "from", required = false) Instant from,
+                             @RequestParam(name = "to", required = false) Instant to,
+                             @RequestParam(name = "gzip", defaultValue = "false") boolean gzip,
+                             ServerHttpResponse response) {
+        log.debug("Exporting events deviceId={}, clientId={}, from={}, to={}, gzip={}", deviceId, clientId, from, to, gzip);
+        var headers = response.getHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(gzip ? "events.ndjson.gz" : "events.ndjson")
+                .build());
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        var events = exporter.export(deviceId, clientId, from, to);
+        return response.writeWith(ndjson(events, gzip, response.bufferFactory()));
+    }
+
+    /**
+     * Serializes events in chunks of {@value #CHUNK_ROWS} rows, flushing the compressor after each
+     * chunk so every emitted buffer is a complete piece of the stream.
+     */
+    private Flux<DataBuffer> ndjson(Flux<DeviceEventDto> events, boolean gzip, DataBufferFactory bufferFactory) {
+        return Flux.defer(() -> {
+            var chunk = new ByteArrayOutputStream(64 * 1024);
+            var out = gzip ? gzip(chunk) : chunk;
+            return events.buffer(CHUNK_ROWS)
+                    .map(batch -> write(batch, out, chunk, bufferFactory))
+                    .concatWith(Mono.fromCallable(() -> {
+                        out.close();
+                        return drain(chunk, bufferFactory);
+                    }))
+                    .doFinally(signal -> closeQuietly(out));
+        });
+    }
+
+    private DataBuffer write(List<DeviceEventDto> batch, OutputStream out, ByteArrayOutputStream chunk,
+                             DataBufferFactory bufferFactory) {
+        try {
+            for (var event : batch) {
+                writer.writeValue(out, event);
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return drain(chunk, bufferFactory);
+    }
+
+    private static DataBuffer drain(ByteArrayOutputStream chunk, DataBufferFactory bufferFactory) {
+        var buffer = bufferFactory.wrap(chunk.toByteArray());
+        chunk.reset();
+        return buffer;
+    }
+
+    private static OutputStream gzip(ByteArrayOutputStream chunk) {
+        try {
+            return new GZIPOutputStream(chunk, 8 * 1024, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.trace("Failed to close export stream: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.xynnity.watermanagement.web;
+
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.xynnity.watermanagement.websocket.DeviceSubscriptionRegistry;
+import com.xynnity.watermanagement.websocket.DeviceSubscriptionRegistry.SessionStats;
+
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/api/events")
+@CrossOrigin(origins = "*", allowedHeaders = "*")
+public class EventSessionsController {
+
+    private final DeviceSubscriptionRegistry subscriptionRegistry;
+
+    public EventSessionsController(DeviceSubscriptionRegistry subscriptionRegistry) {
+        this.subscriptionRegistry = subscriptionRegistry;
+    }
+
+    /**
+     * Per-session lag and drop counts, worst lag first, for spotting clients that cannot keep up.
+     */
+    @GetMapping("/sessions")
+    public Flux<SessionStats> sessions() {
+        return Flux.fromIterable(subscriptionRegistry.sessionStats());
+    }
+}
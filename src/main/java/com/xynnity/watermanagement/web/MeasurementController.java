@@ -0,0 +1,58 @@
+package com.xynnity.watermanagement.web;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.xynnity.watermanagement.device.DeviceEventService;
+import com.xynnity.watermanagement.device.MeasurementSummary;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+@RestController
+@RequestMapping("/api/measurements")
+@CrossOrigin(origins = "*", allowedHeaders = "*")
+public class MeasurementController {
+
+    private static final Logger log = LoggerFactory.getLogger(MeasurementController.class);
+    private static final Duration DEFAULT_RANGE = Duration.ofDays(1);
+
+    private final DeviceEventService deviceEventService;
+    private final Scheduler databaseScheduler;
+
+    public MeasurementController(DeviceEventService deviceEventService, Scheduler databaseScheduler) {
+        this.deviceEventService = deviceEventService;
+        this.databaseScheduler = databaseScheduler;
+    }
+
+    /**
+     * Aggregates of a measurement such as {@code usage} or {@code pressure} between {@code from}
+     * (inclusive) and {@code to} (exclusive); the last day by default.
+     */
+    @GetMapping("/{name}/summary")
+    public Mono<MeasurementSummary> summary(@PathVariable("name") String name,
+                                           @RequestParam(name = "deviceId", required = false) String deviceId,
+                                           @RequestParam(name = "clientId", required = false) String clientId,
+                                           @RequestParam(name = "from", required = false) Instant from,
+                                           @RequestParam(name = "to", required = false) Instant to) {
+        var end = to != null ? to : Instant.now();
+        var start = from != null ? from : end.minus(DEFAULT_RANGE);
+        if (!start.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        log.debug("Summarizing measurement name={}, deviceId={}, clientId={}, from={}, to={}", name, deviceId, clientId, start, end);
+        return Mono.fromCallable(() -> deviceEventService.summarizeMeasurement(name, deviceId, clientId, start, end))
+                .subscribeOn(databaseScheduler);
+    }
+}
@@ -1,11 +1,15 @@
 package com.xynnity.watermanagement.web;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -20,9 +24,13 @@ import org.springframework.web.server.ResponseStatusException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.xynnity.watermanagement.config.EventQueryProperties;
 import com.xynnity.watermanagement.config.MqttProperties;
 import com.xynnity.watermanagement.device.DeviceEventDto;
 import com.xynnity.watermanagement.device.DeviceEventService;
+import com.xynnity.watermanagement.device.EventCursor;
+import com.xynnity.watermanagement.device.EventQuery;
+import com.xynnity.watermanagement.device.PayloadFieldIndexer;
 import com.xynnity.watermanagement.mqtt.MqttGateway;
 
 import jakarta.validation.Valid;
@@ -30,7 +38,6 @@ import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -38,24 +45,31 @@ import org.springframework.web.bind.annotation.CrossOrigin;
 @Validated
 @RestController
 @RequestMapping("/api/mqtt")
-@CrossOrigin(origins = "*", allowedHeaders = "*")
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = MqttController.NEXT_CURSOR_HEADER)
 public class MqttController {
 
     private static final Logger log = LoggerFactory.getLogger(MqttController.class);
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
     private final MqttGateway mqttGateway;
     private final DeviceEventService deviceEventService;
     private final MqttProperties properties;
     private final ObjectMapper objectMapper;
+    private final EventQueryProperties queryProperties;
+    private final PayloadFieldIndexer fieldIndexer;
 
     public MqttController(MqttGateway mqttGateway,
                           DeviceEventService deviceEventService,
                           MqttProperties properties,
-                          ObjectMapper objectMapper) {
+                          ObjectMapper objectMapper,
+                          EventQueryProperties queryProperties,
+                          PayloadFieldIndexer fieldIndexer) {
         this.mqttGateway = mqttGateway;
         this.deviceEventService = deviceEventService;
         this.properties = properties;
         this.objectMapper = objectMapper;
+        this.queryProperties = queryProperties;
+        this.fieldIndexer = fieldIndexer;
     }
 
     @PostMapping("/publish")
@@ -71,11 +85,36 @@ public class MqttController {
         return Mono.empty();
     }
 
+    /**
+     * Stored events, newest first. Without paging parameters this returns the latest events from
+     * memory. With {@code from}/{@code to} (inclusive/exclusive bounds on the receive time),
+     * {@code filter} ({@code field:value} on an indexed payload field, repeatable), {@code limit} or
+     * {@code cursor}, it returns one page; the {@value #NEXT_CURSOR_HEADER} response
+     * header carries the cursor for the following page and is absent on the last one.
+     */
     @GetMapping("/messages")
-    public Flux<DeviceEventDto> messages(@RequestParam(name = "deviceId", required = false) String deviceId,
-                                         @RequestParam(name = "clientId", required = false) String clientId) {
-        log.debug("Fetching stored events deviceId={}, clientId={}", deviceId, clientId);
-        return Flux.fromIterable(deviceEventService.recentEvents(deviceId, clientId));
+    public Mono<ResponseEntity<List<DeviceEventDto>>> messages(@RequestParam(name = "deviceId", required = false) String deviceId,
+                                                               @RequestParam(name = "clientId", required = false) String clientId,
+                                                               @RequestParam(name = "from", required = false) Instant from,
+                                                               @RequestParam(name = "to", required = false) Instant to,
+                                                               @RequestParam(name = "limit", required = false) @Min(1) Integer limit,
+                                                               @RequestParam(name = "cursor", required = false) String cursor,
+                                                               @RequestParam(name = "filter", required = false) List<String> filters) {
+        if (from == null && to == null && limit == null && !StringUtils.hasText(cursor)
+                && (filters == null || filters.isEmpty())) {
+            log.debug("Fetching recent events deviceId={}, clientId={}", deviceId, clientId);
+            return deviceEventService.findRecentEvents(deviceId, clientId).map(ResponseEntity::ok);
+        }
+        var query = new EventQuery(deviceId, clientId, from, to, fieldFilters(filters), decodeCursor(cursor), resolveLimit(limit));
+        log.debug("Fetching event page {}", query);
+        return deviceEventService.findPage(query)
+                .map(page -> {
+                    var response = ResponseEntity.ok();
+                    if (page.next() != null) {
+                        response.header(NEXT_CURSOR_HEADER, page.next().encode());
+                    }
+                    return response.body(page.events());
+                });
     }
 
     private String resolveTopic(PublishRequest request) {
@@ -90,6 +129,46 @@ public class MqttController {
         throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "MQTT topic is required but no pattern or default is configured");
     }
 
+    private int resolveLimit(Integer limit) {
+        if (limit == null) {
+            return queryProperties.getDefaultLimit();
+        }
+        if (limit > queryProperties.getMaxLimit()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must not exceed " + queryProperties.getMaxLimit());
+        }
+        return limit;
+    }
+
+    private List<EventQuery.FieldFilter> fieldFilters(List<String> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return List.of();
+        }
+        List<EventQuery.FieldFilter> parsed = new ArrayList<>(filters.size());
+        for (var filter : filters) {
+            int separator = filter.indexOf(':');
+            if (separator <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "filter must look like field:value");
+            }
+            var field = filter.substring(0, separator).trim();
+            if (!fieldIndexer.isIndexed(field)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Payload field '" + field + "' is not indexed");
+            }
+            parsed.add(new EventQuery.FieldFilter(field, filter.substring(separator + 1)));
+        }
+        return parsed;
+    }
+
+    private EventCursor decodeCursor(String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+        try {
+            return EventCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
     private int resolveQos(Integer qos) {
         if (Objects.isNull(qos)) {
             return properties.getDefaultQos();
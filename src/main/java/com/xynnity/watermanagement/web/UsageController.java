@@ -0,0 +1,107 @@
+package com.xynnity.watermanagement.web;
+
+import java.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.xynnity.watermanagement.usage.BackfillResult;
+import com.xynnity.watermanagement.usage.UsageGranularity;
+import com.xynnity.watermanagement.usage.UsageQueryService;
+import com.xynnity.watermanagement.usage.UsageReport;
+import com.xynnity.watermanagement.usage.UsageRollupService;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+@RestController
+@RequestMapping("/api/usage")
+@CrossOrigin(origins = "*", allowedHeaders = "*")
+public class UsageController {
+
+    private static final Logger log = LoggerFactory.getLogger(UsageController.class);
+    private static final int DEFAULT_HOURS = 24;
+    private static final int DEFAULT_DAYS = 30;
+
+    private final UsageRollupService rollupService;
+    private final UsageQueryService queryService;
+    private final Scheduler databaseScheduler;
+
+    public UsageController(UsageRollupService rollupService,
+                           UsageQueryService queryService,
+                           Scheduler databaseScheduler) {
+        this.rollupService = rollupService;
+        this.queryService = queryService;
+        this.databaseScheduler = databaseScheduler;
+    }
+
+    /**
+     * Hourly or daily usage of one device. {@code from} and {@code to} are widened to whole buckets;
+     * without them the last 24 hours or 30 days are returned.
+     */
+    @GetMapping("/{deviceId}")
+    public Mono<UsageReport> deviceUsage(@PathVariable("deviceId") String deviceId,
+                                         @RequestParam(name = "granularity", defaultValue = "day") String granularity,
+                                         @RequestParam(name = "from", required = false) Instant from,
+                                         @RequestParam(name = "to", required = false) Instant to) {
+        var range = range(granularity, from, to);
+        log.debug("Fetching usage deviceId={}, granularity={}, from={}, to={}", deviceId, range.granularity(), range.from(), range.to());
+        return queryService.deviceUsage(deviceId, range.granularity(), range.from(), range.to());
+    }
+
+    /**
+     * Usage summed across every device registered to the client, bucketed like {@link #deviceUsage}.
+     */
+    @GetMapping("/clients/{clientId}")
+    public Mono<UsageReport> clientUsage(@PathVariable("clientId") String clientId,
+                                         @RequestParam(name = "granularity", defaultValue = "day") String granularity,
+                                         @RequestParam(name = "from", required = false) Instant from,
+                                         @RequestParam(name = "to", required = false) Instant to) {
+        var range = range(granularity, from, to);
+        log.debug("Fetching usage clientId={}, granularity={}, from={}, to={}", clientId, range.granularity(), range.from(), range.to());
+        return queryService.clientUsage(clientId, range.granularity(), range.from(), range.to());
+    }
+
+    /**
+     * Rebuilds all usage rollups from stored events; answers 409 while another node is rebuilding.
+     */
+    @PostMapping("/rollups/backfill")
+    public Mono<BackfillResult> backfill() {
+        log.info("Usage rollup backfill requested");
+        return Mono.fromCallable(rollupService::backfill)
+                .onErrorMap(IllegalStateException.class, e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()))
+                .subscribeOn(databaseScheduler);
+    }
+
+    /**
+     * Aligns the requested range to bucket boundaries so equivalent requests share a cached report.
+     */
+    private Range range(String value, Instant from, Instant to) {
+        var granularity = UsageGranularity.parse(value);
+        if (granularity == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "granularity must be hour or day");
+        }
+        var end = to != null ? to : Instant.now();
+        var endBucket = granularity.bucketStart(end);
+        end = endBucket.equals(end) && to != null ? end : granularity.next(endBucket);
+        var start = from != null
+                ? granularity.bucketStart(from)
+                : granularity.minus(end, granularity == UsageGranularity.HOUR ? DEFAULT_HOURS : DEFAULT_DAYS);
+        if (!start.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        return new Range(granularity, start, end);
+    }
+
+    private record Range(UsageGranularity granularity, Instant from, Instant to) {
+    }
+}
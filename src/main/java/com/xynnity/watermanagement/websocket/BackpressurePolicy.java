@@ -0,0 +1,41 @@
+package com.xynnity.watermanagement.websocket;
+
+import java.util.Locale;
+
+/**
+ * What a WebSocket session's bounded queue does when the client falls behind.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Discard the oldest queued event to make room for the newest.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Keep only the latest queued event per device; older readings for the same device are replaced.
+     */
+    LATEST,
+
+    /**
+     * Close the session once its lag exceeds the configured threshold.
+     */
+    DISCONNECT;
+
+    /**
+     * Parses a query parameter value such as {@code drop-oldest} or {@code latest}; returns
+     * {@code null} for blank or unknown values.
+     */
+    public static BackpressurePolicy parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        var normalized = value.trim().replace('-', '_').toUpperCase(Locale.ROOT);
+        for (BackpressurePolicy policy : values()) {
+            if (policy.name().equals(normalized)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
@@ -1,78 +1,472 @@
 package com.xynnity.watermanagement.websocket;
 
-import java.util.Objects;
-import java.util.Optional;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import com.xynnity.watermanagement.cluster.SubscriptionInterest;
+import com.xynnity.watermanagement.config.WebSocketProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Routes persisted device events to the WebSocket sessions that follow them. Each session gets its
+ * own bounded queue and is indexed by device, by client, by device/client pair or as a wildcard, so an event
+ * is only offered to matching sessions instead of being filtered by every open session.
+ * <p>
+ * Index entries are immutable arrays replaced on register/unregister; routing and the
+ * {@link #hasSubscribers(String, String)} check read them without locking or allocating.
+ */
 @Component
 public class DeviceSubscriptionRegistry {
 
     private static final Logger log = LoggerFactory.getLogger(DeviceSubscriptionRegistry.class);
+    private static final Subscription[] NONE = new Subscription[0];
+
+    private final ConcurrentHashMap<String, Subscription[]> deviceSubscriptions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Subscription[]> clientSubscriptions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Subscription[]>> pairSubscriptions = new ConcurrentHashMap<>();
+    private volatile Subscription[] wildcardSubscriptions = NONE;
+    private final Object wildcardLock = new Object();
+    private final ConcurrentHashMap<String, Subscription> sessionIndex = new ConcurrentHashMap<>();
+    private final List<Runnable> interestListeners = new CopyOnWriteArrayList<>();
+    private final BackpressurePolicy defaultPolicy;
+    private final int sessionQueueCapacity;
+    private final int lagThreshold;
+    private final Counter delivered;
+    private final Counter disconnected;
+    private final Counter emitCancelled;
+    private final Counter emitFailed;
+    private final EnumMap<BackpressurePolicy, Counter> droppedByPolicy = new EnumMap<>(BackpressurePolicy.class);
+
+    public DeviceSubscriptionRegistry(WebSocketProperties properties, MeterRegistry meterRegistry) {
+        this.defaultPolicy = properties.getBackpressurePolicy();
+        this.sessionQueueCapacity = properties.getSessionQueueCapacity();
+        this.lagThreshold = properties.getLagThreshold();
+        this.delivered = Counter.builder("websocket.events.delivered")
+                .register(meterRegistry);
+        this.disconnected = Counter.builder("websocket.sessions.disconnected")
+                .description("Sessions closed for exceeding the lag threshold")
+                .register(meterRegistry);
+        this.emitCancelled = Counter.builder("websocket.events.emit.failures")
+                .description("Events that could not be handed to a session's stream")
+                .tag("result", "cancelled")
+                .register(meterRegistry);
+        this.emitFailed = Counter.builder("websocket.events.emit.failures")
+                .description("Events that could not be handed to a session's stream")
+                .tag("result", "error")
+                .register(meterRegistry);
+        for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+            droppedByPolicy.put(policy, Counter.builder("websocket.events.dropped")
+                    .tag("policy", policy.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        Gauge.builder("websocket.sessions", sessionIndex, ConcurrentHashMap::size)
+                .register(meterRegistry);
+    }
 
-    private final ConcurrentHashMap<SubscriptionKey, Set<String>> subscriptions = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, SubscriptionKey> sessionIndex = new ConcurrentHashMap<>();
+    /**
+     * Returns the event stream for a session. The session is indexed when the flux is subscribed and
+     * removed again when it terminates or is cancelled.
+     */
+    public Flux<DeviceEventDto> subscribe(String sessionId,
+                                          String deviceId,
+                                          String clientId,
+                                          BackpressurePolicy policy) {
+        var effectivePolicy = policy != null ? policy : defaultPolicy;
+        return Flux.create(sink -> {
+            var subscription = register(sessionId, deviceId, clientId, effectivePolicy, sink);
+            sink.onRequest(requested -> subscription.drain());
+            sink.onDispose(() -> unregister(subscription));
+        });
+    }
 
-    public void register(String sessionId, String deviceId, String clientId) {
-        var key = SubscriptionKey.of(deviceId, clientId);
-        subscriptions.computeIfAbsent(key, ignored -> ConcurrentHashMap.newKeySet()).add(sessionId);
-        sessionIndex.put(sessionId, key);
-        log.trace("Registered WebSocket session {} for key {}", sessionId, key);
+    /**
+     * Lag and drop statistics for every open session, worst lag first.
+     */
+    public List<SessionStats> sessionStats() {
+        return sessionIndex.values().stream()
+                .map(Subscription::stats)
+                .sorted(Comparator.comparingInt(SessionStats::lag).reversed())
+                .toList();
     }
 
     public void unregister(String sessionId) {
-        var key = sessionIndex.remove(sessionId);
-        if (key == null) {
+        var subscription = sessionIndex.get(sessionId);
+        if (subscription != null) {
+            unregister(subscription);
+        }
+    }
+
+    public boolean hasSubscribers(String deviceId, String clientId) {
+        if (wildcardSubscriptions.length > 0) {
+            return true;
+        }
+        var device = normalize(deviceId);
+        var client = normalize(clientId);
+        if (device != null && deviceSubscriptions.get(device) != null) {
+            return true;
+        }
+        if (client != null && clientSubscriptions.get(client) != null) {
+            return true;
+        }
+        if (device != null && client != null) {
+            var clients = pairSubscriptions.get(device);
+            return clients != null && clients.get(client) != null;
+        }
+        return false;
+    }
+
+    /**
+     * Snapshot of the devices, clients and pairs followed by at least one session.
+     */
+    public SubscriptionInterest interest() {
+        Map<String, Set<String>> clientIdsByDevice = new HashMap<>();
+        pairSubscriptions.forEach((device, clients) -> clientIdsByDevice.put(device, Set.copyOf(clients.keySet())));
+        return new SubscriptionInterest(wildcardSubscriptions.length > 0,
+                deviceSubscriptions.keySet(),
+                clientSubscriptions.keySet(),
+                clientIdsByDevice);
+    }
+
+    /**
+     * Registers a listener called after a session is registered or unregistered, on the thread that
+     * changed the index.
+     */
+    public void onInterestChange(Runnable listener) {
+        interestListeners.add(listener);
+    }
+
+    /**
+     * Offers the event to every matching session. Safe to call from several threads at once.
+     */
+    public void route(DeviceEventDto event) {
+        var device = normalize(event.deviceId());
+        var client = normalize(event.clientId());
+        emitAll(wildcardSubscriptions, event);
+        if (device != null) {
+            emitAll(deviceSubscriptions.get(device), event);
+        }
+        if (client != null) {
+            emitAll(clientSubscriptions.get(client), event);
+        }
+        if (device != null && client != null) {
+            var clients = pairSubscriptions.get(device);
+            if (clients != null) {
+                emitAll(clients.get(client), event);
+            }
+        }
+    }
+
+    private void emitAll(Subscription[] subscriptions, DeviceEventDto event) {
+        if (subscriptions == null) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.emit(event);
+        }
+    }
+
+    private Subscription register(String sessionId,
+                                  String deviceId,
+                                  String clientId,
+                                  BackpressurePolicy policy,
+                                  FluxSink<DeviceEventDto> sink) {
+        var subscription = new Subscription(sessionId, normalize(deviceId), normalize(clientId), policy, sink);
+        var previous = sessionIndex.put(sessionId, subscription);
+        if (previous != null) {
+            unindex(previous);
+        }
+        index(subscription);
+        interestChanged();
+        log.trace("Registered WebSocket session {} for deviceId={}, clientId={}, policy={}",
+                sessionId, subscription.deviceId, subscription.clientId, policy);
+        return subscription;
+    }
+
+    private void unregister(Subscription subscription) {
+        if (!sessionIndex.remove(subscription.sessionId, subscription)) {
             return;
         }
-        var sessions = subscriptions.get(key);
-        if (sessions != null) {
-            sessions.remove(sessionId);
-            if (sessions.isEmpty()) {
-                subscriptions.remove(key, sessions);
+        unindex(subscription);
+        subscription.terminate();
+        interestChanged();
+        log.trace("Unregistered WebSocket session {} for deviceId={}, clientId={}",
+                subscription.sessionId, subscription.deviceId, subscription.clientId);
+    }
+
+    private void interestChanged() {
+        for (var listener : interestListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("Subscription interest listener failed", e);
             }
         }
-        log.trace("Unregistered WebSocket session {} for key {}", sessionId, key);
     }
 
-    public boolean hasSubscribers(String deviceId, String clientId) {
-        return possibleKeys(deviceId, clientId)
-                .map(subscriptions::get)
-                .filter(Objects::nonNull)
-                .anyMatch(set -> !set.isEmpty());
+    private void index(Subscription subscription) {
+        update(subscription, DeviceSubscriptionRegistry::append);
+    }
+
+    private void unindex(Subscription subscription) {
+        update(subscription, DeviceSubscriptionRegistry::remove);
+    }
+
+    private void update(Subscription subscription,
+                        BiFunction<Subscription[], Subscription, Subscription[]> change) {
+        var device = subscription.deviceId;
+        var client = subscription.clientId;
+        if (device != null && client != null) {
+            pairSubscriptions.compute(device, (key, clients) -> {
+                var updated = clients != null ? clients : new ConcurrentHashMap<String, Subscription[]>();
+                updated.compute(client, (ignored, current) -> change.apply(current, subscription));
+                return updated.isEmpty() ? null : updated;
+            });
+        } else if (device != null) {
+            deviceSubscriptions.compute(device, (key, current) -> change.apply(current, subscription));
+        } else if (client != null) {
+            clientSubscriptions.compute(client, (key, current) -> change.apply(current, subscription));
+        } else {
+            synchronized (wildcardLock) {
+                var updated = change.apply(wildcardSubscriptions, subscription);
+                wildcardSubscriptions = updated != null ? updated : NONE;
+            }
+        }
+    }
+
+    private static Subscription[] append(Subscription[] current, Subscription added) {
+        if (current == null) {
+            return new Subscription[] { added };
+        }
+        var updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = added;
+        return updated;
+    }
+
+    /**
+     * Returns the array without the subscription, or {@code null} when it would be empty so the
+     * index entry is dropped.
+     */
+    private static Subscription[] remove(Subscription[] current, Subscription removed) {
+        if (current == null) {
+            return null;
+        }
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == removed) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return current.length == 0 ? null : current;
+        }
+        if (current.length == 1) {
+            return null;
+        }
+        var updated = new Subscription[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        return updated;
     }
 
-    private static java.util.stream.Stream<SubscriptionKey> possibleKeys(String deviceId, String clientId) {
-        return java.util.stream.Stream.of(
-                        SubscriptionKey.of(deviceId, clientId),
-                        SubscriptionKey.of(deviceId, null),
-                        SubscriptionKey.of(null, clientId),
-                        SubscriptionKey.of(null, null))
-                .distinct();
+    /**
+     * Trims the value and maps blank values to {@code null}; returns the same instance when there is
+     * nothing to trim.
+     */
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Point-in-time view of a session's queue, used to find clients that cannot keep up.
+     */
+    public record SessionStats(String sessionId,
+                               String deviceId,
+                               String clientId,
+                               BackpressurePolicy policy,
+                               int lag,
+                               long delivered,
+                               long dropped) {
     }
 
-    private record SubscriptionKey(String deviceId, String clientId) {
+    /**
+     * A session's bounded queue. Publishers enqueue under the subscription's monitor and events are
+     * handed to the sink only as far as the session has requested them, so a stalled client never
+     * holds back other sessions; what happens on overflow is decided by the session's policy.
+     * <p>
+     * One thread at a time drains the queue, and it calls the sink without holding the monitor, so
+     * publishers only wait for the queue operation itself.
+     */
+    private final class Subscription {
+
+        private final String sessionId;
+        private final String deviceId;
+        private final String clientId;
+        private final BackpressurePolicy policy;
+        private final FluxSink<DeviceEventDto> sink;
+        private final ArrayDeque<DeviceEventDto> queue = new ArrayDeque<>();
+        private final LinkedHashMap<String, DeviceEventDto> latestByDevice = new LinkedHashMap<>();
+        private long deliveredCount;
+        private long droppedCount;
+        private boolean draining;
+        private boolean terminated;
+
+        private Subscription(String sessionId,
+                             String deviceId,
+                             String clientId,
+                             BackpressurePolicy policy,
+                             FluxSink<DeviceEventDto> sink) {
+            this.sessionId = sessionId;
+            this.deviceId = deviceId;
+            this.clientId = clientId;
+            this.policy = policy;
+            this.sink = sink;
+        }
+
+        private void emit(DeviceEventDto event) {
+            int disconnectedLag = 0;
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+                switch (policy) {
+                    case DROP_OLDEST -> {
+                        if (queue.size() >= sessionQueueCapacity) {
+                            queue.pollFirst();
+                            dropped(1);
+                        }
+                        queue.addLast(event);
+                    }
+                    case LATEST -> {
+                        var key = event.deviceId() != null ? event.deviceId() : "";
+                        if (latestByDevice.remove(key) != null) {
+                            dropped(1);
+                        } else if (latestByDevice.size() >= sessionQueueCapacity) {
+                            var eldest = latestByDevice.keySet().iterator();
+                            eldest.next();
+                            eldest.remove();
+                            dropped(1);
+                        }
+                        latestByDevice.put(key, event);
+                    }
+                    case DISCONNECT -> {
+                        queue.addLast(event);
+                        if (queue.size() > lagThreshold) {
+                            terminated = true;
+                            disconnectedLag = queue.size();
+                            queue.clear();
+                            dropped(disconnectedLag);
+                        }
+                    }
+                }
+            }
+            if (disconnectedLag > 0) {
+                disconnected.increment();
+                log.warn("Disconnecting slow WebSocket session {} with lag {}", sessionId, disconnectedLag);
+                sink.error(new SlowConsumerException(sessionId, disconnectedLag));
+                return;
+            }
+            drain();
+        }
+
+        /**
+         * Hands queued events to the sink while the session has demand. A call that finds another
+         * thread draining returns at once; that thread checks the queue and demand again under the
+         * monitor before it stops, so nothing enqueued or requested meanwhile is left behind.
+         */
+        private void drain() {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            int handed = 0;
+            while (true) {
+                DeviceEventDto next;
+                synchronized (this) {
+                    deliveredCount += handed;
+                    next = terminated || sink.requestedFromDownstream() <= 0 ? null : poll();
+                    if (next == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                handed = handOver(next) ? 1 : 0;
+            }
+        }
+
+        private boolean handOver(DeviceEventDto event) {
+            if (sink.isCancelled()) {
+                emitCancelled.increment();
+                return false;
+            }
+            try {
+                sink.next(event);
+            } catch (RuntimeException e) {
+                emitFailed.increment();
+                log.debug("Failed to emit event ID={} to session {}", event.id(), sessionId, e);
+                return false;
+            }
+            delivered.increment();
+            return true;
+        }
+
+        private DeviceEventDto poll() {
+            if (policy != BackpressurePolicy.LATEST) {
+                return queue.pollFirst();
+            }
+            var iterator = latestByDevice.values().iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            var next = iterator.next();
+            iterator.remove();
+            return next;
+        }
 
-        private static SubscriptionKey of(String deviceId, String clientId) {
-            return new SubscriptionKey(normalize(deviceId), normalize(clientId));
+        private int lag() {
+            return policy == BackpressurePolicy.LATEST ? latestByDevice.size() : queue.size();
         }
 
-        private static String normalize(String value) {
-            return Optional.ofNullable(value)
-                    .map(String::trim)
-                    .filter(text -> !text.isBlank())
-                    .orElse(null);
+        private void dropped(int count) {
+            droppedCount += count;
+            droppedByPolicy.get(policy).increment(count);
         }
 
-        @Override
-        public String toString() {
-            return "SubscriptionKey{deviceId='%s', clientId='%s'}"
-                    .formatted(deviceId, clientId);
+        private synchronized void terminate() {
+            terminated = true;
+            queue.clear();
+            latestByDevice.clear();
+        }
+
+        private synchronized SessionStats stats() {
+            return new SessionStats(sessionId, deviceId, clientId, policy, lag(), deliveredCount, droppedCount);
         }
     }
 }
-
@@ -0,0 +1,138 @@
+package com.xynnity.watermanagement.websocket;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.xynnity.watermanagement.config.WebSocketProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Keeps the encodings of recently routed events so an event watched by many sessions is serialized
+ * once per {@link FrameEncoding} and its bytes are shared by every session frame. Entries are keyed
+ * by event id and evicted in insertion order once the cache is full.
+ */
+@Component
+public class EventEncodingCache {
+
+    private static final int ENCODINGS = FrameEncoding.values().length;
+
+    private final EnumMap<FrameEncoding, ObjectMapper> mappers = new EnumMap<>(FrameEncoding.class);
+    private final ConcurrentHashMap<Long, AtomicReferenceArray<byte[]>> encoded = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Long> insertionRing;
+    private final AtomicLong cursor = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    public EventEncodingCache(ObjectMapper objectMapper,
+                              Jackson2ObjectMapperBuilder mapperBuilder,
+                              WebSocketProperties properties,
+                              MeterRegistry meterRegistry) {
+        mappers.put(FrameEncoding.JSON, objectMapper);
+        mappers.put(FrameEncoding.CBOR, mapperBuilder.factory(new CBORFactory()).build());
+        var smileFactory = SmileFactory.builder()
+                .disable(SmileGenerator.Feature.WRITE_HEADER)
+                .disable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                .disable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        mappers.put(FrameEncoding.SMILE, mapperBuilder.factory(smileFactory).build());
+        this.insertionRing = new AtomicReferenceArray<>(properties.getEncodingCacheSize());
+        this.hits = Counter.builder("websocket.encoding.cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("websocket.encoding.cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the JSON bytes for the event; callers must not modify the returned array.
+     */
+    public byte[] json(DeviceEventDto event) throws JsonProcessingException {
+        return encode(event, FrameEncoding.JSON);
+    }
+
+    /**
+     * Returns the event encoded in the given format; callers must not modify the returned array.
+     */
+    public byte[] encode(DeviceEventDto event, FrameEncoding encoding) throws JsonProcessingException {
+        var id = event.id();
+        if (id == null) {
+            return mappers.get(encoding).writeValueAsBytes(event);
+        }
+        var slots = slots(id);
+        var bytes = slots.get(encoding.ordinal());
+        if (bytes != null) {
+            hits.increment();
+            return bytes;
+        }
+        misses.increment();
+        bytes = mappers.get(encoding).writeValueAsBytes(event);
+        return slots.compareAndSet(encoding.ordinal(), null, bytes) ? bytes : slots.get(encoding.ordinal());
+    }
+
+    /**
+     * Assembles one frame holding the batch as an array in the given encoding. The buffer comes from
+     * the supplied (pooled) factory and is sized exactly, so no intermediate String or copy is made.
+     */
+    public DataBuffer frame(List<DeviceEventDto> batch, FrameEncoding encoding, DataBufferFactory bufferFactory)
+            throws JsonProcessingException {
+        int count = batch.size();
+        var fragments = new byte[count][];
+        int size = encoding.prefixLength(count) + encoding.suffixLength()
+                + Math.max(0, count - 1) * encoding.separatorLength();
+        for (int i = 0; i < count; i++) {
+            fragments[i] = encode(batch.get(i), encoding);
+            size += fragments[i].length;
+        }
+        DataBuffer buffer = bufferFactory.allocateBuffer(size);
+        try {
+            encoding.writePrefix(buffer, count);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    encoding.writeSeparator(buffer);
+                }
+                buffer.write(fragments[i]);
+            }
+            encoding.writeSuffix(buffer);
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(buffer);
+            throw e;
+        }
+        return buffer;
+    }
+
+    private AtomicReferenceArray<byte[]> slots(Long id) {
+        var slots = encoded.get(id);
+        if (slots != null) {
+            return slots;
+        }
+        slots = new AtomicReferenceArray<>(ENCODINGS);
+        var existing = encoded.putIfAbsent(id, slots);
+        if (existing != null) {
+            return existing;
+        }
+        int slot = (int) (cursor.getAndIncrement() % insertionRing.length());
+        var evicted = insertionRing.getAndSet(slot, id);
+        if (evicted != null) {
+            encoded.remove(evicted);
+        }
+        return slots;
+    }
+}
@@ -3,6 +3,7 @@ package com.xynnity.watermanagement.websocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketHandler;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
@@ -11,7 +12,6 @@ import org.springframework.web.util.UriComponentsBuilder;
 import java.time.Duration;
 import java.util.List;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xynnity.watermanagement.device.DeviceEventService;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -22,33 +22,44 @@ public class EventsWebSocketController implements WebSocketHandler {
     private static final Logger log = LoggerFactory.getLogger(EventsWebSocketController.class);
 
     private final DeviceEventService deviceEventService;
-    private final ObjectMapper objectMapper;
+    private final EventEncodingCache encodingCache;
     private final DeviceSubscriptionRegistry subscriptionRegistry;
 
     public EventsWebSocketController(DeviceEventService deviceEventService,
-                                     ObjectMapper objectMapper,
+                                     EventEncodingCache encodingCache,
                                      DeviceSubscriptionRegistry subscriptionRegistry) {
         this.deviceEventService = deviceEventService;
-        this.objectMapper = objectMapper;
+        this.encodingCache = encodingCache;
         this.subscriptionRegistry = subscriptionRegistry;
     }
 
+    @Override
+    public List<String> getSubProtocols() {
+        return FrameEncoding.subProtocols();
+    }
+
     @Override
     public Mono<Void> handle(WebSocketSession session) {
         var params = queryParams(session);
         var deviceId = params.getFirst("deviceId");
         var clientId = params.getFirst("clientId");
-        log.debug("WebSocket session {} connected deviceId={}, clientId={}", session.getId(), deviceId, clientId);
-        subscriptionRegistry.register(session.getId(), deviceId, clientId);
-        var updates = deviceEventService.stream(deviceId, clientId)
-                .bufferTimeout(10, Duration.ofSeconds(1))
+        var policy = BackpressurePolicy.parse(params.getFirst("backpressure"));
+        var encoding = FrameEncoding.resolve(session.getHandshakeInfo().getSubProtocol(), params.getFirst("encoding"));
+        log.debug("WebSocket session {} connected deviceId={}, clientId={}, backpressure={}, encoding={}, lastEventId={}",
+                session.getId(), deviceId, clientId, policy, encoding, params.getFirst("lastEventId"));
+        var lastEventId = lastEventId(params.getFirst("lastEventId"));
+        var events = lastEventId != null
+                ? deviceEventService.resume(session.getId(), deviceId, clientId, lastEventId, policy)
+                : deviceEventService.stream(session.getId(), deviceId, clientId, policy);
+        var updates = events
+                .bufferTimeout(10, Duration.ofSeconds(1), true)
                 .filter(batch -> !batch.isEmpty())
-                .flatMap(batch -> Mono.fromCallable(() -> serialize(batch))
-                        .doOnNext(json -> log.trace("Streaming batch to session {}: {}", session.getId(), json))
-                        .map(session::textMessage));
-
-         var outbound = updates;
-
+                .flatMap(batch -> Mono.fromCallable(() -> new WebSocketMessage(encoding.messageType(),
+                                encodingCache.frame(batch, encoding, session.bufferFactory())))
+                        .doOnNext(frame -> log.trace("Streaming batch of {} events to session {}", batch.size(), session.getId())), 1)
+                .onErrorResume(SlowConsumerException.class, e -> session
+                        .close(CloseStatus.POLICY_VIOLATION.withReason("Slow consumer"))
+                        .then(Mono.<WebSocketMessage>empty()));
 
         var receive = session.receive()
                 .doOnNext(WebSocketMessage::release)
@@ -59,7 +70,7 @@ public class EventsWebSocketController implements WebSocketHandler {
                     log.debug("WebSocket session {} closed ({})", session.getId(), signal);
                 });
 
-        return session.send(outbound).and(receive);
+        return session.send(updates).and(receive);
     }
 
     private MultiValueMap<String, String> queryParams(WebSocketSession session) {
@@ -68,12 +79,15 @@ public class EventsWebSocketController implements WebSocketHandler {
                 .getQueryParams();
     }
 
-    private String serialize(Object value) throws Exception {
-        if (value instanceof List<?> list) {
-            return objectMapper.writeValueAsString(list);
+    private Long lastEventId(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed lastEventId '{}'", value);
+            return null;
         }
-        return objectMapper.writeValueAsString(value);
     }
 }
-
-
@@ -0,0 +1,167 @@
+package com.xynnity.watermanagement.websocket;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+
+/**
+ * Wire encodings a WebSocket client can negotiate for event batches, either with the
+ * {@code encoding} query parameter or with one of the {@link #subProtocol() subprotocols}. A frame
+ * is an array of pre-encoded events; each encoding knows how to frame the shared fragments.
+ */
+public enum FrameEncoding {
+
+    JSON("events.json", WebSocketMessage.Type.TEXT) {
+        @Override
+        int prefixLength(int count) {
+            return 1;
+        }
+
+        @Override
+        void writePrefix(DataBuffer buffer, int count) {
+            buffer.write((byte) '[');
+        }
+
+        @Override
+        int separatorLength() {
+            return 1;
+        }
+
+        @Override
+        void writeSeparator(DataBuffer buffer) {
+            buffer.write((byte) ',');
+        }
+
+        @Override
+        int suffixLength() {
+            return 1;
+        }
+
+        @Override
+        void writeSuffix(DataBuffer buffer) {
+            buffer.write((byte) ']');
+        }
+    },
+
+    /**
+     * RFC 8949 CBOR; the frame is a definite-length array header followed by the encoded events.
+     */
+    CBOR("events.cbor", WebSocketMessage.Type.BINARY) {
+        @Override
+        int prefixLength(int count) {
+            return count < 24 ? 1 : count < 256 ? 2 : 3;
+        }
+
+        @Override
+        void writePrefix(DataBuffer buffer, int count) {
+            if (count < 24) {
+                buffer.write((byte) (0x80 | count));
+            } else if (count < 256) {
+                buffer.write((byte) 0x98);
+                buffer.write((byte) count);
+            } else {
+                buffer.write((byte) 0x99);
+                buffer.write((byte) (count >> 8));
+                buffer.write((byte) count);
+            }
+        }
+    },
+
+    /**
+     * Jackson Smile; events are encoded without back-references so fragments can be concatenated
+     * behind a single document header.
+     */
+    SMILE("events.smile", WebSocketMessage.Type.BINARY) {
+        @Override
+        int prefixLength(int count) {
+            return SMILE_HEADER.length + 1;
+        }
+
+        @Override
+        void writePrefix(DataBuffer buffer, int count) {
+            buffer.write(SMILE_HEADER);
+            buffer.write((byte) 0xF8);
+        }
+
+        @Override
+        int suffixLength() {
+            return 1;
+        }
+
+        @Override
+        void writeSuffix(DataBuffer buffer) {
+            buffer.write((byte) 0xF9);
+        }
+    };
+
+    /**
+     * Smile document header: version 0, no shared names or values, no raw binary.
+     */
+    private static final byte[] SMILE_HEADER = { ':', ')', '\n', 0x00 };
+
+    private static final List<String> SUB_PROTOCOLS = List.of(
+            JSON.subProtocol, CBOR.subProtocol, SMILE.subProtocol);
+
+    private final String subProtocol;
+    private final WebSocketMessage.Type messageType;
+
+    FrameEncoding(String subProtocol, WebSocketMessage.Type messageType) {
+        this.subProtocol = subProtocol;
+        this.messageType = messageType;
+    }
+
+    public String subProtocol() {
+        return subProtocol;
+    }
+
+    public WebSocketMessage.Type messageType() {
+        return messageType;
+    }
+
+    static List<String> subProtocols() {
+        return SUB_PROTOCOLS;
+    }
+
+    abstract int prefixLength(int count);
+
+    abstract void writePrefix(DataBuffer buffer, int count);
+
+    int separatorLength() {
+        return 0;
+    }
+
+    void writeSeparator(DataBuffer buffer) {
+    }
+
+    int suffixLength() {
+        return 0;
+    }
+
+    void writeSuffix(DataBuffer buffer) {
+    }
+
+    /**
+     * Resolves the encoding from a negotiated subprotocol, falling back to the {@code encoding}
+     * query parameter and then to JSON.
+     */
+    static FrameEncoding resolve(String subProtocol, String parameter) {
+        if (subProtocol != null) {
+            for (FrameEncoding encoding : values()) {
+                if (encoding.subProtocol.equals(subProtocol)) {
+                    return encoding;
+                }
+            }
+        }
+        if (parameter != null && !parameter.isBlank()) {
+            var normalized = parameter.trim().toUpperCase(Locale.ROOT);
+            for (FrameEncoding encoding : values()) {
+                if (encoding.name().equals(normalized)) {
+                    return encoding;
+                }
+            }
+        }
+        return JSON;
+    }
+}
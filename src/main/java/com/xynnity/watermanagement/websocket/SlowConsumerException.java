@@ -0,0 +1,13 @@
+package com.xynnity.watermanagement.websocket;
+
+/**
+ * Signals that a WebSocket session fell further behind than its backpressure policy allows.
+ */
+public class SlowConsumerException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SlowConsumerException(String sessionId, int lag) {
+        super("Session " + sessionId + " exceeded lag threshold with " + lag + " queued events");
+    }
+}
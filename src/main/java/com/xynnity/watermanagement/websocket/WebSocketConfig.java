@@ -12,7 +12,13 @@ import org.springframework.util.Assert;
 import org.springframework.web.reactive.HandlerMapping;
 import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
 import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
 import org.springframework.web.reactive.socket.server.support.WebSocketHandlerAdapter;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+
+import com.xynnity.watermanagement.config.WebSocketProperties;
+
+import reactor.netty.http.server.WebsocketServerSpec;
 
 @Configuration
 public class WebSocketConfig {
@@ -36,8 +42,10 @@ public class WebSocketConfig {
     }
 
     @Bean
-    public WebSocketHandlerAdapter handlerAdapter() {
-        return new WebSocketHandlerAdapter();
+    public WebSocketHandlerAdapter handlerAdapter(WebSocketProperties properties) {
+        var upgradeStrategy = new ReactorNettyRequestUpgradeStrategy(
+                () -> WebsocketServerSpec.builder().compress(properties.isCompression()));
+        return new WebSocketHandlerAdapter(new HandshakeWebSocketService(upgradeStrategy));
     }
 }
 
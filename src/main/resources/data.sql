@@ -6,93 +6,93 @@ VALUES
   ('device-004', 'client-03', 'Plant Feed Monitor'),
   ('device-005', 'client-04', 'Irrigation Controller');
 
-INSERT INTO device_events (device_id, client_id, topic, payload, qos, retained, received_at)
+INSERT INTO device_events (id, device_id, client_id, topic, payload, qos, retained, received_at)
 VALUES
-  ('device-001', 'client-01', 'water/device-001/data',
+  (NEXT VALUE FOR device_events_seq, 'device-001', 'client-01', 'water/device-001/data',
    '{"date":"2025-11-06","usageLiters":120,"timestamp":"2025-11-06T06:30:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-06 06:30:00'),
-  ('device-001', 'client-01', 'water/device-001/data',
+  (NEXT VALUE FOR device_events_seq, 'device-001', 'client-01', 'water/device-001/data',
    '{"date":"2025-11-06","usageLiters":45,"timestamp":"2025-11-06T18:45:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-06 18:45:00'),
-  ('device-001', 'client-01', 'water/device-001/data',
+  (NEXT VALUE FOR device_events_seq, 'device-001', 'client-01', 'water/device-001/data',
    '{"date":"2025-11-07","usageLiters":135,"timestamp":"2025-11-07T07:15:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-07 07:15:00'),
-  ('device-001', 'client-01', 'water/device-001/data',
+  (NEXT VALUE FOR device_events_seq, 'device-001', 'client-01', 'water/device-001/data',
    '{"date":"2025-11-07","usageLiters":60,"timestamp":"2025-11-07T19:10:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-07 19:10:00'),
-  ('device-002', 'client-02', 'water/device-002/data',
+  (NEXT VALUE FOR device_events_seq, 'device-002', 'client-02', 'water/device-002/data',
    '{"date":"2025-11-08","usageLiters":98,"timestamp":"2025-11-08T05:50:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-08 05:50:00'),
-  ('device-002', 'client-02', 'water/device-002/data',
+  (NEXT VALUE FOR device_events_seq, 'device-002', 'client-02', 'water/device-002/data',
    '{"date":"2025-11-08","usageLiters":52,"timestamp":"2025-11-08T21:20:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-08 21:20:00'),
-  ('device-002', 'client-02', 'water/device-002/data',
+  (NEXT VALUE FOR device_events_seq, 'device-002', 'client-02', 'water/device-002/data',
    '{"date":"2025-11-09","usageLiters":110,"timestamp":"2025-11-09T06:05:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-09 06:05:00'),
-  ('device-003', 'client-02', 'water/device-003/data',
+  (NEXT VALUE FOR device_events_seq, 'device-003', 'client-02', 'water/device-003/data',
    '{"date":"2025-11-06","usageLiters":88,"timestamp":"2025-11-06T08:25:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-06 08:25:00'),
-  ('device-003', 'client-02', 'water/device-003/data',
+  (NEXT VALUE FOR device_events_seq, 'device-003', 'client-02', 'water/device-003/data',
    '{"date":"2025-11-06","usageLiters":72,"timestamp":"2025-11-06T16:35:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-06 16:35:00'),
-  ('device-003', 'client-02', 'water/device-003/data',
+  (NEXT VALUE FOR device_events_seq, 'device-003', 'client-02', 'water/device-003/data',
    '{"date":"2025-11-07","usageLiters":140,"timestamp":"2025-11-07T09:05:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-07 09:05:00'),
-  ('device-003', 'client-02', 'water/device-003/data',
+  (NEXT VALUE FOR device_events_seq, 'device-003', 'client-02', 'water/device-003/data',
    '{"date":"2025-11-07","usageLiters":64,"timestamp":"2025-11-07T20:50:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-07 20:50:00'),
-  ('device-003', 'client-02', 'water/device-003/data',
+  (NEXT VALUE FOR device_events_seq, 'device-003', 'client-02', 'water/device-003/data',
    '{"date":"2025-11-08","usageLiters":102,"timestamp":"2025-11-08T07:45:00Z"}',
    1, TRUE, TIMESTAMP '2025-11-08 07:45:00'),
-  ('device-003', 'client-02', 'water/device-003/data',
+  (NEXT VALUE FOR device_events_seq, 'device-003', 'client-02', 'water/device-003/data',
    '{"date":"2025-11-08","usageLiters":58,"timestamp":"2025-11-08T22:20:00Z"}',
    1, FALSE, TIMESTAMP '2025-11-08 22:20:00'),
-  ('device-003', 'client-02', 'water/device-003/data',
+  (NEXT VALUE FOR device_events_seq, 'device-003', 'client-02', 'water/device-003/data',
    '{"date":"2025-11-09","usageLiters":125,"timestamp":"2025-11-09T17:40:00Z"}',
    1, TRUE, TIMESTAMP '2025-11-09 17:40:00'),
-  ('device-004', 'client-03', 'water/device-004/data',
+  (NEXT VALUE FOR device_events_seq, 'device-004', 'client-03', 'water/device-004/data',
    '{"date":"2025-11-06","usageLiters":95,"timestamp":"2025-11-06T05:40:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-06 05:40:00'),
-  ('device-004', 'client-03', 'water/device-004/data',
+  (NEXT VALUE FOR device_events_seq, 'device-004', 'client-03', 'water/device-004/data',
    '{"date":"2025-11-06","usageLiters":50,"timestamp":"2025-11-06T19:55:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-06 19:55:00'),
-  ('device-004', 'client-03', 'water/device-004/data',
+  (NEXT VALUE FOR device_events_seq, 'device-004', 'client-03', 'water/device-004/data',
    '{"date":"2025-11-07","usageLiters":132,"timestamp":"2025-11-07T06:10:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-07 06:10:00'),
-  ('device-004', 'client-03', 'water/device-004/data',
+  (NEXT VALUE FOR device_events_seq, 'device-004', 'client-03', 'water/device-004/data',
    '{"date":"2025-11-07","usageLiters":70,"timestamp":"2025-11-07T18:25:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-07 18:25:00'),
-  ('device-004', 'client-03', 'water/device-004/data',
+  (NEXT VALUE FOR device_events_seq, 'device-004', 'client-03', 'water/device-004/data',
    '{"date":"2025-11-08","usageLiters":118,"timestamp":"2025-11-08T08:55:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-08 08:55:00'),
-  ('device-004', 'client-03', 'water/device-004/data',
+  (NEXT VALUE FOR device_events_seq, 'device-004', 'client-03', 'water/device-004/data',
    '{"date":"2025-11-08","usageLiters":66,"timestamp":"2025-11-08T21:35:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-08 21:35:00'),
-  ('device-004', 'client-03', 'water/device-004/data',
+  (NEXT VALUE FOR device_events_seq, 'device-004', 'client-03', 'water/device-004/data',
    '{"date":"2025-11-09","usageLiters":127,"timestamp":"2025-11-09T07:20:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-09 07:20:00'),
-  ('device-004', 'client-03', 'water/device-004/data',
+  (NEXT VALUE FOR device_events_seq, 'device-004', 'client-03', 'water/device-004/data',
    '{"date":"2025-11-09","usageLiters":74,"timestamp":"2025-11-09T23:15:00Z"}',
    0, FALSE, TIMESTAMP '2025-11-09 23:15:00'),
-  ('device-005', 'client-04', 'water/device-005/data',
+  (NEXT VALUE FOR device_events_seq, 'device-005', 'client-04', 'water/device-005/data',
    '{"date":"2025-11-06","usageLiters":105,"timestamp":"2025-11-06T04:55:00Z"}',
    2, TRUE, TIMESTAMP '2025-11-06 04:55:00'),
-  ('device-005', 'client-04', 'water/device-005/data',
+  (NEXT VALUE FOR device_events_seq, 'device-005', 'client-04', 'water/device-005/data',
    '{"date":"2025-11-06","usageLiters":43,"timestamp":"2025-11-06T17:05:00Z"}',
    2, FALSE, TIMESTAMP '2025-11-06 17:05:00'),
-  ('device-005', 'client-04', 'water/device-005/data',
+  (NEXT VALUE FOR device_events_seq, 'device-005', 'client-04', 'water/device-005/data',
    '{"date":"2025-11-07","usageLiters":138,"timestamp":"2025-11-07T05:45:00Z"}',
    2, TRUE, TIMESTAMP '2025-11-07 05:45:00'),
-  ('device-005', 'client-04', 'water/device-005/data',
+  (NEXT VALUE FOR device_events_seq, 'device-005', 'client-04', 'water/device-005/data',
    '{"date":"2025-11-07","usageLiters":69,"timestamp":"2025-11-07T21:30:00Z"}',
    2, FALSE, TIMESTAMP '2025-11-07 21:30:00'),
-  ('device-005', 'client-04', 'water/device-005/data',
+  (NEXT VALUE FOR device_events_seq, 'device-005', 'client-04', 'water/device-005/data',
    '{"date":"2025-11-08","usageLiters":112,"timestamp":"2025-11-08T06:15:00Z"}',
    2, TRUE, TIMESTAMP '2025-11-08 06:15:00'),
-  ('device-005', 'client-04', 'water/device-005/data',
+  (NEXT VALUE FOR device_events_seq, 'device-005', 'client-04', 'water/device-005/data',
    '{"date":"2025-11-08","usageLiters":55,"timestamp":"2025-11-08T22:45:00Z"}',
    2, FALSE, TIMESTAMP '2025-11-08 22:45:00'),
-  ('device-005', 'client-04', 'water/device-005/data',
+  (NEXT VALUE FOR device_events_seq, 'device-005', 'client-04', 'water/device-005/data',
    '{"date":"2025-11-09","usageLiters":120,"timestamp":"2025-11-09T09:35:00Z"}',
    2, TRUE, TIMESTAMP '2025-11-09 09:35:00');
 
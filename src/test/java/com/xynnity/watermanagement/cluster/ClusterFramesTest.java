@@ -0,0 +1,91 @@
+package com.xynnity.watermanagement.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+class ClusterFramesTest {
+
+    @Test
+    void helloRoundTrips() throws IOException {
+        var in = roundTrip(out -> ClusterFrames.writeHello(out, "water", "node-1"));
+
+        assertThat(ClusterFrames.readHello(in)).isEqualTo(new ClusterFrames.Hello("water", "node-1"));
+    }
+
+    @Test
+    void helloRejectsOtherFrames() throws IOException {
+        var in = roundTrip(out -> ClusterFrames.writeInterest(out, SubscriptionInterest.NONE));
+
+        assertThatThrownBy(() -> ClusterFrames.readHello(in)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void interestRoundTrips() throws IOException {
+        var interest = new SubscriptionInterest(false, Set.of("d1", "d2"), Set.of("c1"), Map.of("d3", Set.of("c2", "c3")));
+
+        var in = roundTrip(out -> ClusterFrames.writeInterest(out, interest));
+
+        assertThat(in.readByte()).isEqualTo(ClusterFrames.INTEREST);
+        assertThat(ClusterFrames.readInterest(in)).isEqualTo(interest);
+    }
+
+    @Test
+    void eventsRoundTripIncludingMissingFields() throws IOException {
+        var full = new DeviceEventDto(42L, "d1", "c1", "water/d1/data", "{\"note\":\"ünïcødé ✓\"}", 2, true,
+                Instant.parse("2024-01-01T10:15:30.123456789Z"));
+        var sparse = new DeviceEventDto(null, null, null, null, null, 0, false, null);
+
+        var in = roundTrip(out -> {
+            ClusterFrames.writeEvent(out, full);
+            ClusterFrames.writeEvent(out, sparse);
+        });
+
+        assertThat(in.readByte()).isEqualTo(ClusterFrames.EVENT);
+        assertThat(ClusterFrames.readEvent(in)).isEqualTo(full);
+        assertThat(in.readByte()).isEqualTo(ClusterFrames.EVENT);
+        assertThat(ClusterFrames.readEvent(in)).isEqualTo(sparse);
+        assertThat(in.read()).isEqualTo(-1);
+    }
+
+    @Test
+    void invalidationsRoundTrip() throws IOException {
+        var keys = new CacheInvalidation("usage-rollups", Set.of("d1", "d2"));
+
+        var in = roundTrip(out -> {
+            ClusterFrames.writeInvalidation(out, keys);
+            ClusterFrames.writeInvalidation(out, CacheInvalidation.everything());
+        });
+
+        assertThat(in.readByte()).isEqualTo(ClusterFrames.INVALIDATE);
+        assertThat(ClusterFrames.readInvalidation(in)).isEqualTo(keys);
+        assertThat(in.readByte()).isEqualTo(ClusterFrames.INVALIDATE);
+        assertThat(ClusterFrames.readInvalidation(in).isEverything()).isTrue();
+    }
+
+    private static DataInputStream roundTrip(FrameWriter writer) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @FunctionalInterface
+    private interface FrameWriter {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+}
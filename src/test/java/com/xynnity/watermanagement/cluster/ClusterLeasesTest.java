@@ -0,0 +1,75 @@
+package com.xynnity.watermanagement.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+
+class ClusterLeasesTest {
+
+    private EmbeddedDatabase database;
+    private ClusterLeases first;
+    private ClusterLeases second;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        new JdbcTemplate(database).execute("""
+                CREATE TABLE cluster_leases (name VARCHAR(64) PRIMARY KEY, owner VARCHAR(255) NOT NULL,
+                    expires_at TIMESTAMP(6) WITH TIME ZONE NOT NULL)""");
+        first = leases("node-1");
+        second = leases("node-2");
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void onlyOneNodeHoldsALease() {
+        assertThat(first.tryAcquire("backfill", Duration.ofMinutes(1))).isTrue();
+
+        assertThat(second.tryAcquire("backfill", Duration.ofMinutes(1))).isFalse();
+        assertThat(second.isHeldElsewhere("backfill")).isTrue();
+        assertThat(first.isHeldElsewhere("backfill")).isFalse();
+        // the holder can renew it
+        assertThat(first.tryAcquire("backfill", Duration.ofMinutes(1))).isTrue();
+    }
+
+    @Test
+    void releasedLeaseCanBeTakenByAnotherNode() {
+        first.tryAcquire("backfill", Duration.ofMinutes(1));
+        // only the holder can release it
+        second.release("backfill");
+        assertThat(second.tryAcquire("backfill", Duration.ofMinutes(1))).isFalse();
+
+        first.release("backfill");
+
+        assertThat(second.tryAcquire("backfill", Duration.ofMinutes(1))).isTrue();
+    }
+
+    @Test
+    void expiredLeaseCanBeTakenOver() {
+        first.tryAcquire("backfill", Duration.ofMillis(-1));
+
+        assertThat(second.isHeldElsewhere("backfill")).isFalse();
+        assertThat(second.tryAcquire("backfill", Duration.ofMinutes(1))).isTrue();
+        assertThat(first.isHeldElsewhere("backfill")).isTrue();
+    }
+
+    private ClusterLeases leases(String nodeId) {
+        var properties = new ClusterProperties();
+        properties.setNodeId(nodeId);
+        return new ClusterLeases(database, properties);
+    }
+}
@@ -0,0 +1,124 @@
+package com.xynnity.watermanagement.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.WebSocketProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+import com.xynnity.watermanagement.websocket.DeviceSubscriptionRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import reactor.core.Disposable;
+
+class LoopbackClusterEventBusTest {
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final List<Disposable> sessions = new ArrayList<>();
+    private String clusterName;
+
+    @BeforeEach
+    void setUp() {
+        clusterName = "test-" + UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessions.forEach(Disposable::dispose);
+        nodes.forEach(node -> node.bus().close());
+    }
+
+    @Test
+    void eventIsRelayedToNodeWithMatchingInterest() {
+        var publisher = node();
+        var follower = node();
+        var received = follow(follower, "d1");
+
+        publisher.relay().publish(event(1, "d1"));
+
+        assertThat(received).extracting(DeviceEventDto::id).containsExactly(1L);
+        assertThat(publisher.meters().counter("cluster.events.forwarded").count()).isEqualTo(1);
+        assertThat(follower.meters().counter("cluster.events.received").count()).isEqualTo(1);
+    }
+
+    @Test
+    void nothingIsForwardedWithoutInterest() {
+        var publisher = node();
+        var follower = node();
+        var received = follow(follower, "d1");
+
+        publisher.relay().publish(event(1, "d2"));
+
+        assertThat(received).isEmpty();
+        assertThat(publisher.meters().counter("cluster.events.forwarded").count()).isZero();
+        assertThat(follower.meters().counter("cluster.events.received").count()).isZero();
+    }
+
+    @Test
+    void interestIsWithdrawnWhenTheLastSessionCloses() {
+        var publisher = node();
+        var follower = node();
+        follow(follower, "d1");
+
+        sessions.forEach(Disposable::dispose);
+
+        assertThat(publisher.bus().publish(event(1, "d1"))).isZero();
+    }
+
+    @Test
+    void invalidationsReachEveryOtherNode() {
+        var sender = node();
+        var first = node();
+        var second = node();
+        List<Set<String>> seen = new ArrayList<>();
+        sender.relay().onInvalidation("reports", seen::add);
+        first.relay().onInvalidation("reports", seen::add);
+        second.relay().onInvalidation("reports", seen::add);
+        second.relay().onInvalidation("other", keys -> seen.add(Set.of("unexpected")));
+
+        sender.relay().invalidate("reports", Set.of("d1"));
+
+        assertThat(seen).containsExactly(Set.of("d1"), Set.of("d1"));
+    }
+
+    private Node node() {
+        var properties = new ClusterProperties();
+        properties.setEnabled(true);
+        var meters = new SimpleMeterRegistry();
+        var bus = new LoopbackClusterEventBus(clusterName);
+        var registry = new DeviceSubscriptionRegistry(new WebSocketProperties(), meters);
+        var relay = new ClusterEventRelay(bus, registry, properties, meters);
+        relay.start();
+        var node = new Node(bus, registry, relay, meters);
+        nodes.add(node);
+        return node;
+    }
+
+    private List<DeviceEventDto> follow(Node node, String deviceId) {
+        List<DeviceEventDto> received = new ArrayList<>();
+        sessions.add(node.registry().subscribe(UUID.randomUUID().toString(), deviceId, null, null)
+                .subscribe(received::add));
+        return received;
+    }
+
+    private static DeviceEventDto event(long id, String deviceId) {
+        return new DeviceEventDto(id, deviceId, "c1", "water/" + deviceId + "/data", "{\"usage\":1}", 1, false,
+                Instant.parse("2024-01-01T00:00:00Z"));
+    }
+
+    private record Node(LoopbackClusterEventBus bus,
+                        DeviceSubscriptionRegistry registry,
+                        ClusterEventRelay relay,
+                        SimpleMeterRegistry meters) {
+    }
+}
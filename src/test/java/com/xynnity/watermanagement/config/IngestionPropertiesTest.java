@@ -0,0 +1,59 @@
+package com.xynnity.watermanagement.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+
+class IngestionPropertiesTest {
+
+    private static ValidatorFactory validatorFactory;
+
+    @BeforeAll
+    static void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Test
+    void defaultWatermarksAreValid() {
+        assertThat(validate(new IngestionProperties())).isEmpty();
+    }
+
+    @Test
+    void resumeWatermarkMustBeBelowTheShedWatermark() {
+        assertThat(validate(watermarks(0.7, 0.7, 0.9))).extracting(violation -> violation.getPropertyPath().toString())
+                .containsExactly("backpressure.watermarkOrder");
+        assertThat(validate(watermarks(0.8, 0.7, 0.9))).hasSize(1);
+    }
+
+    @Test
+    void shedWatermarkMayEqualThePauseWatermark() {
+        assertThat(validate(watermarks(0.5, 0.9, 0.9))).isEmpty();
+        assertThat(validate(watermarks(0.5, 0.95, 0.9))).extracting(violation -> violation.getPropertyPath().toString())
+                .containsExactly("backpressure.watermarkOrder");
+    }
+
+    private static IngestionProperties watermarks(double resume, double shed, double pause) {
+        var properties = new IngestionProperties();
+        properties.getBackpressure().setResumeWatermark(resume);
+        properties.getBackpressure().setShedWatermark(shed);
+        properties.getBackpressure().setPauseWatermark(pause);
+        return properties;
+    }
+
+    private static Set<ConstraintViolation<IngestionProperties>> validate(IngestionProperties properties) {
+        return validatorFactory.getValidator().validate(properties);
+    }
+}
@@ -0,0 +1,193 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.xynnity.watermanagement.cluster.ClusterEventRelay;
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.DatabaseConfig;
+import com.xynnity.watermanagement.config.DatabaseProperties;
+import com.xynnity.watermanagement.config.IngestionProperties;
+import com.xynnity.watermanagement.config.WebSocketProperties;
+import com.xynnity.watermanagement.usage.UsageRollupService;
+import com.xynnity.watermanagement.websocket.DeviceSubscriptionRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Load test for the read path: live events are delivered to a WebSocket session through a single
+ * event-loop thread while dashboards keep {@link DeviceEventService#findRecentEvents} and
+ * {@link DeviceEventService#findPage} queries against H2 in flight. The queries run either on the
+ * subscribing event loop, as before, or on the database scheduler. Reports the delivery latency
+ * percentiles of both; only their relative order is asserted.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DatabaseSchedulerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseSchedulerTest.class);
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+    private static final long FIRST_ID = 2_000_000L;
+    private static final int STORED = 20_000;
+    private static final int EVENTS = 1_000;
+
+    @Autowired
+    private DeviceEventRepository repository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Scheduler eventLoop;
+    private Scheduler databaseScheduler;
+
+    @BeforeEach
+    void setUp() {
+        eventLoop = Schedulers.newSingle("event-loop");
+        databaseScheduler = new DatabaseConfig().databaseScheduler(new DatabaseProperties());
+        // committed straight away, as the queries run on other threads than the test
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < STORED; i++) {
+            var deviceId = "history-device-" + i % 10;
+            rows.add(new Object[] { FIRST_ID + i, deviceId, "history-client-" + i % 3, "water/" + deviceId + "/data", "{}",
+                    START.plusMillis(i * 100L).atOffset(ZoneOffset.UTC) });
+        }
+        new JdbcTemplate(dataSource).batchUpdate("""
+                INSERT INTO device_events (id, device_id, client_id, topic, payload, qos, retained, received_at)
+                VALUES (?, ?, ?, ?, ?, 1, FALSE, ?)""", rows);
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventLoop.dispose();
+        databaseScheduler.dispose();
+        new JdbcTemplate(dataSource).update("DELETE FROM device_events WHERE id >= ?", FIRST_ID);
+    }
+
+    @Test
+    void historyQueriesOnTheDatabaseSchedulerLeaveDeliveryLatencyFlat() throws InterruptedException {
+        long[] idle = deliveryLatencies(null);
+        // with the immediate scheduler the queries run on the thread that subscribes, the event loop
+        long[] onEventLoop = deliveryLatencies(Schedulers.immediate());
+        long[] offloaded = deliveryLatencies(databaseScheduler);
+
+        log.info(String.format(Locale.ROOT,
+                "WebSocket delivery latency p50/p99: idle %s, queries on event loop %s, queries on database scheduler %s",
+                percentiles(idle), percentiles(onEventLoop), percentiles(offloaded)));
+
+        assertThat(percentile(offloaded, 99)).isLessThan(percentile(onEventLoop, 99));
+    }
+
+    /**
+     * Routes one event per millisecond to a session delivered on the event loop while, unless
+     * {@code queryScheduler} is {@code null}, four dashboards subscribed on the event loop each keep
+     * a recent-events or history-page query in flight through a {@link DeviceEventService} that runs
+     * its queries on that scheduler. Returns the delivery latency of every event in nanoseconds.
+     */
+    private long[] deliveryLatencies(Scheduler queryScheduler) throws InterruptedException {
+        var registry = new DeviceSubscriptionRegistry(new WebSocketProperties(), new SimpleMeterRegistry());
+        var service = service(registry, queryScheduler != null ? queryScheduler : databaseScheduler);
+        var sent = new AtomicLongArray(EVENTS);
+        var latencies = new long[EVENTS];
+        var delivered = new CountDownLatch(EVENTS);
+        var queries = new AtomicInteger();
+        Disposable session = service.stream("dashboard", "live-device", null, null)
+                .publishOn(eventLoop)
+                .subscribe(event -> {
+                    int id = event.id().intValue();
+                    latencies[id] = System.nanoTime() - sent.get(id);
+                    delivered.countDown();
+                });
+        Disposable history = queryScheduler == null ? () -> { } : Flux.range(0, 4)
+                .flatMap(client -> Mono.defer(() -> query(service, client))
+                        .doOnSuccess(result -> queries.incrementAndGet())
+                        .subscribeOn(eventLoop)
+                        .publishOn(eventLoop)
+                        .repeat())
+                .subscribe();
+        try {
+            for (int id = 0; id < EVENTS; id++) {
+                sent.set(id, System.nanoTime());
+                registry.route(new DeviceEventDto((long) id, "live-device", "c1", "water/live-device/data", "{}", 1,
+                        false, Instant.EPOCH));
+                Thread.sleep(1);
+            }
+            assertThat(delivered.await(30, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            history.dispose();
+            session.dispose();
+        }
+        if (queryScheduler != null) {
+            assertThat(queries.get()).isPositive();
+        }
+        return latencies;
+    }
+
+    /**
+     * Even dashboards load a device's recent events, odd ones a history page of a client from a
+     * cursor halfway back.
+     */
+    private static Mono<?> query(DeviceEventService service, int client) {
+        if (client % 2 == 0) {
+            return service.findRecentEvents("history-device-" + client, null);
+        }
+        var cursor = new EventCursor(START.plusMillis(STORED * 50L), FIRST_ID + STORED / 2);
+        return service.findPage(new EventQuery(null, "history-client-" + client % 3, null, null, List.of(), cursor, 50));
+    }
+
+    /**
+     * The service as wired in the application, with the recent-event buffer left empty so every
+     * recent-events call reaches the database.
+     */
+    private DeviceEventService service(DeviceSubscriptionRegistry registry, Scheduler queryScheduler) {
+        return new DeviceEventService(repository, registry, mock(DeviceClientResolver.class),
+                mock(RecentEventBuffer.class), new IngestionProperties(), transactionManager, queryScheduler,
+                mock(UsageRollupService.class), mock(MeasurementExtractor.class), mock(DeviceMeasurementRepository.class),
+                mock(PayloadFieldIndexer.class), mock(PayloadCodec.class), mock(ClusterEventRelay.class),
+                new ClusterProperties());
+    }
+
+    private static String percentiles(long[] latencies) {
+        return String.format(Locale.ROOT, "%.2f/%.2f ms",
+                percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6);
+    }
+
+    private static long percentile(long[] latencies, int percentile) {
+        var sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+}
@@ -0,0 +1,94 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+class DeviceEventBatchWriterTest {
+
+    @Test
+    void badEventOnlyFailsItself() {
+        var repository = mock(DeviceEventRepository.class);
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<DeviceEvent> events = invocation.getArgument(0);
+            if (events.stream().anyMatch(event -> "bad".equals(event.getDeviceId()))) {
+                throw new IllegalStateException("value too long");
+            }
+            long id = 1;
+            for (var event : events) {
+                event.setId(id++);
+            }
+            return events;
+        });
+        var settings = new IngestionProperties.WriteBehind();
+        settings.setBatchSize(8);
+        settings.setFlushInterval(Duration.ofMillis(50));
+        List<DeviceEvent> committed = new CopyOnWriteArrayList<>();
+        var writer = new DeviceEventBatchWriter(repository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), settings, committed::addAll);
+        var outcomes = new ConcurrentHashMap<String, String>();
+
+        writer.start();
+        for (var deviceId : List.of("a", "b", "bad", "c", "d", "e", "f", "g")) {
+            writer.submit(event(deviceId), callback(deviceId, outcomes));
+        }
+        writer.close();
+
+        assertThat(outcomes).hasSize(8)
+                .containsEntry("bad", "failed")
+                .containsEntry("a", "persisted")
+                .containsEntry("g", "persisted");
+        assertThat(outcomes.values()).filteredOn("persisted"::equals).hasSize(7);
+        assertThat(committed).extracting(DeviceEvent::getDeviceId)
+                .containsExactlyInAnyOrder("a", "b", "c", "d", "e", "f", "g");
+    }
+
+    @Test
+    void retriedEventsAreNewAgain() {
+        var event = event("a");
+        event.setId(42L);
+        var measurement = new DeviceMeasurement();
+        measurement.setId(7L);
+        event.getMeasurements().add(measurement);
+
+        event.clearGeneratedIds();
+
+        assertThat(event.getId()).isNull();
+        assertThat(measurement.getId()).isNull();
+    }
+
+    private static DeviceEvent event(String deviceId) {
+        var event = new DeviceEvent();
+        event.setDeviceId(deviceId);
+        event.setTopic("water/" + deviceId + "/data");
+        event.setReceivedAt(Instant.now());
+        return event;
+    }
+
+    private static IngestionCallback callback(String deviceId, ConcurrentHashMap<String, String> outcomes) {
+        return new IngestionCallback() {
+            @Override
+            public void persisted() {
+                outcomes.merge(deviceId, "persisted", (a, b) -> a + "," + b);
+            }
+
+            @Override
+            public void failed(RuntimeException cause) {
+                outcomes.merge(deviceId, "failed", (a, b) -> a + "," + b);
+            }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+/**
+ * Filters pages of events on indexed payload fields together with device, client and time bounds,
+ * which are then applied to the attribute rows.
+ */
+@DataJpaTest
+class DeviceEventFieldFilterTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Autowired
+    private DeviceEventRepository repository;
+
+    private final PayloadFieldIndexer indexer = PayloadFieldIndexerTest.indexer("valveState", "valve.mode");
+    private final List<DeviceEvent> events = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 60; i++) {
+            var event = new DeviceEvent();
+            event.setDeviceId("filter-device-" + i % 3);
+            event.setClientId(i % 2 == 0 ? "client-01" : "client-02");
+            event.setTopic("water/" + event.getDeviceId() + "/data");
+            // every fifth event shares its receipt time with the previous one
+            event.setReceivedAt(START.plusSeconds(i - i / 5));
+            event.setPayload("{\"valveState\":\"" + (i % 4 == 1 ? "closed" : "open") + "\",\"valve\":{\"mode\":\""
+                    + (i % 3 == 0 ? "manual" : "auto") + "\"}}");
+            indexer.attach(event);
+            events.add(repository.save(event));
+        }
+        repository.flush();
+    }
+
+    @Test
+    void clientFieldAndTimeFiltersCombine() {
+        var from = START.plusSeconds(10);
+        var to = START.plusSeconds(40);
+        var query = new EventQuery(null, "client-02", from, to,
+                List.of(new EventQuery.FieldFilter("valveState", "closed")), null, 4);
+
+        assertThat(pageThrough(query)).isNotEmpty().isEqualTo(expected(event ->
+                event.getClientId().equals("client-02") && event.getPayload().contains("closed")
+                        && !event.getReceivedAt().isBefore(from) && event.getReceivedAt().isBefore(to)));
+    }
+
+    @Test
+    void deviceAndTwoFieldFiltersCombine() {
+        var query = new EventQuery("filter-device-1", null, null, null, List.of(
+                new EventQuery.FieldFilter("valveState", "open"),
+                new EventQuery.FieldFilter("valve.mode", "auto")), null, 3);
+
+        assertThat(pageThrough(query)).isNotEmpty().isEqualTo(expected(event ->
+                event.getDeviceId().equals("filter-device-1") && event.getPayload().contains("open")
+                        && event.getPayload().contains("auto")));
+    }
+
+    @Test
+    void unmatchedValueFindsNothing() {
+        var query = new EventQuery(null, "client-01", null, null,
+                List.of(new EventQuery.FieldFilter("valveState", "half")), null, 10);
+
+        assertThat(repository.findPage(query, 11)).isEmpty();
+    }
+
+    private List<Long> expected(Predicate<DeviceEvent> matches) {
+        return events.stream()
+                .filter(matches)
+                .sorted(Comparator.comparing(DeviceEvent::getReceivedAt).thenComparing(DeviceEvent::getId).reversed())
+                .map(DeviceEvent::getId)
+                .toList();
+    }
+
+    private List<Long> pageThrough(EventQuery first) {
+        List<Long> ids = new ArrayList<>();
+        var query = first;
+        while (true) {
+            var page = repository.findPage(query, query.limit() + 1);
+            boolean more = page.size() > query.limit();
+            var pageEvents = more ? page.subList(0, query.limit()) : page;
+            pageEvents.forEach(event -> ids.add(event.getId()));
+            if (!more) {
+                return ids;
+            }
+            var last = pageEvents.get(pageEvents.size() - 1);
+            query = new EventQuery(query.deviceId(), query.clientId(), query.from(), query.to(), query.fieldFilters(),
+                    new EventCursor(last.getReceivedAt(), last.getId()), query.limit());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Pages through events with the keyset queries of {@link DeviceEventQueryRepository} and reports
+ * the cost of a deep page against the first one.
+ */
+@DataJpaTest
+class DeviceEventPagingTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceEventPagingTest.class);
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+    private static final long FIRST_ID = 1_000_000L;
+
+    @Autowired
+    private DeviceEventRepository repository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final List<Position> inserted = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // every third event shares its receipt time with the previous one, so ties are broken by id
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            long id = FIRST_ID + i;
+            var receivedAt = START.plusSeconds(i - i / 3);
+            var clientId = i % 2 == 0 ? "page-client-a" : "page-client-b";
+            inserted.add(new Position(id, receivedAt, clientId));
+            rows.add(new Object[] { id, "page-device", clientId, "water/page-device/data", "{}", receivedAt.atOffset(ZoneOffset.UTC) });
+        }
+        insert(rows);
+    }
+
+    @Test
+    void pagesCoverEveryEventOnceNewestFirst() {
+        var expected = inserted.stream()
+                .sorted(Comparator.comparing(Position::receivedAt).thenComparing(Position::id).reversed())
+                .map(Position::id)
+                .toList();
+
+        assertThat(pageThrough(new EventQuery("page-device", null, null, null, List.of(), null, 25))).isEqualTo(expected);
+    }
+
+    @Test
+    void pagesRespectClientAndTimeBounds() {
+        var from = START.plusSeconds(10);
+        var to = START.plusSeconds(40);
+        var expected = inserted.stream()
+                .filter(position -> position.clientId().equals("page-client-a"))
+                .filter(position -> !position.receivedAt().isBefore(from) && position.receivedAt().isBefore(to))
+                .sorted(Comparator.comparing(Position::receivedAt).thenComparing(Position::id).reversed())
+                .map(Position::id)
+                .toList();
+
+        assertThat(pageThrough(new EventQuery("page-device", "page-client-a", from, to, List.of(), null, 7)))
+                .isNotEmpty()
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void findAfterContinuesInAscendingOrder() {
+        var cursor = new EventCursor(START.plusSeconds(20), FIRST_ID + 30);
+        var expected = inserted.stream()
+                .filter(position -> position.receivedAt().isAfter(cursor.receivedAt())
+                        || (position.receivedAt().equals(cursor.receivedAt()) && position.id() > cursor.id()))
+                .sorted(Comparator.comparing(Position::receivedAt).thenComparing(Position::id))
+                .map(Position::id)
+                .limit(10)
+                .toList();
+
+        assertThat(repository.findAfter("page-device", null, cursor, 10))
+                .extracting(DeviceEvent::getId)
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void reportsDeepPageCostAgainstTheFirstPage() {
+        List<Object[]> rows = new ArrayList<>();
+        int count = 50_000;
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[] { FIRST_ID + 1_000 + i, "deep-device", "deep-client", "water/deep-device/data", "{}",
+                    START.plusMillis(i * 10L).atOffset(ZoneOffset.UTC) });
+        }
+        insert(rows);
+        var deepCursor = new EventCursor(START.plusMillis(1_000L), FIRST_ID + 1_100);
+        var firstPage = new EventQuery("deep-device", null, null, null, List.of(), null, 50);
+        var deepPage = new EventQuery("deep-device", null, null, null, List.of(), deepCursor, 50);
+        long firstNanos = 0;
+        long deepNanos = 0;
+        for (int round = 0; round < 40; round++) {
+            // the first half of the rounds warms up the JIT and the query plan cache
+            boolean measured = round >= 20;
+            long started = System.nanoTime();
+            var first = repository.findPage(firstPage, 51);
+            long between = System.nanoTime();
+            var deep = repository.findPage(deepPage, 51);
+            long finished = System.nanoTime();
+            assertThat(first).hasSize(51);
+            assertThat(deep).hasSize(51);
+            if (measured) {
+                firstNanos += between - started;
+                deepNanos += finished - between;
+            }
+        }
+        log.info(String.format(Locale.ROOT, "Keyset pages over %d events: first page %.2f ms, page %d deep %.2f ms",
+                count, firstNanos / 1e6 / 20, (count - 100) / 50, deepNanos / 1e6 / 20));
+    }
+
+    private List<Long> pageThrough(EventQuery first) {
+        List<Long> ids = new ArrayList<>();
+        var query = first;
+        while (true) {
+            var page = repository.findPage(query, query.limit() + 1);
+            boolean more = page.size() > query.limit();
+            var events = more ? page.subList(0, query.limit()) : page;
+            events.forEach(event -> ids.add(event.getId()));
+            if (!more) {
+                return ids;
+            }
+            var last = events.get(events.size() - 1);
+            query = new EventQuery(query.deviceId(), query.clientId(), query.from(), query.to(), query.fieldFilters(),
+                    new EventCursor(last.getReceivedAt(), last.getId()), query.limit());
+        }
+    }
+
+    private void insert(List<Object[]> rows) {
+        new JdbcTemplate(dataSource).batchUpdate("""
+                INSERT INTO device_events (id, device_id, client_id, topic, payload, qos, retained, received_at)
+                VALUES (?, ?, ?, ?, ?, 1, FALSE, ?)""", rows);
+    }
+
+    private record Position(long id, Instant receivedAt, String clientId) {
+    }
+}
@@ -0,0 +1,145 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.xynnity.watermanagement.cluster.ClusterEventRelay;
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.IngestionProperties;
+import com.xynnity.watermanagement.config.MqttProperties;
+import com.xynnity.watermanagement.config.WebSocketProperties;
+import com.xynnity.watermanagement.usage.UsageRollupService;
+import com.xynnity.watermanagement.websocket.DeviceSubscriptionRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Resuming sessions where ids do not follow publication order, as with parallel lanes. Publishing is
+ * done as {@link DeviceEventService} does it: the event is buffered, then routed.
+ */
+class DeviceEventServiceResumeTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final DeviceEventRepository repository = mock(DeviceEventRepository.class);
+    private final List<DeviceEventDto> received = Collections.synchronizedList(new ArrayList<>());
+    private DeviceSubscriptionRegistry registry;
+    private RecentEventBuffer buffer;
+    private DeviceEventService service;
+    private Disposable session;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findByOrderByReceivedAtDesc(any())).thenReturn(new ArrayList<>());
+        var mqttProperties = new MqttProperties();
+        mqttProperties.setMessageCacheSize(4);
+        registry = new DeviceSubscriptionRegistry(new WebSocketProperties(), new SimpleMeterRegistry());
+        buffer = new RecentEventBuffer(repository, mock(PayloadCodec.class), mqttProperties, new ClusterProperties());
+        buffer.run(new DefaultApplicationArguments());
+        service = new DeviceEventService(repository, registry, mock(DeviceClientResolver.class), buffer,
+                new IngestionProperties(), mock(PlatformTransactionManager.class), Schedulers.immediate(),
+                mock(UsageRollupService.class), mock(MeasurementExtractor.class), mock(DeviceMeasurementRepository.class),
+                mock(PayloadFieldIndexer.class), mock(PayloadCodec.class), mock(ClusterEventRelay.class),
+                new ClusterProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (session != null) {
+            session.dispose();
+        }
+    }
+
+    @Test
+    void bufferedReplayIncludesLowerIdsPublishedAfterTheLastEvent() {
+        publish(event(5, 5));
+        // lane commits that finished after event 5 was delivered
+        publish(event(3, 3));
+        publish(event(6, 6));
+
+        resume(5);
+
+        assertThat(received).extracting(DeviceEventDto::id).containsExactly(3L, 6L);
+    }
+
+    @Test
+    void liveEventsWithLowerIdsAreDelivered() {
+        publish(event(5, 5));
+        resume(5);
+
+        publish(event(4, 4));
+        publish(event(7, 7));
+
+        assertThat(received).extracting(DeviceEventDto::id).containsExactly(4L, 7L);
+    }
+
+    @Test
+    void databaseReplayGoesByPositionWhenTheLastEventLeftTheBuffer() {
+        var last = entity(event(1, 1));
+        when(repository.findById(1L)).thenReturn(Optional.of(last));
+        when(repository.findAfter(any(), any(), eq(new EventCursor(START.plusSeconds(1), 1)), anyInt()))
+                .thenReturn(List.of(entity(event(2, 2)), entity(event(3, 3))));
+
+        resume(1);
+        publish(event(8, 8));
+
+        assertThat(received).extracting(DeviceEventDto::id).containsExactly(2L, 3L, 8L);
+    }
+
+    @Test
+    void eventPublishedDuringTheReplayIsDeliveredOnce() {
+        when(repository.findById(1L)).thenReturn(Optional.of(entity(event(1, 1))));
+        when(repository.findAfter(any(), any(), any(), anyInt())).thenAnswer(call -> {
+            // committed and published while the replay query runs, so the live side sees it too
+            publish(event(2, 2));
+            return List.of(entity(event(2, 2)));
+        });
+
+        resume(1);
+        publish(event(3, 3));
+
+        assertThat(received).extracting(DeviceEventDto::id).containsExactly(2L, 3L);
+    }
+
+    private void resume(long lastEventId) {
+        session = service.resume("s1", "d1", null, lastEventId, null).subscribe(received::add);
+    }
+
+    private void publish(DeviceEventDto event) {
+        buffer.append(event);
+        registry.route(event);
+    }
+
+    private static DeviceEventDto event(long id, long second) {
+        return new DeviceEventDto(id, "d1", "c1", "water/d1/data", "{}", 1, false, START.plusSeconds(second));
+    }
+
+    private static DeviceEvent entity(DeviceEventDto dto) {
+        var event = new DeviceEvent();
+        event.setId(dto.id());
+        event.setDeviceId(dto.deviceId());
+        event.setClientId(dto.clientId());
+        event.setTopic(dto.topic());
+        event.setReceivedAt(dto.receivedAt());
+        return event;
+    }
+}
@@ -0,0 +1,44 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+class EventCursorTest {
+
+    @Test
+    void tokenRoundTripsWithNanosecondPrecision() {
+        var cursor = new EventCursor(Instant.parse("2024-01-01T10:15:30.123456789Z"), 42L);
+
+        var token = cursor.encode();
+
+        assertThat(token).doesNotContain("=", "+", "/");
+        assertThat(EventCursor.decode(token)).isEqualTo(cursor);
+    }
+
+    @Test
+    void cursorOfAnEventIsItsPosition() {
+        var receivedAt = Instant.parse("2024-01-01T00:00:00Z");
+        var event = new DeviceEventDto(7L, "d1", "c1", "water/d1/data", "{}", 0, false, receivedAt);
+
+        assertThat(EventCursor.of(event)).isEqualTo(new EventCursor(receivedAt, 7L));
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        for (var token : new String[] { "not base64!", encoded("1:2"), encoded("a:b:c"), encoded("1:2:3:4"), "" }) {
+            assertThatThrownBy(() -> EventCursor.decode(token))
+                    .as(token)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static String encoded(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,208 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.util.unit.DataSize;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+class EventJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<JournalRecord> applied = new CopyOnWriteArrayList<>();
+
+    @Test
+    void appliesSyncedRecordsAndAcknowledgesThem() throws InterruptedException {
+        var persisted = new CountDownLatch(3);
+        var journal = journal(settings(), applied::addAll);
+        journal.start();
+
+        for (var deviceId : List.of("a", "b", "c")) {
+            journal.append(record(deviceId), persisted(persisted));
+        }
+
+        assertThat(persisted.await(5, TimeUnit.SECONDS)).isTrue();
+        journal.close();
+        assertThat(applied).extracting(JournalRecord::deviceId).containsExactly("a", "b", "c");
+        assertThat(journal.backlog()).isZero();
+    }
+
+    @Test
+    void unsyncedRecordsAreNotApplied() throws InterruptedException {
+        var settings = settings();
+        settings.setSyncInterval(Duration.ofHours(1));
+        var persisted = new CountDownLatch(1);
+        var journal = journal(settings, applied::addAll);
+        journal.start();
+
+        journal.append(record("a"), persisted(persisted));
+        Thread.sleep(200);
+        assertThat(persisted.getCount()).isEqualTo(1);
+        assertThat(applied).isEmpty();
+
+        // closing syncs what was appended and then applies it
+        journal.close();
+        assertThat(persisted.getCount()).isZero();
+        assertThat(applied).extracting(JournalRecord::deviceId).containsExactly("a");
+    }
+
+    @Test
+    void unappliedRecordsAreRecoveredOnRestart() throws InterruptedException {
+        var settings = settings();
+        settings.setShutdownTimeout(Duration.ofMillis(100));
+        var persisted = new CountDownLatch(3);
+        var unavailable = journal(settings, records -> {
+            throw new TransientDataAccessResourceException("database down");
+        });
+        unavailable.start();
+        for (var deviceId : List.of("a", "b", "c")) {
+            unavailable.append(record(deviceId), persisted(persisted));
+        }
+        assertThat(persisted.await(5, TimeUnit.SECONDS)).isTrue();
+        unavailable.close();
+
+        var restarted = journal(settings(), applied::addAll);
+        restarted.start();
+        restarted.append(record("d"), IngestionCallback.NONE);
+        restarted.close();
+
+        assertThat(applied).extracting(JournalRecord::deviceId).containsExactly("a", "b", "c", "d");
+        assertThat(applied).extracting(JournalRecord::position).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void appliedRecordsAreNotAppliedAgain() {
+        var first = journal(settings(), applied::addAll);
+        first.start();
+        first.append(record("a"), IngestionCallback.NONE);
+        first.append(record("b"), IngestionCallback.NONE);
+        first.close();
+
+        var restarted = journal(settings(), applied::addAll);
+        restarted.start();
+        restarted.close();
+
+        assertThat(applied).extracting(JournalRecord::deviceId).containsExactly("a", "b");
+    }
+
+    @Test
+    void tornRecordAtTheEndIsDiscarded() throws IOException {
+        var settings = settings();
+        settings.setShutdownTimeout(Duration.ofMillis(100));
+        var unavailable = journal(settings, records -> {
+            throw new TransientDataAccessResourceException("database down");
+        });
+        unavailable.start();
+        unavailable.append(record("a"), IngestionCallback.NONE);
+        unavailable.close();
+
+        // a record header whose body never made it to disk
+        try (var files = Files.list(directory)) {
+            var segment = files.filter(path -> path.getFileName().toString().startsWith("segment-")).findFirst().orElseThrow();
+            try (var channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                var map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                int end = 8 + map.getInt(0);
+                map.putInt(end, 40).putInt(end + 4, 12345);
+                map.force();
+            }
+        }
+
+        var restarted = journal(settings(), applied::addAll);
+        restarted.start();
+        restarted.append(record("b"), IngestionCallback.NONE);
+        restarted.close();
+
+        assertThat(applied).extracting(JournalRecord::deviceId).containsExactly("a", "b");
+    }
+
+    @Test
+    void rejectedRecordIsDeadLetteredAndTheRestApplied() throws IOException {
+        var settings = settings();
+        settings.setMaxAttempts(2);
+        settings.setRetryBackoff(Duration.ofMillis(10));
+        // one sync covers all five records, so they are applied as one batch
+        settings.setSyncInterval(Duration.ofMillis(50));
+        Consumer<List<JournalRecord>> rejectingBad = records -> {
+            if (records.stream().anyMatch(record -> "bad".equals(record.deviceId()))) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            applied.addAll(records);
+        };
+        var journal = journal(settings, rejectingBad);
+        journal.start();
+        for (var deviceId : List.of("a", "b", "bad", "c", "d")) {
+            journal.append(record(deviceId), IngestionCallback.NONE);
+        }
+        journal.close();
+
+        assertThat(applied).extracting(JournalRecord::deviceId).containsExactly("a", "b", "c", "d");
+        var deadLetter = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("dead-letter.wal")));
+        int length = deadLetter.getInt();
+        deadLetter.getInt();
+        long position = deadLetter.getLong();
+        var body = new byte[length];
+        deadLetter.get(body);
+        assertThat(JournalRecord.decode(position, body).deviceId()).isEqualTo("bad");
+        assertThat(deadLetter.hasRemaining()).isFalse();
+
+        // the dead-lettered record counts as applied when the journal is opened again
+        var restarted = journal(settings(), rejectingBad);
+        restarted.start();
+        restarted.close();
+        assertThat(applied).hasSize(4);
+    }
+
+    private EventJournal journal(IngestionProperties.Journal settings, Consumer<List<JournalRecord>> applier) {
+        return new EventJournal(settings, applier,
+                () -> applied.stream().mapToLong(JournalRecord::position).max().orElse(-1));
+    }
+
+    private IngestionProperties.Journal settings() {
+        var settings = new IngestionProperties.Journal();
+        settings.setEnabled(true);
+        settings.setDirectory(directory.toString());
+        settings.setSegmentSize(DataSize.ofKilobytes(4));
+        settings.setSyncInterval(Duration.ofMillis(2));
+        settings.setRetryBackoff(Duration.ofMillis(20));
+        settings.setShutdownTimeout(Duration.ofSeconds(5));
+        return settings;
+    }
+
+    private static JournalRecord record(String deviceId) {
+        return new JournalRecord(0, "water/" + deviceId + "/data", "{\"usage\":1}", 1, false, deviceId, null,
+                Instant.parse("2024-01-01T00:00:00Z"));
+    }
+
+    private static IngestionCallback persisted(CountDownLatch latch) {
+        return new IngestionCallback() {
+            @Override
+            public void persisted() {
+                latch.countDown();
+            }
+
+            @Override
+            public void failed(RuntimeException cause) {
+            }
+        };
+    }
+}
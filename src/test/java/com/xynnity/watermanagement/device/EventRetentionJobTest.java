@@ -0,0 +1,115 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import com.xynnity.watermanagement.config.RetentionProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EventRetentionJobTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private RetentionProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private long nextId;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("""
+                CREATE TABLE device_events (id BIGINT PRIMARY KEY, client_id VARCHAR(255),
+                    received_at TIMESTAMP(6) WITH TIME ZONE NOT NULL)""");
+        jdbcTemplate.execute("""
+                CREATE TABLE device_measurements (id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    event_id BIGINT NOT NULL REFERENCES device_events (id))""");
+        jdbcTemplate.execute("""
+                CREATE TABLE device_event_attributes (id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    event_id BIGINT NOT NULL REFERENCES device_events (id))""");
+        properties = new RetentionProperties();
+        properties.setDefaultPeriod(Duration.ofDays(30));
+        properties.setStep(Duration.ofHours(6));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void deletesExpiredEventsWithTheirChildRows() {
+        var today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+        for (int day = 0; day < 40; day++) {
+            insert("c1", today.minus(Duration.ofDays(day)).plusSeconds(60));
+        }
+
+        long deleted = job().purge();
+
+        // cutoff is the start of the day 30 days ago, so days 31 to 39 go
+        assertThat(deleted).isEqualTo(9);
+        assertThat(count("device_events")).isEqualTo(31);
+        assertThat(count("device_measurements")).isEqualTo(31);
+        assertThat(count("device_event_attributes")).isEqualTo(31);
+        assertThat(meterRegistry.counter("device.events.purged").count()).isEqualTo(9);
+    }
+
+    @Test
+    void clientOverridesAndTheDefaultEachApplyToTheirOwnEvents() {
+        properties.setClients(Map.of("short", Duration.ofDays(2)));
+        var today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+        var tenDaysAgo = today.minus(Duration.ofDays(10));
+        var fiftyDaysAgo = today.minus(Duration.ofDays(50));
+        insert("short", tenDaysAgo);
+        insert("long", tenDaysAgo);
+        insert(null, tenDaysAgo);
+        insert("long", fiftyDaysAgo);
+        insert(null, fiftyDaysAgo);
+
+        assertThat(job().purge()).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForList("SELECT client_id FROM device_events ORDER BY client_id NULLS FIRST", String.class))
+                .containsExactly(null, "long");
+    }
+
+    @Test
+    void gapsInTheDataAreSkipped() {
+        var today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+        insert("c1", today.minus(Duration.ofDays(3_000)));
+        insert("c1", today.minus(Duration.ofDays(60)));
+
+        assertThat(job().purge()).isEqualTo(2);
+        assertThat(job().purge()).isZero();
+    }
+
+    private EventRetentionJob job() {
+        return new EventRetentionJob(database, new DataSourceTransactionManager(database), properties, meterRegistry);
+    }
+
+    private void insert(String clientId, Instant receivedAt) {
+        long id = ++nextId;
+        jdbcTemplate.update("INSERT INTO device_events (id, client_id, received_at) VALUES (?, ?, ?)",
+                id, clientId, receivedAt.atOffset(ZoneOffset.UTC));
+        jdbcTemplate.update("INSERT INTO device_measurements (event_id) VALUES (?)", id);
+        jdbcTemplate.update("INSERT INTO device_event_attributes (event_id) VALUES (?)", id);
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+}
@@ -0,0 +1,154 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.xynnity.watermanagement.config.RetentionProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Reports insert, latest-per-device and keyset page latency as the event table grows, and again
+ * after {@link EventRetentionJob} has purged the expired half of it.
+ */
+@DataJpaTest
+class EventRetentionReportTest {
+
+    private static final Logger log = LoggerFactory.getLogger(EventRetentionReportTest.class);
+    private static final long FIRST_ID = 1_000_000L;
+    private static final int DEVICES = 20;
+    private static final int PROBE_ROWS = 1_000;
+    private static final Duration WINDOW = Duration.ofDays(60);
+
+    @Autowired
+    private DeviceEventRepository repository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JdbcTemplate jdbcTemplate;
+    private Instant now;
+    private long nextId = FIRST_ID;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    @Test
+    void reportsQueryLatencyAsEventsGrowAndAfterAPurge() {
+        // events spread evenly over the last 60 days, so a 30 day retention expires about half of them
+        for (int total : new int[] { 10_000, 20_000, 40_000 }) {
+            insert(rowsOverWindow(total - (int) count()));
+            report("before purge");
+        }
+        var properties = new RetentionProperties();
+        properties.setDefaultPeriod(Duration.ofDays(30));
+        properties.setStep(Duration.ofDays(1));
+        long expired = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM device_events WHERE received_at < ?",
+                Long.class, now.minus(Duration.ofDays(30)).truncatedTo(ChronoUnit.DAYS).atOffset(ZoneOffset.UTC));
+        long before = count();
+
+        long started = System.nanoTime();
+        long deleted = new EventRetentionJob(dataSource, transactionManager, properties, new SimpleMeterRegistry()).purge();
+        long purgeNanos = System.nanoTime() - started;
+
+        assertThat(deleted).isPositive().isEqualTo(expired);
+        assertThat(count()).isEqualTo(before - deleted);
+        log.info(String.format(Locale.ROOT, "Purged %d of %d events in %.1f ms", deleted, before, purgeNanos / 1e6));
+        report("after purge");
+    }
+
+    /**
+     * Times one batch of new events, then the latest event of every device and a first and deep
+     * keyset page of one device, each averaged over the measured rounds.
+     */
+    private void report(String stage) {
+        long size = count();
+        var probe = new ArrayList<Object[]>();
+        for (int i = 0; i < PROBE_ROWS; i++) {
+            probe.add(row(i % DEVICES, now.minusMillis(PROBE_ROWS - i)));
+        }
+        long started = System.nanoTime();
+        insert(probe);
+        long insertNanos = System.nanoTime() - started;
+
+        var firstPage = new EventQuery("report-device-0", null, null, null, List.of(), null, 50);
+        var deepPage = new EventQuery("report-device-0", null, null, null, List.of(),
+                new EventCursor(now.minus(Duration.ofDays(15)), Long.MAX_VALUE), 50);
+        long latestNanos = 0;
+        long firstNanos = 0;
+        long deepNanos = 0;
+        for (int round = 0; round < 40; round++) {
+            // rounds before the twentieth are warm-up and not counted
+            boolean measured = round >= 20;
+            long roundStarted = System.nanoTime();
+            for (int device = 0; device < DEVICES; device++) {
+                assertThat(repository.findFirstByDeviceIdOrderByReceivedAtDesc("report-device-" + device)).isPresent();
+            }
+            long latestDone = System.nanoTime();
+            assertThat(repository.findPage(firstPage, 51)).hasSize(51);
+            long firstDone = System.nanoTime();
+            assertThat(repository.findPage(deepPage, 51)).hasSize(51);
+            long deepDone = System.nanoTime();
+            if (measured) {
+                latestNanos += latestDone - roundStarted;
+                firstNanos += firstDone - latestDone;
+                deepNanos += deepDone - firstDone;
+            }
+        }
+        log.info(String.format(Locale.ROOT,
+                "Events %s over %d rows: insert %.1f us/event, latest per device %.3f ms, "
+                        + "first page %.3f ms, page 15 days deep %.3f ms",
+                stage, size, insertNanos / 1e3 / PROBE_ROWS, latestNanos / 1e6 / 20 / DEVICES,
+                firstNanos / 1e6 / 20, deepNanos / 1e6 / 20));
+    }
+
+    private List<Object[]> rowsOverWindow(int count) {
+        List<Object[]> rows = new ArrayList<>();
+        long windowMillis = WINDOW.toMillis();
+        var windowStart = now.minus(WINDOW);
+        for (int i = 0; i < count; i++) {
+            rows.add(row(i % DEVICES, windowStart.plusMillis(windowMillis * i / count + nextId % 1_000)));
+        }
+        return rows;
+    }
+
+    private Object[] row(int device, Instant receivedAt) {
+        var deviceId = "report-device-" + device;
+        return new Object[] { nextId++, deviceId, "report-client-" + device % 4, "water/" + deviceId + "/data", "{}",
+                receivedAt.atOffset(ZoneOffset.UTC) };
+    }
+
+    private long count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM device_events", Long.class);
+    }
+
+    private void insert(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO device_events (id, device_id, client_id, topic, payload, qos, retained, received_at)
+                VALUES (?, ?, ?, ?, ?, 1, FALSE, ?)""", rows);
+    }
+}
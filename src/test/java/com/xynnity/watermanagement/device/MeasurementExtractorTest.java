@@ -0,0 +1,80 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+class MeasurementExtractorTest {
+
+    private final MeasurementExtractor extractor = new MeasurementExtractor(new ObjectMapper(), new IngestionProperties());
+
+    @Test
+    void splitsValueAndUnitSuffix() {
+        assertThat(extractor.extract("{\"usageLiters\":\"18.5cc\",\"pressure\":\" 3 bar \",\"flowRate\":2}"))
+                .extracting(MeasurementExtractor.Reading::name, MeasurementExtractor.Reading::value,
+                        MeasurementExtractor.Reading::unit)
+                .containsExactlyInAnyOrder(
+                        tuple("usage", 18.5, "cc"),
+                        tuple("pressure", 3.0, "bar"),
+                        tuple("flowRate", 2.0, null));
+    }
+
+    @Test
+    void preferredFieldWinsAndPayloadUnitFillsIn() {
+        assertThat(extractor.extract("{\"usage\":1,\"usageLiters\":4.5,\"units\":\"L\"}"))
+                .containsExactly(new MeasurementExtractor.Reading("usage", 4.5, "L"));
+    }
+
+    @Test
+    void unitSuffixOfColumnLengthIsKept() {
+        var unit = "x".repeat(NumericText.MAX_UNIT_LENGTH);
+
+        assertThat(extractor.extract("{\"usage\":\"7 " + unit + "\"}"))
+                .containsExactly(new MeasurementExtractor.Reading("usage", 7, unit));
+    }
+
+    @Test
+    void readingWithOversizedSuffixIsSkipped() {
+        var text = "7 liters, measured at the north gate after the pump was serviced";
+
+        assertThat(extractor.extract("{\"usage\":\"" + text + "\",\"pressure\":3}"))
+                .containsExactly(new MeasurementExtractor.Reading("pressure", 3, null));
+    }
+
+    @Test
+    void oversizedUnitFieldIsIgnored() {
+        var unit = "y".repeat(NumericText.MAX_UNIT_LENGTH + 1);
+
+        assertThat(extractor.extract("{\"unit\":\"" + unit + "\",\"usage\":7}"))
+                .containsExactly(new MeasurementExtractor.Reading("usage", 7, null));
+    }
+
+    @Test
+    void nonFiniteValuesAreSkipped() {
+        assertThat(extractor.extract("{\"usage\":\"Infinity\",\"pressure\":\"NaN\",\"flowRate\":1e999}")).isEmpty();
+        assertThat(extractor.extract("{\"usage\":\"1e999 L\"}")).isEmpty();
+    }
+
+    @Test
+    void malformedPayloadYieldsNothing() {
+        assertThat(extractor.extract("not json")).isEmpty();
+        assertThat(extractor.extract("[1,2]")).isEmpty();
+        assertThat(extractor.extract(null)).isEmpty();
+    }
+
+    @Test
+    void attachedMeasurementsFitTheUnitColumn() {
+        var event = new DeviceEvent();
+        event.setDeviceId("d1");
+        event.setPayload("{\"usage\":\"5 " + "z".repeat(40) + "\",\"units\":\"" + "w".repeat(40) + "\",\"pressure\":2}");
+
+        extractor.attach(event);
+
+        assertThat(event.getMeasurements()).extracting(DeviceMeasurement::getName).containsExactly("pressure");
+        assertThat(event.getMeasurements()).allSatisfy(measurement -> assertThat(measurement.getUnit()).isNull());
+    }
+}
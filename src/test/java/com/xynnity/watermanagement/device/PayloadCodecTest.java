@@ -0,0 +1,175 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Checks that payloads survive the codec and reports the storage reduction and per-event cost on the
+ * bundled {@code data.sql} events and on a synthetic meter dataset.
+ */
+class PayloadCodecTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadCodecTest.class);
+    private static final Pattern SEEDED_EVENT = Pattern.compile("'(water/[^']+)',\\s*'(\\{[^']*})'");
+    private static final int ROUNDS = 20;
+
+    @Test
+    void storedPayloadsDecodeToTheOriginal() throws IOException {
+        var codec = codec(10);
+        for (var sample : seededEvents()) {
+            var event = event(sample.topic(), sample.payload());
+            codec.encode(event);
+            event.setDecodedPayload(null);
+
+            assertThat(codec.payloadOf(event)).isEqualTo(sample.payload());
+            assertThat(codec.decode(event.getPayload(), event.getPayloadDeflated(), event.getPayloadDictionary()))
+                    .isEqualTo(sample.payload());
+        }
+    }
+
+    @Test
+    void otherTopicsAndSmallPayloadsStayText() {
+        var codec = codec(10);
+        var other = event("alerts/device-001", "{\"date\":\"2025-11-06\",\"usageLiters\":120,\"timestamp\":\"2025-11-06T06:30:00Z\"}");
+        var small = event("water/device-001/data", "{\"usageLiters\":1}");
+
+        codec.encode(other);
+        codec.encode(small);
+
+        assertThat(other.getPayloadDeflated()).isNull();
+        assertThat(small.getPayloadDeflated()).isNull();
+    }
+
+    @Test
+    void reportsStorageReductionAndCost() throws IOException {
+        var seeded = report("data.sql", seededEvents(), 10);
+        var synthetic = report("synthetic", syntheticEvents(10_000), 500);
+
+        assertThat(seeded.stored()).isLessThan(seeded.original());
+        assertThat(synthetic.stored()).isLessThan(synthetic.original() / 2);
+    }
+
+    private Report report(String dataset, List<Sample> samples, int trainingSamples) {
+        var codec = codec(trainingSamples);
+        // the first pass trains the dictionary
+        for (var sample : samples) {
+            codec.encode(event(sample.topic(), sample.payload()));
+        }
+        long original = 0;
+        long stored = 0;
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            // the first half of the rounds warms up the JIT
+            boolean measured = round >= ROUNDS / 2;
+            for (var sample : samples) {
+                var event = event(sample.topic(), sample.payload());
+                long started = System.nanoTime();
+                codec.encode(event);
+                long encoded = System.nanoTime();
+                var decoded = codec.decode(event.getPayload(), event.getPayloadDeflated(), event.getPayloadDictionary());
+                long finished = System.nanoTime();
+                assertThat(decoded).isEqualTo(sample.payload());
+                if (measured) {
+                    encodeNanos += encoded - started;
+                    decodeNanos += finished - encoded;
+                }
+                if (round == ROUNDS - 1) {
+                    original += sample.payload().getBytes(StandardCharsets.UTF_8).length;
+                    stored += event.getPayloadDeflated() != null
+                            ? event.getPayloadDeflated().length
+                            : event.getPayload().getBytes(StandardCharsets.UTF_8).length;
+                }
+            }
+        }
+        long measuredEvents = (long) samples.size() * (ROUNDS - ROUNDS / 2);
+        var report = new Report(original, stored);
+        log.info(String.format(Locale.ROOT,
+                "Payload codec on %s: %d events, %d -> %d payload bytes (%.1f%% smaller, %.1f -> %.1f bytes/event), "
+                        + "encode %.2f us/event, decode %.2f us/event",
+                dataset, samples.size(), original, stored, 100.0 * (original - stored) / original,
+                (double) original / samples.size(), (double) stored / samples.size(),
+                encodeNanos / 1e3 / measuredEvents, decodeNanos / 1e3 / measuredEvents));
+        return report;
+    }
+
+    private static PayloadCodec codec(int trainingSamples) {
+        var dictionaries = mock(PayloadDictionaryRepository.class);
+        when(dictionaries.save(any())).thenAnswer(invocation -> {
+            PayloadDictionary dictionary = invocation.getArgument(0);
+            dictionary.setId(1);
+            return dictionary;
+        });
+        var properties = new IngestionProperties();
+        var compression = properties.getCompression();
+        compression.setEnabled(true);
+        compression.setTopicPatterns(List.of("water/+/data"));
+        compression.setTrainingSamples(trainingSamples);
+        return new PayloadCodec(dictionaries, mock(DeviceEventRepository.class), mock(PlatformTransactionManager.class),
+                properties, new SimpleMeterRegistry());
+    }
+
+    private static List<Sample> seededEvents() throws IOException {
+        var sql = new ClassPathResource("data.sql").getContentAsString(StandardCharsets.UTF_8);
+        var matcher = SEEDED_EVENT.matcher(sql);
+        List<Sample> samples = new ArrayList<>();
+        while (matcher.find()) {
+            samples.add(new Sample(matcher.group(1), matcher.group(2)));
+        }
+        assertThat(samples).isNotEmpty();
+        return samples;
+    }
+
+    /**
+     * Meter readings in the shape devices publish, from 200 devices of 20 clients over 50 days.
+     */
+    private static List<Sample> syntheticEvents(int count) {
+        var random = new Random(42);
+        var start = LocalDate.of(2025, 1, 1);
+        List<Sample> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int device = random.nextInt(200) + 1;
+            var date = start.plusDays(random.nextInt(50));
+            var payload = String.format(Locale.ROOT,
+                    "{\"date\":\"%s\",\"usageLiters\":%.1f,\"timestamp\":\"%sT%02d:%02d:%02dZ\",\"deviceId\":\"device-%03d\",\"clientId\":\"client-%02d\"}",
+                    date, random.nextDouble() * 500, date, random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                    device, device % 20 + 1);
+            samples.add(new Sample(String.format(Locale.ROOT, "water/device-%03d/data", device), payload));
+        }
+        return samples;
+    }
+
+    private static DeviceEvent event(String topic, String payload) {
+        var event = new DeviceEvent();
+        event.setTopic(topic);
+        event.setPayload(payload);
+        return event;
+    }
+
+    private record Sample(String topic, String payload) {
+    }
+
+    private record Report(long original, long stored) {
+    }
+}
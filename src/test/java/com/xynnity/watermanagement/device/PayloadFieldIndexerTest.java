@@ -0,0 +1,75 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+class PayloadFieldIndexerTest {
+
+    private final PayloadFieldIndexer indexer = indexer("valveState", "valve.mode", "pressure");
+
+    @Test
+    void extractsConfiguredScalarFieldsAsText() {
+        var values = indexer.extract("""
+                {"valveState":"closed","pressure":2.5,"usage":3,"valve":{"mode":"auto","other":1}}""");
+
+        assertThat(values).containsExactly(
+                entry("valveState", "closed"),
+                entry("pressure", "2.5"),
+                entry("valve.mode", "auto"));
+    }
+
+    @Test
+    void skipsNullsArraysAndObjectsAtIndexedPaths() {
+        assertThat(indexer.extract("{\"valveState\":null,\"pressure\":[1,2],\"valve\":{\"mode\":{\"x\":1}}}")).isEmpty();
+    }
+
+    @Test
+    void ignoresPayloadsThatAreNotObjects() {
+        assertThat(indexer.extract("[{\"valveState\":\"closed\"}]")).isEmpty();
+        assertThat(indexer.extract("not json")).isEmpty();
+        assertThat(indexer.extract("{\"valveState\":\"closed\",")).containsEntry("valveState", "closed");
+        assertThat(indexer.extract(null)).isEmpty();
+    }
+
+    @Test
+    void truncatesLongValues() {
+        var value = "x".repeat(DeviceEventAttribute.MAX_VALUE_LENGTH + 10);
+
+        assertThat(indexer.extract("{\"valveState\":\"" + value + "\"}").get("valveState"))
+                .hasSize(DeviceEventAttribute.MAX_VALUE_LENGTH);
+    }
+
+    @Test
+    void attachCopiesTheEventColumns() {
+        var event = new DeviceEvent();
+        event.setDeviceId("d1");
+        event.setClientId("c1");
+        event.setReceivedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        event.setPayload("{\"valveState\":\"open\"}");
+
+        indexer.attach(event);
+
+        assertThat(event.getAttributes()).singleElement().satisfies(attribute -> {
+            assertThat(attribute.getEvent()).isSameAs(event);
+            assertThat(attribute.getName()).isEqualTo("valveState");
+            assertThat(attribute.getValue()).isEqualTo("open");
+            assertThat(attribute.getDeviceId()).isEqualTo("d1");
+            assertThat(attribute.getClientId()).isEqualTo("c1");
+            assertThat(attribute.getReceivedAt()).isEqualTo(event.getReceivedAt());
+        });
+    }
+
+    static PayloadFieldIndexer indexer(String... paths) {
+        var properties = new IngestionProperties();
+        properties.setIndexedFields(List.of(paths));
+        return new PayloadFieldIndexer(new ObjectMapper(), properties);
+    }
+}
@@ -0,0 +1,156 @@
+package com.xynnity.watermanagement.device;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.MqttProperties;
+
+class RecentEventBufferTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private RecentEventBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = buffer(200, 3);
+    }
+
+    @Test
+    void globalRingKeepsTheNewestEvents() {
+        for (long id = 1; id <= 250; id++) {
+            buffer.append(event(id, "d" + (id % 5), "c1"));
+        }
+
+        var recent = buffer.recentEvents(null, null).orElseThrow();
+        assertThat(recent).hasSize(RecentEventBuffer.RECENT_LIMIT);
+        assertThat(recent.get(0).id()).isEqualTo(250);
+        assertThat(recent).extracting(DeviceEventDto::id).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+    }
+
+    @Test
+    void keyedRingAnswersOnceFull() {
+        for (long id = 1; id < RecentEventBuffer.RECENT_LIMIT; id++) {
+            buffer.append(event(id, "d1", "c1"));
+        }
+        assertThat(buffer.recentEvents("d1", null)).isEmpty();
+
+        buffer.append(event(RecentEventBuffer.RECENT_LIMIT, "d1", "c1"));
+
+        assertThat(buffer.recentEvents("d1", null).orElseThrow()).hasSize(RecentEventBuffer.RECENT_LIMIT);
+        assertThat(buffer.recentEvents("d1", "c1").orElseThrow()).hasSize(RecentEventBuffer.RECENT_LIMIT);
+        assertThat(buffer.recentEvents(null, "c1").orElseThrow()).hasSize(RecentEventBuffer.RECENT_LIMIT);
+    }
+
+    @Test
+    void seededRingAnswersAndMergesLiveEvents() {
+        buffer.seed("d1", null, List.of(event(1, "d1", "c1"), event(2, "d1", "c1")));
+        buffer.append(event(3, "d1", "c1"));
+
+        assertThat(buffer.recentEvents("d1", null).orElseThrow())
+                .extracting(DeviceEventDto::id)
+                .containsExactly(3L, 2L, 1L);
+    }
+
+    @Test
+    void emptySeedForUnknownKeyCreatesNoRing() {
+        for (int i = 0; i < 1_000; i++) {
+            buffer.seed("unknown-" + i, null, List.of());
+        }
+        buffer.seed("d1", null, List.of());
+
+        // an unknown key stays unanswered instead of caching an empty result
+        assertThat(buffer.recentEvents("d1", null)).isEmpty();
+    }
+
+    @Test
+    void emptySeedCompletesAnExistingRing() {
+        buffer.append(event(1, "d1", "c1"));
+
+        buffer.seed("d1", null, List.of());
+
+        assertThat(buffer.recentEvents("d1", null).orElseThrow()).extracting(DeviceEventDto::id).containsExactly(1L);
+    }
+
+    @Test
+    void leastRecentlyUsedRingsAreDropped() {
+        for (int i = 1; i <= 3; i++) {
+            buffer.seed("d" + i, null, List.of(event(i, "d" + i, "c1")));
+        }
+        // touching d1 makes d2 the least recently used ring
+        assertThat(buffer.recentEvents("d1", null)).isPresent();
+
+        buffer.seed("d4", null, List.of(event(4, "d4", "c1")));
+
+        assertThat(buffer.recentEvents("d1", null)).isPresent();
+        assertThat(buffer.recentEvents("d2", null)).isEmpty();
+        assertThat(buffer.recentEvents("d3", null)).isPresent();
+        assertThat(buffer.recentEvents("d4", null)).isPresent();
+    }
+
+    @Test
+    void eventsPublishedAfterFollowPublicationOrderUntilEvicted() {
+        var small = buffer(4, 10);
+        // a lane that committed later publishes a lower id after a higher one
+        small.append(event(2, "d1", "c1"));
+        small.append(event(1, "d1", "c1"));
+        small.append(event(3, "d1", "c1"));
+        small.append(event(4, "d2", "c1"));
+
+        assertThat(small.eventsPublishedAfter(2, "d1", null).orElseThrow()).extracting(DeviceEventDto::id)
+                .containsExactly(1L, 3L);
+        assertThat(small.eventsPublishedAfter(2, null, "c1").orElseThrow()).extracting(DeviceEventDto::id)
+                .containsExactly(1L, 3L, 4L);
+        assertThat(small.eventsPublishedAfter(4, null, null).orElseThrow()).isEmpty();
+
+        small.append(event(5, "d1", "c1"));
+
+        // event 2 has been evicted, so the buffer no longer knows what followed it
+        assertThat(small.eventsPublishedAfter(2, null, null)).isEmpty();
+        assertThat(small.eventsPublishedAfter(1, null, null).orElseThrow()).extracting(DeviceEventDto::id)
+                .containsExactly(3L, 4L, 5L);
+        assertThat(small.eventsPublishedAfter(99, null, null)).isEmpty();
+    }
+
+    @Test
+    void clusteredBufferAnswersNothing() {
+        var clusterProperties = new ClusterProperties();
+        clusterProperties.setEnabled(true);
+        var clustered = new RecentEventBuffer(repository(), mock(PayloadCodec.class), new MqttProperties(), clusterProperties);
+        clustered.append(event(1, "d1", "c1"));
+
+        assertThat(clustered.recentEvents(null, null)).isEmpty();
+        assertThat(clustered.eventsPublishedAfter(1, null, null)).isEmpty();
+    }
+
+    private static RecentEventBuffer buffer(int size, int keys) {
+        var properties = new MqttProperties();
+        properties.setMessageCacheSize(size);
+        properties.setMessageCacheKeys(keys);
+        var buffer = new RecentEventBuffer(repository(), mock(PayloadCodec.class), properties, new ClusterProperties());
+        buffer.run(new DefaultApplicationArguments());
+        return buffer;
+    }
+
+    private static DeviceEventRepository repository() {
+        var repository = mock(DeviceEventRepository.class);
+        when(repository.findByOrderByReceivedAtDesc(any())).thenReturn(new ArrayList<>());
+        return repository;
+    }
+
+    private static DeviceEventDto event(long id, String deviceId, String clientId) {
+        return new DeviceEventDto(id, deviceId, clientId, "water/" + deviceId + "/data", "{\"usage\":" + id + "}", 1,
+                false, START.plusSeconds(id));
+    }
+}
@@ -0,0 +1,100 @@
+package com.xynnity.watermanagement.mqtt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class InboundDeduplicatorTest {
+
+    private static final long WINDOW = Duration.ofMinutes(10).toNanos();
+
+    private final AtomicLong clock = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private InboundDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new IngestionProperties.Deduplication();
+        properties.setWindow(Duration.ofNanos(WINDOW));
+        properties.setExpectedMessages(1_000);
+        properties.setFalsePositiveProbability(0.01);
+        properties.setMaxExactKeys(10_000);
+        meterRegistry = new SimpleMeterRegistry();
+        deduplicator = new InboundDeduplicator(properties, meterRegistry, clock::get);
+    }
+
+    @Test
+    void redeliveryWithinWindowIsDuplicate() {
+        assertThat(deduplicator.isDuplicate("d1", "2024-01-01T00:00:00Z", "{\"usage\":1}")).isFalse();
+        assertThat(deduplicator.isDuplicate("d1", "2024-01-01T00:00:00Z", "{\"usage\":1}")).isTrue();
+        assertThat(meterRegistry.counter("mqtt.messages.duplicates").count()).isEqualTo(1);
+    }
+
+    @Test
+    void differentPayloadDeviceOrTimestampIsNew() {
+        deduplicator.isDuplicate("d1", "t1", "a");
+        assertThat(deduplicator.isDuplicate("d1", "t1", "b")).isFalse();
+        assertThat(deduplicator.isDuplicate("d2", "t1", "a")).isFalse();
+        assertThat(deduplicator.isDuplicate("d1", "t2", "a")).isFalse();
+    }
+
+    @Test
+    void messagesWithoutDeviceTimestampAreNeverDuplicates() {
+        assertThat(deduplicator.isDuplicate("d1", null, "a")).isFalse();
+        assertThat(deduplicator.isDuplicate("d1", null, "a")).isFalse();
+        assertThat(deduplicator.isDuplicate("d1", " ", "a")).isFalse();
+    }
+
+    @Test
+    void keySurvivesOneRotation() {
+        deduplicator.isDuplicate("d1", "t1", "a");
+        clock.addAndGet(WINDOW + 1);
+        assertThat(deduplicator.isDuplicate("d1", "t1", "a")).isTrue();
+    }
+
+    @Test
+    void keyExpiresAfterTwoRotations() {
+        deduplicator.isDuplicate("d1", "t1", "a");
+        clock.addAndGet(WINDOW + 1);
+        deduplicator.isDuplicate("d2", "t1", "a");
+        clock.addAndGet(WINDOW + 1);
+        assertThat(deduplicator.isDuplicate("d1", "t1", "a")).isFalse();
+        // the newer key was inserted one generation later and is still remembered
+        assertThat(deduplicator.isDuplicate("d2", "t1", "a")).isTrue();
+    }
+
+    @Test
+    void longSilenceExpiresBothGenerations() {
+        deduplicator.isDuplicate("d1", "t1", "a");
+        clock.addAndGet(5 * WINDOW);
+        assertThat(deduplicator.isDuplicate("d1", "t1", "a")).isFalse();
+    }
+
+    @Test
+    void forgottenKeyIsAcceptedAgainAsBloomFalsePositive() {
+        deduplicator.isDuplicate("d1", "t1", "a");
+        deduplicator.forget("d1", "t1", "a");
+
+        assertThat(deduplicator.isDuplicate("d1", "t1", "a")).isFalse();
+        assertThat(meterRegistry.counter("mqtt.deduplication.bloom", "result", "false-positive").count()).isEqualTo(1);
+        // once accepted again it is remembered again
+        assertThat(deduplicator.isDuplicate("d1", "t1", "a")).isTrue();
+    }
+
+    @Test
+    void bloomFalsePositiveRateStaysNearTarget() {
+        for (int i = 0; i < 1_000; i++) {
+            deduplicator.isDuplicate("device-" + i, "t", "payload");
+        }
+        double rate = meterRegistry.get("mqtt.deduplication.bloom.false.positive.rate").gauge().value();
+        assertThat(rate).isLessThan(0.05);
+    }
+}
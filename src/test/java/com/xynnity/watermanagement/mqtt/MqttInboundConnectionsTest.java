@@ -0,0 +1,170 @@
+package com.xynnity.watermanagement.mqtt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.StandardIntegrationFlow;
+import org.springframework.integration.dsl.context.IntegrationFlowContext;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.IngestionProperties;
+import com.xynnity.watermanagement.config.MqttProperties;
+
+/**
+ * Checks how the subscription topics are spread over the inbound connections. No broker is involved:
+ * the adapters are captured as they are registered, before they connect.
+ */
+class MqttInboundConnectionsTest {
+
+    private final MqttProperties properties = new MqttProperties();
+    private final ClusterProperties clusterProperties = new ClusterProperties();
+    private final IngestionProperties ingestionProperties = new IngestionProperties();
+    private final IngestionPressureMonitor pressureMonitor = mock(IngestionPressureMonitor.class);
+    private final List<MqttPahoMessageDrivenChannelAdapter> adapters = new ArrayList<>();
+    private final List<String> flowIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        properties.setBrokerUri("tcp://localhost:1883");
+        properties.setPassword("secret");
+        properties.setSubscriptionTopics(List.of("water/a", "water/b", "water/c", "water/d", "water/e"));
+    }
+
+    @Test
+    void topicsAreDealtRoundRobinAcrossConnections() {
+        properties.getInbound().setConnections(2);
+
+        open();
+
+        assertThat(adapters).hasSize(2);
+        assertThat(topics(0)).containsExactly("water/a", "water/c", "water/e");
+        assertThat(topics(1)).containsExactly("water/b", "water/d");
+        assertThat(adapters).extracting("clientId")
+                .containsExactly("watermanagement-app-inbound-0", "watermanagement-app-inbound-1");
+        assertThat(flowIds).containsExactly("mqttInbound-0", "mqttInbound-1");
+    }
+
+    @Test
+    void everyTopicIsSubscribedExactlyOnce() {
+        for (int connections = 1; connections <= 5; connections++) {
+            adapters.clear();
+            properties.getInbound().setConnections(connections);
+
+            open();
+
+            assertThat(adapters.stream().flatMap(adapter -> Arrays.stream(adapter.getTopic())))
+                    .as("%d connections", connections)
+                    .containsExactlyInAnyOrderElementsOf(properties.getSubscriptionTopics());
+        }
+    }
+
+    @Test
+    void connectionsAreCappedAtTheNumberOfTopics() {
+        properties.setSubscriptionTopics(List.of("water/a", "water/b"));
+        properties.getInbound().setConnections(4);
+
+        open();
+
+        assertThat(adapters).hasSize(2);
+        assertThat(topics(0)).containsExactly("water/a");
+        assertThat(topics(1)).containsExactly("water/b");
+    }
+
+    @Test
+    void singleConnectionKeepsThePlainClientId() {
+        open();
+
+        assertThat(adapters).singleElement()
+                .extracting("clientId")
+                .isEqualTo("watermanagement-app-inbound");
+        assertThat(topics(0)).containsExactlyElementsOf(properties.getSubscriptionTopics());
+    }
+
+    @Test
+    void sharedGroupSubscribesEveryConnectionToEveryTopic() {
+        properties.setSubscriptionTopics(List.of("water/a", "water/b"));
+        properties.getInbound().setConnections(3);
+        properties.getInbound().setSharedGroup("ingest");
+
+        open();
+
+        assertThat(adapters).hasSize(3);
+        for (int i = 0; i < adapters.size(); i++) {
+            assertThat(topics(i)).containsExactly("$share/ingest/water/a", "$share/ingest/water/b");
+        }
+    }
+
+    @Test
+    void clusterNameIsTheSharedGroupByDefault() {
+        clusterProperties.setEnabled(true);
+        clusterProperties.setName("plant");
+        clusterProperties.setNodeId("n1");
+        properties.setSubscriptionTopics(List.of("water/a"));
+        properties.getInbound().setConnections(2);
+
+        open();
+
+        assertThat(adapters).extracting("clientId")
+                .containsExactly("watermanagement-app-inbound-0-n1", "watermanagement-app-inbound-1-n1");
+        assertThat(topics(0)).containsExactly("$share/plant/water/a");
+        assertThat(topics(1)).containsExactly("$share/plant/water/a");
+    }
+
+    @Test
+    void lowPriorityTopicsArePausedOnlyOnTheirConnection() {
+        ingestionProperties.getBackpressure().setEnabled(true);
+        properties.setDefaultQos(1);
+        properties.getInbound().setConnections(2);
+        when(pressureMonitor.isLowPriority(anyString())).thenAnswer(call -> call.getArgument(0).equals("water/c"));
+        List<Consumer<IngestionPressureMonitor.PressureState>> listeners = new ArrayList<>();
+        doAnswer(call -> listeners.add(call.getArgument(0))).when(pressureMonitor).onChange(any());
+
+        open();
+        assertThat(listeners).hasSize(1);
+
+        listeners.get(0).accept(IngestionPressureMonitor.PressureState.PAUSED);
+        assertThat(topics(0)).containsExactly("water/a", "water/e");
+        assertThat(topics(1)).containsExactly("water/b", "water/d");
+
+        listeners.get(0).accept(IngestionPressureMonitor.PressureState.NORMAL);
+        assertThat(topics(0)).containsExactlyInAnyOrder("water/a", "water/c", "water/e");
+    }
+
+    private void open() {
+        var flowContext = mock(IntegrationFlowContext.class, RETURNS_DEEP_STUBS);
+        when(flowContext.registration(any())).thenAnswer(call -> {
+            var flow = (StandardIntegrationFlow) call.<IntegrationFlow>getArgument(0);
+            flow.getIntegrationComponents().keySet().stream()
+                    .filter(MqttPahoMessageDrivenChannelAdapter.class::isInstance)
+                    .map(MqttPahoMessageDrivenChannelAdapter.class::cast)
+                    .forEach(adapters::add);
+            var registration = mock(IntegrationFlowContext.IntegrationFlowRegistrationBuilder.class, RETURNS_DEEP_STUBS);
+            when(registration.id(anyString())).thenAnswer(id -> {
+                flowIds.add(id.getArgument(0));
+                return registration;
+            });
+            return registration;
+        });
+        new MqttInboundConnections(properties, clusterProperties, ingestionProperties, flowContext,
+                new DirectChannel(), pressureMonitor).open();
+    }
+
+    private List<String> topics(int connection) {
+        return List.of(adapters.get(connection).getTopic());
+    }
+}
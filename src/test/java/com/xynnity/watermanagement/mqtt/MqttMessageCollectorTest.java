@@ -0,0 +1,131 @@
+package com.xynnity.watermanagement.mqtt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.acks.SimpleAcknowledgment;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xynnity.watermanagement.config.IngestionProperties;
+import com.xynnity.watermanagement.config.MqttProperties;
+import com.xynnity.watermanagement.device.DeviceClientResolver;
+import com.xynnity.watermanagement.device.DeviceEventService;
+import com.xynnity.watermanagement.device.IngestionCallback;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MqttMessageCollectorTest {
+
+    private static final String TOPIC = "water/d1/data";
+
+    private final DeviceEventService deviceEventService = mock(DeviceEventService.class);
+    private final DeviceClientResolver clientResolver = mock(DeviceClientResolver.class);
+    private final OrderedAcknowledgments acknowledgments = new OrderedAcknowledgments();
+    private final List<Integer> acknowledged = new CopyOnWriteArrayList<>();
+    private final MqttMessageCollector collector = new MqttMessageCollector(deviceEventService, new ObjectMapper(),
+            new MqttProperties(), clientResolver, new IngestionProperties(), mock(IngestionPressureMonitor.class),
+            new SimpleMeterRegistry());
+
+    @Test
+    void failureBeforeIngestionStillReleasesTheAcknowledgmentSlot() {
+        when(clientResolver.resolveClientId("d1"))
+                .thenThrow(new DataAccessResourceFailureException("database unavailable"))
+                .thenReturn(Optional.of("c1"));
+        persistEverything();
+        var first = acknowledgments.sequence(message(1, "t1"));
+        var second = acknowledgments.sequence(message(2, "t2"));
+
+        collector.store(first);
+        collector.store(second);
+
+        assertThat(acknowledged).containsExactly(1, 2);
+        assertThat(acknowledgments.pending()).isZero();
+        verify(deviceEventService, times(1)).ingest(eq(TOPIC), anyString(), anyInt(), anyBoolean(), eq("d1"), eq("c1"),
+                any());
+    }
+
+    @Test
+    void redeliveryOfAMessageThatFailedBeforeIngestionIsStored() {
+        when(clientResolver.resolveClientId("d1"))
+                .thenThrow(new DataAccessResourceFailureException("database unavailable"))
+                .thenReturn(Optional.of("c1"));
+        persistEverything();
+
+        collector.store(message(1, "t1"));
+        verify(deviceEventService, never()).ingest(any(), any(), any(), any(), any(), any(), any());
+
+        collector.store(message(2, "t1"));
+        verify(deviceEventService).ingest(eq(TOPIC), anyString(), anyInt(), anyBoolean(), eq("d1"), eq("c1"), any());
+        assertThat(acknowledged).containsExactly(1, 2);
+    }
+
+    @Test
+    void redeliveryOfAMessageThatFailedToPersistIsStored() {
+        when(clientResolver.resolveClientId("d1")).thenReturn(Optional.of("c1"));
+        doAnswer(call -> {
+            call.<IngestionCallback>getArgument(6).failed(new DataAccessResourceFailureException("database unavailable"));
+            return null;
+        }).doAnswer(call -> {
+            call.<IngestionCallback>getArgument(6).persisted();
+            return null;
+        }).when(deviceEventService).ingest(any(), any(), any(), any(), any(), any(), any());
+
+        collector.store(message(1, "t1"));
+        collector.store(message(2, "t1"));
+
+        verify(deviceEventService, times(2)).ingest(any(), any(), any(), any(), any(), any(), any());
+        assertThat(acknowledged).containsExactly(1, 2);
+    }
+
+    @Test
+    void duplicateIsAcknowledgedWithoutStoring() {
+        when(clientResolver.resolveClientId("d1")).thenReturn(Optional.of("c1"));
+        persistEverything();
+
+        collector.store(message(1, "t1"));
+        collector.store(message(2, "t1"));
+
+        verify(deviceEventService, times(1)).ingest(any(), any(), any(), any(), any(), any(), any());
+        assertThat(acknowledged).containsExactly(1, 2);
+    }
+
+    private void persistEverything() {
+        doAnswer(call -> {
+            call.<IngestionCallback>getArgument(6).persisted();
+            return null;
+        }).when(deviceEventService).ingest(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    /**
+     * A QoS 1 message from device d1. Messages with the same {@code deviceTimestamp} are redeliveries
+     * of one reading; {@code delivery} only identifies the acknowledgment.
+     */
+    private Message<?> message(int delivery, String deviceTimestamp) {
+        SimpleAcknowledgment acknowledgment = () -> acknowledged.add(delivery);
+        return MessageBuilder.withPayload("{\"deviceId\":\"d1\",\"timestamp\":\"" + deviceTimestamp + "\",\"usage\":1}")
+                .setHeader(MqttHeaders.RECEIVED_TOPIC, TOPIC)
+                .setHeader(MqttHeaders.RECEIVED_QOS, 1)
+                .setHeader(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, acknowledgment)
+                .build();
+    }
+}
@@ -0,0 +1,66 @@
+package com.xynnity.watermanagement.mqtt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.acks.SimpleAcknowledgment;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+class OrderedAcknowledgmentsTest {
+
+    private final OrderedAcknowledgments acknowledgments = new OrderedAcknowledgments();
+    private final List<Integer> acknowledged = new CopyOnWriteArrayList<>();
+
+    @Test
+    void laterCompletionWaitsForEarlierMessages() {
+        var first = acknowledgments.sequence(message(1));
+        var second = acknowledgments.sequence(message(2));
+        var third = acknowledgments.sequence(message(3));
+
+        acknowledge(third);
+        acknowledge(second);
+        assertThat(acknowledged).isEmpty();
+        assertThat(acknowledgments.pending()).isEqualTo(3);
+
+        acknowledge(first);
+        assertThat(acknowledged).containsExactly(1, 2, 3);
+        assertThat(acknowledgments.pending()).isZero();
+    }
+
+    @Test
+    void inOrderCompletionIsPassedOnImmediately() {
+        var first = acknowledgments.sequence(message(1));
+        var second = acknowledgments.sequence(message(2));
+
+        acknowledge(first);
+        assertThat(acknowledged).containsExactly(1);
+
+        acknowledge(second);
+        assertThat(acknowledged).containsExactly(1, 2);
+    }
+
+    @Test
+    void messageWithoutAcknowledgmentIsUnchanged() {
+        var message = MessageBuilder.withPayload("qos0").build();
+
+        assertThat(acknowledgments.sequence(message)).isSameAs(message);
+        assertThat(acknowledgments.pending()).isZero();
+    }
+
+    private Message<?> message(int sequence) {
+        SimpleAcknowledgment acknowledgment = () -> acknowledged.add(sequence);
+        return MessageBuilder.withPayload("payload-" + sequence)
+                .setHeader(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, acknowledgment)
+                .build();
+    }
+
+    private static void acknowledge(Message<?> message) {
+        StaticMessageHeaderAccessor.getAcknowledgment(message).acknowledge();
+    }
+}
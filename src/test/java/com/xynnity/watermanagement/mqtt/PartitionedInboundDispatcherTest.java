@@ -0,0 +1,170 @@
+package com.xynnity.watermanagement.mqtt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHandlingException;
+
+import com.xynnity.watermanagement.config.IngestionProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PartitionedInboundDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IngestionProperties.Partitioning settings = new IngestionProperties.Partitioning();
+    private PartitionedInboundDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (dispatcher != null) {
+            dispatcher.destroy();
+        }
+    }
+
+    @Test
+    void eachDeviceIsHandledInOrderOnOneLane() throws InterruptedException {
+        settings.setLanes(4);
+        Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+        Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+        dispatcher = dispatcher(message -> {
+            var deviceId = deviceId(message);
+            handled.computeIfAbsent(deviceId, key -> Collections.synchronizedList(new ArrayList<>()))
+                    .add((Integer) message.getPayload());
+            threads.computeIfAbsent(deviceId, key -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+            Thread.yield();
+        });
+
+        // the devices' messages arrive interleaved, as they do on one broker connection
+        for (int sequence = 0; sequence < 200; sequence++) {
+            for (int device = 0; device < 12; device++) {
+                dispatcher.handleMessage(message("d" + device, sequence));
+            }
+        }
+        dispatcher.destroy();
+
+        assertThat(handled).hasSize(12);
+        var expected = IntStream.range(0, 200).boxed().toList();
+        handled.forEach((deviceId, sequences) -> assertThat(sequences).as(deviceId).isEqualTo(expected));
+        assertThat(threads.values()).allSatisfy(names -> assertThat(names).hasSize(1));
+        assertThat(threads.values().stream().flatMap(Set::stream).distinct()).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    void lanesCountProcessedFailedAndBlockedDispatches() throws Exception {
+        settings.setLanes(1);
+        settings.setQueueCapacity(1);
+        var handling = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        dispatcher = dispatcher(message -> {
+            if (message.getPayload().equals(0)) {
+                handling.countDown();
+                await(release);
+            }
+            if (message.getPayload().equals(1)) {
+                throw new IllegalStateException("cannot store");
+            }
+        });
+
+        dispatcher.handleMessage(message("d1", 0));
+        assertThat(handling.await(5, TimeUnit.SECONDS)).isTrue();
+        // the lane is busy with message 0, so message 1 fills the queue and message 2 has to wait
+        dispatcher.handleMessage(message("d1", 1));
+        var waiting = CompletableFuture.runAsync(() -> dispatcher.handleMessage(message("d1", 2)));
+        waitUntil(() -> counter("mqtt.inbound.lane.blocked") == 1);
+
+        assertThat(waiting).isNotDone();
+        assertThat(meterRegistry.get("mqtt.inbound.lane.depth").tag("lane", "0").gauge().value()).isEqualTo(1);
+        assertThat(dispatcher.fill()).isEqualTo(1.0);
+
+        release.countDown();
+        waiting.get(5, TimeUnit.SECONDS);
+        dispatcher.destroy();
+
+        assertThat(counter("mqtt.inbound.lane.processed")).isEqualTo(2);
+        assertThat(counter("mqtt.inbound.lane.failed")).isEqualTo(1);
+        assertThat(meterRegistry.get("mqtt.inbound.lane.depth").tag("lane", "0").gauge().value()).isZero();
+    }
+
+    @Test
+    void destroyDrainsQueuedMessagesBeforeStopping() throws InterruptedException {
+        settings.setLanes(2);
+        settings.setQueueCapacity(500);
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        dispatcher = dispatcher(message -> {
+            sleep(1);
+            handled.add((Integer) message.getPayload());
+        });
+        for (int sequence = 0; sequence < 300; sequence++) {
+            dispatcher.handleMessage(message("d" + sequence % 5, sequence));
+        }
+        assertThat(dispatcher.fill()).isPositive();
+
+        dispatcher.destroy();
+
+        assertThat(handled).hasSize(300).doesNotHaveDuplicates();
+        assertThatThrownBy(() -> dispatcher.handleMessage(message("d1", 300)))
+                .isInstanceOf(MessageHandlingException.class);
+    }
+
+    private PartitionedInboundDispatcher dispatcher(MessageHandler delegate) {
+        // device ids are the second topic segment, water/<deviceId>/data
+        return new PartitionedInboundDispatcher(delegate, settings, 1, meterRegistry);
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).tag("lane", "0").counter().count();
+    }
+
+    private static Message<Integer> message(String deviceId, int sequence) {
+        return MessageBuilder.withPayload(sequence)
+                .setHeader(MqttHeaders.RECEIVED_TOPIC, "water/" + deviceId + "/data")
+                .build();
+    }
+
+    private static String deviceId(Message<?> message) {
+        return message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC, String.class).split("/")[1];
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition within 5 seconds").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.xynnity.watermanagement.mqtt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Checks the single-pass enrichment against the tree-based enrichment it replaced and reports the
+ * per-message cost of both.
+ */
+class PayloadEnricherTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadEnricherTest.class);
+    private static final String DATE = "2024-01-01";
+    private static final String TIMESTAMP = "2024-01-01T10:15:30Z";
+    private static final int ROUNDS = 20;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PayloadEnricher enricher = new PayloadEnricher(objectMapper.getFactory());
+
+    @Test
+    void picksUpIdentifiersPreferringCamelCase() {
+        var draft = enricher.parse("{\"device_id\":\"alias\",\"deviceId\":\"d1\",\"client_id\":\"c1\",\"timestamp\":\"t0\"}");
+
+        assertThat(draft.deviceId()).isEqualTo("d1");
+        assertThat(draft.clientId()).isEqualTo("c1");
+        assertThat(draft.deviceTimestamp()).isEqualTo("t0");
+    }
+
+    @Test
+    void nonScalarIdentifiersAreIgnored() {
+        var draft = enricher.parse("{\"deviceId\":{\"nested\":1},\"clientId\":[1],\"usage\":3}");
+
+        assertThat(draft.deviceId()).isNull();
+        assertThat(draft.clientId()).isNull();
+        assertThat(read(draft.complete("d1", null, DATE, TIMESTAMP)))
+                .isEqualTo(read("{\"usage\":3,\"timestamp\":\"" + TIMESTAMP + "\",\"date\":\"" + DATE + "\",\"deviceId\":\"d1\"}"));
+    }
+
+    @Test
+    void enrichedDocumentMatchesTheTreeBasedPath() throws JsonProcessingException {
+        for (var payload : List.of(
+                "{\"usageLiters\":12.5,\"nested\":{\"a\":[1,2,{\"b\":null}]},\"flag\":true}",
+                "{\"deviceId\":\"d1\",\"clientId\":\"c1\",\"timestamp\":\"2023-12-31T00:00:00Z\",\"date\":\"2023-12-31\"}",
+                "{\"device_id\":\"d2\",\"client_id\":\"c2\",\"text\":\"ünïcødé \\\"quoted\\\"\"}",
+                "{}")) {
+            var draft = enricher.parse(payload);
+
+            assertThat(read(draft.complete("d1", "c1", DATE, TIMESTAMP)))
+                    .as(payload)
+                    .isEqualTo(read(treeEnrich(payload, "d1", "c1")));
+        }
+    }
+
+    @Test
+    void payloadsThatAreNotObjectsAreWrapped() {
+        for (var payload : List.of("plain text", "[1,2]", "{\"truncated\":", "42")) {
+            var enriched = read(enricher.parse(payload).complete("d1", null, DATE, TIMESTAMP));
+
+            assertThat(enriched.get("payload").asText()).isEqualTo(payload);
+            assertThat(enriched.get("deviceId").asText()).isEqualTo("d1");
+            assertThat(enriched.has("clientId")).isFalse();
+        }
+        assertThat(read(enricher.parse("").complete(null, null, DATE, TIMESTAMP)))
+                .isEqualTo(read("{\"timestamp\":\"" + TIMESTAMP + "\",\"date\":\"" + DATE + "\"}"));
+    }
+
+    @Test
+    void reportsCostAgainstTheTreeBasedPath() throws JsonProcessingException {
+        var payloads = meterPayloads(2_000);
+        long streamingNanos = 0;
+        long treeNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            // the first half of the rounds warms up the JIT
+            boolean measured = round >= ROUNDS / 2;
+            for (var payload : payloads) {
+                long started = System.nanoTime();
+                var draft = enricher.parse(payload);
+                var streamed = draft.complete(draft.deviceId(), draft.clientId(), DATE, TIMESTAMP);
+                long streamedAt = System.nanoTime();
+                var tree = treeEnrich(payload, null, null);
+                long finished = System.nanoTime();
+                if (measured) {
+                    streamingNanos += streamedAt - started;
+                    treeNanos += finished - streamedAt;
+                } else {
+                    assertThat(read(streamed)).isEqualTo(read(tree));
+                }
+            }
+        }
+        long measuredMessages = (long) payloads.size() * (ROUNDS - ROUNDS / 2);
+        log.info(String.format(Locale.ROOT,
+                "Payload enrichment of %d messages: streaming %.2f us/message, tree %.2f us/message",
+                payloads.size(), streamingNanos / 1e3 / measuredMessages, treeNanos / 1e3 / measuredMessages));
+    }
+
+    /**
+     * The enrichment {@code MqttMessageCollector} used before the streaming path: the payload is read
+     * into a tree twice, once for the identifiers and once to add the fields.
+     */
+    private String treeEnrich(String payload, String deviceId, String clientId) throws JsonProcessingException {
+        JsonNode identifiers = objectMapper.readTree(payload);
+        var resolvedDevice = deviceId != null ? deviceId : identifiers.path("deviceId").asText(null);
+        var resolvedClient = clientId != null ? clientId : identifiers.path("clientId").asText(null);
+        var node = (ObjectNode) objectMapper.readTree(payload);
+        node.put("timestamp", TIMESTAMP);
+        node.put("date", DATE);
+        if (resolvedDevice != null) {
+            node.put("deviceId", resolvedDevice);
+        }
+        if (resolvedClient != null) {
+            node.put("clientId", resolvedClient);
+        }
+        return objectMapper.writeValueAsString(node);
+    }
+
+    private JsonNode read(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<String> meterPayloads(int count) {
+        var random = new Random(42);
+        List<String> payloads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int device = random.nextInt(200) + 1;
+            payloads.add(String.format(Locale.ROOT,
+                    "{\"usageLiters\":%.1f,\"pressure\":\"%.2f bar\",\"timestamp\":\"2024-01-01T%02d:%02d:00Z\",\"deviceId\":\"device-%03d\",\"clientId\":\"client-%02d\"}",
+                    random.nextDouble() * 500, random.nextDouble() * 4, random.nextInt(24), random.nextInt(60),
+                    device, device % 20 + 1));
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,54 @@
+package com.xynnity.watermanagement.usage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+class UsageExtractorTest {
+
+    private final UsageExtractor extractor = new UsageExtractor(new JsonFactory(), List.of("usageLiters", "usage"));
+
+    @Test
+    void readsNumbersAndNumericText() {
+        assertThat(extractor.extract("{\"usage\":12}")).isEqualTo(12);
+        assertThat(extractor.extract("{\"usage\":\" 7.25 \"}")).isEqualTo(7.25);
+        assertThat(extractor.extract("{\"usage\":\"18.5cc\"}")).isEqualTo(18.5);
+    }
+
+    @Test
+    void preferredFieldWins() {
+        assertThat(extractor.extract("{\"usage\":1,\"usageLiters\":4}")).isEqualTo(4);
+        assertThat(extractor.extract("{\"usageLiters\":\"n/a\",\"usage\":3}")).isEqualTo(3);
+    }
+
+    @Test
+    void nonFiniteReadingsAreRejected() {
+        assertThat(extractor.extract("{\"usage\":\"Infinity\"}")).isNaN();
+        assertThat(extractor.extract("{\"usage\":\"NaN\"}")).isNaN();
+        assertThat(extractor.extract("{\"usage\":\"1e999\"}")).isNaN();
+        assertThat(extractor.extract("{\"usage\":1e999}")).isNaN();
+        assertThat(extractor.extract("{\"usageLiters\":\"-Infinity\",\"usage\":2}")).isEqualTo(2);
+    }
+
+    @Test
+    void payloadWithoutReadingYieldsNaN() {
+        assertThat(extractor.extract("{\"pressure\":3}")).isNaN();
+        assertThat(extractor.extract("[1]")).isNaN();
+        assertThat(extractor.extract("")).isNaN();
+    }
+
+    @Test
+    void eventsOnlyFeedDeviceRollups() {
+        List<BucketKey> keys = new ArrayList<>();
+        BucketKey.forEvent("d1", Instant.parse("2024-01-01T10:15:00Z"), keys::add);
+
+        assertThat(keys).extracting(BucketKey::scope).containsOnly(UsageScope.DEVICE);
+        assertThat(keys).extracting(BucketKey::granularity).containsExactlyInAnyOrder(UsageGranularity.values());
+    }
+}
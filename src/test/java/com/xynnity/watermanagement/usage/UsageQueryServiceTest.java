@@ -0,0 +1,171 @@
+package com.xynnity.watermanagement.usage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xynnity.watermanagement.cluster.ClusterEventRelay;
+import com.xynnity.watermanagement.cluster.ClusterLeases;
+import com.xynnity.watermanagement.config.ClusterProperties;
+import com.xynnity.watermanagement.config.UsageProperties;
+import com.xynnity.watermanagement.device.DeviceClientResolver;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+import com.xynnity.watermanagement.device.DeviceRegistration;
+import com.xynnity.watermanagement.device.DeviceRegistrationRepository;
+import com.xynnity.watermanagement.device.DeviceRegistrationService;
+import com.xynnity.watermanagement.device.PayloadCodec;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Serving usage reports from the version-checked cache, and dropping them after a local flush, a
+ * registration change or an invalidation relayed from another node. No database is involved: the
+ * rollup and registration repositories are mocks, and flushes commit through a mocked transaction
+ * manager.
+ */
+class UsageQueryServiceTest {
+
+    private static final Instant FROM = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-01-02T00:00:00Z");
+
+    private final UsageRollupRepository rollupRepository = mock(UsageRollupRepository.class);
+    private final DeviceRegistrationRepository registrationRepository = mock(DeviceRegistrationRepository.class);
+    private final ClusterEventRelay clusterRelay = mock(ClusterEventRelay.class);
+    private final Map<String, Consumer<Set<String>>> invalidationListeners = new ConcurrentHashMap<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UsageRollupService rollupService;
+    private DeviceRegistrationService registrationService;
+    private UsageQueryService queryService;
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(call -> invalidationListeners.put(call.getArgument(0), call.getArgument(1)))
+                .when(clusterRelay).onInvalidation(anyString(), any());
+        var properties = new UsageProperties();
+        // flushes are triggered by the tests
+        properties.setFlushInterval(Duration.ofHours(1));
+        rollupService = new UsageRollupService(rollupRepository, mock(DataSource.class),
+                mock(PlatformTransactionManager.class), new ObjectMapper(), mock(PayloadCodec.class), properties,
+                clusterRelay, mock(ClusterLeases.class), new ClusterProperties());
+        rollupService.startFlusher();
+        registrationService = new DeviceRegistrationService(registrationRepository, mock(DeviceClientResolver.class),
+                clusterRelay);
+        when(registrationRepository.save(any())).thenAnswer(call -> call.getArgument(0));
+        when(registrationRepository.findByClientId("c1")).thenReturn(List.of(registration("d1", "c1")));
+        queryService = new UsageQueryService(rollupRepository, rollupService, registrationService,
+                Schedulers.immediate(), properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rollupService.stopFlusher();
+    }
+
+    @Test
+    void unchangedReportIsServedFromTheCache() {
+        var first = deviceReport("d1");
+        var second = deviceReport("d1");
+
+        assertThat(second).isSameAs(first);
+        assertThat(clientReport("c1")).isSameAs(clientReport("c1"));
+        verify(rollupRepository, times(1))
+                .findByScopeAndScopeKeyAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                        UsageScope.DEVICE, "d1", UsageGranularity.HOUR, FROM, TO);
+        assertThat(cacheCount("hit")).isEqualTo(2);
+        assertThat(cacheCount("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void flushInvalidatesTheReportsOfTheFlushedDevices() {
+        var device = deviceReport("d1");
+        var otherDevice = deviceReport("d2");
+        var client = clientReport("c1");
+
+        rollupService.record(new DeviceEventDto(1L, "d1", "c1", "water/d1/data", "{\"usage\":5}", 1, false,
+                FROM.plusSeconds(60)));
+        assertThat(rollupService.flush()).isPositive();
+
+        assertThat(deviceReport("d1")).isNotSameAs(device);
+        assertThat(clientReport("c1")).isNotSameAs(client);
+        assertThat(deviceReport("d2")).isSameAs(otherDevice);
+        verify(clusterRelay).invalidate("usage-rollups", Set.of("d1"));
+    }
+
+    @Test
+    void registrationChangeInvalidatesClientReports() {
+        var client = clientReport("c1");
+        var device = deviceReport("d1");
+
+        when(registrationRepository.findByClientId("c1"))
+                .thenReturn(List.of(registration("d1", "c1"), registration("d3", "c1")));
+        registrationService.register("d3", "c1", "Garden meter");
+
+        assertThat(clientReport("c1")).isNotSameAs(client);
+        assertThat(deviceReport("d1")).isSameAs(device);
+        verify(rollupRepository)
+                .findByScopeAndScopeKeyInAndGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStartAsc(
+                        eq(UsageScope.DEVICE), eq(List.of("d1", "d3")), eq(UsageGranularity.HOUR), eq(FROM), eq(TO));
+    }
+
+    @Test
+    void invalidationRelayedFromAnotherNodeDropsTheReports() {
+        var device = deviceReport("d1");
+        var otherDevice = deviceReport("d2");
+        var client = clientReport("c1");
+
+        invalidationListeners.get("usage-rollups").accept(Set.of("d1"));
+
+        assertThat(deviceReport("d1")).isNotSameAs(device);
+        assertThat(clientReport("c1")).isNotSameAs(client);
+        var kept = deviceReport("d2");
+        assertThat(kept).isSameAs(otherDevice);
+
+        // an empty key set follows a rebuild on that node and covers every device
+        invalidationListeners.get("usage-rollups").accept(Set.of());
+
+        assertThat(deviceReport("d2")).isNotSameAs(kept);
+    }
+
+    private UsageReport deviceReport(String deviceId) {
+        return queryService.deviceUsage(deviceId, UsageGranularity.HOUR, FROM, TO).block();
+    }
+
+    private UsageReport clientReport(String clientId) {
+        return queryService.clientUsage(clientId, UsageGranularity.HOUR, FROM, TO).block();
+    }
+
+    private double cacheCount(String result) {
+        return meterRegistry.get("usage.report.cache").tag("result", result).counter().count();
+    }
+
+    private static DeviceRegistration registration(String deviceId, String clientId) {
+        var registration = new DeviceRegistration();
+        registration.setDeviceId(deviceId);
+        registration.setClientId(clientId);
+        return registration;
+    }
+}
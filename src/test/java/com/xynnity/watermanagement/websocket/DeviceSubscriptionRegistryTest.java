@@ -0,0 +1,311 @@
+package com.xynnity.watermanagement.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xynnity.watermanagement.config.WebSocketProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import reactor.core.Disposable;
+
+class DeviceSubscriptionRegistryTest {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceSubscriptionRegistryTest.class);
+
+    private final List<Disposable> sessions = new ArrayList<>();
+    private DeviceSubscriptionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new DeviceSubscriptionRegistry(new WebSocketProperties(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessions.forEach(Disposable::dispose);
+    }
+
+    @Test
+    void hasSubscribersChecksEachIndex() {
+        open("s1", "d1", null);
+        open("s2", null, "c2");
+        open("s3", "d3", "c3");
+
+        assertThat(registry.hasSubscribers("d1", null)).isTrue();
+        assertThat(registry.hasSubscribers(" d1 ", "other")).isTrue();
+        assertThat(registry.hasSubscribers("other", "c2")).isTrue();
+        assertThat(registry.hasSubscribers("d3", "c3")).isTrue();
+        assertThat(registry.hasSubscribers("d3", null)).isFalse();
+        assertThat(registry.hasSubscribers("d3", "c4")).isFalse();
+        assertThat(registry.hasSubscribers(null, null)).isFalse();
+        assertThat(registry.hasSubscribers("", " ")).isFalse();
+    }
+
+    @Test
+    void wildcardSessionMatchesEverything() {
+        open("s1", " ", null);
+
+        assertThat(registry.hasSubscribers("any", null)).isTrue();
+        assertThat(registry.hasSubscribers(null, null)).isTrue();
+        assertThat(registry.interest().wildcard()).isTrue();
+    }
+
+    @Test
+    void closingSessionsRemovesTheirIndexEntries() {
+        open("s1", "d1", null);
+        open("s2", "d1", null);
+        open("s3", "d2", "c2");
+
+        registry.unregister("s1");
+        assertThat(registry.hasSubscribers("d1", null)).isTrue();
+
+        sessions.forEach(Disposable::dispose);
+
+        assertThat(registry.hasSubscribers("d1", null)).isFalse();
+        assertThat(registry.hasSubscribers("d2", "c2")).isFalse();
+        assertThat(registry.interest().isEmpty()).isTrue();
+        assertThat(registry.sessionStats()).isEmpty();
+    }
+
+    @Test
+    void reusedSessionIdReplacesTheEarlierRegistration() {
+        open("s1", "d1", null);
+        open("s1", "d2", null);
+
+        assertThat(registry.hasSubscribers("d1", null)).isFalse();
+        assertThat(registry.hasSubscribers("d2", null)).isTrue();
+    }
+
+    @Test
+    void concurrentRegistrationsLeaveAConsistentIndex() {
+        int threads = 8;
+        int perThread = 500;
+        var start = new CountDownLatch(1);
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                executor.execute(() -> {
+                    await(start);
+                    for (int i = 0; i < perThread; i++) {
+                        // all threads share devices d0 to d4, so array swaps on the same index entries race
+                        var session = registry.subscribe("s" + thread + "-" + i, "d" + (i % 5), null, null).subscribe();
+                        if (i % 2 == 0) {
+                            session.dispose();
+                        } else {
+                            synchronized (sessions) {
+                                sessions.add(session);
+                            }
+                        }
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        assertThat(registry.sessionStats()).hasSize(threads * perThread / 2);
+        assertThat(registry.hasSubscribers("d1", null)).isTrue();
+        sessions.forEach(Disposable::dispose);
+        assertThat(registry.interest().isEmpty()).isTrue();
+    }
+
+    @Test
+    void perEventCheckAllocatesNothingWith10kSessions() {
+        for (int i = 0; i < 10_000; i++) {
+            open("s" + i, i % 3 == 0 ? "d" + i : null, i % 3 == 1 ? "c" + i : null);
+        }
+        String[] devices = new String[1_024];
+        String[] clients = new String[devices.length];
+        for (int i = 0; i < devices.length; i++) {
+            devices[i] = "d" + i * 7;
+            clients[i] = "c" + i * 5;
+        }
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        int matches = 0;
+        for (int i = 0; i < 2_000_000; i++) {
+            // warm up so the measured loop runs compiled code
+            matches += registry.hasSubscribers(devices[i & 1023], clients[i & 1023]) ? 1 : 0;
+        }
+        log.trace("{} matches during warm-up", matches);
+        matches = 0;
+        int calls = 5_000_000;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long started = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            matches += registry.hasSubscribers(devices[i & 1023], clients[i & 1023]) ? 1 : 0;
+        }
+        long took = System.nanoTime() - started;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        log.info(String.format(Locale.ROOT,
+                "hasSubscribers with 10000 sessions: %.1f ns/event, %d bytes allocated over %d events (%d matched)",
+                (double) took / calls, allocated, calls, matches));
+
+        // a single allocation per event would be tens of megabytes; allow for the JVM's own bookkeeping
+        assertThat(allocated).isLessThan(64 * 1024);
+    }
+
+    @Test
+    void routeDeliversOnlyToMatchingSessions() {
+        var byDevice = follow("device", "d1", null);
+        var byClient = follow("client", null, "c1");
+        var byPair = follow("pair", "d2", "c2");
+        var everything = follow("wildcard", null, null);
+        var unrelated = follow("unrelated", "d9", null);
+
+        registry.route(event(1, "d1", "c1"));
+        registry.route(event(2, "d2", "c2"));
+        registry.route(event(3, "d2", null));
+
+        assertThat(byDevice).extracting(DeviceEventDto::id).containsExactly(1L);
+        assertThat(byClient).extracting(DeviceEventDto::id).containsExactly(1L);
+        assertThat(byPair).extracting(DeviceEventDto::id).containsExactly(2L);
+        assertThat(everything).extracting(DeviceEventDto::id).containsExactly(1L, 2L, 3L);
+        assertThat(unrelated).isEmpty();
+    }
+
+    @Test
+    void concurrentEmittersDeliverEveryEventOnce() {
+        var properties = new WebSocketProperties();
+        properties.setSessionQueueCapacity(100_000);
+        var meterRegistry = new SimpleMeterRegistry();
+        registry = new DeviceSubscriptionRegistry(properties, meterRegistry);
+        var received = follow("s1", "d1", null);
+        int threads = 8;
+        int perThread = 2_000;
+        var start = new CountDownLatch(1);
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                long first = (long) t * perThread;
+                executor.execute(() -> {
+                    await(start);
+                    for (long id = first; id < first + perThread; id++) {
+                        registry.route(event(id, "d1", null));
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        assertThat(received).hasSize(threads * perThread);
+        assertThat(received).extracting(DeviceEventDto::id).doesNotHaveDuplicates();
+        assertThat(meterRegistry.counter("websocket.events.delivered").count()).isEqualTo(threads * perThread);
+        assertThat(meterRegistry.find("websocket.events.emit.failures").counters())
+                .allSatisfy(counter -> assertThat(counter.count()).isZero());
+    }
+
+    @Test
+    void publishersDoNotWaitForASessionThatIsStillConsuming() throws Exception {
+        var consuming = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        List<DeviceEventDto> received = Collections.synchronizedList(new ArrayList<>());
+        sessions.add(registry.subscribe("s1", "d1", null, null).subscribe(event -> {
+            if (event.id() == 1L) {
+                consuming.countDown();
+                await(release);
+            }
+            received.add(event);
+        }));
+        var first = CompletableFuture.runAsync(() -> registry.route(event(1, "d1", null)));
+        assertThat(consuming.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // the first publisher is inside the session's onNext; the second only enqueues
+        CompletableFuture.runAsync(() -> registry.route(event(2, "d1", null))).get(5, TimeUnit.SECONDS);
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+
+        assertThat(received).extracting(DeviceEventDto::id).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void reportsFanOutCostWithThousandsOfDashboards() {
+        int dashboards = 5_000;
+        var delivered = new LongAdder();
+        List<String> followed = new ArrayList<>(dashboards);
+        for (int i = 0; i < dashboards; i++) {
+            followed.add("device-" + i);
+            sessions.add(registry.subscribe("dashboard-" + i, "device-" + i, null, null)
+                    .subscribe(event -> delivered.increment()));
+        }
+        var random = new Random(42);
+        List<DeviceEventDto> events = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            events.add(event(i, "device-" + random.nextInt(dashboards * 2), "c1"));
+        }
+
+        long indexedNanos = 0;
+        long filteredNanos = 0;
+        long filterMatches = 0;
+        for (int round = 0; round < 10; round++) {
+            // the first half of the rounds warms up the JIT
+            boolean measured = round >= 5;
+            long started = System.nanoTime();
+            for (var event : events) {
+                registry.route(event);
+            }
+            long routed = System.nanoTime();
+            // the previous design: every session filters every event
+            for (var event : events) {
+                for (var deviceId : followed) {
+                    if (deviceId.equals(event.deviceId())) {
+                        filterMatches++;
+                    }
+                }
+            }
+            long finished = System.nanoTime();
+            if (measured) {
+                indexedNanos += routed - started;
+                filteredNanos += finished - routed;
+            }
+        }
+        long measuredEvents = events.size() * 5L;
+        log.info(String.format(Locale.ROOT,
+                "Routing to %d dashboards: indexed %.2f us/event, filter per session %.2f us/event",
+                dashboards, indexedNanos / 1e3 / measuredEvents, filteredNanos / 1e3 / measuredEvents));
+
+        // half the events are for devices nobody follows
+        assertThat(delivered.sum()).isEqualTo(filterMatches).isPositive();
+    }
+
+    private void open(String sessionId, String deviceId, String clientId) {
+        sessions.add(registry.subscribe(sessionId, deviceId, clientId, null).subscribe());
+    }
+
+    private List<DeviceEventDto> follow(String sessionId, String deviceId, String clientId) {
+        List<DeviceEventDto> received = Collections.synchronizedList(new ArrayList<>());
+        sessions.add(registry.subscribe(sessionId, deviceId, clientId, null).subscribe(received::add));
+        return received;
+    }
+
+    private static DeviceEventDto event(long id, String deviceId, String clientId) {
+        return new DeviceEventDto(id, deviceId, clientId, "water/" + deviceId + "/data", "{\"usage\":1}", 1, false,
+                Instant.parse("2024-01-01T00:00:00Z"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.xynnity.watermanagement.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xynnity.watermanagement.config.WebSocketProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Checks that events are encoded once and shared across frames, and reports the cost of a fan-out to
+ * many sessions against serializing each session's batch separately.
+ */
+class EventEncodingCacheTest {
+
+    private static final Logger log = LoggerFactory.getLogger(EventEncodingCacheTest.class);
+    private static final TypeReference<List<DeviceEventDto>> EVENTS = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private SimpleMeterRegistry meterRegistry;
+    private EventEncodingCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = cache(4_096);
+    }
+
+    @Test
+    void eventIsEncodedOnceAndShared() throws IOException {
+        var event = event(1);
+
+        var first = cache.json(event);
+        var second = cache.json(event);
+
+        assertThat(second).isSameAs(first);
+        assertThat(objectMapper.readValue(first, DeviceEventDto.class)).isEqualTo(event);
+        assertThat(meterRegistry.counter("websocket.encoding.cache", "result", "miss").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("websocket.encoding.cache", "result", "hit").count()).isEqualTo(1);
+    }
+
+    @Test
+    void eventsWithoutIdAreNotCached() throws IOException {
+        var event = new DeviceEventDto(null, "d1", "c1", "water/d1/data", "{}", 0, false, null);
+
+        assertThat(cache.json(event)).isNotSameAs(cache.json(event));
+        assertThat(meterRegistry.counter("websocket.encoding.cache", "result", "miss").count()).isZero();
+    }
+
+    @Test
+    void oldestEventsAreEvictedOnceFull() throws IOException {
+        var small = cache(2);
+        var first = small.json(event(1));
+        small.json(event(2));
+        small.json(event(3));
+
+        assertThat(small.json(event(3))).isSameAs(small.json(event(3)));
+        assertThat(small.json(event(1))).isNotSameAs(first).isEqualTo(first);
+    }
+
+    @Test
+    void jsonFrameIsAnArrayOfTheBatch() throws IOException {
+        var batch = List.of(event(1), event(2), event(3));
+
+        assertThat(readJson(cache.frame(batch, FrameEncoding.JSON, bufferFactory))).isEqualTo(batch);
+        assertThat(readJson(cache.frame(List.of(event(4)), FrameEncoding.JSON, bufferFactory))).containsExactly(event(4));
+        assertThat(readJson(cache.frame(List.of(), FrameEncoding.JSON, bufferFactory))).isEmpty();
+    }
+
+    @Test
+    void reportsFanOutCostAgainstPerSessionSerialization() throws IOException {
+        int sessions = 500;
+        List<List<DeviceEventDto>> batches = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            List<DeviceEventDto> batch = new ArrayList<>();
+            for (int j = 0; j < 10; j++) {
+                batch.add(event(i * 10L + j));
+            }
+            batches.add(batch);
+        }
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long sharedNanos = 0;
+        long sharedBytes = 0;
+        long perSessionNanos = 0;
+        long perSessionBytes = 0;
+        for (int round = 0; round < 6; round++) {
+            // the first half of the rounds warms up the JIT; each round uses a fresh cache
+            boolean measured = round >= 3;
+            var shared = cache(4_096);
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long started = System.nanoTime();
+            for (var batch : batches) {
+                for (int session = 0; session < sessions; session++) {
+                    DataBufferUtils.release(shared.frame(batch, FrameEncoding.JSON, bufferFactory));
+                }
+            }
+            long cached = System.nanoTime();
+            long allocatedCached = threads.getThreadAllocatedBytes(threadId);
+            // the previous design: each session serialized its own batch to a String
+            for (var batch : batches) {
+                for (int session = 0; session < sessions; session++) {
+                    var text = objectMapper.writeValueAsString(batch);
+                    DataBufferUtils.release(bufferFactory.wrap(text.getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+            long finished = System.nanoTime();
+            long allocatedFinished = threads.getThreadAllocatedBytes(threadId);
+            if (measured) {
+                sharedNanos += cached - started;
+                sharedBytes += allocatedCached - allocatedBefore;
+                perSessionNanos += finished - cached;
+                perSessionBytes += allocatedFinished - allocatedCached;
+            }
+        }
+        long frames = (long) batches.size() * sessions * 3;
+        log.info(String.format(Locale.ROOT,
+                "Fan-out of %d-event batches to %d sessions: shared encoding %.2f us and %d bytes allocated per frame, "
+                        + "per-session serialization %.2f us and %d bytes allocated per frame",
+                batches.get(0).size(), sessions, sharedNanos / 1e3 / frames, sharedBytes / frames,
+                perSessionNanos / 1e3 / frames, perSessionBytes / frames));
+
+        assertThat(sharedBytes).isLessThan(perSessionBytes);
+    }
+
+    private EventEncodingCache cache(int size) {
+        var properties = new WebSocketProperties();
+        properties.setEncodingCacheSize(size);
+        return new EventEncodingCache(objectMapper, new Jackson2ObjectMapperBuilder(), properties, meterRegistry);
+    }
+
+    private List<DeviceEventDto> readJson(DataBuffer frame) throws IOException {
+        try {
+            return objectMapper.readValue(frame.asInputStream(), EVENTS);
+        } finally {
+            DataBufferUtils.release(frame);
+        }
+    }
+
+    static DeviceEventDto event(long id) {
+        return new DeviceEventDto(id, "device-" + id % 50, "client-" + id % 5, "water/device-" + id % 50 + "/data",
+                "{\"usageLiters\":" + id % 500 + ".5,\"timestamp\":\"2024-01-01T10:15:30Z\"}", 1, false,
+                Instant.parse("2024-01-01T10:15:30Z").plusSeconds(id));
+    }
+}
@@ -0,0 +1,151 @@
+package com.xynnity.watermanagement.websocket;
+
+import static com.xynnity.watermanagement.websocket.EventEncodingCacheTest.event;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.xynnity.watermanagement.config.WebSocketProperties;
+import com.xynnity.watermanagement.device.DeviceEventDto;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Checks that every encoding's frames decode back to the batch, and reports bytes per event and
+ * encoding throughput for each, with and without permessage-deflate.
+ */
+class FrameEncodingTest {
+
+    private static final Logger log = LoggerFactory.getLogger(FrameEncodingTest.class);
+    private static final TypeReference<List<DeviceEventDto>> EVENTS = new TypeReference<>() {
+    };
+
+    private final ObjectMapper jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final Map<FrameEncoding, ObjectMapper> readers = new EnumMap<>(Map.of(
+            FrameEncoding.JSON, jsonMapper,
+            FrameEncoding.CBOR, new Jackson2ObjectMapperBuilder().factory(new CBORFactory()).build(),
+            FrameEncoding.SMILE, new Jackson2ObjectMapperBuilder().factory(new SmileFactory()).build()));
+
+    @Test
+    void subprotocolWinsOverTheQueryParameter() {
+        assertThat(FrameEncoding.resolve("events.cbor", "smile")).isEqualTo(FrameEncoding.CBOR);
+        assertThat(FrameEncoding.resolve(null, " Smile ")).isEqualTo(FrameEncoding.SMILE);
+        assertThat(FrameEncoding.resolve("unknown", "cbor")).isEqualTo(FrameEncoding.CBOR);
+        assertThat(FrameEncoding.resolve(null, "xml")).isEqualTo(FrameEncoding.JSON);
+        assertThat(FrameEncoding.resolve(null, null)).isEqualTo(FrameEncoding.JSON);
+    }
+
+    @Test
+    void binaryEncodingsUseBinaryMessages() {
+        assertThat(FrameEncoding.JSON.messageType()).isEqualTo(WebSocketMessage.Type.TEXT);
+        assertThat(FrameEncoding.CBOR.messageType()).isEqualTo(WebSocketMessage.Type.BINARY);
+        assertThat(FrameEncoding.SMILE.messageType()).isEqualTo(WebSocketMessage.Type.BINARY);
+    }
+
+    @Test
+    void everyEncodingDecodesToTheBatch() throws IOException {
+        var cache = cache();
+        // 23, 24, 255 and 256 events cross the CBOR array header sizes
+        for (int size : new int[] { 0, 1, 23, 24, 255, 256, 300 }) {
+            var batch = batch(size);
+            for (var encoding : FrameEncoding.values()) {
+                assertThat(read(cache.frame(batch, encoding, DefaultDataBufferFactory.sharedInstance), encoding))
+                        .as("%s frame of %d events", encoding, size)
+                        .isEqualTo(batch);
+            }
+        }
+    }
+
+    @Test
+    void reportsSizeAndThroughputPerEncoding() throws IOException {
+        List<List<DeviceEventDto>> batches = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            List<DeviceEventDto> batch = new ArrayList<>();
+            for (int j = 0; j < 10; j++) {
+                batch.add(event(i * 10L + j));
+            }
+            batches.add(batch);
+        }
+        long events = batches.size() * 10L;
+        var sizes = new EnumMap<FrameEncoding, Long>(FrameEncoding.class);
+        for (var encoding : FrameEncoding.values()) {
+            long nanos = 0;
+            long bytes = 0;
+            long deflatedBytes = 0;
+            for (int round = 0; round < 6; round++) {
+                // the first half of the rounds warms up the JIT; each round encodes every event afresh
+                boolean measured = round >= 3;
+                var cache = cache();
+                // permessage-deflate keeps one raw deflate context per connection and flushes each message
+                var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                var output = new byte[64 * 1024];
+                for (var batch : batches) {
+                    long started = System.nanoTime();
+                    var frame = cache.frame(batch, encoding, DefaultDataBufferFactory.sharedInstance);
+                    long finished = System.nanoTime();
+                    var content = new byte[frame.readableByteCount()];
+                    frame.read(content);
+                    DataBufferUtils.release(frame);
+                    if (measured) {
+                        nanos += finished - started;
+                        bytes += content.length;
+                    }
+                    if (round == 0) {
+                        deflater.setInput(content);
+                        deflatedBytes += deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                    }
+                }
+                deflater.end();
+            }
+            long measuredEvents = events * 3;
+            sizes.put(encoding, bytes);
+            log.info(String.format(Locale.ROOT,
+                    "%s frames of 10 events: %.1f bytes/event, %.1f bytes/event with permessage-deflate, %.0f events/ms encoded",
+                    encoding, (double) bytes / measuredEvents, (double) deflatedBytes / events,
+                    measuredEvents / (nanos / 1e6)));
+        }
+
+        assertThat(sizes.get(FrameEncoding.CBOR)).isLessThan(sizes.get(FrameEncoding.JSON));
+        assertThat(sizes.get(FrameEncoding.SMILE)).isLessThan(sizes.get(FrameEncoding.JSON));
+    }
+
+    private EventEncodingCache cache() {
+        return new EventEncodingCache(jsonMapper, new Jackson2ObjectMapperBuilder(), new WebSocketProperties(),
+                new SimpleMeterRegistry());
+    }
+
+    private List<DeviceEventDto> read(DataBuffer frame, FrameEncoding encoding) throws IOException {
+        try {
+            return readers.get(encoding).readValue(frame.asInputStream(), EVENTS);
+        } finally {
+            DataBufferUtils.release(frame);
+        }
+    }
+
+    private static List<DeviceEventDto> batch(int size) {
+        List<DeviceEventDto> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(event(i));
+        }
+        return batch;
+    }
+}